@@ -0,0 +1,280 @@
+package src.main.java.com.app;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
+import com.sun.speech.freetts.audio.AudioPlayer;
+import com.sun.speech.freetts.audio.RawFileAudioPlayer;
+import com.sun.speech.freetts.audio.SingleFileAudioPlayer;
+
+/*
+ * Headless mode: renders the url feed to audio files instead of the speaker.
+ *
+ * Every document (or every paragraph, with perParagraph) becomes its own wav or raw pcm
+ * file in outputDir. Rendering runs on one thread per Voice; each thread borrows a voice
+ * from the pool, points it at a file audio player, speaks, and gives it back, so voices
+ * never share state and the work scales with the number of cores. Documents are rendered
+ * while the rest of the feed is still being ingested, and manifest.tsv lists the files in
+ * feed order with their duration.
+ *
+ * resources:
+ *  https://freetts.sourceforge.io/docs/index.php#how_to_use_freetts
+ */
+public class BatchRenderer {
+
+	public static final String DEFAULT_VOICE = "kevin16";
+	public static final String MANIFEST = "manifest.tsv";
+
+	private final String voiceName;
+	private final int voiceCount;
+	private final File outputDir;
+	private final boolean perParagraph;
+	private final boolean raw;
+	private final BlockingQueue<Voice> voices;
+
+	/*
+	 * What was rendered for one document or paragraph.
+	 */
+	public static class Rendering {
+		final String file;
+		final String source;
+		final int characters;
+		final double seconds;
+		final boolean ok;
+
+		Rendering( String file, String source, int characters, double seconds, boolean ok ) {
+			this.file = file;
+			this.source = source;
+			this.characters = characters;
+			this.seconds = seconds;
+			this.ok = ok;
+		}
+
+		public String getFile() {
+			return file;
+		}
+
+		public double getSeconds() {
+			return seconds;
+		}
+
+		public boolean isOk() {
+			return ok;
+		}
+	}
+
+	public BatchRenderer( File outputDir ) {
+		this( DEFAULT_VOICE, Runtime.getRuntime().availableProcessors(), outputDir, false, false );
+	}
+
+	public BatchRenderer( String voiceName, int voiceCount, File outputDir, boolean perParagraph, boolean raw ) {
+		if( voiceCount < 1 )
+			throw new IllegalArgumentException( "voiceCount must be at least 1" );
+		this.voiceName = voiceName;
+		this.voiceCount = voiceCount;
+		this.outputDir = outputDir;
+		this.perParagraph = perParagraph;
+		this.raw = raw;
+		this.voices = new ArrayBlockingQueue<Voice>( voiceCount );
+	}
+
+	/*
+	 * Ingests the feed and renders it. Returns the renderings in feed order; they are also
+	 * written to outputDir/manifest.tsv.
+	 */
+	public List<Rendering> render( URLFeedIngestor ingestor, String urlFeedFile, String speechReadyTextFile ) throws Exception {
+
+		Files.createDirectories( outputDir.toPath() );
+		final ExecutorService pool = Executors.newFixedThreadPool( voiceCount, new RenderThreadFactory() );
+		final List<Future<Rendering>> renderings = new ArrayList<Future<Rendering>>();
+		// no more than two jobs per voice wait around holding their text
+		final Semaphore queued = new Semaphore( voiceCount * 2 );
+		long start = System.nanoTime();
+
+		try {
+			allocateVoices( pool );
+			ingestor.ingest( urlFeedFile, speechReadyTextFile, new URLFeedIngestor.ParagraphSink() {
+				private final StringBuilder document = new StringBuilder();
+				private int documents = 0;
+				private int paragraphs = 0;
+
+				public void paragraph( String text ) throws InterruptedException {
+					if( perParagraph )
+						submit( String.format( "doc-%04d-p%04d", documents + 1, ++paragraphs ), null, text );
+					else
+						document.append( text ).append( '\n' );
+				}
+
+				public void documentEnded( String source ) throws InterruptedException {
+					documents++;
+					paragraphs = 0;
+					if( !perParagraph ) {
+						submit( String.format( "doc-%04d", documents ), source, document.toString() );
+						document.setLength( 0 );
+					}
+				}
+
+				private void submit( final String name, final String source, final String text ) throws InterruptedException {
+					queued.acquire();
+					renderings.add( pool.submit( new Callable<Rendering>() {
+						public Rendering call() throws Exception {
+							try {
+								return renderOne( name, source, text );
+							}
+							finally {
+								queued.release();
+							}
+						}
+					}));
+				}
+			});
+			if( Thread.currentThread().isInterrupted() )
+				throw new InterruptedException();
+
+			List<Rendering> result = new ArrayList<Rendering>( renderings.size() );
+			for( Future<Rendering> f : renderings ) {
+				try {
+					result.add( f.get() );
+				}
+				catch( ExecutionException ee ) {
+					ee.getCause().printStackTrace();
+				}
+			}
+			writeManifest( result );
+			show( result, ( System.nanoTime() - start ) / 1e9 );
+			return result;
+		}
+		finally {
+			pool.shutdownNow();
+			for( Voice voice : voices ) {
+				voice.deallocate();
+			}
+			voices.clear();
+		}
+
+	}
+
+	/*
+	 * Loads all voices at once, one per render thread.
+	 */
+	private void allocateVoices( ExecutorService pool ) throws Exception {
+		List<Future<Voice>> allocated = new ArrayList<Future<Voice>>();
+		for( int i = 0; i < voiceCount; i++ ) {
+			allocated.add( pool.submit( new Callable<Voice>() {
+				public Voice call() {
+					// every call hands out a new instance, so no two threads share a voice
+					Voice voice = VoiceManager.getInstance().getVoice( voiceName );
+					if( voice == null )
+						throw new IllegalArgumentException( "no voice named " + voiceName );
+					voice.allocate();
+					return voice;
+				}
+			}));
+		}
+		for( Future<Voice> f : allocated ) {
+			try {
+				voices.add( f.get() );
+			}
+			catch( ExecutionException ee ) {
+				throw new IOException( "can't allocate voice " + voiceName, ee.getCause() );
+			}
+		}
+	}
+
+	private Rendering renderOne( String name, String source, String text ) throws Exception {
+
+		Voice voice = voices.take();
+		try {
+			File file;
+			AudioPlayer player;
+			if( raw ) {
+				file = new File( outputDir, name + ".raw" );
+				player = new RawFileAudioPlayer( file.getPath() );
+			}
+			else {
+				file = new File( outputDir, name + ".wav" );
+				player = new SingleFileAudioPlayer( new File( outputDir, name ).getPath(), AudioFileFormat.Type.WAVE );
+			}
+			voice.setAudioPlayer( player );
+			boolean ok = voice.speak( text );
+			// a wav player that never got a format has nothing to write
+			if( raw || player.getAudioFormat() != null )
+				player.close();
+			return new Rendering( file.getName(), source, text.length(), duration( file, player.getAudioFormat() ), ok );
+		}
+		finally {
+			voices.put( voice );
+		}
+
+	}
+
+	private double duration( File file, AudioFormat format ) throws IOException {
+		if( format == null || !file.exists() )
+			return 0.0;
+		if( raw )
+			return file.length() / (double) format.getFrameSize() / format.getFrameRate();
+		try {
+			return AudioSystem.getAudioFileFormat( file ).getFrameLength() / (double) format.getFrameRate();
+		}
+		catch( UnsupportedAudioFileException e ) {
+			throw new IOException( e );
+		}
+	}
+
+	private void writeManifest( List<Rendering> renderings ) throws IOException {
+		BufferedWriter bw = new BufferedWriter( new FileWriter( new File( outputDir, MANIFEST ) ) );
+		try {
+			bw.write( "file\tseconds\tcharacters\tok\tsource\n" );
+			for( Rendering r : renderings ) {
+				bw.write( String.format( "%s\t%.3f\t%d\t%b\t%s\n", r.file, r.seconds, r.characters, r.ok,
+						r.source == null ? "" : r.source ) );
+			}
+		}
+		finally {
+			bw.close();
+		}
+	}
+
+	private void show( List<Rendering> renderings, double elapsed ) {
+		double audio = 0.0;
+		for( Rendering r : renderings ) {
+			audio += r.seconds;
+		}
+		System.out.println("[*] batch render");
+		System.out.println(String.format("[*]   files        : %d in %s", renderings.size(), outputDir ));
+		System.out.println(String.format("[*]   voices       : %d", voiceCount ));
+		System.out.println(String.format("[*]   audio        : %.1f s", audio ));
+		System.out.println(String.format("[*]   elapsed      : %.1f s (%.1fx real time)", elapsed, elapsed > 0 ? audio / elapsed : 0.0 ));
+	}
+
+	private static class RenderThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread( Runnable r ) {
+			Thread t = new Thread( r, "batch-render-" + count.incrementAndGet() );
+			t.setDaemon( true );
+			return t;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package src.main.java.com.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Persistent cache of what the url feed looked like the last time it was ingested.
+ *
+ * For every url we keep the ETag / Last-Modified validators, the hash of the downloaded
+ * body and the time of the fetch in entries/<sha-256 of url>.properties. The speech
+ * ready text itself is stored once per body in content/<sha-256 of body>-v<version>.txt, so two
+ * urls serving the same document share one copy and the second one is never parsed.
+ *
+ * An entry younger than maxAgeSeconds is served without touching the network; older
+ * entries are revalidated with a conditional request and a 304 reuses the stored text.
+ *
+ * Entries and texts are stamped with TEXT_VERSION. Text stored by a build that turned
+ * documents into speech text differently is never served: its entries are misses and
+ * its texts are not found, so the url is downloaded and parsed again.
+ *
+ * resources:
+ *  https://developer.mozilla.org/en-US/docs/Web/HTTP/Conditional_requests
+ */
+public class FetchCache {
+
+	public static final String DEFAULT_DIRECTORY = ".textToSpeechifyCache";
+
+	/* bump whenever speechReadyText gives different text for the same document */
+	public static final int TEXT_VERSION = 2;
+
+	private final File entriesDir;
+	private final File contentDir;
+	private final long maxAgeMillis;
+	private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+
+	/*
+	 * What we know about one url.
+	 */
+	public static class Entry {
+		final String url;
+		final String etag;
+		final String lastModified;
+		final String contentHash;
+		final long fetchedAt;
+
+		Entry( String url, String etag, String lastModified, String contentHash, long fetchedAt ) {
+			this.url = url;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+			this.fetchedAt = fetchedAt;
+		}
+
+		public String getETag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public String getContentHash() {
+			return contentHash;
+		}
+	}
+
+	public FetchCache( String directory, long maxAgeSeconds ) throws IOException {
+		File root = new File( directory );
+		entriesDir = new File( root, "entries" );
+		contentDir = new File( root, "content" );
+		Files.createDirectories( entriesDir.toPath() );
+		Files.createDirectories( contentDir.toPath() );
+		maxAgeMillis = maxAgeSeconds * 1000L;
+	}
+
+	/*
+	 * Returns the entry for the url, or null if it was never fetched.
+	 */
+	public Entry lookup( String url ) {
+		Entry entry = entries.get( url );
+		if( entry != null )
+			return entry;
+		File file = entryFile( url );
+		if( !file.exists() )
+			return null;
+		try {
+			Properties p = new Properties();
+			InputStream in = new FileInputStream( file );
+			try {
+				p.load( in );
+			}
+			finally {
+				in.close();
+			}
+			// text made by another extractor is a miss
+			if( Integer.parseInt( p.getProperty( "textVersion", "1" ) ) != TEXT_VERSION )
+				return null;
+			entry = new Entry( url, p.getProperty( "etag" ), p.getProperty( "lastModified" ),
+					p.getProperty( "contentHash" ), Long.parseLong( p.getProperty( "fetchedAt", "0" ) ) );
+			entries.putIfAbsent( url, entry );
+			return entry;
+		}
+		catch( IOException | NumberFormatException e ) {
+			// a damaged entry is just a miss
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/*
+	 * Returns true if the entry is recent enough to be used without asking the server.
+	 */
+	public boolean isFresh( Entry entry ) {
+		return maxAgeMillis > 0 && System.currentTimeMillis() - entry.fetchedAt < maxAgeMillis;
+	}
+
+	/*
+	 * Returns the stored speech ready text for a body hash, or null if there is none.
+	 */
+	public String getText( String contentHash ) {
+		if( contentHash == null )
+			return null;
+		File file = contentFile( contentHash );
+		try {
+			return file.exists() ? new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 ) : null;
+		}
+		catch( IOException ioe ) {
+			ioe.printStackTrace();
+			return null;
+		}
+	}
+
+	/*
+	 * Records a fresh download of the url and stores its text under the body hash.
+	 */
+	public void put( String url, String etag, String lastModified, String contentHash, String text ) throws IOException {
+		File content = contentFile( contentHash );
+		if( !content.exists() )
+			writeAtomically( content, text.getBytes( StandardCharsets.UTF_8 ) );
+		store( new Entry( url, etag, lastModified, contentHash, System.currentTimeMillis() ) );
+	}
+
+	/*
+	 * Records that the server confirmed the entry is still current.
+	 */
+	public void touch( Entry entry ) throws IOException {
+		store( new Entry( entry.url, entry.etag, entry.lastModified, entry.contentHash, System.currentTimeMillis() ) );
+	}
+
+	private void store( Entry entry ) throws IOException {
+		Properties p = new Properties();
+		p.setProperty( "url", entry.url );
+		if( entry.etag != null )
+			p.setProperty( "etag", entry.etag );
+		if( entry.lastModified != null )
+			p.setProperty( "lastModified", entry.lastModified );
+		p.setProperty( "contentHash", entry.contentHash );
+		p.setProperty( "fetchedAt", Long.toString( entry.fetchedAt ) );
+		p.setProperty( "textVersion", Integer.toString( TEXT_VERSION ) );
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		p.store( bytes, null );
+		writeAtomically( entryFile( entry.url ), bytes.toByteArray() );
+		entries.put( entry.url, entry );
+	}
+
+	/*
+	 * Writes to a temp file first so a crash or a concurrent reader never sees half a file.
+	 */
+	private void writeAtomically( File file, byte[] bytes ) throws IOException {
+		File tmp = File.createTempFile( "tmp-", ".part", file.getParentFile() );
+		try {
+			OutputStream out = new FileOutputStream( tmp );
+			try {
+				out.write( bytes );
+			}
+			finally {
+				out.close();
+			}
+			Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+
+	private File contentFile( String contentHash ) {
+		return new File( contentDir, contentHash + "-v" + TEXT_VERSION + ".txt" );
+	}
+
+	private File entryFile( String url ) {
+		return new File( entriesDir, sha256( url.getBytes( StandardCharsets.UTF_8 ) ) + ".properties" );
+	}
+
+	static String sha256( byte[] bytes ) {
+		return toHex( newDigest().digest( bytes ) );
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance( "SHA-256" );
+		}
+		catch( NoSuchAlgorithmException e ) {
+			// every JRE is required to ship SHA-256
+			throw new IllegalStateException( e );
+		}
+	}
+
+	static String toHex( byte[] digest ) {
+		StringBuilder sb = new StringBuilder( digest.length * 2 );
+		for( byte b : digest ) {
+			sb.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) );
+			sb.append( Character.forDigit( b & 0xf, 16 ) );
+		}
+		return sb.toString();
+	}
+
+	void recordHit() {
+		hits.incrementAndGet();
+	}
+
+	void recordRevalidation() {
+		revalidations.incrementAndGet();
+	}
+
+	void recordMiss() {
+		misses.incrementAndGet();
+	}
+
+	void recordDuplicate() {
+		duplicates.incrementAndGet();
+	}
+
+	/* served from the cache without a request */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/* conditional request answered with 304 */
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+
+	/* downloaded in full */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/* downloaded, but the body was already cached under another url (not parsed again) */
+	public long getDuplicateCount() {
+		return duplicates.get();
+	}
+
+	public void show( String title ) {
+		System.out.println("[*] " + title + " cache");
+		System.out.println(String.format("[*]   hits         : %d", getHitCount() ));
+		System.out.println(String.format("[*]   revalidated  : %d", getRevalidationCount() ));
+		System.out.println(String.format("[*]   misses       : %d (%d duplicate content)", getMissCount(), getDuplicateCount() ));
+	}
+}
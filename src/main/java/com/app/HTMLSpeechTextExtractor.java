@@ -0,0 +1,426 @@
+package src.main.java.com.app;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+/*
+ * Single pass replacement for the parseHTML / secondPass pipeline.
+ *
+ * The page is read once, a buffer at a time, and pushed through a small state machine
+ * that knows whether it is in text, a tag, a comment, a CDATA section or the raw content
+ * of a script/style element. Text inside the elements listed in HTMLTags.skip_tags is
+ * dropped, entities are decoded as they are seen, and every paragraph is handed to the
+ * consumer as soon as the block element holding it ends. Memory use is bounded by the
+ * read buffer and maxParagraphLength no matter how large the page is.
+ *
+ * An instance is not thread safe but can be reused for any number of documents.
+ *
+ * resources:
+ *  https://html.spec.whatwg.org/multipage/parsing.html#tokenization
+ */
+public class HTMLSpeechTextExtractor {
+
+	public static final int DEFAULT_MAX_PARAGRAPH_LENGTH = 16 * 1024;
+
+	private static final int TEXT = 0;
+	private static final int TAG_OPEN = 1;
+	private static final int TAG_NAME = 2;
+	private static final int TAG_ATTRIBUTES = 3;
+	private static final int BANG = 4;
+	private static final int BANG_DASH = 5;
+	private static final int COMMENT = 6;
+	private static final int CDATA = 7;
+	private static final int DECLARATION = 8;
+	private static final int RAW_TEXT = 9;
+	private static final int ENTITY = 10;
+
+	private static final int MAX_TAG_NAME_LENGTH = 32;
+	private static final int MAX_ENTITY_LENGTH = 12;
+
+	/* elements whose content is never read aloud */
+	private static final Set<String> skipTags = new HashSet<String>( HTMLTags.skip_tags.values() );
+
+	/* elements whose content is not html at all, only the matching end tag ends them */
+	private static final Set<String> rawTextTags = new HashSet<String>( Arrays.asList( "script", "style" ) );
+
+	/* elements that never have content or an end tag */
+	private static final Set<String> voidTags = new HashSet<String>( Arrays.asList(
+			"area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta",
+			"param", "source", "track", "wbr" ) );
+
+	/* elements that start or end a paragraph of speech */
+	private static final Set<String> blockTags = new HashSet<String>( Arrays.asList(
+			"address", "article", "aside", "blockquote", "body", "br", "caption", "dd", "div",
+			"dl", "dt", "figcaption", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6",
+			"header", "hr", "html", "li", "main", "nav", "ol", "p", "pre", "section", "table",
+			"td", "th", "tr", "ul" ) );
+
+	private final int maxParagraphLength;
+	private final char[] buffer = new char[8192];
+	private final char[] tagName = new char[MAX_TAG_NAME_LENGTH];
+	private final char[] entity = new char[MAX_ENTITY_LENGTH];
+	private final StringBuilder paragraph;
+
+	private Consumer<String> consumer;
+	private int state;
+	private int tagNameLength;
+	private int entityLength;
+	private boolean closingTag;
+	private boolean selfClosingTag;
+	private char quote;
+	private char last, secondLast;
+	private boolean inHead;
+	private String skipTag;
+	private int skipDepth;
+	private String rawTextTag;
+	private int rawTextMatched;
+	private boolean pendingSpace;
+	private long paragraphCount;
+
+	public HTMLSpeechTextExtractor() {
+		this( DEFAULT_MAX_PARAGRAPH_LENGTH );
+	}
+
+	/*
+	 * Paragraphs longer than maxParagraphLength are emitted in pieces, split at the
+	 * last space that fits.
+	 */
+	public HTMLSpeechTextExtractor( int maxParagraphLength ) {
+		this.maxParagraphLength = maxParagraphLength;
+		this.paragraph = new StringBuilder( Math.min( maxParagraphLength, 1024 ) );
+	}
+
+	/*
+	 * Reads the whole document and sends each paragraph of speech ready text to the
+	 * consumer, in document order. The reader is not closed.
+	 */
+	public void extract( Reader reader, Consumer<String> consumer ) throws IOException {
+
+		reset( consumer );
+		int read;
+		while( ( read = reader.read( buffer, 0, buffer.length ) ) != -1 ) {
+			for( int idx = 0; idx < read; idx++ ) {
+				accept( buffer[idx] );
+			}
+		}
+		if( state == ENTITY )
+			flushEntity();
+		flushParagraph();
+		this.consumer = null;
+
+	}
+
+	/*
+	 * Convenience wrapper that returns the paragraphs one per line.
+	 */
+	public String extract( Reader reader ) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		extract( reader, paragraph -> sb.append( paragraph ).append( '\n' ) );
+		return sb.toString();
+	}
+
+	/*
+	 * Returns the number of paragraphs emitted by the last call to extract.
+	 */
+	public long getParagraphCount() {
+		return paragraphCount;
+	}
+
+	private void reset( Consumer<String> consumer ) {
+		this.consumer = consumer;
+		state = TEXT;
+		tagNameLength = 0;
+		entityLength = 0;
+		closingTag = false;
+		selfClosingTag = false;
+		quote = 0;
+		last = 0;
+		secondLast = 0;
+		inHead = false;
+		skipTag = null;
+		skipDepth = 0;
+		rawTextTag = null;
+		rawTextMatched = 0;
+		pendingSpace = false;
+		paragraphCount = 0;
+		paragraph.setLength( 0 );
+	}
+
+	private void accept( char c ) {
+
+		switch( state ) {
+		case TEXT:
+			if( c == '<' ) {
+				state = TAG_OPEN;
+			}
+			else if( c == '&' ) {
+				state = ENTITY;
+				entityLength = 0;
+			}
+			else {
+				appendText( c );
+			}
+			break;
+
+		case TAG_OPEN:
+			tagNameLength = 0;
+			closingTag = false;
+			selfClosingTag = false;
+			quote = 0;
+			if( c == '/' ) {
+				closingTag = true;
+				state = TAG_NAME;
+			}
+			else if( Character.isLetter( c ) ) {
+				appendTagName( c );
+				state = TAG_NAME;
+			}
+			else if( c == '!' ) {
+				state = BANG;
+			}
+			else if( c == '?' ) {
+				state = DECLARATION;
+			}
+			else {
+				// a lone '<' in the text, e.g. "a < b"
+				state = TEXT;
+				appendText( '<' );
+				accept( c );
+			}
+			break;
+
+		case TAG_NAME:
+			if( c == '>' ) {
+				endTag();
+			}
+			else if( c == '/' ) {
+				selfClosingTag = true;
+				state = TAG_ATTRIBUTES;
+			}
+			else if( Character.isWhitespace( c ) ) {
+				state = TAG_ATTRIBUTES;
+			}
+			else {
+				appendTagName( c );
+			}
+			break;
+
+		case TAG_ATTRIBUTES:
+			if( quote != 0 ) {
+				if( c == quote )
+					quote = 0;
+			}
+			else if( c == '"' || c == '\'' ) {
+				quote = c;
+			}
+			else if( c == '>' ) {
+				endTag();
+			}
+			else if( c == '/' ) {
+				selfClosingTag = true;
+			}
+			else if( !Character.isWhitespace( c ) ) {
+				selfClosingTag = false;
+			}
+			break;
+
+		case BANG:
+			last = 0;
+			secondLast = 0;
+			if( c == '-' )
+				state = BANG_DASH;
+			else if( c == '[' )
+				state = CDATA;
+			else if( c == '>' )
+				state = TEXT;
+			else
+				state = DECLARATION;
+			break;
+
+		case BANG_DASH:
+			state = c == '-' ? COMMENT : DECLARATION;
+			break;
+
+		case COMMENT:
+			if( c == '>' && last == '-' && secondLast == '-' )
+				state = TEXT;
+			secondLast = last;
+			last = c;
+			break;
+
+		case CDATA:
+			if( c == '>' && last == ']' && secondLast == ']' )
+				state = TEXT;
+			secondLast = last;
+			last = c;
+			break;
+
+		case DECLARATION:
+			if( c == '>' )
+				state = TEXT;
+			break;
+
+		case RAW_TEXT:
+			matchRawTextEnd( c );
+			break;
+
+		case ENTITY:
+			if( c == ';' ) {
+				decodeEntity();
+				state = TEXT;
+			}
+			else if( ( Character.isLetterOrDigit( c ) || ( c == '#' && entityLength == 0 ) )
+					&& entityLength < MAX_ENTITY_LENGTH ) {
+				entity[entityLength++] = c;
+			}
+			else {
+				flushEntity();
+				state = TEXT;
+				accept( c );
+			}
+			break;
+		}
+
+	}
+
+	private void appendTagName( char c ) {
+		if( tagNameLength < MAX_TAG_NAME_LENGTH )
+			tagName[tagNameLength++] = Character.toLowerCase( c );
+	}
+
+	private void endTag() {
+
+		state = TEXT;
+		if( tagNameLength == 0 )
+			return;
+		String name = new String( tagName, 0, tagNameLength );
+
+		if( closingTag ) {
+			if( name.equals( "head" ) )
+				inHead = false;
+			if( skipDepth > 0 && name.equals( skipTag ) && --skipDepth == 0 )
+				skipTag = null;
+		}
+		else {
+			if( name.equals( "head" ) )
+				inHead = true;
+			else if( name.equals( "body" ) )
+				inHead = false;
+
+			if( !selfClosingTag && !voidTags.contains( name ) ) {
+				if( rawTextTags.contains( name ) ) {
+					rawTextTag = "</" + name;
+					rawTextMatched = 0;
+					state = RAW_TEXT;
+				}
+				else if( skipDepth == 0 && skipTags.contains( name ) ) {
+					skipTag = name;
+					skipDepth = 1;
+				}
+				else if( name.equals( skipTag ) ) {
+					skipDepth++;
+				}
+			}
+		}
+
+		if( blockTags.contains( name ) )
+			flushParagraph();
+
+	}
+
+	/*
+	 * Raw text (script and style) ends only at the matching end tag, so anything that
+	 * looks like markup in between, e.g. "if (a<b)", is ignored.
+	 */
+	private void matchRawTextEnd( char c ) {
+		if( Character.toLowerCase( c ) == rawTextTag.charAt( rawTextMatched ) ) {
+			if( ++rawTextMatched == rawTextTag.length() ) {
+				// finish the end tag like any other so the '>' is consumed
+				tagNameLength = 0;
+				closingTag = true;
+				selfClosingTag = false;
+				quote = 0;
+				state = TAG_ATTRIBUTES;
+			}
+		}
+		else {
+			rawTextMatched = c == '<' ? 1 : 0;
+		}
+	}
+
+	private void decodeEntity() {
+		String decoded = StringEscapeUtils.unescapeHtml4( "&" + new String( entity, 0, entityLength ) + ";" );
+		for( int idx = 0; idx < decoded.length(); idx++ ) {
+			appendText( decoded.charAt( idx ) );
+		}
+		entityLength = 0;
+	}
+
+	/*
+	 * Not an entity after all (no ';' or too long), so it is plain text.
+	 */
+	private void flushEntity() {
+		appendText( '&' );
+		for( int idx = 0; idx < entityLength; idx++ ) {
+			appendText( entity[idx] );
+		}
+		entityLength = 0;
+	}
+
+	private void appendText( char c ) {
+
+		if( inHead || skipDepth > 0 )
+			return;
+		if( Character.isWhitespace( c ) || c == '\u00a0' ) {
+			pendingSpace = paragraph.length() != 0;
+			return;
+		}
+		if( pendingSpace ) {
+			pendingSpace = false;
+			// a word boundary is the natural place to break an over long paragraph
+			if( paragraph.length() + 1 >= maxParagraphLength )
+				flushParagraph();
+			else
+				paragraph.append( ' ' );
+		}
+		else if( paragraph.length() >= maxParagraphLength ) {
+			splitParagraph();
+		}
+		paragraph.append( c );
+
+	}
+
+	/*
+	 * Emits the part of an over long paragraph up to its last space and keeps the rest.
+	 */
+	private void splitParagraph() {
+		int split = paragraph.lastIndexOf( " " );
+		if( split <= 0 ) {
+			flushParagraph();
+			return;
+		}
+		String head = paragraph.substring( 0, split );
+		paragraph.delete( 0, split + 1 );
+		emit( head );
+	}
+
+	private void flushParagraph() {
+		pendingSpace = false;
+		if( paragraph.length() == 0 )
+			return;
+		String text = paragraph.toString();
+		paragraph.setLength( 0 );
+		emit( text );
+	}
+
+	private void emit( String text ) {
+		paragraphCount++;
+		consumer.accept( text );
+	}
+}
@@ -0,0 +1,26 @@
+package src.main.java.com.app;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Tag sets shared by the line based parser in TextToSpeechify and the streaming
+ * HTMLSpeechTextExtractor.
+ */
+public final class HTMLTags {
+	
+	private HTMLTags() {}
+	
+	/* elements whose content is never read aloud */
+	public final static Map<Integer,String> skip_tags = 
+			Stream.of( new Object[][] {
+				{6,"img"},
+				{7,"figure"},
+				{14,"polygon"},
+				{15,"path"},
+				{16,"script"},
+				{17,"style"},
+				{18,"svg"}
+			}).collect( Collectors.toMap( data -> (Integer) data[0], data -> (String) data[1] ) );
+}
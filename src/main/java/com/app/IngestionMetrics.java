@@ -0,0 +1,97 @@
+package src.main.java.com.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Throughput numbers for a run of the URLFeedIngestor. Workers record one sample per
+ * fetched url; show() prints the summary we use to size the worker pool.
+ */
+public class IngestionMetrics {
+
+	private final AtomicLong urls = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final List<Long> fetchLatencies = Collections.synchronizedList( new ArrayList<Long>() );
+	private long startTime;
+	private long stopTime;
+
+	public void start() {
+		startTime = System.nanoTime();
+		stopTime = 0L;
+	}
+
+	public void stop() {
+		stopTime = System.nanoTime();
+	}
+
+	/*
+	 * Records a finished fetch. The latency covers connecting and reading the whole body,
+	 * not the time spent waiting for a worker or a per host slot.
+	 */
+	public void recordFetch( long byteCount, long latencyNanos ) {
+		urls.incrementAndGet();
+		bytes.addAndGet( byteCount );
+		fetchLatencies.add( latencyNanos );
+	}
+
+	public void recordFailure() {
+		failures.incrementAndGet();
+	}
+
+	public long getURLCount() {
+		return urls.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	public long getByteCount() {
+		return bytes.get();
+	}
+
+	public double getElapsedSeconds() {
+		long end = stopTime != 0L ? stopTime : System.nanoTime();
+		return ( end - startTime ) / 1e9;
+	}
+
+	public double getURLsPerSecond() {
+		double elapsed = getElapsedSeconds();
+		return elapsed > 0 ? urls.get() / elapsed : 0.0;
+	}
+
+	public double getBytesPerSecond() {
+		double elapsed = getElapsedSeconds();
+		return elapsed > 0 ? bytes.get() / elapsed : 0.0;
+	}
+
+	/*
+	 * Returns the given fetch latency percentile (0-100) in milliseconds, using the
+	 * nearest rank method, or 0 if nothing was fetched.
+	 */
+	public double getFetchLatencyPercentile( double percentile ) {
+		List<Long> sorted;
+		synchronized( fetchLatencies ) {
+			sorted = new ArrayList<Long>( fetchLatencies );
+		}
+		if( sorted.isEmpty() )
+			return 0.0;
+		Collections.sort( sorted );
+		int rank = (int) Math.ceil( percentile / 100.0 * sorted.size() );
+		rank = Math.max( 1, Math.min( rank, sorted.size() ) );
+		return sorted.get( rank - 1 ) / 1e6;
+	}
+
+	public void show( String title ) {
+		System.out.println("[*] " + title + " metrics");
+		System.out.println(String.format("[*]   urls fetched : %d (%d failed)", getURLCount(), getFailureCount() ));
+		System.out.println(String.format("[*]   elapsed      : %.3f s", getElapsedSeconds() ));
+		System.out.println(String.format("[*]   urls/s       : %.2f", getURLsPerSecond() ));
+		System.out.println(String.format("[*]   bytes/s      : %.0f (%d bytes total)", getBytesPerSecond(), getByteCount() ));
+		System.out.println(String.format("[*]   fetch p50    : %.1f ms", getFetchLatencyPercentile( 50 ) ));
+		System.out.println(String.format("[*]   fetch p99    : %.1f ms", getFetchLatencyPercentile( 99 ) ));
+	}
+}
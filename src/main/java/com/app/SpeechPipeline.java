@@ -0,0 +1,158 @@
+package src.main.java.com.app;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.speech.synthesis.SpeakableAdapter;
+import javax.speech.synthesis.SpeakableEvent;
+import javax.speech.synthesis.Synthesizer;
+
+/*
+ * Speaks the url feed while it is still being ingested.
+ *
+ * The URLFeedIngestor runs on its own thread and puts every paragraph on a bounded queue
+ * as soon as it is extracted from its page; the calling thread takes them off and hands
+ * them to the synthesizer. Two limits keep the ingestion from running away from
+ * playback: the queue holds at most queueCapacity paragraphs, and at most maxPending
+ * paragraphs are waiting inside the synthesizer (a permit is returned when the
+ * synthesizer reports the paragraph ended or cancelled).
+ *
+ * speechReadyText.txt is still written, so the run can be replayed with speak().
+ */
+public class SpeechPipeline {
+
+	/* paragraphs between ingestion and the synthesizer, override with textToSpeechify.speechQueue */
+	public static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+	/* paragraphs queued inside the synthesizer, override with textToSpeechify.speechPending */
+	public static final int DEFAULT_MAX_PENDING = 4;
+
+	/* marks the end of the feed on the queue */
+	private static final String END = new String( "" );
+
+	private final Synthesizer synthesizer;
+	private final URLFeedIngestor ingestor;
+	private final BlockingQueue<String> paragraphs;
+	private final Semaphore pending;
+
+	private final AtomicLong firstParagraph = new AtomicLong();
+	private final AtomicLong firstSample = new AtomicLong();
+	private final AtomicLong spoken = new AtomicLong();
+	private long startTime;
+	private long stopTime;
+
+	public SpeechPipeline( Synthesizer synthesizer, URLFeedIngestor ingestor ) {
+		this( synthesizer, ingestor, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_PENDING );
+	}
+
+	public SpeechPipeline( Synthesizer synthesizer, URLFeedIngestor ingestor, int queueCapacity, int maxPending ) {
+		if( queueCapacity < 1 || maxPending < 1 )
+			throw new IllegalArgumentException( "queueCapacity and maxPending must be at least 1" );
+		this.synthesizer = synthesizer;
+		this.ingestor = ingestor;
+		this.paragraphs = new ArrayBlockingQueue<String>( queueCapacity );
+		this.pending = new Semaphore( maxPending );
+	}
+
+	/*
+	 * Ingests urlFeedFile (appending to speechReadyTextFile as before) and speaks each
+	 * paragraph as it arrives. Returns once everything has been spoken.
+	 */
+	public void run( final String urlFeedFile, final String speechReadyTextFile ) throws Exception {
+
+		startTime = System.nanoTime();
+		stopTime = 0L;
+		Thread producer = new Thread( new Runnable() {
+			public void run() {
+				try {
+					ingestor.ingest( urlFeedFile, speechReadyTextFile, new URLFeedIngestor.ParagraphSink() {
+						public void paragraph( String text ) throws InterruptedException {
+							firstParagraph.compareAndSet( 0L, System.nanoTime() );
+							paragraphs.put( text );
+						}
+
+						public void documentEnded( String source ) {
+						}
+					});
+				}
+				finally {
+					try {
+						paragraphs.put( END );
+					}
+					catch( InterruptedException ie ) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}, "speech-pipeline-ingestor" );
+		producer.setDaemon( true );
+		producer.start();
+
+		SpeakableAdapter listener = new SpeakableAdapter() {
+			public void speakableStarted( SpeakableEvent e ) {
+				firstSample.compareAndSet( 0L, System.nanoTime() );
+			}
+
+			public void speakableEnded( SpeakableEvent e ) {
+				pending.release();
+			}
+
+			public void speakableCancelled( SpeakableEvent e ) {
+				pending.release();
+			}
+		};
+
+		try {
+			String text;
+			while( ( text = paragraphs.take() ) != END ) {
+				pending.acquire();
+				synthesizer.speakPlainText( text, listener );
+				spoken.incrementAndGet();
+			}
+			synthesizer.waitEngineState( Synthesizer.QUEUE_EMPTY );
+		}
+		catch( InterruptedException ie ) {
+			producer.interrupt();
+			synthesizer.cancelAll();
+			throw ie;
+		}
+		finally {
+			stopTime = System.nanoTime();
+		}
+		producer.join();
+
+	}
+
+	/*
+	 * Milliseconds from run() until the first paragraph was extracted, or -1.
+	 */
+	public double getTimeToFirstParagraphMillis() {
+		return sinceStart( firstParagraph.get() );
+	}
+
+	/*
+	 * Milliseconds from run() until the synthesizer started playing the first paragraph,
+	 * or -1 if nothing was played.
+	 */
+	public double getTimeToFirstSampleMillis() {
+		return sinceStart( firstSample.get() );
+	}
+
+	public long getParagraphCount() {
+		return spoken.get();
+	}
+
+	private double sinceStart( long time ) {
+		return time == 0L ? -1.0 : ( time - startTime ) / 1e6;
+	}
+
+	public void show( String title ) {
+		long end = stopTime != 0L ? stopTime : System.nanoTime();
+		System.out.println("[*] " + title);
+		System.out.println(String.format("[*]   paragraphs           : %d", getParagraphCount() ));
+		System.out.println(String.format("[*]   first paragraph after: %.1f ms", getTimeToFirstParagraphMillis() ));
+		System.out.println(String.format("[*]   first sample after   : %.1f ms", getTimeToFirstSampleMillis() ));
+		System.out.println(String.format("[*]   total                : %.1f s", ( end - startTime ) / 1e9 ));
+	}
+}
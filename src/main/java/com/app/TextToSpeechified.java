@@ -1,7 +1,9 @@
 package src.main.java.com.app;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.Locale;
 import javax.speech.Central;
 import javax.speech.synthesis.Synthesizer;
@@ -14,15 +16,14 @@ public class TextToSpeechified {
 	private Synthesizer synthesizer;
 	TextToSpeechify tts_helper;
 	String speechReadyTextFile = "speechReadyText.txt";	
+
+	static final String VOICE_DIRECTORY = "com.sun.speech.freetts.en.us.cmu_us_kal.KevinVoiceDirectory";
 	
 	public TextToSpeechified() throws Exception {
 		
 		try {
 			// Set property as Kevin Dictionary
-	        System.setProperty(
-	            "freetts.voices",
-	            "com.sun.speech.freetts.en.us"
-	                + ".cmu_us_kal.KevinVoiceDirectory");
+	        System.setProperty( "freetts.voices", VOICE_DIRECTORY );
 			
 			/* AlanVoiceDirectory seems to be buggy so we don't use it!
 			 * repeated errors of:
@@ -86,7 +87,74 @@ public class TextToSpeechified {
 	public void speechifyText() {
 
 		tts_helper = new TextToSpeechify();
-		tts_helper.getWebResourcesFromURLFeed();
+		URLFeedIngestor ingestor = newIngestor( tts_helper );
+		ingestor.ingest( tts_helper.urlFeedFile, speechReadyTextFile );
+		ingestor.getMetrics().show( "url feed ingestion" );
+		if( ingestor.getCache() != null )
+			ingestor.getCache().show( "url feed ingestion" );
+
+	}
+
+	/*
+	 * speechifyText() and speak() at the same time: paragraphs are spoken while the rest
+	 * of the feed is still being fetched, see SpeechPipeline.
+	 */
+	public void speechifyAndSpeak() throws Exception {
+
+		tts_helper = new TextToSpeechify();
+		URLFeedIngestor ingestor = newIngestor( tts_helper );
+		SpeechPipeline pipeline = new SpeechPipeline( synthesizer, ingestor,
+				Integer.getInteger( "textToSpeechify.speechQueue", SpeechPipeline.DEFAULT_QUEUE_CAPACITY ),
+				Integer.getInteger( "textToSpeechify.speechPending", SpeechPipeline.DEFAULT_MAX_PENDING ) );
+		pipeline.run( tts_helper.urlFeedFile, speechReadyTextFile );
+		ingestor.getMetrics().show( "url feed ingestion" );
+		if( ingestor.getCache() != null )
+			ingestor.getCache().show( "url feed ingestion" );
+		pipeline.show( "speech pipeline" );
+
+	}
+
+	/*
+	 * Headless: renders the feed to audio files in outputDir instead of speaking it, see
+	 * BatchRenderer. No synthesizer or audio device is needed.
+	 */
+	public static void render( String outputDir ) throws Exception {
+
+		System.setProperty( "freetts.voices", VOICE_DIRECTORY );
+		TextToSpeechify tts_helper = new TextToSpeechify();
+		URLFeedIngestor ingestor = newIngestor( tts_helper );
+		BatchRenderer renderer = new BatchRenderer(
+				System.getProperty( "textToSpeechify.renderVoice", BatchRenderer.DEFAULT_VOICE ),
+				Integer.getInteger( "textToSpeechify.renderVoices", Runtime.getRuntime().availableProcessors() ),
+				new File( outputDir ),
+				Boolean.getBoolean( "textToSpeechify.renderParagraphs" ),
+				Boolean.getBoolean( "textToSpeechify.renderRaw" ) );
+		renderer.render( ingestor, tts_helper.urlFeedFile, "speechReadyText.txt" );
+		ingestor.getMetrics().show( "url feed ingestion" );
+		if( ingestor.getCache() != null )
+			ingestor.getCache().show( "url feed ingestion" );
+
+	}
+
+	private static URLFeedIngestor newIngestor( TextToSpeechify tts_helper ) {
+
+		// the feed is fetched and parsed concurrently, see URLFeedIngestor for the knobs
+		URLFeedIngestor ingestor = new URLFeedIngestor( tts_helper,
+				Integer.getInteger( "textToSpeechify.workers", URLFeedIngestor.DEFAULT_WORKERS ),
+				Integer.getInteger( "textToSpeechify.perHostLimit", URLFeedIngestor.DEFAULT_PER_HOST_LIMIT ),
+				Integer.getInteger( "textToSpeechify.connectTimeout", URLFeedIngestor.DEFAULT_CONNECT_TIMEOUT_MILLIS ),
+				Integer.getInteger( "textToSpeechify.readTimeout", URLFeedIngestor.DEFAULT_READ_TIMEOUT_MILLIS ) );
+		// unchanged pages are served from the fetch cache; -DtextToSpeechify.cacheDir= turns it off
+		String cacheDir = System.getProperty( "textToSpeechify.cacheDir", FetchCache.DEFAULT_DIRECTORY );
+		if( cacheDir.length() != 0 ) {
+			try {
+				ingestor.setCache( new FetchCache( cacheDir, Long.getLong( "textToSpeechify.cacheMaxAge", 0L ) ) );
+			}
+			catch( IOException ioe ) {
+				ioe.printStackTrace();
+			}
+		}
+		return ingestor;
 
 	}
 	
@@ -98,9 +166,21 @@ public class TextToSpeechified {
 //				System.out.println("usage: textToSpeechify <filename>");
 //				System.exit(0);
 //			}
+			// -DtextToSpeechify.render=<dir> writes audio files instead of using the speaker
+			String renderDir = System.getProperty( "textToSpeechify.render" );
+			if( renderDir != null ) {
+				render( renderDir );
+				return;
+			}
 			TextToSpeechified tts_client = new TextToSpeechified();
-			tts_client.speechifyText();
-			tts_client.speak();
+			// -DtextToSpeechify.streaming=false waits for the whole feed before speaking
+			if( Boolean.parseBoolean( System.getProperty( "textToSpeechify.streaming", "true" ) ) ) {
+				tts_client.speechifyAndSpeak();
+			}
+			else {
+				tts_client.speechifyText();
+				tts_client.speak();
+			}
 			tts_client.deallocate();
 			
 		} catch( Exception e ) {
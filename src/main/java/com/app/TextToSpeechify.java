@@ -9,6 +9,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -27,7 +29,6 @@ import java.util.function.Consumer;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.regex.*;
-import java.util.Stack;
 import java.util.stream.Stream;
 
 import java.util.StringTokenizer;
@@ -35,17 +36,14 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.text.StringEscapeUtils;
 
-import src.main.java.com.app.util.JarClassLoader;
+import src.main.java.com.app.util.PDFToHTMLConverter;
+import src.main.java.com.app.util.TagStripper;
 
 public class TextToSpeechify {
 	
 	String urlFeedFile = "urlFeed.txt";	
-	private final String pdfFileName = "blob.pdf";
-	private final String htmlFromPDFFileName = "blob.pdf.html";
-	private final String htmlFileName = "blob.html";
-	private final String scratchFileName = "blob.scratch.html";
 	String speechReadyTextFile = "speechReadyText.txt";
-	private JarClassLoader jar;
+	private static final Pattern protocolPattern = Pattern.compile("^(http?s)");
 	
 	/* resources:
 	 * https://www.geeksforgeeks.org/java/download-web-page-using-java/
@@ -57,102 +55,32 @@ public class TextToSpeechify {
 
 			BufferedReader br0 = new BufferedReader( new FileReader( urlFeedFile ) );
 			String urls;
-			File htmlFile = new File( htmlFileName );
-			File pdfFile = new File( pdfFileName );
-//			File textFile = new File( textFileName );
-			boolean parsingAPDF = false, parsingHTML = false, movedFileToLocalDir = false;
-        	Pattern htmlPattern = Pattern.compile( "(\\<!doctype\\shtml)" );
         	Pattern pdfPattern = Pattern.compile("(\\.pdf|\\/pdf\\/)");
         	
 			while( ( urls = br0.readLine() ) != null ) {				
+				WebDocument doc = null;
 				try {
-		            // Create a URI object and convert it to a URL
-		            URI uri;
-		            URL url;
-		            BufferedReader br1;
-	            	BufferedWriter bw;
-	            	Matcher pdfPatternMatcher = pdfPattern.matcher( urls );	            	
-	            	if(! pdfPatternMatcher.find() ) {
+	            	Matcher pdfPatternMatcher = pdfPattern.matcher( urls );
+	            	boolean parsingAPDF = pdfPatternMatcher.find();
+	            	if( parsingAPDF )
+	            		System.out.println("[*] Found pdf url in feed!");
+	            	// check if we need to download the document from a remote source
+	            	Matcher protocolPatternMatcher = protocolPattern.matcher( urls );
+	            	if( !parsingAPDF || protocolPatternMatcher.find() ) {
 	            		// Create a URI object and convert it to a URL
-			            uri = new URI( urls );
-			            url = uri.toURL();
+	            		URL url = new URI( urls ).toURL();
 	            		System.out.println("[*] Downloading: " + urls);
-	            		// Specify the filename to save the downloaded content
-			            if( !htmlFile.exists() )
-			            	htmlFile.createNewFile();
-			            else {
-			            	htmlFile.delete();
-			            	htmlFile.createNewFile();
-			            }
-			            bw = new BufferedWriter( new FileWriter( htmlFile ) );
-			            
-			            // Open a stream to read the webpage content
-		            	br1 = new BufferedReader( new InputStreamReader( url.openStream() ) );
-			            
-			            // Read each line from the stream and write it to the file
-			            String line; int idx = 0;
-			            while ( ( line = br1.readLine() ) != null ) {
-			            	if( idx == 0 ) {			            		
-			            		Matcher htmlPatternMatcher = htmlPattern.matcher( line.toLowerCase() );
-			            		if( htmlPatternMatcher.find() ) {
-			            			parsingHTML = true;
-			            		}
-			            		idx++;
-			            	}
-			                bw.write( line.toLowerCase() );
-			                if( parsingHTML == false )
-			                	bw.newLine();
-			            }
-			            // Close the streams
-			            br1.close();
-			            bw.close();
+	            		doc = WebDocument.read( urls, parsingAPDF, url.openStream() );
 	            	}
 	            	else {
-	            		// Specify the filename to save the downloaded content
-	            		System.out.println("[*] Found pdf url in feed!");
-	            		parsingAPDF = true;
-			            if( !pdfFile.exists() )
-			            	pdfFile.createNewFile();
-			            else {
-			            	pdfFile.delete();
-			            	pdfFile.createNewFile();
-			            }
-			            // check if we need to download the pdf from a remote source
-			            Pattern protocolPattern = Pattern.compile("^(http?s)");
-		            	Matcher protocolPatternMatcher = protocolPattern.matcher( urls );
-		            	if( protocolPatternMatcher.find() ) {
-		            		// Create a URI object and convert it to a URL
-		            		System.out.println("[*] Downloading: " + urls);
-				            uri = new URI( urls );
-				            url = uri.toURL();		            		
-			            	ReadableByteChannel readableByteChannel = Channels.newChannel( url.openStream() );
-			            	FileOutputStream fileOutputStream = new FileOutputStream( pdfFileName );
-			            	FileChannel fileChannel = fileOutputStream.getChannel();
-			            	fileChannel.transferFrom( readableByteChannel, 0, Long.MAX_VALUE );
-		            	}
-		            	else {
-		            		// the file already exists locally so let's move it from where it is to the current directory
-		            		File localPDFFile = new File( urls );
-		            		localPDFFile.renameTo( pdfFile );
-		            		movedFileToLocalDir = true;
-		            	}
+	            		// the pdf already exists locally so it is converted where it is
+	            		doc = WebDocument.forLocalFile( urls, true );
 	            	}
-
-		            if ( parsingAPDF == true ) {
-						convertPDFToHTML( pdfFileName );						
-						if( movedFileToLocalDir == true ) {
-							// move the file back to its original location
-							System.out.println("[*] moving " + pdfFileName + " back to its original location: " + urls);
-							File originalPDFFilePath = new File( urls );
-							pdfFile.renameTo( originalPDFFilePath );
-							movedFileToLocalDir = false;
-						}
-						parsePDFToHTMLFile( htmlFromPDFFileName );
-					}
-		            else {						
-						parseHTMLFile( htmlFileName, parsingHTML );
-					}
-		            parsingAPDF = false; parsingHTML = false;	
+	            	
+	            	// open file for appending
+	            	BufferedWriter bw = new BufferedWriter( new FileWriter( speechReadyTextFile, true ) );
+	            	bw.write( speechReadyText( doc ) );
+	            	bw.close();
 		        } 
 		        // Handle malformed URL or URI exceptions
 		        catch( MalformedURLException | IllegalArgumentException e ) {
@@ -166,7 +94,12 @@ public class TextToSpeechify {
 		        catch( Exception e ) {
 		        	e.printStackTrace();
 		        }
+				finally {
+					if( doc != null )
+						doc.discard();
+				}
 			}
+			br0.close();
 		}
 		catch( IOException ioe ) {
 			ioe.printStackTrace();
@@ -181,10 +114,6 @@ public class TextToSpeechify {
 			
 			File htmlFile = new File( inputFileName );
 			BufferedReader br = new BufferedReader( new FileReader( htmlFile ) );			
-			File scratchFile = new File( scratchFileName );
-			
-            if( !scratchFile.exists() )
-            	scratchFile.createNewFile();
             
             // open file for appending
             BufferedWriter bw0 = new BufferedWriter( new FileWriter( speechReadyTextFile, true ) );
@@ -199,22 +128,31 @@ public class TextToSpeechify {
 			}
             
             String stepOne = sb.toString();
+            br.close();
+            
+            parseHTML( stepOne, parsingHTML, bw0 );
+			bw0.close();
+		}
+		catch( Exception e ) {
+			e.printStackTrace();
+		}
+		
+	}
+	
+	/*
+	 * Parses an already downloaded page (step 1 output) and writes the speech ready
+	 * text to the given writer. The writer is left open so callers can either append
+	 * straight to speechReadyText.txt or collect the text in memory.
+	 */
+	public void parseHTML( String stepOne, boolean parsingHTML, BufferedWriter bw0 ) throws IOException {
             
             if( parsingHTML == false ) {
             	bw0.write( stepOne );
-            	bw0.close();
             	return;
             }            
             
             // step 2
             String stepTwo = stepOne.replaceAll("\\<", "\n<");
-            // writing out the updated blob.html with newlines and correct html formatting and debugging
-            File originalHTMLFile = new File( inputFileName );
-            originalHTMLFile.delete();
-            originalHTMLFile.createNewFile();
-            BufferedWriter bw1 = new BufferedWriter( new FileWriter( inputFileName ) );
-            bw1.write( stepTwo );
-            bw1.close();
 
             // step 3
             String offset = "</head>\n";
@@ -289,11 +227,6 @@ public class TextToSpeechify {
             }
             
             bw0.newLine();
-			bw0.close();
-		}
-		catch( Exception e ) {
-			e.printStackTrace();
-		}
 		
 	}
 	
@@ -304,10 +237,6 @@ public class TextToSpeechify {
 			
 			File htmlFile = new File( inputFileName );
 			BufferedReader br = new BufferedReader( new FileReader( htmlFile ) );			
-			File scratchFile = new File( scratchFileName );
-			
-            if( !scratchFile.exists() )
-            	scratchFile.createNewFile();
             
             // open file for appending
             BufferedWriter bw = new BufferedWriter( new FileWriter( speechReadyTextFile, true ) );
@@ -318,6 +247,22 @@ public class TextToSpeechify {
 				sb.append( line );
 			}            
             String stepOne = sb.toString();
+            br.close();
+            
+            parsePDFToHTML( stepOne, bw );
+			bw.close();
+		}
+		catch( Exception e ) {
+			e.printStackTrace();
+		}
+		
+	}
+	
+	/*
+	 * Same as parseHTML but for the html produced by PDFToHTML, which needs its
+	 * lines stitched back together into sentences.
+	 */
+	public void parsePDFToHTML( String stepOne, BufferedWriter bw ) throws IOException {
             
             // step 2
             String stepTwo = stepOne.replaceAll("\\<", "\n<");
@@ -427,95 +372,97 @@ public class TextToSpeechify {
             }
             
             bw.newLine();
-			bw.close();
-		}
-		catch( Exception e ) {
-			e.printStackTrace();
-		}
 		
 	}
 	
+	/*
+	 * Strips the markup left in the page when no <p> tags were found. This used to walk
+	 * the page a character at a time with a regex per character; TagStripper does the
+	 * same job in one linear scan without allocating per character.
+	 */
 	public String secondPass( String html ) {
 		
-		StringBuilder sb = new StringBuilder();
-		Pattern openPattern = Pattern.compile("(\\<)");
-		Pattern closePattern = Pattern.compile("(\\>)");
-		Pattern endOfCDATAPattern = Pattern.compile("(\\/\\/\\]\\]\\>)");
-		Matcher openMatcher = openPattern.matcher( html );
+		return TagStripper.strip( html );
 		
+	}
+
+	/*
+	 * Returns the speech ready text for a downloaded (or local) document. Web pages go
+	 * through the single pass HTMLSpeechTextExtractor, one paragraph per line.
+	 */
+	public String speechReadyText( WebDocument doc ) throws IOException {
+
+		StringBuilder sb = new StringBuilder();
+		speechReadyText( doc, line -> sb.append( line ).append( '\n' ) );
+		return sb.toString();
+
+	}
+
+	/*
+	 * Hands the speech ready text of a document to lines a line at a time, without the
+	 * line breaks. A web page is handed over as it is extracted, each paragraph as soon as
+	 * its block ends, followed by the empty line that ends the document; a pdf is
+	 * converted as a whole first.
+	 */
+	public void speechReadyText( WebDocument doc, Consumer<String> lines ) throws IOException {
+
+		if( doc.isPDF() ) {
+			forEachLine( speechReadyTextFromPDF( doc ), lines );
+			return;
+		}
+		Reader reader = new InputStreamReader( doc.openStream() );
 		try {
-			
-			Stack<Character> stack = new Stack();
-			StringBuilder lastTagSB = new StringBuilder();
-			String lastTag = "";
-			StringBuilder prevCharsSB = new StringBuilder();
-			
-			int idx_x = 0, idx_y = 1;
-			while( idx_y < html.length()-1 ) {
-				Character currChar = html.charAt( idx_x );
-				Character nextChar = html.charAt( idx_y );
-				String window;
-				if(idx_x + 5 < html.length()-1)
-					window = html.substring(idx_x,idx_x+5);
-				else
-					window = html.substring(idx_x);
-				if( Pattern.matches("(CDATA)", window ) ) {
+			new HTMLSpeechTextExtractor().extract( reader, lines );
+			lines.accept( "" );
+		}
+		finally {
+			reader.close();
+		}
 
-					String choppedHTML = html.substring(idx_x-6);
-					int offestFromLocationOfCDATASectionInOriginalHTML = html.indexOf( choppedHTML );					
-					Matcher endOfCDATAMatcher = endOfCDATAPattern.matcher( choppedHTML );
-					if( endOfCDATAMatcher.find() ) {
-						
-						int endOfCDATASection = endOfCDATAMatcher.end() + offestFromLocationOfCDATASectionInOriginalHTML;
-						int cDATASectionSize = endOfCDATASection + idx_x;
-						idx_x = idx_x + cDATASectionSize; idx_y = idx_x + 1;
-						
-					}					
-					continue;
-				}
-				else if( currChar == '<' ) {
-					if( stack.empty() ) {
-						stack.push(currChar);
-						lastTagSB.append(currChar);
-					}
-				}
-				else if( currChar != '>' ) {
-					if( stack.empty() && lastTag.length() == 0 ) {
-						sb.append(currChar);
-					}
-					else {
-						lastTagSB.append(currChar);
-					}
-				}
-				else {
-					if( !stack.empty() ) {
-						Character prevChar = prevCharsSB.toString().charAt( 0 );
-						if( prevChar != '=') {
-							stack.pop();
-							lastTagSB.append(currChar);
-							lastTag = lastTagSB.toString();
-							if( !lastTag.matches("(\\<script)+") ) {
-								lastTag = "";
-								lastTagSB = new StringBuilder();
-							}					
-						} else {
-							lastTagSB.append(currChar);
-						}
-					}
-				}
-				prevCharsSB = new StringBuilder();
-				prevCharsSB.append( currChar );
-				idx_x += 1; idx_y += 1;
-			}
-			
+	}
+
+	/*
+	 * Hands each line of text to lines, without its line break; the opposite of joining
+	 * the lines with a '\n' after each.
+	 */
+	public static void forEachLine( String text, Consumer<String> lines ) {
+
+		int start = 0;
+		int end;
+		while( ( end = text.indexOf( '\n', start ) ) != -1 ) {
+			lines.accept( text.substring( start, end ) );
+			start = end + 1;
 		}
-		catch( Exception e ) {
-			e.printStackTrace();
+		if( start < text.length() )
+			lines.accept( text.substring( start ) );
+
+	}
+
+	/*
+	 * Converts the pdf with the shared PDFToHTMLConverter, in memory when the jar allows
+	 * it, and returns its speech ready text.
+	 */
+	public String speechReadyTextFromPDF( WebDocument doc ) throws IOException {
+
+		String stepOne;
+		InputStream in = doc.openStream();
+		try {
+			stepOne = PDFToHTMLConverter.getInstance().convert( in );
 		}
-		return sb.toString();
-		
+		finally {
+			in.close();
+		}
+		// the html from PDFToHTML used to be read back line by line and joined
+		stepOne = stepOne.replace( "\r", "" ).replace( "\n", "" );
+
+		StringWriter sw = new StringWriter();
+		BufferedWriter bw = new BufferedWriter( sw );
+		parsePDFToHTML( stepOne, bw );
+		bw.flush();
+		return sw.toString();
+
 	}
-		
+
 	/* resources:
 	 *  https://stackoverflow.com/questions/29279676/how-to-run-a-java-class-from-a-jar-file-dynamically
 	 *  https://stackoverflow.com/questions/3903039/wait-and-notify-method-always-illegalmonitorstateexception-is-happen-and-t
@@ -526,22 +473,13 @@ public class TextToSpeechify {
 	 *  https://www.toptal.com/java/java-wizardry-101-a-guide-to-java-class-reloading
 	 *  https://docs.oracle.com/javase/8/docs/api/java/net/JarURLConnection.html
 	 */
-	public void convertPDFToHTML( String pdfFileName ) {
+	public void convertPDFToHTML( String pdfFileName, String htmlFromPDFFileName ) {
 		
 		try {
 
-			String location = "file:src/main/java/com/resources/lib/PDFToHTML.jar";
-			
-			URL url = new URI( location ).toURL();
-			jar = new JarClassLoader( url );
-			
-			System.out.println( "[*] attempting to load jar file...");
-			System.out.println( "[*] name of main class of PDFToHTML: " + jar.getMainClassName() );
-			String[] args = new String[2];
-			args[0] = pdfFileName;
-			args[1] = htmlFromPDFFileName;
-			System.out.println("args[0]: " + args[0]);
-			jar.invokeClass(jar.getMainClassName(), args);
+			// the jar is loaded and its main method resolved once per process
+			System.out.println("args[0]: " + pdfFileName);
+			PDFToHTMLConverter.getInstance().convert( pdfFileName, htmlFromPDFFileName );
 			
 		}
 		catch(Exception e) {
@@ -594,19 +532,10 @@ final class Utils {
 				{14,"polygon"},
 				{15,"path"},
 				{16,"script"},
-				{17,"style"}
+				{17,"style"},
+				{18,"svg"}
 			}).collect( Collectors.toMap( data -> (Integer) data[0], data -> (String) data[1] ) );
 	
-	public final static Map<Integer,String> skip_tags = 
-			Stream.of( new Object[][] {
-				{6,"img"},
-				{7,"figure"},
-				{14,"polygon"},
-				{15,"path"},
-				{16,"script"},
-				{17,"style"}
-			}).collect( Collectors.toMap( data -> (Integer) data[0], data -> (String) data[1] ) );	
-			
 	private static final Pattern stripTagPattern = Pattern.compile("\\<\\/*([0-9a-zA-Z]+).*?\\>(.+)");
 	
 	public static Matcher stripTagL( String line ) {				
@@ -616,7 +545,7 @@ final class Utils {
 	
 	public static Boolean shouldSkipTag( String match ) {
 		Boolean tagShouldBeSkipped = false;
-		if( skip_tags.containsValue( match ) )
+		if( HTMLTags.skip_tags.containsValue( match ) )
 			tagShouldBeSkipped = true;
 		return tagShouldBeSkipped;
 	}
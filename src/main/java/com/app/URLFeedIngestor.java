@@ -0,0 +1,419 @@
+package src.main.java.com.app;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Bounded parallel version of TextToSpeechify.getWebResourcesFromURLFeed().
+ *
+ * Every url in the feed is fetched and parsed on a worker thread while the calling
+ * thread writes the paragraphs to speechReadyText.txt in feed order. The paragraphs of
+ * the oldest document are written (and handed to the sink) as its worker extracts
+ * them, so the first one is out before the rest of its page has been parsed; those of
+ * later documents wait in memory until the documents before them are done. At most
+ * perHostLimit entries of the same host are fetched and parsed at once; the others
+ * wait in a queue for their host, not in a worker, so a busy host never holds up
+ * the entries of other hosts. No more than workers * 4 documents are in flight at
+ * once.
+ *
+ * resources:
+ *  https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ExecutorService.html
+ *  https://docs.oracle.com/javase/8/docs/api/java/net/URLConnection.html#setReadTimeout-int-
+ */
+public class URLFeedIngestor {
+
+	public static final int DEFAULT_WORKERS = 8;
+	public static final int DEFAULT_PER_HOST_LIMIT = 2;
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+
+	private static final Pattern pdfPattern = Pattern.compile("(\\.pdf|\\/pdf\\/)");
+	private static final Pattern protocolPattern = Pattern.compile("^(http?s)");
+
+	/* marks the end of a document's lines */
+	private static final String END = new String( "" );
+
+	private final TextToSpeechify tts_helper;
+	private final int workers;
+	private final int perHostLimit;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final ConcurrentHashMap<String,HostQueue> hostQueues = new ConcurrentHashMap<String,HostQueue>();
+	private final IngestionMetrics metrics = new IngestionMetrics();
+	private FetchCache cache;
+
+	/*
+	 * Receives the paragraphs of the feed, in feed order, as soon as each one has been
+	 * extracted and the documents before it are done; documentEnded follows the last
+	 * paragraph of each document. Blocking in either holds the ingestion back.
+	 */
+	public interface ParagraphSink {
+		void paragraph( String text ) throws InterruptedException;
+
+		void documentEnded( String source ) throws InterruptedException;
+	}
+
+	public URLFeedIngestor( TextToSpeechify tts_helper ) {
+		this( tts_helper, DEFAULT_WORKERS, DEFAULT_PER_HOST_LIMIT,
+				DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS );
+	}
+
+	public URLFeedIngestor( TextToSpeechify tts_helper, int workers, int perHostLimit,
+			int connectTimeoutMillis, int readTimeoutMillis ) {
+		if( workers < 1 || perHostLimit < 1 )
+			throw new IllegalArgumentException( "workers and perHostLimit must be at least 1" );
+		this.tts_helper = tts_helper;
+		this.workers = workers;
+		this.perHostLimit = perHostLimit;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	public IngestionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/*
+	 * Serves remote urls through the cache, or fetches everything again if cache is null.
+	 */
+	public void setCache( FetchCache cache ) {
+		this.cache = cache;
+	}
+
+	public FetchCache getCache() {
+		return cache;
+	}
+
+	/*
+	 * Ingests every url in urlFeedFile and appends the speech ready text of each one to
+	 * speechReadyTextFile, in the same order as the feed.
+	 */
+	public void ingest( String urlFeedFile, String speechReadyTextFile ) {
+		ingest( urlFeedFile, speechReadyTextFile, null );
+	}
+
+	/*
+	 * Same as ingest(urlFeedFile, speechReadyTextFile), and also hands every paragraph to
+	 * sink (if not null) as soon as it is written.
+	 */
+	public void ingest( String urlFeedFile, String speechReadyTextFile, ParagraphSink sink ) {
+
+		ExecutorService pool = Executors.newFixedThreadPool( workers, new WorkerThreadFactory() );
+		Deque<Document> inFlight = new ArrayDeque<Document>();
+		int maxInFlight = workers * 4;
+		// slots left taken by an earlier run that was stopped are of no use
+		hostQueues.clear();
+		metrics.start();
+
+		try {
+
+			BufferedReader br0 = new BufferedReader( new FileReader( urlFeedFile ) );
+			BufferedWriter bw = new BufferedWriter( new FileWriter( speechReadyTextFile, true ) );
+			String urls;
+			while( ( urls = br0.readLine() ) != null ) {
+				if( urls.length() == 0 )
+					continue;
+				final Document doc = new Document( urls );
+				FutureTask<Void> task = new FutureTask<Void>( new Runnable() {
+					public void run() {
+						try {
+							process( doc.source, doc.lines::add );
+						}
+						finally {
+							doc.lines.add( END );
+						}
+					}
+				}, null );
+				doc.future = task;
+				execute( pool, hostOf( urls ), task );
+				inFlight.addLast( doc );
+				// keep the memory held by extracted but not yet written documents bounded
+				while( inFlight.size() >= maxInFlight ) {
+					writeNext( inFlight, bw, sink );
+				}
+			}
+			br0.close();
+			while( !inFlight.isEmpty() ) {
+				writeNext( inFlight, bw, sink );
+			}
+			bw.close();
+		}
+		catch( IOException ioe ) {
+			ioe.printStackTrace();
+		}
+		catch( InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			pool.shutdownNow();
+			metrics.stop();
+		}
+
+	}
+
+	/*
+	 * Writes the lines of the oldest document as its worker extracts them, and hands every
+	 * paragraph to the sink straight after, until the worker is done with the document.
+	 */
+	private void writeNext( Deque<Document> inFlight, BufferedWriter bw, ParagraphSink sink )
+			throws IOException, InterruptedException {
+		Document doc = inFlight.removeFirst();
+		boolean spoken = false;
+		String line;
+		while( ( line = doc.lines.take() ) != END ) {
+			bw.write( line );
+			bw.write( '\n' );
+			if( sink != null && line.length() != 0 ) {
+				sink.paragraph( line );
+				spoken = true;
+			}
+		}
+		bw.flush();
+		if( spoken )
+			sink.documentEnded( doc.source );
+		try {
+			doc.future.get();
+		}
+		catch( ExecutionException ee ) {
+			metrics.recordFailure();
+			ee.getCause().printStackTrace();
+		}
+	}
+
+	/*
+	 * Hands task to the pool, or queues it behind the entries of its host if that host
+	 * already has perHostLimit entries in the pool. Entries without a host (local files)
+	 * are not limited.
+	 */
+	private void execute( ExecutorService pool, String host, Runnable task ) {
+		if( host == null ) {
+			pool.execute( task );
+			return;
+		}
+		HostQueue queue = hostQueues.computeIfAbsent( host, h -> new HostQueue() );
+		synchronized( queue ) {
+			if( queue.running == perHostLimit ) {
+				queue.waiting.addLast( task );
+				return;
+			}
+			queue.running++;
+		}
+		pool.execute( inSlot( pool, queue, task ) );
+	}
+
+	/*
+	 * Runs task in one of its host's slots, then passes the slot on to the next entry
+	 * waiting for that host, if any.
+	 */
+	private Runnable inSlot( final ExecutorService pool, final HostQueue queue, final Runnable task ) {
+		return new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				}
+				finally {
+					Runnable next;
+					synchronized( queue ) {
+						next = queue.waiting.pollFirst();
+						if( next == null )
+							queue.running--;
+					}
+					if( next != null ) {
+						try {
+							pool.execute( inSlot( pool, queue, next ) );
+						}
+						catch( RejectedExecutionException ree ) {
+							// the ingestion was stopped, nobody waits for the rest
+						}
+					}
+				}
+			}
+		};
+	}
+
+	private static String hostOf( String urls ) {
+		try {
+			return new URI( urls ).getHost();
+		}
+		catch( URISyntaxException use ) {
+			return null;
+		}
+	}
+
+	/*
+	 * Fetches and parses a single feed entry, handing its speech ready text to lines a
+	 * line at a time as it is extracted. Errors are reported and the rest of the entry is
+	 * skipped, the same as the sequential version does; lines already handed over stay.
+	 */
+	void process( String urls, Consumer<String> lines ) {
+
+		WebDocument doc = null;
+		try {
+			Matcher pdfPatternMatcher = pdfPattern.matcher( urls );
+			boolean parsingAPDF = pdfPatternMatcher.find();
+			if( parsingAPDF )
+				System.out.println("[*] Found pdf url in feed!");
+			Matcher protocolPatternMatcher = protocolPattern.matcher( urls );
+			if( !parsingAPDF || protocolPatternMatcher.find() ) {
+				if( cache != null ) {
+					processThroughCache( urls, parsingAPDF, lines );
+					return;
+				}
+				System.out.println("[*] Downloading: " + urls);
+				doc = fetch( urls, parsingAPDF, null );
+			}
+			else {
+				// local pdfs are converted in place, there is no need to move them around
+				doc = WebDocument.forLocalFile( urls, true );
+			}
+			tts_helper.speechReadyText( doc, lines );
+		}
+		catch( Exception e ) {
+			metrics.recordFailure();
+			e.printStackTrace();
+		}
+		finally {
+			if( doc != null )
+				doc.discard();
+		}
+
+	}
+
+	/*
+	 * Serves a remote url from the cache when possible. A fresh entry is used without a
+	 * request, a stale one is revalidated with its ETag / Last-Modified, and a body we
+	 * have already seen under another url is not parsed again.
+	 */
+	private void processThroughCache( String urls, boolean parsingAPDF, Consumer<String> lines )
+			throws Exception {
+
+		FetchCache.Entry cached = cache.lookup( urls );
+		String text = cached == null ? null : cache.getText( cached.getContentHash() );
+		if( text == null )
+			cached = null;
+		else if( cache.isFresh( cached ) ) {
+			cache.recordHit();
+			TextToSpeechify.forEachLine( text, lines );
+			return;
+		}
+
+		System.out.println("[*] Downloading: " + urls);
+		WebDocument doc = fetch( urls, parsingAPDF, cached );
+		if( doc == null ) {
+			System.out.println("[*] Not modified: " + urls);
+			cache.recordRevalidation();
+			cache.touch( cached );
+			TextToSpeechify.forEachLine( text, lines );
+			return;
+		}
+
+		try {
+			cache.recordMiss();
+			text = cache.getText( doc.getContentHash() );
+			if( text != null ) {
+				cache.recordDuplicate();
+				TextToSpeechify.forEachLine( text, lines );
+			}
+			else {
+				// hand the lines on as they come and keep them for the cache
+				StringBuilder sb = new StringBuilder();
+				tts_helper.speechReadyText( doc, line -> {
+					sb.append( line ).append( '\n' );
+					lines.accept( line );
+				});
+				text = sb.toString();
+			}
+			cache.put( urls, doc.getETag(), doc.getLastModified(), doc.getContentHash(), text );
+		}
+		finally {
+			doc.discard();
+		}
+
+	}
+
+	/*
+	 * Downloads the url. If cached is not null the request is made conditional on it, and
+	 * null is returned when the server answers 304 Not Modified.
+	 */
+	private WebDocument fetch( String urls, boolean pdf, FetchCache.Entry cached ) throws Exception {
+
+		URL url = new URI( urls ).toURL();
+		long start = System.nanoTime();
+		URLConnection connection = url.openConnection();
+		connection.setConnectTimeout( connectTimeoutMillis );
+		connection.setReadTimeout( readTimeoutMillis );
+		if( cached != null ) {
+			if( cached.getETag() != null )
+				connection.setRequestProperty( "If-None-Match", cached.getETag() );
+			if( cached.getLastModified() != null )
+				connection.setRequestProperty( "If-Modified-Since", cached.getLastModified() );
+		}
+		if( connection instanceof HttpURLConnection
+				&& ( (HttpURLConnection) connection ).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED ) {
+			( (HttpURLConnection) connection ).disconnect();
+			metrics.recordFetch( 0, System.nanoTime() - start );
+			return null;
+		}
+		WebDocument doc = WebDocument.read( urls, pdf, connection.getInputStream() );
+		doc.setValidators( connection.getHeaderField( "ETag" ), connection.getHeaderField( "Last-Modified" ) );
+		metrics.recordFetch( doc.size(), System.nanoTime() - start );
+		return doc;
+
+	}
+
+	/*
+	 * A feed entry on its way through a worker. The worker adds each line of its text as
+	 * it is extracted, then END whether or not it failed.
+	 */
+	private static class Document {
+		final String source;
+		final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+		Future<?> future;
+
+		Document( String source ) {
+			this.source = source;
+		}
+	}
+
+	/*
+	 * The entries of one host waiting for one of its perHostLimit slots in the pool.
+	 */
+	private static class HostQueue {
+		final Deque<Runnable> waiting = new ArrayDeque<Runnable>();
+		int running;
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread( Runnable r ) {
+			Thread t = new Thread( r, "url-feed-worker-" + count.incrementAndGet() );
+			t.setDaemon( true );
+			return t;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package src.main.java.com.app;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+/*
+ * A single document from the url feed on its way from the download to the parser.
+ *
+ * The body is kept in memory until it grows past the spill threshold, at which point it
+ * is moved to a temp file owned by this document. Documents never share files with each
+ * other, so any number of them can be in flight at once, and the common case (a news
+ * page of a few hundred KB) never touches the filesystem.
+ */
+public class WebDocument {
+
+	/* Bodies larger than this are spilled to disk; override with textToSpeechify.spillThreshold. */
+	public static final long DEFAULT_SPILL_THRESHOLD =
+			Long.getLong( "textToSpeechify.spillThreshold", 8L * 1024 * 1024 );
+
+	private final String source;
+	private final boolean pdf;
+	private final long spillThreshold;
+	private Buffer memory;
+	private OutputStream spillStream;
+	private File file;
+	private boolean ownsFile;
+	private long size;
+	private String contentHash;
+	private String etag;
+	private String lastModified;
+
+	private WebDocument( String source, boolean pdf, long spillThreshold ) {
+		this.source = source;
+		this.pdf = pdf;
+		this.spillThreshold = spillThreshold;
+		this.memory = new Buffer();
+	}
+
+	/*
+	 * Reads the whole stream into a new document and hashes it on the way. The stream is
+	 * closed afterwards.
+	 */
+	public static WebDocument read( String source, boolean pdf, InputStream in, long spillThreshold ) throws IOException {
+		WebDocument doc = new WebDocument( source, pdf, spillThreshold );
+		MessageDigest digest = FetchCache.newDigest();
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while( ( read = in.read( buffer ) ) != -1 ) {
+				digest.update( buffer, 0, read );
+				doc.write( buffer, 0, read );
+			}
+			doc.finish();
+			doc.contentHash = FetchCache.toHex( digest.digest() );
+		}
+		catch( IOException ioe ) {
+			doc.discard();
+			throw ioe;
+		}
+		finally {
+			in.close();
+		}
+		return doc;
+	}
+
+	public static WebDocument read( String source, boolean pdf, InputStream in ) throws IOException {
+		return read( source, pdf, in, DEFAULT_SPILL_THRESHOLD );
+	}
+
+	/*
+	 * Wraps a file that already exists locally (e.g. a pdf path listed in the feed). The
+	 * file is used in place and is left alone by discard().
+	 */
+	public static WebDocument forLocalFile( String path, boolean pdf ) {
+		WebDocument doc = new WebDocument( path, pdf, 0L );
+		doc.memory = null;
+		doc.file = new File( path );
+		doc.ownsFile = false;
+		doc.size = doc.file.length();
+		return doc;
+	}
+
+	private void write( byte[] buffer, int offset, int length ) throws IOException {
+		if( spillStream == null && memory.size() + length > spillThreshold ) {
+			file = Files.createTempFile( "textToSpeechify-", pdf ? ".pdf" : ".html" ).toFile();
+			ownsFile = true;
+			spillStream = new FileOutputStream( file );
+			memory.writeTo( spillStream );
+			memory = null;
+		}
+		if( spillStream != null )
+			spillStream.write( buffer, offset, length );
+		else
+			memory.write( buffer, offset, length );
+		size += length;
+	}
+
+	private void finish() throws IOException {
+		if( spillStream != null ) {
+			spillStream.close();
+			spillStream = null;
+		}
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public boolean isPDF() {
+		return pdf;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/*
+	 * Returns the SHA-256 of the body as hex, or null for local files.
+	 */
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	/*
+	 * The HTTP validators the server sent with the body, null if it sent none.
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	void setValidators( String etag, String lastModified ) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	/*
+	 * Returns true if the body lives in a file rather than in memory.
+	 */
+	public boolean isOnDisk() {
+		return file != null;
+	}
+
+	/*
+	 * Returns the file holding the body, or null if the body is in memory.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	public InputStream openStream() throws IOException {
+		if( file != null )
+			return new FileInputStream( file );
+		return memory.asInputStream();
+	}
+
+	/*
+	 * Releases the body. Spill files created by this document are deleted.
+	 */
+	public void discard() {
+		try {
+			if( spillStream != null )
+				spillStream.close();
+		}
+		catch( IOException ioe ) {
+			ioe.printStackTrace();
+		}
+		spillStream = null;
+		memory = null;
+		if( file != null && ownsFile )
+			file.delete();
+	}
+
+	/*
+	 * Lets readers share the in-memory body instead of copying it with toByteArray().
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super( 16 * 1024 );
+		}
+
+		InputStream asInputStream() {
+			return new ByteArrayInputStream( buf, 0, count );
+		}
+	}
+}
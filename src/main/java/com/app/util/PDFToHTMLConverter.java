@@ -0,0 +1,254 @@
+package src.main.java.com.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A long lived PDF to HTML conversion service on top of PDFToHTML.jar.
+ *
+ * The jar is loaded once, its manifest is read once and the entry points are
+ * resolved once. When the jar exposes the Pdf2Dom API (PDFDomTree and PDFBox's
+ * PDDocument) documents are converted straight from an InputStream to a Writer,
+ * using a pool of PDFDomTree instances that stay warm between documents; otherwise
+ * the cached <code>main</code> method is invoked on temp files. At most
+ * <code>concurrency</code> conversions run at the same time.
+ *
+ * resources:
+ *  https://github.com/radkovo/Pdf2Dom/blob/main/src/main/java/org/fit/pdfdom/PDFToHTML.java
+ *  https://github.com/radkovo/Pdf2Dom/blob/main/src/main/java/org/fit/pdfdom/PDFDomTree.java
+ */
+public class PDFToHTMLConverter {
+
+    /** Location of the PDFToHTML jar shipped with the project. */
+    public static final String DEFAULT_LOCATION =
+        "file:src/main/java/com/resources/lib/PDFToHTML.jar";
+
+    /** Number of concurrent conversions, override with textToSpeechify.pdfConverters. */
+    public static final int DEFAULT_CONCURRENCY = Integer.getInteger(
+        "textToSpeechify.pdfConverters", Runtime.getRuntime().availableProcessors());
+
+    private static PDFToHTMLConverter instance;
+
+    private final JarClassLoader jar;
+    private final Method mainMethod;
+    private final Semaphore permits;
+
+    // direct (in memory) entry points, null if the jar does not have them
+    private Constructor<?> domTreeConstructor;
+    private Method writeText;
+    private Method loadDocument;
+    private boolean loadFromBytes;
+    private Method closeDocument;
+    private final BlockingQueue<Object> domTrees;
+
+    /**
+     * Returns the converter for the default jar, creating it on first use.
+     *
+     * @return the shared converter
+     * @exception IOException if the jar cannot be loaded
+     */
+    public static synchronized PDFToHTMLConverter getInstance() throws IOException {
+        if (instance == null) {
+            try {
+                instance = new PDFToHTMLConverter(
+                    new URI(DEFAULT_LOCATION).toURL(), DEFAULT_CONCURRENCY);
+            } catch (Exception e) {
+                throw new IOException("Can't load PDFToHTML from " + DEFAULT_LOCATION, e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the converter jar and resolves its entry points.
+     *
+     * @param url the url of PDFToHTML.jar
+     * @param concurrency the maximum number of conversions run at once
+     *
+     * @exception Exception if the jar or its main class can't be loaded
+     */
+    public PDFToHTMLConverter(URL url, int concurrency) throws Exception {
+        jar = new JarClassLoader(url);
+        String mainClassName = jar.getMainClassName();
+        System.out.println("[*] name of main class of PDFToHTML: " + mainClassName);
+        Class<?> c = jar.loadClass(mainClassName);
+        Method m = c.getMethod("main", new Class[] { String[].class });
+        int mods = m.getModifiers();
+        if (m.getReturnType() != void.class || !Modifier.isStatic(mods) ||
+            !Modifier.isPublic(mods)) {
+            throw new NoSuchMethodException("main");
+        }
+        mainMethod = m;
+        permits = new Semaphore(Math.max(1, concurrency), true);
+        domTrees = new ArrayBlockingQueue<Object>(Math.max(1, concurrency));
+        resolveDirectEntryPoints();
+    }
+
+    /*
+     * Looks up PDFDomTree.writeText(PDDocument, Writer) and a way to load a
+     * PDDocument from memory (PDFBox 3 Loader.loadPDF(byte[]) or PDFBox 2
+     * PDDocument.load(InputStream)).
+     */
+    private void resolveDirectEntryPoints() {
+        try {
+            Class<?> documentClass =
+                jar.loadClass("org.apache.pdfbox.pdmodel.PDDocument");
+            Class<?> domTreeClass = jar.loadClass("org.fit.pdfdom.PDFDomTree");
+            try {
+                Class<?> loader = jar.loadClass("org.apache.pdfbox.Loader");
+                loadDocument = loader.getMethod("loadPDF", byte[].class);
+                loadFromBytes = true;
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                loadDocument = documentClass.getMethod("load", InputStream.class);
+                loadFromBytes = false;
+            }
+            domTreeConstructor = domTreeClass.getConstructor();
+            writeText = domTreeClass.getMethod("writeText", documentClass,
+                                               Writer.class);
+            closeDocument = documentClass.getMethod("close");
+            System.out.println("[*] PDFToHTML: converting in memory");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            domTreeConstructor = null;
+            System.out.println("[*] PDFToHTML: no direct entry point, using main");
+        }
+    }
+
+    /**
+     * Returns true if conversions run in memory rather than through
+     * <code>main</code> and temp files.
+     */
+    public boolean isInMemory() {
+        return domTreeConstructor != null;
+    }
+
+    /**
+     * Converts a pdf to html.
+     *
+     * @param pdf the pdf, read to the end but not closed
+     *
+     * @return the html
+     * @exception IOException if the pdf can't be read or converted
+     */
+    public String convert(InputStream pdf) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for a converter", e);
+        }
+        try {
+            if (isInMemory()) {
+                return convertInMemory(pdf);
+            }
+            return convertWithMain(pdf);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Converts the pdf file to the html file, like running PDFToHTML.jar.
+     *
+     * @param pdfFileName the pdf to read
+     * @param htmlFileName the html to write
+     *
+     * @exception IOException if the pdf can't be read or converted
+     */
+    public void convert(String pdfFileName, String htmlFileName) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for a converter", e);
+        }
+        try {
+            invokeMain(new String[] { pdfFileName, htmlFileName });
+        } finally {
+            permits.release();
+        }
+    }
+
+    private String convertInMemory(InputStream pdf) throws IOException {
+        Object domTree = domTrees.poll();
+        Object document = null;
+        try {
+            if (domTree == null) {
+                domTree = domTreeConstructor.newInstance();
+            }
+            if (loadFromBytes) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = pdf.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                document = loadDocument.invoke(null, (Object) bytes.toByteArray());
+            } else {
+                document = loadDocument.invoke(null, pdf);
+            }
+            ByteArrayOutputStream html = new ByteArrayOutputStream();
+            Writer writer = new OutputStreamWriter(html, StandardCharsets.UTF_8);
+            writeText.invoke(domTree, document, writer);
+            writer.flush();
+            return new String(html.toByteArray(), StandardCharsets.UTF_8);
+        } catch (InvocationTargetException e) {
+            // don't hand a converter that failed half way to the next document
+            domTree = null;
+            throw new IOException("PDFToHTML failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            domTree = null;
+            throw new IOException("PDFToHTML failed", e);
+        } finally {
+            if (document != null) {
+                try {
+                    closeDocument.invoke(document);
+                } catch (ReflectiveOperationException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (domTree != null) {
+                domTrees.offer(domTree);
+            }
+        }
+    }
+
+    private String convertWithMain(InputStream pdf) throws IOException {
+        File pdfFile = Files.createTempFile("textToSpeechify-", ".pdf").toFile();
+        File htmlFile = Files.createTempFile("textToSpeechify-", ".pdf.html").toFile();
+        try {
+            Files.copy(pdf, pdfFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            invokeMain(new String[] { pdfFile.getPath(), htmlFile.getPath() });
+            return new String(Files.readAllBytes(htmlFile.toPath()),
+                              StandardCharsets.UTF_8);
+        } finally {
+            pdfFile.delete();
+            htmlFile.delete();
+        }
+    }
+
+    private void invokeMain(String[] args) throws IOException {
+        try {
+            mainMethod.invoke(null, new Object[] { args });
+        } catch (InvocationTargetException e) {
+            throw new IOException("PDFToHTML failed", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException("PDFToHTML main is not accessible", e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package src.main.java.com.app.util;
+
+import java.nio.CharBuffer;
+
+/**
+ * Removes markup from html in a single linear scan.
+ *
+ * Text outside of tags is copied to the output; tags (including quoted attribute values
+ * that contain '>'), comments, CDATA sections, declarations and the content of script
+ * and style elements are dropped. Nothing is allocated while scanning: the caller
+ * provides the output buffer, which never needs to be larger than the input.
+ */
+public final class TagStripper {
+
+	private static final char[] COMMENT_START = "<!--".toCharArray();
+	private static final char[] COMMENT_END = "-->".toCharArray();
+	private static final char[] CDATA_START = "<![CDATA[".toCharArray();
+	private static final char[] CDATA_END = "]]>".toCharArray();
+	private static final char[] SCRIPT = "script".toCharArray();
+	private static final char[] STYLE = "style".toCharArray();
+
+	private TagStripper() {}
+
+	/**
+	 * Strips the markup from in[off, off+len) into out starting at outOff.
+	 *
+	 * @param in the html
+	 * @param off where the html starts in <code>in</code>
+	 * @param len the number of chars of html
+	 * @param out receives the text, must have room for <code>len</code> chars
+	 * @param outOff where to start writing in <code>out</code>
+	 *
+	 * @return the number of chars written to <code>out</code>
+	 */
+	public static int strip( char[] in, int off, int len, char[] out, int outOff ) {
+
+		int end = off + len;
+		int o = outOff;
+		int i = off;
+		while( i < end ) {
+			char c = in[i];
+			if( c != '<' || i + 1 == end ) {
+				out[o++] = c;
+				i++;
+				continue;
+			}
+
+			char next = in[i + 1];
+			if( next == '!' ) {
+				if( startsWith( in, i, end, COMMENT_START ) )
+					i = skipPast( in, i + COMMENT_START.length, end, COMMENT_END );
+				else if( startsWith( in, i, end, CDATA_START ) )
+					i = skipPast( in, i + CDATA_START.length, end, CDATA_END );
+				else
+					i = skipTag( in, i + 2, end );
+			}
+			else if( next == '?' ) {
+				i = skipTag( in, i + 2, end );
+			}
+			else if( next == '/' ) {
+				i = skipTag( in, i + 2, end );
+			}
+			else if( isLetter( next ) ) {
+				char[] rawText = null;
+				if( isTagName( in, i + 1, end, SCRIPT ) )
+					rawText = SCRIPT;
+				else if( isTagName( in, i + 1, end, STYLE ) )
+					rawText = STYLE;
+				int afterTag = skipTag( in, i + 1, end );
+				// <script/> has no content to skip
+				if( rawText != null && in[afterTag - 1] == '>' && in[afterTag - 2] != '/' )
+					afterTag = skipRawText( in, afterTag, end, rawText );
+				i = afterTag;
+			}
+			else {
+				// a lone '<' in the text, e.g. "a < b"
+				out[o++] = c;
+				i++;
+			}
+		}
+		return o - outOff;
+
+	}
+
+	/**
+	 * Strips the remaining chars of <code>in</code> into <code>out</code>. Both
+	 * buffers must be array backed; their positions are advanced.
+	 *
+	 * @param in the html
+	 * @param out receives the text, must have <code>in.remaining()</code> chars free
+	 *
+	 * @return the number of chars written
+	 */
+	public static int strip( CharBuffer in, CharBuffer out ) {
+		int written = strip( in.array(), in.arrayOffset() + in.position(), in.remaining(),
+				out.array(), out.arrayOffset() + out.position() );
+		in.position( in.limit() );
+		out.position( out.position() + written );
+		return written;
+	}
+
+	/**
+	 * Convenience version for Strings. This allocates the working arrays and the result.
+	 *
+	 * @param html the html
+	 *
+	 * @return the text of the html
+	 */
+	public static String strip( String html ) {
+		char[] in = html.toCharArray();
+		char[] out = new char[in.length];
+		return new String( out, 0, strip( in, 0, in.length, out, 0 ) );
+	}
+
+	/*
+	 * Returns the index just past the '>' that ends the tag whose body starts at i,
+	 * ignoring any '>' inside quoted attribute values.
+	 */
+	private static int skipTag( char[] in, int i, int end ) {
+		char quote = 0;
+		for( ; i < end; i++ ) {
+			char c = in[i];
+			if( quote != 0 ) {
+				if( c == quote )
+					quote = 0;
+			}
+			else if( c == '"' || c == '\'' ) {
+				quote = c;
+			}
+			else if( c == '>' ) {
+				return i + 1;
+			}
+		}
+		return end;
+	}
+
+	/*
+	 * Skips the content of a script or style element and its end tag.
+	 */
+	private static int skipRawText( char[] in, int i, int end, char[] name ) {
+		for( ; i + 1 < end; i++ ) {
+			if( in[i] == '<' && in[i + 1] == '/' && isTagName( in, i + 2, end, name ) )
+				return skipTag( in, i + 2, end );
+		}
+		return end;
+	}
+
+	private static int skipPast( char[] in, int i, int end, char[] terminator ) {
+		int last = end - terminator.length;
+		for( ; i <= last; i++ ) {
+			if( startsWith( in, i, end, terminator ) )
+				return i + terminator.length;
+		}
+		return end;
+	}
+
+	private static boolean startsWith( char[] in, int i, int end, char[] prefix ) {
+		if( end - i < prefix.length )
+			return false;
+		for( int j = 0; j < prefix.length; j++ ) {
+			if( in[i + j] != prefix[j] )
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Returns true if a tag named <code>name</code> (any case) starts at i.
+	 */
+	private static boolean isTagName( char[] in, int i, int end, char[] name ) {
+		if( end - i < name.length )
+			return false;
+		for( int j = 0; j < name.length; j++ ) {
+			if( ( in[i + j] | 0x20 ) != name[j] )
+				return false;
+		}
+		int after = i + name.length;
+		return after == end || !isLetter( in[after] ) && !isDigit( in[after] ) && in[after] != '-';
+	}
+
+	private static boolean isLetter( char c ) {
+		return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' );
+	}
+
+	private static boolean isDigit( char c ) {
+		return c >= '0' && c <= '9';
+	}
+}
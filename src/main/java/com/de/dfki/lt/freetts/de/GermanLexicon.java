@@ -137,6 +137,26 @@ public class GermanLexicon extends LexiconImpl {
         return false;
     }
 
+    /**
+     * Determines if the currentPhone represents a new syllable
+     * boundary, for a word whose phones lie in part of a larger array.
+     *
+     * @param syllablePhones the phones in the current syllable so far
+     * @param phones the array that holds the phones of the word
+     * @param start where the phones of the word start in the array
+     * @param end where the phones of the word end in the array
+     * @param currentPhone the phone in question, as an index into the
+     *     array
+     *
+     * @return <code>true</code> if the phone in question is on a
+     *     syllable boundary; otherwise <code>false</code>.
+     */
+    public boolean isSyllableBoundary(List syllablePhones,
+                                      String[] phones, int start, int end,
+                                      int currentPhone) {
+        return false;
+    }
+
     /**
      * Provides test code for the GermanLexicon.
      * <br><b>Usage:</b><br>
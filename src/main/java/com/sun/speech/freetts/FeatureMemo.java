@@ -0,0 +1,246 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the results of feature processors for one utterance, so
+ * that a feature asked for again on the same item, by another CART
+ * node or another CART, is not computed again.  Results are keyed by
+ * item and feature slot (see {@link FeatureNames}).
+ *
+ * <p>A feature processor may look at any item of the utterance, for
+ * instance through a path such as <code>R:SylStructure.parent</code>
+ * or by counting the syllables to the next accent, so a result is
+ * dropped when anything in the utterance has changed since it was
+ * computed: a feature of any item or of the utterance, or an item
+ * added to a relation.  A result is only reused while the utterance
+ * is only being read, as when a CART asks for the same feature of
+ * an item at several nodes.  The memo is off unless asked for (see
+ * {@link Voice#setFeatureMemo}).
+ *
+ * <p>A memo belongs to one utterance and is not thread safe.
+ */
+public class FeatureMemo {
+    private final Utterance utterance;
+    private Item[] items;
+    private int[] slots;
+    private int[] stamps;
+    private Object[] values;
+    private int size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long stale = 0;
+
+    /**
+     * Creates an empty memo for the given utterance.
+     *
+     * @param utterance the utterance whose items the memo is for
+     */
+    public FeatureMemo(Utterance utterance) {
+	this.utterance = utterance;
+	allocate(256);
+    }
+
+    /**
+     * Returns the result of the given feature processor for an item,
+     * running the processor only if the result isn't known.
+     *
+     * @param processor the feature processor
+     * @param slot the slot of the feature's name
+     * @param item the item
+     *
+     * @return the result of the processor
+     *
+     * @throws ProcessException if the processor fails
+     */
+    public Object process(FeatureProcessor processor, int slot, Item item)
+	    throws ProcessException {
+	int stamp = utterance.getModificationCount();
+	int i = indexOf(item, slot);
+	if (i >= 0) {
+	    if (stamps[i] == stamp) {
+		hits++;
+		return values[i];
+	    }
+	    stale++;
+	}
+	misses++;
+	// the processor may use the memo itself, so look the entry up
+	// again afterwards; it is stamped as of before the processor
+	// ran, so if the processor changed anything it is run again
+	Object value = processor.process(item);
+	i = indexOf(item, slot);
+	if (i >= 0) {
+	    stamps[i] = stamp;
+	    values[i] = value;
+	} else {
+	    add(item, slot, stamp, value);
+	}
+	return value;
+    }
+
+    /**
+     * Forgets every result.  The counters are kept.
+     */
+    public void clear() {
+	if (size > 0) {
+	    Arrays.fill(items, null);
+	    Arrays.fill(values, null);
+	    size = 0;
+	}
+    }
+
+    /**
+     * Returns the number of results answered from the memo, that is
+     * the number of processor invocations avoided.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+	return hits;
+    }
+
+    /**
+     * Returns the number of times a processor was run.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+	return misses;
+    }
+
+    /**
+     * Returns the number of results dropped because the utterance had
+     * changed since they were computed.
+     *
+     * @return the number of stale results
+     */
+    public long getStale() {
+	return stale;
+    }
+
+    private static int hash(Item item, int slot) {
+	int h = System.identityHashCode(item) * 31 + slot;
+	return h ^ (h >>> 16);
+    }
+
+    private int indexOf(Item item, int slot) {
+	int mask = items.length - 1;
+	int i = hash(item, slot) & mask;
+	while (items[i] != null) {
+	    if (items[i] == item && slots[i] == slot) {
+		return i;
+	    }
+	    i = (i + 1) & mask;
+	}
+	return -1;
+    }
+
+    private void add(Item item, int slot, int stamp, Object value) {
+	if ((size + 1) * 2 > items.length) {
+	    Item[] oldItems = items;
+	    int[] oldSlots = slots;
+	    int[] oldStamps = stamps;
+	    Object[] oldValues = values;
+	    allocate(items.length * 2);
+	    for (int j = 0; j < oldItems.length; j++) {
+		if (oldItems[j] != null) {
+		    put(oldItems[j], oldSlots[j], oldStamps[j], oldValues[j]);
+		}
+	    }
+	}
+	put(item, slot, stamp, value);
+	size++;
+    }
+
+    private void put(Item item, int slot, int stamp, Object value) {
+	int mask = items.length - 1;
+	int i = hash(item, slot) & mask;
+	while (items[i] != null) {
+	    i = (i + 1) & mask;
+	}
+	items[i] = item;
+	slots[i] = slot;
+	stamps[i] = stamp;
+	values[i] = value;
+    }
+
+    private void allocate(int capacity) {
+	items = new Item[capacity];
+	slots = new int[capacity];
+	stamps = new int[capacity];
+	values = new Object[capacity];
+    }
+
+    /**
+     * The memo counters of a voice, summed over its utterances.
+     */
+    public static class Counters {
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong stale = new AtomicLong();
+
+	/**
+	 * Adds the counters of a memo.
+	 *
+	 * @param memo the memo
+	 */
+	void add(FeatureMemo memo) {
+	    hits.addAndGet(memo.getHits());
+	    misses.addAndGet(memo.getMisses());
+	    stale.addAndGet(memo.getStale());
+	}
+
+	/**
+	 * Returns the number of processor invocations avoided.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+	    return hits.get();
+	}
+
+	/**
+	 * Returns the number of processor invocations.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+	    return misses.get();
+	}
+
+	/**
+	 * Returns the number of results dropped because their utterance
+	 * changed.
+	 *
+	 * @return the number of stale results
+	 */
+	public long getStale() {
+	    return stale.get();
+	}
+
+	/**
+	 * Shows the counters.
+	 *
+	 * @param title the title for the metrics
+	 */
+	public void showMetrics(String title) {
+	    long h = getHits();
+	    long total = h + getMisses();
+	    System.out.println("Feature memo " + title + ":");
+	    System.out.println("   lookups      " + total);
+	    System.out.println("   avoided      " + h + " ("
+		    + (total == 0 ? 0.0 : Math.round(h * 1000.0 / total) / 10.0)
+		    + "%)");
+	    System.out.println("   stale        " + getStale());
+	}
+    }
+}
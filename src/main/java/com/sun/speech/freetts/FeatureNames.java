@@ -0,0 +1,94 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of feature names.  Every feature name used by a
+ * {@link SlotFeatureSet} is given a small integer, its slot, the first
+ * time it is set; the slot stays the same for the life of the
+ * process.  A feature set then finds a feature by comparing slots
+ * rather than names, and code that looks up the same feature often may
+ * get its slot once and use it directly.  Lookups use
+ * {@link #findSlot}, so names that are only asked about are not kept.
+ */
+public class FeatureNames {
+    private final static Map slots = new ConcurrentHashMap();
+    private static volatile String[] names = new String[64];
+    private static int count = 0;
+
+    private FeatureNames() {
+    }
+
+    /**
+     * Returns the slot for the given feature name, registering the
+     * name if it hasn't been seen before.
+     *
+     * @param name the feature name
+     *
+     * @return the slot
+     */
+    public static int getSlot(String name) {
+	Integer slot = (Integer) slots.get(name);
+	if (slot != null) {
+	    return slot.intValue();
+	}
+	return register(name);
+    }
+
+    /**
+     * Returns the slot for the given feature name without registering
+     * it.  A name that has no slot has never been set, so no feature
+     * set holds a feature of that name.
+     *
+     * @param name the feature name
+     *
+     * @return the slot, or -1 if the name has not been registered
+     */
+    public static int findSlot(String name) {
+	Integer slot = (Integer) slots.get(name);
+	return slot == null ? -1 : slot.intValue();
+    }
+
+    /**
+     * Returns the name of a slot.
+     *
+     * @param slot the slot
+     *
+     * @return the feature name
+     */
+    public static String getName(int slot) {
+	return names[slot];
+    }
+
+    /**
+     * Returns the number of registered names.
+     *
+     * @return the number of names
+     */
+    public static synchronized int size() {
+	return count;
+    }
+
+    private static synchronized int register(String name) {
+	Integer slot = (Integer) slots.get(name);
+	if (slot == null) {
+	    if (count == names.length) {
+		String[] grown = new String[count * 2];
+		System.arraycopy(names, 0, grown, 0, count);
+		names = grown;
+	    }
+	    names[count] = name;
+	    slot = Integer.valueOf(count++);
+	    slots.put(name, slot);
+	}
+	return slot.intValue();
+    }
+}
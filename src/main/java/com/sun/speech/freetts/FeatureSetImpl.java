@@ -26,6 +26,8 @@ import com.sun.speech.freetts.util.Utilities;
  */
 public class FeatureSetImpl implements FeatureSet {
     private final Map featureMap;
+    private int modCount = 0;
+    private Utterance utterance;
     static DecimalFormat formatter;
 
     /**
@@ -35,6 +37,16 @@ public class FeatureSetImpl implements FeatureSet {
         featureMap = new LinkedHashMap();
     }
 
+    /**
+     * Sets the utterance that holds this set, so that a change to the
+     * set counts as a change to the utterance.
+     *
+     * @param utterance the utterance, or null for none
+     */
+    void setUtterance(Utterance utterance) {
+	this.utterance = utterance;
+    }
+
     /**
      * Determines if the given feature is present.
      *
@@ -54,6 +66,7 @@ public class FeatureSetImpl implements FeatureSet {
      */
     public void remove(String name) {
 	featureMap.remove(name);
+	modified();
     }
 
     /**
@@ -150,6 +163,23 @@ public class FeatureSetImpl implements FeatureSet {
      */
     public void setObject(String name, Object value) {
 	featureMap.put(name, value);
+	modified();
+    }
+
+    private void modified() {
+	modCount++;
+	if (utterance != null) {
+	    utterance.modified();
+	}
+    }
+
+    /**
+     * Returns the number of times this set has been changed.
+     *
+     * @return the modification count
+     */
+    public int getModificationCount() {
+	return modCount;
     }
 
     /**
@@ -53,10 +53,19 @@ public class Item implements Dumpable {
 	next = null;
 	prev = null;
 
-
+	// a new item changes its relation, which counts as a change to
+	// the utterance
+	contents.setUtterance(relation.getUtterance());
 	getSharedContents().addItemRelation(relation.getName(), this);
     }
 
+    /**
+     * Creates an item whose links and contents are kept elsewhere, by
+     * an {@link ItemArena}.
+     */
+    Item() {
+    }
+
     /**
      * Finds the item in the given relation that has the same shared
      * contents.
@@ -234,7 +243,7 @@ public class Item implements Dumpable {
 	    Item daughter = getDaughter();
 	    while (daughter != null) {
 		daughter.dump(out, pad + 8, "d");
-		daughter = daughter.next;
+		daughter = daughter.getNext();
 	    }
 	}
     }
@@ -258,17 +267,37 @@ public class Item implements Dumpable {
      * called with the item specified by the path, otherwise, a
      * feature will be retrieved with the given name. If neither exist
      * than a String "0" is returned.
+     * Unless paths are interpreted (see {@link
+     * PathExtractorImpl#INTERPRET_PATHS_PROPERTY}), the path is compiled
+     * the first time it is seen and the compiled form is shared.
      *
      * @param pathAndFeature the path to follow
      */
     public Object findFeature(String pathAndFeature) {
+	if (!PathExtractorImpl.INTERPRET_PATHS) {
+	    PathExtractorImpl path =
+		PathExtractorImpl.getInstance(pathAndFeature, true);
+	    Item item = path.findItem(this);
+	    Object results = null;
+	    if (item != null) {
+		try {
+		    results = path.getFeature(item);
+		} catch (ProcessException pe) {
+		    System.err.println("Trouble while processing " +
+				       pathAndFeature);
+		}
+	    }
+	    return (results == null) ? "0" : results;
+	}
+
 	int lastDot;
 	String feature;
 	String path;
 	Item item;
 	FeatureProcessor fp;
 
-	Voice voice = getOwnerRelation().getUtterance().getVoice();
+	Utterance utterance = getOwnerRelation().getUtterance();
+	Voice voice = utterance.getVoice();
 	Object results = null;
 	
 
@@ -290,7 +319,9 @@ public class Item implements Dumpable {
 
             if (fp != null) {
                 try {
-                    results = fp.process(item);
+		    FeatureMemo memo = utterance.getFeatureMemo();
+		    results = (memo == null) ? fp.process(item)
+			: memo.process(fp, FeatureNames.getSlot(feature), item);
                 } catch (ProcessException pe) {
                     System.err.println("Trouble while processing " +
                                        fp.toString());
@@ -324,20 +355,35 @@ public class Item implements Dumpable {
      * </ul>
      * If the given path takes us outside of the bounds of the item
      * graph, then list access exceptions will be thrown.
+     * As for {@link #findFeature}, the path is compiled once and shared
+     * unless paths are interpreted.
      *
      * @param path the path to follow
      *
      * @return the item at the given path
      */
     public Item findItem(String path) {
-	Item pitem = this;
-	StringTokenizer tok;
-	
 	if (path == null) {
 	    return this;
 	}
 
-	tok = new StringTokenizer(path, ":.");
+	if (!PathExtractorImpl.INTERPRET_PATHS) {
+	    return PathExtractorImpl.getInstance(path, false).findItem(this);
+	}
+	return interpretPath(path);
+    }
+
+    /**
+     * Finds the item specified by the given path by walking its
+     * tokens, without compiling it.
+     *
+     * @param path the path to follow
+     *
+     * @return the item at the given path
+     */
+    Item interpretPath(String path) {
+	Item pitem = this;
+	StringTokenizer tok = new StringTokenizer(path, ":.");
 
 	while (pitem != null && tok.hasMoreTokens()) {
 	    String token = tok.nextToken();
@@ -0,0 +1,706 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/**
+ * Keeps the item graph of an utterance in a few growable arrays
+ * rather than in an object per item, per contents and per feature
+ * set.  Items, their shared contents and their features are numbered
+ * within the arena; links between items are indices, the relations an
+ * item's contents belong to are a chain of the items sharing it, and
+ * features are kept in typed columns (slot, kind, int value, object
+ * value) chained per contents.
+ *
+ * <p>Processors see the usual {@link Item}, {@link ItemContents} and
+ * {@link FeatureSet} API: each item and each contents has one view
+ * object, which the arena keeps.  {@link #reset} empties the arena
+ * for the next utterance and keeps the arrays and the views, so an
+ * arena that is reused allocates almost nothing once it has grown to
+ * the size of the largest utterance.  An utterance uses an arena when
+ * it is made with one (see {@link Utterance#Utterance(Voice, java.util.List,
+ * ItemArena)}), or when its voice hands them out (see {@link
+ * Voice#setUtteranceArenas}).
+ *
+ * <p>After <code>reset</code>, items and feature sets taken from the
+ * arena before it refer to the items of the next utterance and must
+ * not be used.  An arena is not thread safe.
+ */
+public class ItemArena {
+    private final static byte INT = 0;
+    private final static byte FLOAT = 1;
+    private final static byte OBJECT = 2;
+    private final static int NONE = -1;
+
+    private Relation[] relations = new Relation[16];
+    private int relationCount = 0;
+
+    // items
+    private int itemCount = 0;
+    private int[] itemRelation;
+    private int[] itemContents;
+    private int[] itemParent;
+    private int[] itemDaughter;
+    private int[] itemNext;
+    private int[] itemPrev;
+    private int[] itemNextShared;	// next item with the same contents
+    private ItemView[] itemViews;
+
+    // contents
+    private int contentsCount = 0;
+    private int[] contentsItems;	// first item with these contents
+    private int[] contentsFeatures;	// first feature of these contents
+    private int[] contentsModCount;
+    private ContentsView[] contentsViews;
+
+    // features, newest first within a contents
+    private int featureCount = 0;
+    private int[] featureSlot;
+    private byte[] featureKind;
+    private int[] featureValue;
+    private Object[] featureObject;
+    private int[] featureNext;
+
+    private int modCount = 0;	// changes to any item or feature
+
+    /**
+     * Creates an empty arena.
+     */
+    public ItemArena() {
+	allocateItems(256);
+	allocateContents(256);
+	allocateFeatures(1024);
+    }
+
+    /**
+     * Empties the arena so that it may hold the items of another
+     * utterance.  The arrays and views are kept.
+     */
+    public void reset() {
+	Arrays.fill(featureObject, 0, featureCount, null);
+	Arrays.fill(relations, 0, relationCount, null);
+	itemCount = 0;
+	contentsCount = 0;
+	featureCount = 0;
+	relationCount = 0;
+    }
+
+    /**
+     * Returns the number of items in the arena.
+     *
+     * @return the number of items
+     */
+    public int getItemCount() {
+	return itemCount;
+    }
+
+    /**
+     * Returns the number of times an item has been added, or a
+     * feature or relation of one changed, since the arena was made.
+     *
+     * @return the modification count
+     */
+    int getModificationCount() {
+	return modCount;
+    }
+
+    /**
+     * Returns the number of features in the arena, counting those
+     * that have been removed.
+     *
+     * @return the number of features
+     */
+    public int getFeatureCount() {
+	return featureCount;
+    }
+
+    /**
+     * Creates an item in the given relation.
+     *
+     * @param relation the relation that owns the item
+     * @param sharedContents the contents to share, or null for new
+     *     contents
+     *
+     * @return the item
+     *
+     * @throws IllegalArgumentException if the contents are not from
+     *     this arena
+     */
+    Item createItem(Relation relation, ItemContents sharedContents) {
+	int contents;
+	if (sharedContents == null) {
+	    contents = createContents();
+	} else if (sharedContents instanceof ContentsView
+		&& ((ContentsView) sharedContents).arena == this) {
+	    contents = ((ContentsView) sharedContents).index;
+	} else {
+	    throw new IllegalArgumentException(
+		    "item contents are not from this utterance");
+	}
+
+	if (itemCount == itemNext.length) {
+	    growItems();
+	}
+	int item = itemCount++;
+	modCount++;
+	itemRelation[item] = indexOf(relation);
+	itemContents[item] = contents;
+	itemParent[item] = NONE;
+	itemDaughter[item] = NONE;
+	itemNext[item] = NONE;
+	itemPrev[item] = NONE;
+	itemNextShared[item] = contentsItems[contents];
+	contentsItems[contents] = item;
+	return item(item);
+    }
+
+    private int createContents() {
+	if (contentsCount == contentsItems.length) {
+	    growContents();
+	}
+	int contents = contentsCount++;
+	contentsItems[contents] = NONE;
+	contentsFeatures[contents] = NONE;
+	contentsModCount[contents] = 0;
+	return contents;
+    }
+
+    private int indexOf(Relation relation) {
+	for (int i = relationCount - 1; i >= 0; i--) {
+	    if (relations[i] == relation) {
+		return i;
+	    }
+	}
+	if (relationCount == relations.length) {
+	    Relation[] grown = new Relation[relationCount * 2];
+	    System.arraycopy(relations, 0, grown, 0, relationCount);
+	    relations = grown;
+	}
+	relations[relationCount] = relation;
+	return relationCount++;
+    }
+
+    /**
+     * Returns the view of an item.
+     *
+     * @param item the index of the item, or <code>NONE</code>
+     *
+     * @return the view, or null for <code>NONE</code>
+     */
+    private Item item(int item) {
+	if (item == NONE) {
+	    return null;
+	}
+	ItemView view = itemViews[item];
+	if (view == null) {
+	    view = new ItemView(this, item);
+	    itemViews[item] = view;
+	}
+	return view;
+    }
+
+    private ContentsView contents(int contents) {
+	ContentsView view = contentsViews[contents];
+	if (view == null) {
+	    view = new ContentsView(this, contents);
+	    contentsViews[contents] = view;
+	}
+	return view;
+    }
+
+    /**
+     * Returns the index of an item of this arena.
+     *
+     * @param item the item
+     *
+     * @return the index
+     *
+     * @throws IllegalArgumentException if the item is not from this
+     *     arena
+     */
+    private int indexOf(Item item) {
+	if (item instanceof ItemView && ((ItemView) item).arena == this) {
+	    return ((ItemView) item).index;
+	}
+	throw new IllegalArgumentException("item is not from this utterance");
+    }
+
+    // item links
+
+    private int lastDaughter(int item) {
+	int d = itemDaughter[item];
+	if (d != NONE) {
+	    while (itemNext[d] != NONE) {
+		d = itemNext[d];
+	    }
+	}
+	return d;
+    }
+
+    private int parent(int item) {
+	int n = item;
+	while (itemPrev[n] != NONE) {
+	    n = itemPrev[n];
+	}
+	return itemParent[n];
+    }
+
+    private Item addDaughter(int item, Item original) {
+	int last = lastDaughter(item);
+	if (last != NONE) {
+	    return appendItem(last, original);
+	}
+	Item newItem = createItem(relations[itemRelation[item]],
+		original == null ? null : original.getSharedContents());
+	int d = indexOf(newItem);
+	itemParent[d] = item;
+	itemDaughter[item] = d;
+	return newItem;
+    }
+
+    private Item appendItem(int item, Item original) {
+	Relation relation = relations[itemRelation[item]];
+	Item newItem = createItem(relation,
+		original == null ? null : original.getSharedContents());
+	int n = indexOf(newItem);
+	itemNext[n] = itemNext[item];
+	if (itemNext[item] != NONE) {
+	    itemPrev[itemNext[item]] = n;
+	}
+	itemNext[item] = n;
+	itemPrev[n] = item;
+	if (relation.getTail() == item(item)) {
+	    relation.setTail(newItem);
+	}
+	return newItem;
+    }
+
+    private Item prependItem(int item, Item original) {
+	Relation relation = relations[itemRelation[item]];
+	Item newItem = createItem(relation,
+		original == null ? null : original.getSharedContents());
+	int n = indexOf(newItem);
+	itemPrev[n] = itemPrev[item];
+	if (itemPrev[item] != NONE) {
+	    itemNext[itemPrev[item]] = n;
+	}
+	itemNext[n] = item;
+	itemPrev[item] = n;
+	if (itemParent[item] != NONE) {
+	    itemDaughter[itemParent[item]] = n;
+	    itemParent[n] = itemParent[item];
+	    itemParent[item] = NONE;
+	}
+	if (relation.getHead() == item(item)) {
+	    relation.setHead(newItem);
+	}
+	return newItem;
+    }
+
+    // relations of a contents
+
+    private Item getItemRelation(int contents, String relationName) {
+	for (int i = contentsItems[contents]; i != NONE;
+		i = itemNextShared[i]) {
+	    if (relations[itemRelation[i]].getName().equals(relationName)) {
+		return item(i);
+	    }
+	}
+	return null;
+    }
+
+    private void removeItemRelation(int contents, String relationName) {
+	int prev = NONE;
+	for (int i = contentsItems[contents]; i != NONE;
+		i = itemNextShared[i]) {
+	    if (relations[itemRelation[i]].getName().equals(relationName)) {
+		if (prev == NONE) {
+		    contentsItems[contents] = itemNextShared[i];
+		} else {
+		    itemNextShared[prev] = itemNextShared[i];
+		}
+		modCount++;
+		return;
+	    }
+	    prev = i;
+	}
+    }
+
+    // features of a contents
+
+    private int findFeature(int contents, int slot) {
+	for (int f = contentsFeatures[contents]; f != NONE;
+		f = featureNext[f]) {
+	    if (featureSlot[f] == slot) {
+		return f;
+	    }
+	}
+	return NONE;
+    }
+
+    private int featureFor(int contents, int slot) {
+	int f = findFeature(contents, slot);
+	if (f == NONE) {
+	    if (featureCount == featureSlot.length) {
+		growFeatures();
+	    }
+	    f = featureCount++;
+	    featureSlot[f] = slot;
+	    featureNext[f] = contentsFeatures[contents];
+	    contentsFeatures[contents] = f;
+	}
+	contentsModCount[contents]++;
+	modCount++;
+	return f;
+    }
+
+    private void removeFeature(int contents, int slot) {
+	int prev = NONE;
+	for (int f = contentsFeatures[contents]; f != NONE;
+		f = featureNext[f]) {
+	    if (featureSlot[f] == slot) {
+		if (prev == NONE) {
+		    contentsFeatures[contents] = featureNext[f];
+		} else {
+		    featureNext[prev] = featureNext[f];
+		}
+		featureObject[f] = null;
+		contentsModCount[contents]++;
+		modCount++;
+		return;
+	    }
+	    prev = f;
+	}
+    }
+
+    private Object getObject(int f) {
+	if (f == NONE) {
+	    return null;
+	}
+	switch (featureKind[f]) {
+	case INT:
+	    return Integer.valueOf(featureValue[f]);
+	case FLOAT:
+	    return Float.valueOf(Float.intBitsToFloat(featureValue[f]));
+	default:
+	    return featureObject[f];
+	}
+    }
+
+    private void setInt(int contents, int slot, int value) {
+	int f = featureFor(contents, slot);
+	featureKind[f] = INT;
+	featureValue[f] = value;
+	featureObject[f] = null;
+    }
+
+    private void setFloat(int contents, int slot, float value) {
+	int f = featureFor(contents, slot);
+	featureKind[f] = FLOAT;
+	featureValue[f] = Float.floatToRawIntBits(value);
+	featureObject[f] = null;
+    }
+
+    private void setObject(int contents, int slot, Object value) {
+	if (value instanceof Integer) {
+	    setInt(contents, slot, ((Integer) value).intValue());
+	} else if (value instanceof Float) {
+	    setFloat(contents, slot, ((Float) value).floatValue());
+	} else {
+	    int f = featureFor(contents, slot);
+	    featureKind[f] = OBJECT;
+	    featureObject[f] = value;
+	}
+    }
+
+    // storage
+
+    private void allocateItems(int capacity) {
+	itemRelation = new int[capacity];
+	itemContents = new int[capacity];
+	itemParent = new int[capacity];
+	itemDaughter = new int[capacity];
+	itemNext = new int[capacity];
+	itemPrev = new int[capacity];
+	itemNextShared = new int[capacity];
+	itemViews = new ItemView[capacity];
+    }
+
+    private void growItems() {
+	int capacity = itemCount * 2;
+	itemRelation = grow(itemRelation, capacity);
+	itemContents = grow(itemContents, capacity);
+	itemParent = grow(itemParent, capacity);
+	itemDaughter = grow(itemDaughter, capacity);
+	itemNext = grow(itemNext, capacity);
+	itemPrev = grow(itemPrev, capacity);
+	itemNextShared = grow(itemNextShared, capacity);
+	ItemView[] views = new ItemView[capacity];
+	System.arraycopy(itemViews, 0, views, 0, itemViews.length);
+	itemViews = views;
+    }
+
+    private void allocateContents(int capacity) {
+	contentsItems = new int[capacity];
+	contentsFeatures = new int[capacity];
+	contentsModCount = new int[capacity];
+	contentsViews = new ContentsView[capacity];
+    }
+
+    private void growContents() {
+	int capacity = contentsCount * 2;
+	contentsItems = grow(contentsItems, capacity);
+	contentsFeatures = grow(contentsFeatures, capacity);
+	contentsModCount = grow(contentsModCount, capacity);
+	ContentsView[] views = new ContentsView[capacity];
+	System.arraycopy(contentsViews, 0, views, 0, contentsViews.length);
+	contentsViews = views;
+    }
+
+    private void allocateFeatures(int capacity) {
+	featureSlot = new int[capacity];
+	featureKind = new byte[capacity];
+	featureValue = new int[capacity];
+	featureObject = new Object[capacity];
+	featureNext = new int[capacity];
+    }
+
+    private void growFeatures() {
+	int capacity = featureCount * 2;
+	featureSlot = grow(featureSlot, capacity);
+	byte[] kinds = new byte[capacity];
+	System.arraycopy(featureKind, 0, kinds, 0, featureCount);
+	featureKind = kinds;
+	featureValue = grow(featureValue, capacity);
+	Object[] objects = new Object[capacity];
+	System.arraycopy(featureObject, 0, objects, 0, featureCount);
+	featureObject = objects;
+	featureNext = grow(featureNext, capacity);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+	int[] grown = new int[capacity];
+	System.arraycopy(array, 0, grown, 0, array.length);
+	return grown;
+    }
+
+
+    /**
+     * An item of an arena.
+     */
+    static class ItemView extends Item {
+	private final ItemArena arena;
+	private final int index;
+
+	ItemView(ItemArena arena, int index) {
+	    this.arena = arena;
+	    this.index = index;
+	}
+
+	public Relation getOwnerRelation() {
+	    return arena.relations[arena.itemRelation[index]];
+	}
+
+	public ItemContents getSharedContents() {
+	    return arena.contents(arena.itemContents[index]);
+	}
+
+	public boolean hasDaughters() {
+	    return arena.itemDaughter[index] != NONE;
+	}
+
+	public Item getDaughter() {
+	    return arena.item(arena.itemDaughter[index]);
+	}
+
+	public Item getNthDaughter(int which) {
+	    int d = arena.itemDaughter[index];
+	    for (int count = 0; count != which && d != NONE; count++) {
+		d = arena.itemNext[d];
+	    }
+	    return arena.item(d);
+	}
+
+	public Item getLastDaughter() {
+	    return arena.item(arena.lastDaughter(index));
+	}
+
+	public Item addDaughter(Item item) {
+	    return arena.addDaughter(index, item);
+	}
+
+	public Item getParent() {
+	    return arena.item(arena.parent(index));
+	}
+
+	public Item getNext() {
+	    return arena.item(arena.itemNext[index]);
+	}
+
+	public Item getPrevious() {
+	    return arena.item(arena.itemPrev[index]);
+	}
+
+	public Item appendItem(Item originalItem) {
+	    return arena.appendItem(index, originalItem);
+	}
+
+	void attach(Item item) {
+	    int n = arena.indexOf(item);
+	    arena.itemNext[index] = n;
+	    arena.itemPrev[n] = index;
+	}
+
+	public Item prependItem(Item originalItem) {
+	    return arena.prependItem(index, originalItem);
+	}
+    }
+
+
+    /**
+     * The contents of an item of an arena, which are also its feature
+     * set.
+     */
+    static class ContentsView extends ItemContents implements FeatureSet {
+	private final ItemArena arena;
+	private final int index;
+
+	ContentsView(ItemArena arena, int index) {
+	    super(null, null);
+	    this.arena = arena;
+	    this.index = index;
+	}
+
+	/**
+	 * Returns the number of times these features have been changed.
+	 *
+	 * @return the modification count
+	 */
+	int getModificationCount() {
+	    return arena.contentsModCount[index];
+	}
+
+	/**
+	 * Returns the feature in the given slot.
+	 *
+	 * @param slot the slot of the feature
+	 *
+	 * @return the value of the feature or null if it is not present
+	 */
+	Object getObject(int slot) {
+	    return arena.getObject(arena.findFeature(index, slot));
+	}
+
+	// ItemContents
+
+	public void addItemRelation(String relationName, Item item) {
+	    // the arena links an item to its contents when making it
+	    if (arena.itemContents[arena.indexOf(item)] != index) {
+		throw new IllegalArgumentException(
+			"item does not share these contents");
+	    }
+	}
+
+	public void removeItemRelation(String relationName) {
+	    arena.removeItemRelation(index, relationName);
+	}
+
+	public void showRelations() {
+	    PrintWriter pw = new PrintWriter(System.out);
+	    Utilities.dump(pw, 0, "Contents relations");
+	    for (int i = arena.contentsItems[index]; i != NONE;
+		    i = arena.itemNextShared[i]) {
+		Utilities.dump(pw, 4, arena.relations[arena.itemRelation[i]]
+			.getName() + "=" + arena.item(i));
+	    }
+	    pw.flush();
+	}
+
+	public Item getItemRelation(String relationName) {
+	    return arena.getItemRelation(index, relationName);
+	}
+
+	public FeatureSet getFeatures() {
+	    return this;
+	}
+
+	// FeatureSet
+
+	public boolean isPresent(String name) {
+	    return arena.findFeature(index, FeatureNames.findSlot(name)) != NONE;
+	}
+
+	public void remove(String name) {
+	    arena.removeFeature(index, FeatureNames.findSlot(name));
+	}
+
+	public String getString(String name) {
+	    return (String) getObject(name);
+	}
+
+	public int getInt(String name) {
+	    int f = arena.findFeature(index, FeatureNames.findSlot(name));
+	    if (f != NONE && arena.featureKind[f] == INT) {
+		return arena.featureValue[f];
+	    }
+	    return ((Integer) arena.getObject(f)).intValue();
+	}
+
+	public float getFloat(String name) {
+	    int f = arena.findFeature(index, FeatureNames.findSlot(name));
+	    if (f != NONE && arena.featureKind[f] == FLOAT) {
+		return Float.intBitsToFloat(arena.featureValue[f]);
+	    }
+	    return ((Float) arena.getObject(f)).floatValue();
+	}
+
+	public Object getObject(String name) {
+	    return getObject(FeatureNames.findSlot(name));
+	}
+
+	public void setInt(String name, int value) {
+	    arena.setInt(index, FeatureNames.getSlot(name), value);
+	}
+
+	public void setFloat(String name, float value) {
+	    arena.setFloat(index, FeatureNames.getSlot(name), value);
+	}
+
+	public void setString(String name, String value) {
+	    arena.setObject(index, FeatureNames.getSlot(name), value);
+	}
+
+	public void setObject(String name, Object value) {
+	    arena.setObject(index, FeatureNames.getSlot(name), value);
+	}
+
+	/**
+	 * Dumps the features in the same form as {@link SlotFeatureSet};
+	 * the feature name is not included.
+	 *
+	 * @param output where to send the formatted output
+	 * @param pad the padding
+	 * @param title the title
+	 */
+	public void dump(PrintWriter output, int pad, String title) {
+	    Utilities.dump(output, pad, title);
+	    for (int f = arena.contentsFeatures[index]; f != NONE;
+		    f = arena.featureNext[f]) {
+		String key = FeatureNames.getName(arena.featureSlot[f]);
+		if (!key.equals("name")) {
+		    SlotFeatureSet.dumpFeature(output, pad + 4, key,
+			    arena.getObject(f));
+		}
+	    }
+	}
+    }
+}
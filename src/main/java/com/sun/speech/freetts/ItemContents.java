@@ -11,21 +11,74 @@
 package com.sun.speech.freetts;
 import java.io.PrintWriter;
 
+import com.sun.speech.freetts.util.Utilities;
+
 /**
  * Contains the information that is shared between multiple items.
+ *
+ * <p>The features and relations are kept in {@link SlotFeatureSet}s.
+ * Setting the system property
+ * <code>com.sun.speech.freetts.mapFeatureSets</code> to
+ * <code>true</code> keeps them in {@link FeatureSetImpl}s instead.
  */
 public class ItemContents {
-    private FeatureSetImpl features;
-    private FeatureSetImpl relations;
+    /**
+     * If this system property is set to true, items keep their
+     * features in maps.
+     */
+    public final static String MAP_FEATURE_SETS_PROPERTY =
+	"com.sun.speech.freetts.mapFeatureSets";
+
+    private final static boolean MAP_FEATURE_SETS =
+	Utilities.getProperty(MAP_FEATURE_SETS_PROPERTY, "false").equals("true");
+
+    private FeatureSet features;
+    private FeatureSet relations;
 
     /**
      * Class Constructor.
      */
     public ItemContents() {
-	features = new FeatureSetImpl();
-	relations = new FeatureSetImpl();
+	if (MAP_FEATURE_SETS) {
+	    features = new FeatureSetImpl();
+	    relations = new FeatureSetImpl();
+	} else {
+	    features = new SlotFeatureSet();
+	    relations = new SlotFeatureSet();
+	}
+    }
+
+    /**
+     * Creates contents with the given feature sets.
+     *
+     * @param features the features
+     * @param relations the relation names and items
+     */
+    ItemContents(FeatureSet features, FeatureSet relations) {
+	this.features = features;
+	this.relations = relations;
     }
     
+    /**
+     * Sets the utterance whose items share these contents, so that a
+     * change to the features or relations counts as a change to the
+     * utterance.
+     *
+     * @param utterance the utterance
+     */
+    void setUtterance(Utterance utterance) {
+	setUtterance(features, utterance);
+	setUtterance(relations, utterance);
+    }
+
+    private static void setUtterance(FeatureSet set, Utterance utterance) {
+	if (set instanceof SlotFeatureSet) {
+	    ((SlotFeatureSet) set).setUtterance(utterance);
+	} else if (set instanceof FeatureSetImpl) {
+	    ((FeatureSetImpl) set).setUtterance(utterance);
+	}
+    }
+
     /**
      * Adds the given item to the set of relations. Whenever an item
      * is added to a relation, it should add the name and the Item reference
@@ -53,7 +106,11 @@ public class ItemContents {
     // for debugging
     public void showRelations() {
 	PrintWriter pw = new PrintWriter(System.out);
-	relations.dump(pw, 0, "Contents relations", true);
+	if (relations instanceof SlotFeatureSet) {
+	    ((SlotFeatureSet) relations).dump(pw, 0, "Contents relations", true);
+	} else {
+	    ((FeatureSetImpl) relations).dump(pw, 0, "Contents relations", true);
+	}
 	pw.flush();
     }
 
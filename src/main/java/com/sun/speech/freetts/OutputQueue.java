@@ -21,7 +21,7 @@ import java.util.LinkedList;
 public class OutputQueue {
     private LinkedList list = new LinkedList();
     private int size;
-    private final static int DEFAULT_SIZE = 5;
+    final static int DEFAULT_SIZE = 5;
     private volatile boolean closed = false;
 
     /**
@@ -110,6 +110,14 @@ public class OutputQueue {
     public synchronized void removeAll() {
         list.clear();
     }
+
+    /**
+     * Shows metrics for this queue. This queue keeps none.
+     *
+     * @param title the title for the metrics
+     */
+    public void showMetrics(String title) {
+    }
 }
 
 
@@ -15,6 +15,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,7 +35,14 @@ import com.sun.speech.freetts.util.Utilities;
  *
  * Instances of this class will optionally pre-compile the paths.
  * Pre-compiling paths reduces the processing time and objects needed
- * to extract a feature or an item based upon a path.
+ * to extract a feature or an item based upon a path.  A compiled path
+ * is an array of int opcodes, with relation names interned in a
+ * separate table.  The feature processor for the feature is looked up
+ * by the feature's slot in the voice's own table of processors.
+ *
+ * <p>Extractors returned by {@link #getInstance} are compiled when
+ * made and shared by every CART and by {@link Item#findFeature} and
+ * {@link Item#findItem}; they may be used from several threads.
  */
 public class PathExtractorImpl implements PathExtractor {
     /** Logger instance. */
@@ -55,17 +63,84 @@ public class PathExtractorImpl implements PathExtractor {
     public final static String LAZY_COMPILE_PROPERTY =
 	"com.sun.speech.freetts.lazyCartCompile";
 
-    private final static boolean INTERPRET_PATHS = 
+    final static boolean INTERPRET_PATHS = 
 	Utilities.getProperty(INTERPRET_PATHS_PROPERTY, "false").equals("true");
     private final static boolean LAZY_COMPILE  = 
 	Utilities.getProperty(LAZY_COMPILE_PROPERTY, "true").equals("true");
 
+    /**
+     * The most extractors kept by {@link #getInstance}; paths beyond
+     * this are compiled but not kept.
+     */
+    private final static int MAX_SHARED = 4096;
+
+    private final static Map sharedFeaturePaths = new ConcurrentHashMap();
+    private final static Map sharedItemPaths = new ConcurrentHashMap();
+
+    // path operations
+    private final static int OP_NEXT = 0;
+    private final static int OP_PREV = 1;
+    private final static int OP_NEXT_NEXT = 2;
+    private final static int OP_PREV_PREV = 3;
+    private final static int OP_PARENT = 4;
+    private final static int OP_DAUGHTER = 5;
+    private final static int OP_LAST_DAUGHTER = 6;
+    private final static int OP_RELATION = 7;  // followed by a relation index
+
+    private final static Map opcodes = new HashMap();
+
+    static {
+	opcodes.put("n", Integer.valueOf(OP_NEXT));
+	opcodes.put("p", Integer.valueOf(OP_PREV));
+	opcodes.put("nn", Integer.valueOf(OP_NEXT_NEXT));
+	opcodes.put("pp", Integer.valueOf(OP_PREV_PREV));
+	opcodes.put("parent", Integer.valueOf(OP_PARENT));
+	opcodes.put("daughter", Integer.valueOf(OP_DAUGHTER));
+	opcodes.put("daughter1", Integer.valueOf(OP_DAUGHTER));
+	opcodes.put("daughtern", Integer.valueOf(OP_LAST_DAUGHTER));
+	opcodes.put("R", Integer.valueOf(OP_RELATION));
+    }
+
     private String pathAndFeature;
     private String path;
     private String feature;
-    private Object[] compiledPath;
+    private int featureSlot = -1;
+    private volatile CompiledPath compiledPath;
     private boolean wantFeature = false;
 
+    /**
+     * Returns a compiled extractor for the given path, shared with
+     * every other caller asking for the same path.
+     *
+     * @param pathAndFeature the path, ending with a feature name if
+     *     <code>wantFeature</code> is true
+     * @param wantFeature <code>true</code> if the path ends with a
+     *     feature
+     *
+     * @return the extractor
+     */
+    public static PathExtractorImpl getInstance(String pathAndFeature,
+	    boolean wantFeature) {
+	Map shared = wantFeature ? sharedFeaturePaths : sharedItemPaths;
+	PathExtractorImpl extractor =
+	    (PathExtractorImpl) shared.get(pathAndFeature);
+	if (extractor == null) {
+	    extractor = new PathExtractorImpl(pathAndFeature, wantFeature);
+	    if (extractor.compiledPath == null && !INTERPRET_PATHS) {
+		extractor.compiledPath = compile(extractor.path);
+	    }
+	    if (shared.size() < MAX_SHARED) {
+		PathExtractorImpl previous = (PathExtractorImpl)
+		    ((ConcurrentHashMap) shared).putIfAbsent(
+			    pathAndFeature, extractor);
+		if (previous != null) {
+		    extractor = previous;
+		}
+	    }
+	}
+	return extractor;
+    }
+
     /**
      * Creates a path for the given feature.
      */
@@ -87,6 +162,7 @@ public class PathExtractorImpl implements PathExtractor {
 		feature = pathAndFeature.substring(lastDot + 1);
 		path = pathAndFeature.substring(0, lastDot);
 	    }
+	    featureSlot = FeatureNames.getSlot(feature);
 	    this.wantFeature = wantFeature;
 	} else {
 	    this.path = pathAndFeature;
@@ -108,40 +184,48 @@ public class PathExtractorImpl implements PathExtractor {
 	    return item.findItem(path);
 	}
 
-	if (compiledPath == null) {
-	    compiledPath = compile(path);
+	CompiledPath compiled = compiledPath;
+	if (compiled == null) {
+	    compiled = compile(path);
+	    compiledPath = compiled;
 	}
 
+	int[] ops = compiled.ops;
 	Item pitem = item;
 
-	for (int i = 0; pitem != null && i < compiledPath.length; ) {
-	    OpEnum op = (OpEnum) compiledPath[i++];
-	    if (op == OpEnum.NEXT) {
+	for (int i = 0; pitem != null && i < ops.length; i++) {
+	    switch (ops[i]) {
+	    case OP_NEXT:
 		pitem = pitem.getNext();
-	    } else if (op == OpEnum.PREV) {
+		break;
+	    case OP_PREV:
 		pitem = pitem.getPrevious();
-	    } else if (op == OpEnum.NEXT_NEXT) {
+		break;
+	    case OP_NEXT_NEXT:
 		pitem = pitem.getNext();
 		if (pitem != null) {
 		    pitem = pitem.getNext();
 		}
-	    } else if (op == OpEnum.PREV_PREV) {
+		break;
+	    case OP_PREV_PREV:
 		pitem = pitem.getPrevious();
 		if (pitem != null) {
 		    pitem = pitem.getPrevious();
 		}
-	    } else if (op == OpEnum.PARENT) {
+		break;
+	    case OP_PARENT:
 		pitem = pitem.getParent();
-	    } else if (op == OpEnum.DAUGHTER) {
+		break;
+	    case OP_DAUGHTER:
 		pitem = pitem.getDaughter();
-	    } else if (op == OpEnum.LAST_DAUGHTER) {
+		break;
+	    case OP_LAST_DAUGHTER:
 		pitem = pitem.getLastDaughter();
-	    } else if (op == OpEnum.RELATION) {
-		String relationName = (String) compiledPath[i++];
+		break;
+	    default:  // OP_RELATION
+		String relationName = compiled.relations[ops[++i]];
 		pitem = pitem.getSharedContents().getItemRelation(relationName);
-	    } else {
-		System.out.println("findItem: bad feature " + op +
-			" in " + path);
+		break;
 	    }
 	}
 	return pitem;
@@ -167,25 +251,11 @@ public class PathExtractorImpl implements PathExtractor {
 	            LOGGER.finer("findFeature: Item [" + pitem + "], feature '" 
 	                    + feature + "'");
 	        }
-
-	    FeatureProcessor fp =
-		pitem.getOwnerRelation().getUtterance().
-		    getVoice().getFeatureProcessor(feature);
-
-	    if (fp != null) {
-	        if (LOGGER.isLoggable(Level.FINER)) {
-	            LOGGER.finer(
-	                    "findFeature: There is a feature processor for '" 
-	                    + feature + "'");
-	        }
-		try {
-		    results = fp.process(pitem);
-		} catch (ProcessException pe) {
-		    LOGGER.severe("trouble while processing " + fp);
-		     throw new Error(pe);
-		}
-	    } else {
-		results = pitem.getFeatures().getObject(feature);
+	    try {
+		results = getFeature(pitem);
+	    } catch (ProcessException pe) {
+		LOGGER.severe("trouble while processing " + feature);
+		throw new Error(pe);
 	    }
 	}
 
@@ -196,36 +266,98 @@ public class PathExtractorImpl implements PathExtractor {
 	return results;
     }
 
-
     /**
-     * Compiles the given path into the compiled form
-     * @param path the path to compile
-     * @return the compiled form which is in the form
-     * of an array path traversal enums and associated strings
+     * Returns the feature of an item found by this path, from the
+     * voice's feature processor for the feature if there is one, and
+     * otherwise from the item's features.
+     *
+     * @param pitem the item at the end of the path
+     *
+     * @return the feature, or <code>null</code> if there is none
+     *
+     * @throws ProcessException if the feature processor fails
      */
-    private Object[] compile(String path) {
-	List list = new ArrayList();
-
-	if (path == null) {
-	    return list.toArray();
+    Object getFeature(Item pitem) throws ProcessException {
+	Utterance utterance = pitem.getOwnerRelation().getUtterance();
+	FeatureProcessor fp = getFeatureProcessor(utterance.getVoice());
+
+	if (fp != null) {
+	    if (LOGGER.isLoggable(Level.FINER)) {
+		LOGGER.finer(
+			"findFeature: There is a feature processor for '" 
+			+ feature + "'");
+	    }
+	    FeatureMemo memo = utterance.getFeatureMemo();
+	    if (memo == null) {
+		return fp.process(pitem);
+	    }
+	    return memo.process(fp, featureSlot, pitem);
 	}
+	FeatureSet features = pitem.getFeatures();
+	if (features instanceof SlotFeatureSet) {
+	    return ((SlotFeatureSet) features).getObject(featureSlot);
+	} else if (features instanceof ItemArena.ContentsView) {
+	    return ((ItemArena.ContentsView) features).getObject(featureSlot);
+	}
+	return features.getObject(feature);
+    }
+
+    /**
+     * Returns the voice's processor for the feature of this path.  The
+     * voice keeps its processors by feature slot, so the extractor
+     * holds no reference to any voice and may be shared by all of them.
+     *
+     * @param voice the voice
+     *
+     * @return the processor, or <code>null</code> if the voice has
+     *     none for the feature
+     */
+    private FeatureProcessor getFeatureProcessor(Voice voice) {
+	return voice.getFeatureProcessor(featureSlot);
+    }
 
-	StringTokenizer tok = new StringTokenizer(path, ":.");
 
-	while (tok.hasMoreTokens()) {
-	    String token = tok.nextToken();
-	    OpEnum op = OpEnum.getInstance(token);
-	    if (op == null) {
-		throw new Error("Bad path compiled " + path);
-	    } 
+    /**
+     * Compiles the given path into the compiled form.  Tokens that
+     * are not path operations are logged and left out, as walking the
+     * path in {@link Item#findItem} leaves them out when paths are
+     * interpreted.
+     * @param path the path to compile
+     * @return the compiled form: the opcodes of the path and the
+     * names of the relations it visits
+     */
+    private static CompiledPath compile(String path) {
+	List ops = new ArrayList();
+	List relations = new ArrayList();
+
+	if (path != null) {
+	    StringTokenizer tok = new StringTokenizer(path, ":.");
+
+	    while (tok.hasMoreTokens()) {
+		String token = tok.nextToken();
+		Integer op = (Integer) opcodes.get(token);
+		if (op == null || (op.intValue() == OP_RELATION
+			    && !tok.hasMoreTokens())) {
+		    LOGGER.warning("Bad path compiled: " + token
+			    + " in " + path);
+		    continue;
+		}
 
-	    list.add(op);
+		ops.add(op);
 
-	    if (op == OpEnum.RELATION) {
-		list.add(tok.nextToken());
+		if (op.intValue() == OP_RELATION) {
+		    ops.add(Integer.valueOf(relations.size()));
+		    relations.add(tok.nextToken().intern());
+		}
 	    }
 	}
-	return list.toArray();
+
+	int[] opArray = new int[ops.size()];
+	for (int i = 0; i < opArray.length; i++) {
+	    opArray[i] = ((Integer) ops.get(i)).intValue();
+	}
+	return new CompiledPath(opArray, (String[])
+		relations.toArray(new String[relations.size()]));
     }
 
     // inherited for Object
@@ -241,47 +373,17 @@ public class PathExtractorImpl implements PathExtractor {
     public void writeBinary();
     public void readBinary();
     */
-}
-
-
-/**
- * An enumerated type associated with path operations.
- */
-class OpEnum {
-    static private Map map = new HashMap();
-
-    public final static OpEnum NEXT = new OpEnum("n");
-    public final static OpEnum PREV = new OpEnum("p");
-    public final static OpEnum NEXT_NEXT = new OpEnum("nn");
-    public final static OpEnum PREV_PREV = new OpEnum("pp");
-    public final static OpEnum PARENT = new OpEnum("parent");
-    public final static OpEnum DAUGHTER = new OpEnum("daughter");
-    public final static OpEnum LAST_DAUGHTER = new OpEnum("daughtern");
-    public final static OpEnum RELATION = new OpEnum("R");
-
-    private String name;
 
     /**
-     * Creates a new OpEnum.. There is a limited
-     * set of OpEnums
-     * @param name the path name for this Enum
+     * A compiled path.  Immutable, so it may be shared between threads.
      */
-    private OpEnum(String name) {
-	this.name = name;
-	map.put(name, this);
-    }
+    private static class CompiledPath {
+	final int[] ops;
+	final String[] relations;
 
-    /**
-     * gets an OpEnum thats associated with
-     * the given name.
-     * @param name the name of the OpEnum of interest
-     */
-    public static OpEnum getInstance(String name) {
-	return (OpEnum) map.get(name);
-    }
-
-    // inherited from Object
-    public String toString() {
-	return name;
+	CompiledPath(int[] ops, String[] relations) {
+	    this.ops = ops;
+	    this.relations = relations;
+	}
     }
 }
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.speech.freetts.audio.AudioPlayer;
+
+/**
+ * An <code>OutputQueue</code> that keeps one {@link RingOutputQueue}
+ * and one output thread per audio player.  Voices that play through
+ * different audio players (for instance several voices rendering to
+ * files at once) no longer wait for each other, while the utterances
+ * of any one player are still played in the order they were posted.
+ *
+ * <p>A lane is idle once everything posted to it has been played.  A
+ * player without a lane takes over an idle lane if there is one, and
+ * only otherwise gets a new lane and thread, so there are never more
+ * lanes than players playing at once.  A program that sets a new
+ * audio player for every file does not collect a thread per file.
+ *
+ * <p>The output threads are started by this queue, one for each lane,
+ * so no thread should be started to <code>pend</code> on the queue
+ * itself.
+ */
+public class PlayerOutputQueue extends OutputQueue {
+    private final int capacity;
+    private final Map lanes = new IdentityHashMap();
+    private boolean closed = false;
+
+    /**
+     * Creates a queue whose lanes each hold up to
+     * <code>capacity</code> utterances.
+     *
+     * @param capacity the size of each lane
+     */
+    public PlayerOutputQueue(int capacity) {
+	super(capacity);
+	this.capacity = capacity;
+    }
+
+    /**
+     * Posts the given utterance to the lane of its voice's audio
+     * player. This call will block if that lane is full.
+     *
+     * @param utterance the utterance to post
+     *
+     * @throws IllegalStateException if the queue is closed
+     */
+    public void post(Utterance utterance) {
+	Lane lane = getLane(utterance.getVoice().getAudioPlayer());
+	boolean posted = false;
+	try {
+	    posted = lane.postUtterance(utterance);
+	} finally {
+	    if (!posted) {
+		lane.busy.decrementAndGet();
+	    }
+	}
+    }
+
+    /**
+     * Closes every lane. Utterances already posted are still played.
+     */
+    public synchronized void close() {
+	closed = true;
+	for (Iterator i = lanes.values().iterator(); i.hasNext(); ) {
+	    ((OutputQueue) i.next()).close();
+	}
+    }
+
+    /**
+     * Determines if the queue is closed.
+     *
+     * @return  true the queue is closed; otherwise false
+     */
+    public synchronized boolean isClosed() {
+	return closed;
+    }
+
+    /**
+     * Removes all items from every lane.
+     */
+    public void removeAll() {
+	for (Iterator i = getLanes().iterator(); i.hasNext(); ) {
+	    ((OutputQueue) i.next()).removeAll();
+	}
+    }
+
+    /**
+     * Returns the number of lanes, which is the most audio players
+     * that have played at once.
+     *
+     * @return the number of lanes
+     */
+    public synchronized int getLaneCount() {
+	return lanes.size();
+    }
+
+    /**
+     * Shows the metrics of every lane.
+     *
+     * @param title the title for the metrics
+     */
+    public void showMetrics(String title) {
+	List list = getLanes();
+	for (int i = 0; i < list.size(); i++) {
+	    ((OutputQueue) list.get(i)).showMetrics(title + " lane " + (i + 1));
+	}
+    }
+
+    /**
+     * Returns the lane for the given player, counting the utterance
+     * about to be posted to it.  A player without a lane takes over an
+     * idle lane, or else gets a new lane and output thread.
+     *
+     * @param player the audio player
+     *
+     * @return the lane
+     *
+     * @throws IllegalStateException if the queue is closed
+     */
+    private synchronized Lane getLane(AudioPlayer player) {
+	Lane lane = (Lane) lanes.get(player);
+	if (lane == null) {
+	    if (closed) {
+		throw new IllegalStateException("output queue closed");
+	    }
+	    for (Iterator i = lanes.values().iterator(); i.hasNext(); ) {
+		Lane idle = (Lane) i.next();
+		if (idle.busy.get() == 0) {
+		    // forget the old player, so it can be collected
+		    i.remove();
+		    lane = idle;
+		    break;
+		}
+	    }
+	    if (lane == null) {
+		lane = new Lane(capacity);
+		Voice.startOutputThread(lane,
+			"FreeTTS-output-" + (lanes.size() + 1));
+	    }
+	    lanes.put(player, lane);
+	}
+	// counted while the lock is held, so the lane can't be taken over
+	// between here and the post
+	lane.busy.incrementAndGet();
+	return lane;
+    }
+
+    private synchronized List getLanes() {
+	return new ArrayList(lanes.values());
+    }
+
+    /**
+     * A lane that counts the utterances posted to it and not yet
+     * played.  The output thread has played an utterance when it comes
+     * back for the next one.
+     */
+    private static class Lane extends RingOutputQueue {
+	private final AtomicInteger busy = new AtomicInteger();
+	private boolean playing = false;	// used by the output thread
+
+	Lane(int capacity) {
+	    super(capacity);
+	}
+
+	public Utterance pend() {
+	    if (playing) {
+		playing = false;
+		busy.decrementAndGet();
+	    }
+	    Utterance utterance = super.pend();
+	    playing = (utterance != null);
+	    return utterance;
+	}
+
+	public void removeAll() {
+	    busy.addAndGet(-drain());
+	}
+    }
+}
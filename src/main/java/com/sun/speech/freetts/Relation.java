@@ -183,7 +183,12 @@ public class Relation implements Dumpable {
 	} else {
 	    contents = originalItem.getSharedContents();
 	}
-	newItem = new Item(this, contents);
+	ItemArena arena = owner.getArena();
+	if (arena == null) {
+	    newItem = new Item(this, contents);
+	} else {
+	    newItem = arena.createItem(this, contents);
+	}
 	if (head == null) {
 	    head = newItem;
 	}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An <code>OutputQueue</code> backed by a bounded lock free ring
+ * buffer.  Any number of threads may post and pend at once; neither
+ * side ever takes a lock.  A thread that finds the ring full (or
+ * empty) parks until the other side makes room (or posts), so an idle
+ * queue costs no CPU.  A waiting thread registers before it looks at
+ * the ring a last time and parks without a timeout; the thread that
+ * changes the ring wakes one registered waiter.
+ *
+ * <p>Unlike the original queue, a producer interrupted while waiting
+ * for room keeps its interrupt status and cancels the utterance's
+ * speakable instead of looping forever, and a consumer interrupted
+ * in <code>pend</code> returns <code>null</code> with its interrupt
+ * status set.  Utterances posted before <code>close</code> are still
+ * handed out; after that <code>pend</code> returns <code>null</code>.
+ *
+ * <p>The queue keeps the depth and the time spent waiting on each
+ * side; see {@link #showMetrics}.
+ *
+ * <p>The ring is the bounded MPMC queue described by Dmitry Vyukov:
+ * every slot carries a sequence number that tells producers and
+ * consumers whose turn it is.  A single slot can't tell a full ring
+ * from an empty one, so a queue of capacity 1 gets a ring of two and
+ * producers keep it to one utterance.
+ */
+public class RingOutputQueue extends OutputQueue {
+    private final int capacity;
+    private final int slots;
+    private final AtomicReferenceArray items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final ConcurrentLinkedQueue producersWaiting =
+	new ConcurrentLinkedQueue();
+    private final ConcurrentLinkedQueue consumersWaiting =
+	new ConcurrentLinkedQueue();
+    private volatile boolean closed = false;
+
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+    private final AtomicLong postWaitNanos = new AtomicLong();
+    private final AtomicLong pendWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a queue that holds up to <code>capacity</code> utterances.
+     *
+     * @param capacity the size of the queue
+     */
+    public RingOutputQueue(int capacity) {
+	super(capacity);
+	if (capacity < 1) {
+	    throw new IllegalArgumentException("capacity must be at least 1");
+	}
+	this.capacity = capacity;
+	slots = Math.max(capacity, 2);
+	items = new AtomicReferenceArray(slots);
+	sequences = new AtomicLongArray(slots);
+	for (int i = 0; i < slots; i++) {
+	    sequences.set(i, i);
+	}
+    }
+
+    /**
+     * Posts the given utterance to the queue. This call will block if
+     * the queue is full.  If the calling thread is interrupted while
+     * it waits, the utterance is dropped and its speakable cancelled.
+     *
+     * @param utterance the utterance to post
+     *
+     * @throws IllegalStateException if the queue is closed
+     */
+    public void post(Utterance utterance) {
+	postUtterance(utterance);
+    }
+
+    /**
+     * Posts the given utterance as {@link #post} does, and tells
+     * whether it was posted.
+     *
+     * @param utterance the utterance to post
+     *
+     * @return <code>false</code> if the calling thread was interrupted
+     *     and the utterance dropped
+     *
+     * @throws IllegalStateException if the queue is closed
+     */
+    boolean postUtterance(Utterance utterance) {
+	if (closed) {
+	    throw new IllegalStateException("output queue closed");
+	}
+	if (!offer(utterance)) {
+	    long start = System.nanoTime();
+	    Thread self = Thread.currentThread();
+	    try {
+		while (true) {
+		    producersWaiting.add(self);
+		    // look again after registering so a pend that just
+		    // made room can't be missed
+		    if (offer(utterance)) {
+			break;
+		    }
+		    if (closed) {
+			utterance.getSpeakable().cancelled();
+			throw new IllegalStateException("output queue closed");
+		    }
+		    LockSupport.park(this);
+		    producersWaiting.remove(self);
+		    if (Thread.interrupted()) {
+			self.interrupt();
+			utterance.getSpeakable().cancelled();
+			return false;
+		    }
+		}
+	    } finally {
+		producersWaiting.remove(self);
+		postWaitNanos.addAndGet(System.nanoTime() - start);
+	    }
+	    // a pend may have woken this thread after it found room by
+	    // itself; pass the wake on if there is room left
+	    if (getDepth() < capacity) {
+		wakeOne(producersWaiting);
+	    }
+	}
+	posted.incrementAndGet();
+	updateMaxDepth();
+	wakeOne(consumersWaiting);
+	return true;
+    }
+
+    /**
+     * Blocks until there is an utterance in the queue.
+     *
+     * @return the next utterance. Once the queue is closed and empty,
+     *     or if the calling thread is interrupted, a null is returned.
+     */
+    public Utterance pend() {
+	Utterance utterance = poll();
+	if (utterance == null) {
+	    long start = System.nanoTime();
+	    Thread self = Thread.currentThread();
+	    try {
+		while (true) {
+		    consumersWaiting.add(self);
+		    utterance = poll();
+		    if (utterance != null || closed) {
+			break;
+		    }
+		    LockSupport.park(this);
+		    consumersWaiting.remove(self);
+		    if (Thread.interrupted()) {
+			self.interrupt();
+			return null;
+		    }
+		}
+	    } finally {
+		consumersWaiting.remove(self);
+		pendWaitNanos.addAndGet(System.nanoTime() - start);
+	    }
+	    // a post may have woken this thread after it found an
+	    // utterance by itself; pass the wake on if more are waiting
+	    if (utterance != null && getDepth() > 0) {
+		wakeOne(consumersWaiting);
+	    }
+	}
+	if (utterance != null) {
+	    wakeOne(producersWaiting);
+	}
+	return utterance;
+    }
+
+    /**
+     * Closes the queue. Utterances already in the queue can still be
+     * pended.
+     */
+    public void close() {
+	closed = true;
+	wakeAll(consumersWaiting);
+	wakeAll(producersWaiting);
+    }
+
+    /**
+     * Determines if the queue is closed.
+     *
+     * @return  true the queue is closed; otherwise false
+     */
+    public boolean isClosed() {
+	return closed;
+    }
+
+    /**
+     * Removes all items from this OutputQueue.
+     */
+    public void removeAll() {
+	drain();
+    }
+
+    /**
+     * Removes all items, as {@link #removeAll} does.
+     *
+     * @return the number of utterances removed
+     */
+    int drain() {
+	int removed = 0;
+	while (poll() != null) {
+	    removed++;
+	}
+	wakeAll(producersWaiting);
+	return removed;
+    }
+
+    /**
+     * Returns the number of utterances waiting in the queue.
+     *
+     * @return the depth of the queue
+     */
+    public int getDepth() {
+	long depth = tail.get() - head.get();
+	return (int) Math.max(0, Math.min(depth, capacity));
+    }
+
+    /**
+     * Returns the largest depth seen so far.
+     *
+     * @return the maximum depth
+     */
+    public int getMaxDepth() {
+	return (int) maxDepth.get();
+    }
+
+    /**
+     * Returns the capacity of the queue.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+	return capacity;
+    }
+
+    /**
+     * Returns the number of utterances posted so far.
+     *
+     * @return the number of utterances posted
+     */
+    public long getPostCount() {
+	return posted.get();
+    }
+
+    /**
+     * Returns the total time producers spent waiting for room.
+     *
+     * @return the time in milliseconds
+     */
+    public double getPostWaitMillis() {
+	return postWaitNanos.get() / 1000000.0;
+    }
+
+    /**
+     * Returns the total time consumers spent waiting for utterances.
+     *
+     * @return the time in milliseconds
+     */
+    public double getPendWaitMillis() {
+	return pendWaitNanos.get() / 1000000.0;
+    }
+
+    /**
+     * Shows the depth and wait times of this queue.
+     *
+     * @param title the title for the metrics
+     */
+    public void showMetrics(String title) {
+	System.out.println("Output queue " + title + ":");
+	System.out.println("   capacity     " + getCapacity());
+	System.out.println("   posted       " + getPostCount());
+	System.out.println("   depth        " + getDepth()
+		+ " (max " + getMaxDepth() + ")");
+	System.out.println("   post wait    " + getPostWaitMillis() + " ms");
+	System.out.println("   pend wait    " + getPendWaitMillis() + " ms");
+    }
+
+    /**
+     * Adds the utterance if there is room.
+     *
+     * @param utterance the utterance
+     *
+     * @return <code>true</code> if the utterance was added
+     */
+    private boolean offer(Utterance utterance) {
+	while (true) {
+	    long pos = tail.get();
+	    if (pos - head.get() >= capacity) {
+		return false;
+	    }
+	    int index = (int) (pos % slots);
+	    long dif = sequences.get(index) - pos;
+	    if (dif == 0) {
+		if (tail.compareAndSet(pos, pos + 1)) {
+		    items.set(index, utterance);
+		    sequences.set(index, pos + 1);
+		    return true;
+		}
+	    } else if (dif < 0) {
+		return false;
+	    }
+	}
+    }
+
+    /**
+     * Removes the oldest utterance, if there is one.
+     *
+     * @return the utterance or <code>null</code> if the queue is empty
+     */
+    private Utterance poll() {
+	while (true) {
+	    long pos = head.get();
+	    int index = (int) (pos % slots);
+	    long dif = sequences.get(index) - (pos + 1);
+	    if (dif == 0) {
+		if (head.compareAndSet(pos, pos + 1)) {
+		    Utterance utterance = (Utterance) items.get(index);
+		    items.set(index, null);
+		    sequences.set(index, pos + slots);
+		    return utterance;
+		}
+	    } else if (dif < 0) {
+		return null;
+	    }
+	}
+    }
+
+    private void updateMaxDepth() {
+	long depth = tail.get() - head.get();
+	long max;
+	while (depth > (max = maxDepth.get())) {
+	    if (maxDepth.compareAndSet(max, depth)) {
+		break;
+	    }
+	}
+    }
+
+    private static void wakeOne(ConcurrentLinkedQueue waiting) {
+	Thread t = (Thread) waiting.poll();
+	if (t != null) {
+	    LockSupport.unpark(t);
+	}
+    }
+
+    private static void wakeAll(ConcurrentLinkedQueue waiting) {
+	Thread t;
+	while ((t = (Thread) waiting.poll()) != null) {
+	    LockSupport.unpark(t);
+	}
+    }
+}
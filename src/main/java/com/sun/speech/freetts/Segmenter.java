@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.sun.speech.freetts.lexicon.Lexicon;
+import com.sun.speech.freetts.lexicon.PhoneSequences;
 
 /**
  * Annotates an utterance with <code>Relation.SYLLABLE</code>,
@@ -71,31 +72,34 @@ public class Segmenter implements UtteranceProcessor {
 	Relation seg = utterance.createRelation(Relation.SEGMENT);
 	Lexicon lex = utterance.getVoice().getLexicon();
 	List syllableList = null;
+	String[][] tokenPhones = new String[
+	    countItems(utterance.getRelation(Relation.WORD))][];
+	PhoneSequences sequences = lookupPhones(utterance, lex, tokenPhones);
+	int w = 0;
+	int lexWord = 0;
 
 	for (Item word = utterance.getRelation(Relation.WORD).getHead();
-			word != null; word = word.getNext()) {
+			word != null; word = word.getNext(), w++) {
 	    Item ssword = sylstructure.appendItem(word);
 	    Item sylItem = null;   // item denoting syllable boundaries
 	    Item segItem = null;   // item denoting phonelist (segments)
 	    Item sssyl = null;     // item denoting syl in word
 
-	    String[] phones = null;
-
-	    Item token = word.getItemAs("Token");
-	    FeatureSet featureSet = null;
-
-	    if (token != null) {
-		Item parent = token.getParent();
-		featureSet = parent.getFeatures();
-	    }
-	    
-	    if (featureSet != null && featureSet.isPresent("phones")) {
-		phones = (String[]) featureSet.getObject("phones");
+	    // the phones of the word are phones[start] to phones[end - 1]
+	    String[] phones = tokenPhones[w];
+	    int start = 0;
+	    int end;
+	    if (phones == null) {
+		phones = sequences.getPhoneArray();
+		start = sequences.getPhoneStart(lexWord);
+		end = start + sequences.getPhoneCount(lexWord);
+		lexWord++;
 	    } else {
-		phones = lex.getPhones(word.toString(), null);
+		end = phones.length;
 	    }
 
-	    for (int j = 0; j < phones.length; j++) {
+	    for (int j = start; j < end; j++) {
+		String phone = phones[j];
 		if (sylItem == null) {
 		    sylItem = syl.appendItem();
 		    sssyl = ssword.addDaughter(sylItem);
@@ -103,14 +107,15 @@ public class Segmenter implements UtteranceProcessor {
 		    syllableList = new ArrayList();
 		}
 		segItem = seg.appendItem();
-		if (isStressed(phones[j])) {
+		if (isStressed(phone)) {
 		    stress = STRESS;
-		    phones[j] = deStress(phones[j]);
+		    phone = deStress(phone);
 		}
-		segItem.getFeatures().setString("name", phones[j]);
+		segItem.getFeatures().setString("name", phone);
 		sssyl.addDaughter(segItem);
-		syllableList.add(phones[j]);
-		if (lex.isSyllableBoundary(syllableList, phones, j + 1))  { 
+		syllableList.add(phone);
+		if (lex.isSyllableBoundary(syllableList, phones, start, end,
+			    j + 1))  { 
 		    sylItem =  null;
 		    if (sssyl != null) {
 			sssyl.getFeatures().setString("stress", stress);
@@ -120,6 +125,74 @@ public class Segmenter implements UtteranceProcessor {
 	}
     }
 
+    /**
+     * Looks up, in one call to the lexicon, the phones of every word
+     * that doesn't carry its own.
+     *
+     * @param utterance the utterance
+     * @param lex the lexicon
+     * @param tokenPhones filled in with the phones each word carries,
+     *     or <code>null</code> for a word that has none; as long as the
+     *     word relation
+     *
+     * @return the phones of the words, in order, leaving out those
+     *     with phones of their own
+     */
+    private PhoneSequences lookupPhones(Utterance utterance, Lexicon lex,
+	    String[][] tokenPhones) {
+	String[] words = new String[tokenPhones.length];
+	int count = 0;
+	int w = 0;
+	for (Item word = utterance.getRelation(Relation.WORD).getHead();
+			word != null; word = word.getNext(), w++) {
+	    tokenPhones[w] = getTokenPhones(word);
+	    if (tokenPhones[w] == null) {
+		words[count++] = word.toString();
+	    }
+	}
+	if (count < words.length) {
+	    String[] lexWords = new String[count];
+	    System.arraycopy(words, 0, lexWords, 0, count);
+	    words = lexWords;
+	}
+	return lex.getPhones(words, null);
+    }
+
+    /**
+     * Returns the number of items in a relation.
+     *
+     * @param relation the relation
+     *
+     * @return the number of items
+     */
+    private static int countItems(Relation relation) {
+	int count = 0;
+	for (Item item = relation.getHead(); item != null;
+		item = item.getNext()) {
+	    count++;
+	}
+	return count;
+    }
+
+    /**
+     * Returns the phones given for a word by its token, if any.  The
+     * array must not be changed.
+     *
+     * @param word the word
+     *
+     * @return the phones, or <code>null</code> if the token has none
+     */
+    private String[] getTokenPhones(Item word) {
+	Item token = word.getItemAs("Token");
+	if (token != null) {
+	    FeatureSet featureSet = token.getParent().getFeatures();
+	    if (featureSet != null && featureSet.isPresent("phones")) {
+		return (String[]) featureSet.getObject("phones");
+	    }
+	}
+	return null;
+    }
+
     /**
      * Determines if the given phonemene is stressed.
      * To determine stress, this method relies upon
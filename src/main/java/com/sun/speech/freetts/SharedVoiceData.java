@@ -0,0 +1,207 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/**
+ * A process-wide registry of the read-only data of voices: unit
+ * databases, CARTs, phone sets, phone durations, FSMs and the like.
+ * The data is keyed by the kind of data and the URL it is loaded
+ * from, so voices that use the same resources share one copy of it,
+ * and only the state each voice changes is its own.  Data put in the
+ * registry must not be changed after it is loaded, and must be safe
+ * to use from several threads.
+ *
+ * <p>Each {@link #acquire} counts a reference to the data, and each
+ * {@link #release} drops one; when none are left the registry forgets
+ * the data, and it is freed once no voice uses it.  Voices acquire
+ * their data with {@link Voice#getSharedData} and release it when
+ * they are deallocated.
+ *
+ * <p>Sharing may be turned off with the following property, in which
+ * case every acquire loads a copy of its own:
+ *
+ * <pre>
+ *   -Dcom.sun.speech.freetts.voice.sharedData=false
+ * </pre>
+ */
+public class SharedVoiceData {
+    /**
+     * The property that turns sharing on or off.
+     */
+    public final static String SHARED_DATA_PROPERTY =
+	"com.sun.speech.freetts.voice.sharedData";
+
+    /**
+     * Loads the data of a resource.
+     */
+    public interface Loader {
+	/**
+	 * Loads the data from the given URL.
+	 *
+	 * @param url the resource to load
+	 *
+	 * @return the data
+	 *
+	 * @throws IOException if the data cannot be loaded
+	 */
+	Object load(URL url) throws IOException;
+    }
+
+    /**
+     * Data in the registry and the number of references to it.
+     */
+    private static class Entry {
+	private Object data;
+	private int references;
+    }
+
+    private static Map entries = new HashMap();
+    private static long loads = 0;
+    private static long shares = 0;
+
+    private SharedVoiceData() {
+    }
+
+    /**
+     * Returns <code>true</code> if voices share their data.
+     *
+     * @return <code>true</code> if sharing is on
+     */
+    public static boolean isShared() {
+	return Utilities.getProperty(SHARED_DATA_PROPERTY,
+		"true").equals("true");
+    }
+
+    /**
+     * Gets the data of the given kind loaded from the given URL,
+     * loading it if no one holds it, and counts a reference to it.
+     * Several threads may acquire the same data at once; it is loaded
+     * once, and data of other resources is loaded meanwhile.
+     *
+     * @param kind the kind of data, such as <code>"cart"</code>; data
+     *     of different kinds may be loaded from the same URL
+     * @param url the resource the data is loaded from
+     * @param loader loads the data if it is not in the registry
+     *
+     * @return the data
+     *
+     * @throws IOException if the data cannot be loaded
+     */
+    public static Object acquire(String kind, URL url, Loader loader)
+	    throws IOException {
+	if (url == null || !isShared()) {
+	    return loader.load(url);
+	}
+	String key = key(kind, url);
+	Entry entry;
+	synchronized (entries) {
+	    entry = (Entry) entries.get(key);
+	    if (entry == null) {
+		entry = new Entry();
+		entries.put(key, entry);
+	    }
+	    entry.references++;
+	}
+
+	// load outside the registry lock, so other resources load too
+	boolean loaded = false;
+	try {
+	    synchronized (entry) {
+		if (entry.data == null) {
+		    entry.data = loader.load(url);
+		    synchronized (entries) {
+			loads++;
+		    }
+		} else {
+		    synchronized (entries) {
+			shares++;
+		    }
+		}
+		loaded = true;
+		return entry.data;
+	    }
+	} finally {
+	    if (!loaded) {
+		release(kind, url);
+	    }
+	}
+    }
+
+    /**
+     * Drops a reference to data acquired with {@link #acquire}.  When
+     * no references are left the registry forgets the data.
+     *
+     * @param kind the kind of data
+     * @param url the resource the data was loaded from
+     */
+    public static void release(String kind, URL url) {
+	if (url == null) {
+	    return;
+	}
+	String key = key(kind, url);
+	synchronized (entries) {
+	    Entry entry = (Entry) entries.get(key);
+	    if (entry != null && --entry.references <= 0) {
+		entries.remove(key);
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of references to the data of the given kind
+     * loaded from the given URL.
+     *
+     * @param kind the kind of data
+     * @param url the resource the data was loaded from
+     *
+     * @return the number of references, or 0 if the data is not in
+     *     the registry
+     */
+    public static int getReferenceCount(String kind, URL url) {
+	synchronized (entries) {
+	    Entry entry = (Entry) entries.get(key(kind, url));
+	    return entry == null ? 0 : entry.references;
+	}
+    }
+
+    /**
+     * Shows what is in the registry, and how often data was loaded
+     * and how often it was shared.
+     *
+     * @param title the title for the metrics
+     */
+    public static void showMetrics(String title) {
+	synchronized (entries) {
+	    int references = 0;
+	    for (Iterator i = entries.values().iterator(); i.hasNext(); ) {
+		references += ((Entry) i.next()).references;
+	    }
+	    System.out.println("Shared voice data " + title + ":");
+	    System.out.println("   resources    " + entries.size());
+	    System.out.println("   references   " + references);
+	    System.out.println("   loads        " + loads);
+	    System.out.println("   shares       " + shares);
+	}
+    }
+
+    /**
+     * URL.equals may resolve host names, so entries are keyed by the
+     * text of the URL.
+     */
+    private static String key(String kind, URL url) {
+	return kind + ' ' + url.toExternalForm();
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/**
+ * A FeatureSet kept in a few small arrays instead of a map.  Features
+ * are found by their slot in {@link FeatureNames}; int and float
+ * values are stored unboxed, and the array for other values is only
+ * made when one is set.  Items carry a handful of features each, so a
+ * scan of the slots is quicker than hashing, and a set costs a few
+ * dozen bytes rather than a map and an entry per feature.
+ *
+ * <p>Behaves as {@link FeatureSetImpl}: features keep the order they
+ * were first set in, and <code>getInt</code>, <code>getFloat</code>
+ * and <code>getString</code> throw <code>ClassCastException</code> for
+ * a feature of another type.  <code>getObject</code> boxes int and
+ * float features.
+ */
+public class SlotFeatureSet implements FeatureSet {
+    private final static byte INT = 0;
+    private final static byte FLOAT = 1;
+    private final static byte OBJECT = 2;
+
+    private static DecimalFormat formatter;
+
+    private int size = 0;
+    private int[] slots = new int[4];
+    private byte[] kinds = new byte[4];
+    private int[] values = new int[4];
+    private Object[] objects;
+    private int modCount = 0;
+    private Utterance utterance;
+
+    /**
+     * Creates a new empty feature set.
+     */
+    public SlotFeatureSet() {
+    }
+
+    /**
+     * Sets the utterance whose items hold this set, so that a change
+     * to the set counts as a change to the utterance.
+     *
+     * @param utterance the utterance, or null for none
+     */
+    void setUtterance(Utterance utterance) {
+	this.utterance = utterance;
+    }
+
+    /**
+     * Determines if the given feature is present.
+     *
+     * @param name the name of the feature of interest
+     *
+     * @return true if the named feature is present
+     */
+    public boolean isPresent(String name) {
+	return indexOf(FeatureNames.findSlot(name)) >= 0;
+    }
+
+    /**
+     * Determines if the feature in the given slot is present.
+     *
+     * @param slot the slot of the feature of interest
+     *
+     * @return true if the feature is present
+     */
+    public boolean isPresent(int slot) {
+	return indexOf(slot) >= 0;
+    }
+
+    /**
+     * Removes the named feature from this set of features.
+     *
+     * @param name the name of the feature of interest
+     */
+    public void remove(String name) {
+	int i = indexOf(FeatureNames.findSlot(name));
+	if (i >= 0) {
+	    int tail = size - i - 1;
+	    System.arraycopy(slots, i + 1, slots, i, tail);
+	    System.arraycopy(kinds, i + 1, kinds, i, tail);
+	    System.arraycopy(values, i + 1, values, i, tail);
+	    if (objects != null) {
+		System.arraycopy(objects, i + 1, objects, i, tail);
+		objects[size - 1] = null;
+	    }
+	    size--;
+	    modified();
+	}
+    }
+
+    /**
+     * Convenience method that returns the named feature as a string.
+     *
+     * @param name the name of the feature
+     *
+     * @return the value associated with the name or null if the value
+     *   is not found
+     *
+     * @throws ClassCastException if the associated value is not a
+     *   String
+     */
+    public String getString(String name) {
+	return (String) getObject(name);
+    }
+
+    /**
+     * Convenience method that returns the named feature as a int.
+     *
+     * @param name the name of the feature
+     *
+     * @return the value associated with the name
+     *
+     * @throws ClassCastException if the associated value is not an int.
+     * @throws NullPointerException if the feature is not present
+     */
+    public int getInt(String name) {
+	return getInt(FeatureNames.findSlot(name));
+    }
+
+    /**
+     * Returns the feature in the given slot as an int.
+     *
+     * @param slot the slot of the feature
+     *
+     * @return the value of the feature
+     *
+     * @throws ClassCastException if the value is not an int.
+     * @throws NullPointerException if the feature is not present
+     */
+    public int getInt(int slot) {
+	int i = indexOf(slot);
+	if (i >= 0 && kinds[i] == INT) {
+	    return values[i];
+	}
+	return ((Integer) getObjectAt(i)).intValue();
+    }
+
+    /**
+     * Convenience method that returns the named feature as a float.
+     *
+     * @param name the name of the feature
+     *
+     * @return the value associated with the name
+     *
+     * @throws ClassCastException if the associated value is not a
+     *   float
+     * @throws NullPointerException if the feature is not present
+     */
+    public float getFloat(String name) {
+	return getFloat(FeatureNames.findSlot(name));
+    }
+
+    /**
+     * Returns the feature in the given slot as a float.
+     *
+     * @param slot the slot of the feature
+     *
+     * @return the value of the feature
+     *
+     * @throws ClassCastException if the value is not a float
+     * @throws NullPointerException if the feature is not present
+     */
+    public float getFloat(int slot) {
+	int i = indexOf(slot);
+	if (i >= 0 && kinds[i] == FLOAT) {
+	    return Float.intBitsToFloat(values[i]);
+	}
+	return ((Float) getObjectAt(i)).floatValue();
+    }
+
+    /**
+     * Returns the named feature as an object.
+     *
+     * @param name the name of the feature
+     *
+     * @return the value associated with the name or null if the value
+     *   is not found
+     */
+    public Object getObject(String name) {
+	return getObjectAt(indexOf(FeatureNames.findSlot(name)));
+    }
+
+    /**
+     * Returns the feature in the given slot as an object.
+     *
+     * @param slot the slot of the feature
+     *
+     * @return the value of the feature or null if it is not present
+     */
+    public Object getObject(int slot) {
+	return getObjectAt(indexOf(slot));
+    }
+
+    /**
+     * Convenience method that sets the named feature as a int.
+     *
+     * @param name the name of the feature
+     * @param value the value of the feature
+     */
+    public void setInt(String name, int value) {
+	setInt(FeatureNames.getSlot(name), value);
+    }
+
+    /**
+     * Sets the feature in the given slot to an int.
+     *
+     * @param slot the slot of the feature
+     * @param value the value of the feature
+     */
+    public void setInt(int slot, int value) {
+	int i = slotIndex(slot);
+	kinds[i] = INT;
+	values[i] = value;
+	clearObject(i);
+	modified();
+    }
+
+    /**
+     * Convenience method that sets the named feature as a float.
+     *
+     * @param name the name of the feature
+     * @param value the value of the feature
+     */
+    public void setFloat(String name, float value) {
+	setFloat(FeatureNames.getSlot(name), value);
+    }
+
+    /**
+     * Sets the feature in the given slot to a float.
+     *
+     * @param slot the slot of the feature
+     * @param value the value of the feature
+     */
+    public void setFloat(int slot, float value) {
+	int i = slotIndex(slot);
+	kinds[i] = FLOAT;
+	values[i] = Float.floatToRawIntBits(value);
+	clearObject(i);
+	modified();
+    }
+
+    /**
+     * Convenience method that sets the named feature as a String.
+     *
+     * @param name the name of the feature
+     * @param value the value of the feature
+     */
+    public void setString(String name, String value) {
+	setObject(FeatureNames.getSlot(name), value);
+    }
+
+    /**
+     * Sets the named feature.  Integer and Float values are kept
+     * unboxed.
+     *
+     * @param name the name of the feature
+     * @param value the value of the feature
+     */
+    public void setObject(String name, Object value) {
+	setObject(FeatureNames.getSlot(name), value);
+    }
+
+    /**
+     * Sets the feature in the given slot.  Integer and Float values
+     * are kept unboxed.
+     *
+     * @param slot the slot of the feature
+     * @param value the value of the feature
+     */
+    public void setObject(int slot, Object value) {
+	if (value instanceof Integer) {
+	    setInt(slot, ((Integer) value).intValue());
+	} else if (value instanceof Float) {
+	    setFloat(slot, ((Float) value).floatValue());
+	} else {
+	    int i = slotIndex(slot);
+	    if (objects == null) {
+		objects = new Object[slots.length];
+	    }
+	    kinds[i] = OBJECT;
+	    objects[i] = value;
+	    modified();
+	}
+    }
+
+    private void modified() {
+	modCount++;
+	if (utterance != null) {
+	    utterance.modified();
+	}
+    }
+
+    /**
+     * Returns the number of times this set has been changed.
+     *
+     * @return the modification count
+     */
+    public int getModificationCount() {
+	return modCount;
+    }
+
+    /**
+     * Dumps the FeatureSet in textual form.  The feature name
+     * is not included in the dump.
+     *
+     * @param output where to send the formatted output
+     * @param pad the padding
+     * @param title the title
+     */
+    public void dump(PrintWriter output, int pad, String title) {
+	dump(output, pad, title, false);
+    }
+
+    /**
+     * Dumps the FeatureSet in textual form, in the same form as
+     * {@link FeatureSetImpl#dump(PrintWriter, int, String, boolean)}.
+     *
+     * @param output where to send the formatted output
+     * @param pad the padding
+     * @param title the title
+     * @param showName if <code>true</code>, include the feature name
+     */
+    public void dump(PrintWriter output, int pad, String title,
+	    boolean showName) {
+	Utilities.dump(output, pad, title);
+	for (int i = size - 1; i >= 0; i--) {   // reversed to match flite
+	    String key = FeatureNames.getName(slots[i]);
+
+	    if (!showName && key.equals("name")) {
+		continue;
+	    }
+
+	    dumpFeature(output, pad + 4, key, getObjectAt(i));
+	}
+    }
+
+    /**
+     * Dumps one feature in the form used by {@link FeatureSetImpl}.
+     *
+     * @param output where to send the formatted output
+     * @param pad the padding
+     * @param key the name of the feature
+     * @param value the value of the feature
+     */
+    static void dumpFeature(PrintWriter output, int pad, String key,
+	    Object value) {
+	if (value instanceof Dumpable) {
+	    ((Dumpable) value).dump(output, pad, key);
+	} else if (value instanceof Float) {
+	    Utilities.dump(output, pad, key + "=" +
+		    getFormatter().format(((Float) value).floatValue()));
+	} else {
+	    Utilities.dump(output, pad, key + "=" + value);
+	}
+    }
+
+    private static DecimalFormat getFormatter() {
+	if (formatter == null) {
+	    formatter = new DecimalFormat("########0.000000");
+	}
+	return formatter;
+    }
+
+    /**
+     * Returns the index of the given slot in the arrays.
+     *
+     * @param slot the slot
+     *
+     * @return the index, or -1 if the feature is not present
+     */
+    private int indexOf(int slot) {
+	for (int i = 0; i < size; i++) {
+	    if (slots[i] == slot) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the index of the given slot in the arrays, adding it at
+     * the end if it is not present.
+     *
+     * @param slot the slot
+     *
+     * @return the index
+     */
+    private int slotIndex(int slot) {
+	int i = indexOf(slot);
+	if (i >= 0) {
+	    return i;
+	}
+	if (size == slots.length) {
+	    int capacity = size * 2;
+	    int[] newSlots = new int[capacity];
+	    byte[] newKinds = new byte[capacity];
+	    int[] newValues = new int[capacity];
+	    System.arraycopy(slots, 0, newSlots, 0, size);
+	    System.arraycopy(kinds, 0, newKinds, 0, size);
+	    System.arraycopy(values, 0, newValues, 0, size);
+	    slots = newSlots;
+	    kinds = newKinds;
+	    values = newValues;
+	    if (objects != null) {
+		Object[] newObjects = new Object[capacity];
+		System.arraycopy(objects, 0, newObjects, 0, size);
+		objects = newObjects;
+	    }
+	}
+	slots[size] = slot;
+	return size++;
+    }
+
+    private Object getObjectAt(int i) {
+	if (i < 0) {
+	    return null;
+	}
+	switch (kinds[i]) {
+	case INT:
+	    return Integer.valueOf(values[i]);
+	case FLOAT:
+	    return Float.valueOf(Float.intBitsToFloat(values[i]));
+	default:
+	    return objects[i];
+	}
+    }
+
+    private void clearObject(int i) {
+	if (objects != null) {
+	    objects[i] = null;
+	}
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+/**
+ * An <code>UtteranceProcessor</code> that keeps the state of the
+ * utterance it is working on in fields, and so must not process two
+ * utterances at the same time.  When a voice runs its processors on
+ * several threads (see {@link Voice#setPipelineWorkers}) every
+ * thread gets its own instance from {@link #newInstance}; processors
+ * that do not implement this interface are shared by all threads.
+ */
+public interface StatefulUtteranceProcessor extends UtteranceProcessor {
+
+    /**
+     * Creates a processor that behaves exactly like this one. Read only
+     * data such as CARTs and lexicons may be shared with this
+     * processor; per utterance state must not be.
+     *
+     * @return a new processor
+     */
+    public UtteranceProcessor newInstance();
+}
@@ -36,6 +36,9 @@ public class Utterance implements FeatureSet, Serializable {
     private boolean first;	// first in a connected series
     private boolean last;	// last in a connected series
     private FreeTTSSpeakable speakable;
+    private transient FeatureMemo featureMemo;
+    private transient ItemArena arena;
+    private transient int modCount = 0;
 
     /**
      * Creates a new, empty utterance.
@@ -46,6 +49,8 @@ public class Utterance implements FeatureSet, Serializable {
 	this.voice = voice;
 	features = new FeatureSetImpl();
 	relations = new FeatureSetImpl();
+	features.setUtterance(this);
+	relations.setUtterance(this);
     }
 
     /**
@@ -59,6 +64,52 @@ public class Utterance implements FeatureSet, Serializable {
 	setTokenList(tokenList);
     }
 
+    /**
+     * Creates an utterance with the given set of tokenized text, whose
+     * items are kept in the given arena.  The arena must be empty, and
+     * must not be reset while the utterance is in use.
+     *
+     * @param voice the voice associated with the utterance
+     * @param tokenList the list of tokens for this utterance
+     * @param arena the arena for the items, or null to make them on
+     *     the heap
+     */
+    public Utterance(Voice voice, List tokenList, ItemArena arena) {
+	this(voice);
+	this.arena = arena;
+	setTokenList(tokenList);
+    }
+
+    /**
+     * Returns the arena the items of this utterance are kept in.
+     *
+     * @return the arena, or null if the items are on the heap
+     */
+    ItemArena getArena() {
+	return arena;
+    }
+
+    /**
+     * Notes that the features of the utterance or of one of its items,
+     * or its relations, have changed.
+     */
+    void modified() {
+	modCount++;
+    }
+
+    /**
+     * Returns the number of times the features of the utterance and
+     * of its items, and its relations, have been changed.  A
+     * {@link FeatureMemo} result is only good while this stays the
+     * same.
+     *
+     * @return the modification count
+     */
+    int getModificationCount() {
+	return (arena == null) ? modCount
+	    : modCount + arena.getModificationCount();
+    }
+
     /**
      * Sets the speakable item for this utterance.
      *
@@ -77,6 +128,26 @@ public class Utterance implements FeatureSet, Serializable {
 	return speakable;
     }
 
+    /**
+     * Sets the memo of feature processor results for this utterance.
+     *
+     * @param memo the memo, or <code>null</code> for none
+     */
+    public void setFeatureMemo(FeatureMemo memo) {
+	featureMemo = memo;
+    }
+
+    /**
+     * Returns the memo of feature processor results for this
+     * utterance.
+     *
+     * @return the memo, or <code>null</code> if feature processors
+     *     are not memoized
+     */
+    public FeatureMemo getFeatureMemo() {
+	return featureMemo;
+    }
+
     /**
      * Creates a new relation with the given name and adds it to this
      * utterance.
@@ -363,7 +434,7 @@ public class Utterance implements FeatureSet, Serializable {
                 ("Utterance.getItem(): relation cannot be " + relation);
         }
         
-        PathExtractor path = new PathExtractorImpl(pathName, false);
+        PathExtractor path = PathExtractorImpl.getInstance(pathName, false);
 	 
         // get the Item in the Segment Relation with the given time
         Item segmentItem = SegmentRelationUtils.getItem
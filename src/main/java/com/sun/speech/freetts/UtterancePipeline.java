@@ -0,0 +1,261 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.speech.freetts.util.BulkTimer;
+
+/**
+ * Runs the utterance processors of a voice on a pool of worker
+ * threads so that the front end and unit selection of several
+ * utterances of a long text overlap.
+ *
+ * <p>Utterances are taken from the tokenizer on the calling thread,
+ * processed by whichever worker is free, and handed to the audio
+ * output in the order the tokenizer produced them.  Each worker owns
+ * a copy of every {@link StatefulUtteranceProcessor}; all other
+ * processors are shared.  At most <code>2 * workers</code> utterances
+ * are in flight at once.  Cancelling the speakable stops the
+ * tokenizer, makes the workers skip the remaining processors, and
+ * keeps anything not yet posted from reaching the audio output.  An
+ * utterance whose processors fail is not posted; the others still
+ * are, and the failure is reported once the last has been posted.
+ */
+class UtterancePipeline {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(UtterancePipeline.class.getName());
+
+    private final Voice voice;
+    private final int workers;
+    private final ExecutorService executor;
+    private final List timers = Collections.synchronizedList(new ArrayList());
+    private final ThreadLocal workerState = new ThreadLocal();
+
+    /**
+     * The processors and timer that belong to one worker thread.
+     */
+    private static class WorkerState {
+	UtteranceProcessor[] processors;
+	BulkTimer timer;
+    }
+
+    /**
+     * Creates a pipeline for the given voice.
+     *
+     * @param voice the voice whose processors are run
+     * @param workers the number of worker threads
+     */
+    UtterancePipeline(Voice voice, int workers) {
+	this.voice = voice;
+	this.workers = workers;
+	final String name = voice.getName();
+	executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+	    private int count = 0;
+	    public synchronized Thread newThread(Runnable r) {
+		Thread t = new Thread(r, name + "-utterance-" + (++count));
+		t.setDaemon(true);
+		return t;
+	    }
+	});
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of workers
+     */
+    int getWorkers() {
+	return workers;
+    }
+
+    /**
+     * Processes every utterance of the iterator and posts the results
+     * to the voice's output in order.  Returns once the last
+     * utterance has been posted (not played).
+     *
+     * @param utterances the utterances of the speakable, in order
+     * @param speakable the speakable being spoken
+     *
+     * @return <code>true</code> if at least one utterance was posted
+     *
+     * @throws ProcessException if the processors failed on an
+     *     utterance, which was not posted
+     */
+    boolean process(Iterator utterances, FreeTTSSpeakable speakable)
+	    throws ProcessException {
+	LinkedList inFlight = new LinkedList();
+	int maxInFlight = workers * 2;
+	boolean posted = false;
+	ProcessException failure = null;
+
+	try {
+	    while (!speakable.isCompleted() && utterances.hasNext()) {
+		final Utterance utterance = (Utterance) utterances.next();
+		if (utterance == null) {
+		    continue;
+		}
+		inFlight.addLast(executor.submit(new Callable() {
+		    public Object call() throws ProcessException {
+			return process(utterance) ? utterance : null;
+		    }
+		}));
+		while (inFlight.size() >= maxInFlight) {
+		    try {
+			posted |= postNext(inFlight);
+		    } catch (ProcessException pe) {
+			failure = pe;
+		    }
+		}
+	    }
+	    while (!inFlight.isEmpty()) {
+		try {
+		    posted |= postNext(inFlight);
+		} catch (ProcessException pe) {
+		    failure = pe;
+		}
+	    }
+	} catch (InterruptedException ie) {
+	    for (Iterator i = inFlight.iterator(); i.hasNext(); ) {
+		((Future) i.next()).cancel(true);
+	    }
+	    speakable.cancelled();
+	    Thread.currentThread().interrupt();
+	}
+	if (failure != null) {
+	    throw failure;
+	}
+	return posted;
+    }
+
+    /**
+     * Waits for the oldest utterance in flight and posts it.
+     *
+     * @param inFlight the futures of the utterances, oldest first
+     *
+     * @return <code>true</code> if the utterance was posted
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ProcessException if the processors failed on the
+     *     utterance
+     */
+    private boolean postNext(LinkedList inFlight)
+	    throws InterruptedException, ProcessException {
+	Utterance utterance;
+	try {
+	    utterance = (Utterance) ((Future) inFlight.removeFirst()).get();
+	} catch (ExecutionException ee) {
+	    if (ee.getCause() instanceof ProcessException) {
+		throw (ProcessException) ee.getCause();
+	    }
+	    LOGGER.severe("Trouble while processing utterance " + ee.getCause());
+	    return false;
+	}
+	if (utterance == null || utterance.getSpeakable().isCompleted()) {
+	    return false;
+	}
+	voice.postUtterance(utterance);
+	voice.dump(utterance);
+	return true;
+    }
+
+    /**
+     * Runs the processors on the given utterance on the current worker
+     * thread. Errors are reported the same way as by
+     * {@link Voice#processUtterance}, and a ProcessException is passed
+     * on, so that the speakable is not waited for.
+     *
+     * @param u the utterance
+     *
+     * @return <code>true</code> if the utterance is ready for output
+     *
+     * @throws ProcessException if a processor fails
+     */
+    private boolean process(Utterance u) throws ProcessException {
+	WorkerState state = getWorkerState();
+	state.timer.start("processing");
+	try {
+	    if (LOGGER.isLoggable(Level.FINE)) {
+		LOGGER.fine("Processing Utterance: " + u.getString("input_text"));
+	    }
+	    voice.runProcessors(u, state.processors, state.timer);
+	    return !u.getSpeakable().isCompleted();
+	} catch (ProcessException pe) {
+	    System.err.println("Processing Utterance: " + pe);
+	    throw pe;
+	} catch (Exception e) {
+	    System.err.println("Trouble while processing utterance " + e);
+	    e.printStackTrace();
+	    u.getSpeakable().cancelled();
+	} finally {
+	    state.timer.stop("processing");
+	}
+	return false;
+    }
+
+    /**
+     * Returns the processors and timer of the current worker,
+     * creating them on first use.
+     *
+     * @return the state of this worker
+     */
+    private WorkerState getWorkerState() {
+	WorkerState state = (WorkerState) workerState.get();
+	if (state == null) {
+	    state = new WorkerState();
+	    List shared = voice.getUtteranceProcessors();
+	    synchronized (shared) {
+		state.processors = new UtteranceProcessor[shared.size()];
+		for (int i = 0; i < state.processors.length; i++) {
+		    UtteranceProcessor processor = (UtteranceProcessor) shared.get(i);
+		    if (processor instanceof StatefulUtteranceProcessor) {
+			processor = ((StatefulUtteranceProcessor) processor).newInstance();
+		    }
+		    state.processors[i] = processor;
+		}
+	    }
+	    state.timer = new BulkTimer();
+	    timers.add(state.timer);
+	    workerState.set(state);
+	}
+	return state;
+    }
+
+    /**
+     * Shows the timers of all workers.
+     *
+     * @param title the title for the timers
+     */
+    void showTimers(String title) {
+	synchronized (timers) {
+	    for (int i = 0; i < timers.size(); i++) {
+		((BulkTimer) timers.get(i)).show(title + " worker " + (i + 1));
+	    }
+	}
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    void close() {
+	executor.shutdownNow();
+    }
+}
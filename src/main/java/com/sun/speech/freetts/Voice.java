@@ -33,6 +33,8 @@ import org.w3c.dom.Text;
 
 import com.sun.speech.freetts.audio.AudioPlayer;
 import com.sun.speech.freetts.lexicon.Lexicon;
+import com.sun.speech.freetts.lexicon.LexiconImpl;
+import com.sun.speech.freetts.lexicon.PronunciationCache;
 import com.sun.speech.freetts.relp.LPCResult;
 import com.sun.speech.freetts.util.BulkTimer;
 import com.sun.speech.freetts.util.Utilities;
@@ -91,6 +93,8 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
     
     private List utteranceProcessors;
     private Map featureProcessors;
+    private volatile Object[] processorsBySlot = new Object[0];
+    private final static Object NO_PROCESSOR = new Object();
     private FeatureSetImpl features;
     private boolean metrics = false;
     private boolean detailedMetrics = false;
@@ -107,6 +111,14 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
     private BulkTimer threadTimer = new BulkTimer();
     private boolean externalOutputQueue = false;
     private boolean externalAudioPlayer = false;
+    private int pipelineWorkers = 1;
+    private boolean featureMemo = false;
+    private final FeatureMemo.Counters featureMemoCounters =
+	new FeatureMemo.Counters();
+    private UtterancePipeline pipeline = null;
+    private boolean utteranceArenas = false;
+    private final List arenaPool = new ArrayList();
+    private final List sharedData = new ArrayList();	// kind, url pairs
 
 
     private float nominalRate = 150;	// nominal speaking rate for this voice
@@ -154,6 +166,57 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
      */
     public final static String DEFAULT_AUDIO_PLAYER_DEFAULT =
             "com.sun.speech.freetts.audio.JavaStreamingAudioPlayer";
+
+    /**
+     * Property name for the number of threads that process utterances.
+     * The default of 1 processes them on the thread that calls speak.
+     *
+     * @see #setPipelineWorkers
+     */
+    public final static String PIPELINE_WORKERS =
+            PROP_PREFIX + "pipelineWorkers";
+
+    /**
+     * Property name for the kind of queue made by
+     * <code>createOutputThread</code>: <code>linked</code> (the
+     * default) for the original {@link OutputQueue},
+     * <code>ring</code> for a {@link RingOutputQueue}, or
+     * <code>perPlayer</code> for a {@link PlayerOutputQueue} with
+     * one output thread per audio player.
+     */
+    public final static String OUTPUT_QUEUE =
+            PROP_PREFIX + "outputQueue";
+
+    /**
+     * Property name for the number of utterances the output queue
+     * holds.
+     */
+    public final static String OUTPUT_QUEUE_SIZE =
+            PROP_PREFIX + "outputQueueSize";
+
+    /**
+     * Property name for memoizing feature processor results within
+     * each utterance; <code>true</code> or <code>false</code> (the
+     * default).
+     *
+     * @see #setFeatureMemo
+     */
+    public final static String FEATURE_MEMO =
+            PROP_PREFIX + "featureMemo";
+
+    /**
+     * Property name for keeping the items of utterances in reusable
+     * arenas; <code>true</code> or <code>false</code> (the default).
+     *
+     * @see #setUtteranceArenas
+     */
+    public final static String UTTERANCE_ARENAS =
+            PROP_PREFIX + "utteranceArenas";
+
+    /**
+     * The most arenas kept for reuse.
+     */
+    private final static int MAX_POOLED_ARENAS = 4;
     
 
     /**
@@ -185,6 +248,13 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		    Utilities.getProperty(PROP_PREFIX + "range","10"));
 	    volume = Float.parseFloat(
 		    Utilities.getProperty(PROP_PREFIX + "volume","1.0"));
+	    pipelineWorkers = Math.max(1, Integer.parseInt(
+		    Utilities.getProperty(PIPELINE_WORKERS, "1")));
+	    featureMemo = Boolean.valueOf(
+		    Utilities.getProperty(FEATURE_MEMO, "false")).booleanValue();
+	    utteranceArenas = Boolean.valueOf(
+		    Utilities.getProperty(UTTERANCE_ARENAS, "false"))
+		.booleanValue();
 	} catch (SecurityException se) {
 	     // can't get properties, just use defaults
 	}
@@ -281,17 +351,25 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 
 	getAudioPlayer().startFirstSampleTimer();
 
-	for (Iterator i = tokenize(speakable); 
-             !speakable.isCompleted() && i.hasNext() ; ) {
+	if (pipelineWorkers > 1) {
 	    try {
-		Utterance utterance = (Utterance) i.next();
-		if (utterance != null) {
-		    processUtterance(utterance);
-		    posted = true;
-		}
+		posted = getPipeline().process(tokenize(speakable), speakable);
 	    } catch (ProcessException pe) {
 		ok = false;
 	    }
+	} else {
+	    for (Iterator i = tokenize(speakable); 
+                 !speakable.isCompleted() && i.hasNext() ; ) {
+	        try {
+		    Utterance utterance = (Utterance) i.next();
+		    if (utterance != null) {
+		        processUtterance(utterance);
+		        posted = true;
+		    }
+	        } catch (ProcessException pe) {
+		    ok = false;
+	        }
+	    }
 	}
 	if (ok && posted) {
 	    runTimer.start("WaitAudio");
@@ -410,21 +488,9 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
             LOGGER.fine("Processing Utterance: " + u.getString("input_text"));
         }
 	try {
-	    for (int i = 0; i < processors.length && 
-                     !u.getSpeakable().isCompleted(); i++) {
-                runProcessor(processors[i], u, runTimer);
-            }
+	    runProcessors(u, processors, runTimer);
             if (!u.getSpeakable().isCompleted()) {
-                if (outputQueue == null) {
-                    if (LOGGER.isLoggable(Level.FINE)) {
-                        LOGGER.fine("To AudioOutput");
-                    }
-                    outputUtterance(u, runTimer);
-                } else {
-                    runTimer.start("..post");
-                    outputQueue.post(u);
-                    runTimer.stop("..post");
-                }
+                postUtterance(u, runTimer);
             }
 	}  catch (ProcessException pe) {
 	    System.err.println("Processing Utterance: " + pe);
@@ -440,6 +506,78 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
         }
 	runTimer.stop("processing");
 
+	dump(u);
+    }
+
+    /**
+     * Runs the given processors on the utterance, in order, stopping
+     * as soon as its speakable is completed or cancelled.
+     *
+     * @param u the utterance
+     * @param processors the processors to run
+     * @param timer the timer for gathering performance metrics
+     *
+     * @throws ProcessException if a processor fails
+     */
+    void runProcessors(Utterance u, UtteranceProcessor[] processors,
+	    BulkTimer timer) throws ProcessException {
+	FeatureMemo memo = featureMemo ? new FeatureMemo(u) : null;
+	u.setFeatureMemo(memo);
+	try {
+	    for (int i = 0; i < processors.length && 
+		     !u.getSpeakable().isCompleted(); i++) {
+		if (memo != null) {
+		    // a processor that changed the utterance has made
+		    // every result stale; drop them to keep the memo small
+		    memo.clear();
+		}
+		runProcessor(processors[i], u, timer);
+	    }
+	} finally {
+	    if (memo != null) {
+		u.setFeatureMemo(null);
+		featureMemoCounters.add(memo);
+	    }
+	}
+    }
+
+    /**
+     * Hands a processed utterance to the output queue, or outputs it
+     * on the calling thread if this voice has no output queue.
+     *
+     * @param u the utterance
+     */
+    void postUtterance(Utterance u) {
+	postUtterance(u, runTimer);
+    }
+
+    /**
+     * Hands a processed utterance to the output queue, or outputs it
+     * on the calling thread if this voice has no output queue.
+     *
+     * @param u the utterance
+     * @param timer the timer for gathering performance metrics
+     */
+    private void postUtterance(Utterance u, BulkTimer timer) {
+        if (outputQueue == null) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("To AudioOutput");
+            }
+            outputUtterance(u, timer);
+        } else {
+            timer.start("..post");
+            outputQueue.post(u);
+            timer.stop("..post");
+        }
+    }
+
+    /**
+     * Dumps the utterance, its relations and its wave if this voice
+     * is set up to do so.
+     *
+     * @param u the utterance
+     */
+    void dump(Utterance u) {
 	if (dumpUtterance) {
 	    u.dump("Utterance");
 	}
@@ -450,6 +588,139 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	dumpASCII(u);
     }
 
+    /**
+     * Sets the number of threads that process the utterances of a
+     * speakable.  With more than one, utterances are processed in
+     * parallel and output in order; see {@link UtterancePipeline}.
+     * Processors that keep per utterance state must implement
+     * {@link StatefulUtteranceProcessor}.
+     *
+     * @param workers the number of threads, 1 to process on the
+     *     calling thread
+     */
+    public synchronized void setPipelineWorkers(int workers) {
+	if (pipeline != null) {
+	    pipeline.close();
+	    pipeline = null;
+	}
+	pipelineWorkers = Math.max(1, workers);
+    }
+
+    /**
+     * Returns the number of threads that process utterances.
+     *
+     * @return the number of threads
+     */
+    public int getPipelineWorkers() {
+	return pipelineWorkers;
+    }
+
+    /**
+     * Sets whether the results of feature processors are memoized
+     * within each utterance, so that a CART asking again for a
+     * feature of an item does not run its processor again.  The memo
+     * is cleared before each utterance processor runs, and a result
+     * is dropped as soon as anything in the utterance changes.  The
+     * counters are shown with the metrics and returned by
+     * {@link #getFeatureMemoCounters}.
+     *
+     * @param memo <code>true</code> to memoize
+     *
+     * @see FeatureMemo
+     */
+    public void setFeatureMemo(boolean memo) {
+	featureMemo = memo;
+    }
+
+    /**
+     * Determines if the results of feature processors are memoized.
+     *
+     * @return <code>true</code> if they are
+     */
+    public boolean isFeatureMemo() {
+	return featureMemo;
+    }
+
+    /**
+     * Sets whether the items of the utterances this voice makes from
+     * text are kept in an {@link ItemArena}.  The arena of an
+     * utterance is reset and reused once the utterance has been
+     * output, so an application must not keep items of an utterance
+     * past its output.  Utterances are not reused while they are
+     * being dumped.
+     *
+     * @param arenas <code>true</code> to use arenas
+     */
+    public void setUtteranceArenas(boolean arenas) {
+	utteranceArenas = arenas;
+    }
+
+    /**
+     * Determines if utterances keep their items in arenas.
+     *
+     * @return <code>true</code> if they do
+     */
+    public boolean isUtteranceArenas() {
+	return utteranceArenas;
+    }
+
+    /**
+     * Returns an empty arena for a new utterance.
+     *
+     * @return the arena, or null if utterances don't use arenas
+     */
+    private ItemArena acquireArena() {
+	if (!utteranceArenas) {
+	    return null;
+	}
+	synchronized (arenaPool) {
+	    if (!arenaPool.isEmpty()) {
+		return (ItemArena) arenaPool.remove(arenaPool.size() - 1);
+	    }
+	}
+	return new ItemArena();
+    }
+
+    /**
+     * Takes back the arena of an utterance that has been output.
+     *
+     * @param u the utterance
+     */
+    private void releaseArena(Utterance u) {
+	ItemArena arena = u.getArena();
+	if (arena == null || dumpUtterance || dumpRelations) {
+	    return;
+	}
+	arena.reset();
+	synchronized (arenaPool) {
+	    if (arenaPool.size() < MAX_POOLED_ARENAS) {
+		arenaPool.add(arena);
+	    }
+	}
+    }
+
+    /**
+     * Returns the feature memo counters of this voice, summed over the
+     * utterances processed so far.
+     *
+     * @return the counters
+     */
+    public FeatureMemo.Counters getFeatureMemoCounters() {
+	return featureMemoCounters;
+    }
+
+    /**
+     * Returns the utterance pipeline, creating it on first use.
+     *
+     * @return the pipeline
+     */
+    private synchronized UtterancePipeline getPipeline() {
+	if (pipeline == null) {
+	    pipeline = new UtterancePipeline(this, pipelineWorkers);
+	}
+	return pipeline;
+    }
+
 
     /**
      * Dumps the wave for the given utterance.
@@ -477,13 +748,48 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
     /**
      * Creates an output thread that will asynchronously
      * output utterances that are generated by this voice (and other
-     * voices).
+     * voices).  The kind and size of the queue are taken from the
+     * {@link #OUTPUT_QUEUE} and {@link #OUTPUT_QUEUE_SIZE} properties.
      * 
      * @return the queue where utterances should be placed.
      */
     public static OutputQueue createOutputThread() {
-	final OutputQueue queue =  new OutputQueue();
-	Thread t = new Thread() {
+	String kind = "linked";
+	int size = OutputQueue.DEFAULT_SIZE;
+	try {
+	    kind = Utilities.getProperty(OUTPUT_QUEUE, kind);
+	    size = Integer.parseInt(Utilities.getProperty(OUTPUT_QUEUE_SIZE,
+			String.valueOf(size)));
+	} catch (SecurityException se) {
+	     // can't get properties, just use defaults
+	}
+
+	if (kind.equals("perPlayer")) {
+	    // the queue starts an output thread for each audio player
+	    return new PlayerOutputQueue(size);
+	}
+	OutputQueue queue;
+	if (kind.equals("ring")) {
+	    queue = new RingOutputQueue(size);
+	} else if (kind.equals("linked")) {
+	    queue = new OutputQueue(size);
+	} else {
+	    throw new IllegalArgumentException("Unknown " + OUTPUT_QUEUE
+		    + ": " + kind);
+	}
+	startOutputThread(queue, "FreeTTS-output");
+	return queue;
+    }
+
+    /**
+     * Starts a daemon thread that outputs the utterances of the given
+     * queue until the queue is closed.
+     *
+     * @param queue the queue to take utterances from
+     * @param name the name of the thread
+     */
+    static void startOutputThread(final OutputQueue queue, String name) {
+	Thread t = new Thread(name) {
 	    public void run() {
 		Utterance utterance = null;
 		do {
@@ -501,7 +807,6 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	};
 	t.setDaemon(true);
 	t.start();
-	return queue;
     }
 
 
@@ -570,6 +875,7 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	                    + speakable.getText());
 	        }
 	}
+	releaseArena(utterance);
 	return ok;
     }
 
@@ -652,6 +958,23 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	if (metrics) {
 	    runTimer.show(getRunTitle() + " run");
 	    threadTimer.show(getRunTitle() + " thread");
+	    if (pipeline != null) {
+		pipeline.showTimers(getRunTitle());
+	    }
+	    if (outputQueue != null) {
+		outputQueue.showMetrics(getRunTitle());
+	    }
+	    if (featureMemo) {
+		featureMemoCounters.showMetrics(getRunTitle());
+	    }
+	    if (lexicon instanceof LexiconImpl) {
+		PronunciationCache cache =
+		    ((LexiconImpl) lexicon).getPronunciationCache();
+		if (cache != null) {
+		    cache.showMetrics(getRunTitle());
+		}
+	    }
+	    SharedVoiceData.showMetrics(getRunTitle());
 	    getAudioPlayer().showMetrics();
 	    long totalMemory = Runtime.getRuntime().totalMemory();
 	    LOGGER.info
@@ -701,6 +1024,34 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
      */
     protected abstract void loader() throws IOException;
 
+    /**
+     * Gets read-only data shared with other voices loaded from the
+     * same resource, such as a unit database or a CART, loading it if
+     * no voice holds it.  The data is released when this voice is
+     * deallocated.  Voices call this while loading, for data that
+     * they do not change.
+     *
+     * @param kind the kind of data, such as <code>"cart"</code>
+     * @param url the resource the data is loaded from
+     * @param loader loads the data if it is not shared yet
+     *
+     * @return the data
+     *
+     * @throws IOException if the data cannot be loaded
+     *
+     * @see SharedVoiceData
+     */
+    protected Object getSharedData(String kind, URL url,
+	    SharedVoiceData.Loader loader) throws IOException {
+	Object data = SharedVoiceData.acquire(kind, url, loader);
+	if (url != null && SharedVoiceData.isShared()) {
+	    synchronized (sharedData) {
+		sharedData.add(new Object[] {kind, url});
+	    }
+	}
+	return data;
+    }
+
     /**
      * tokenizes the given the queue item.
      *
@@ -883,6 +1234,50 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
      */
     public void addFeatureProcessor(String name, FeatureProcessor fp) {
 	featureProcessors.put(name, fp);
+	processorsBySlot = new Object[0];
+    }
+
+    /**
+     * Returns the Feature Processor for the feature name of the given
+     * {@link FeatureNames} slot.  The processors are kept by slot, so
+     * callers that look up the same feature often, such as compiled
+     * paths, find it without hashing its name.
+     *
+     * @param slot the slot of the feature name
+     *
+     * @return the processor associated with the name or null if none
+     *   could be found
+     */
+    public FeatureProcessor getFeatureProcessor(int slot) {
+	Object[] cache = processorsBySlot;
+	Object fp = slot < cache.length ? cache[slot] : null;
+	if (fp == null) {
+	    fp = featureProcessors.get(FeatureNames.getName(slot));
+	    if (fp == null) {
+		fp = NO_PROCESSOR;
+	    }
+	    cacheFeatureProcessor(cache, slot, fp);
+	}
+	return fp == NO_PROCESSOR ? null : (FeatureProcessor) fp;
+    }
+
+    /**
+     * Keeps a processor looked up by slot, growing the cache if need
+     * be.  A cache replaced by {@link #addFeatureProcessor} meanwhile
+     * is left alone.
+     */
+    private synchronized void cacheFeatureProcessor(Object[] cache,
+	    int slot, Object fp) {
+	if (cache != processorsBySlot) {
+	    return;
+	}
+	if (slot >= cache.length) {
+	    Object[] grown = new Object[Math.max(slot + 1,
+		    cache.length * 2)];
+	    System.arraycopy(cache, 0, grown, 0, cache.length);
+	    processorsBySlot = cache = grown;
+	}
+	cache[slot] = fp;
     }
 
     /**
@@ -1005,6 +1400,13 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
     public void deallocate() {
 	setLoaded(false);
 
+	synchronized (this) {
+	    if (pipeline != null) {
+		pipeline.close();
+		pipeline = null;
+	    }
+	}
+
         if (!externalAudioPlayer) {
             if (audioPlayer != null) {
                 audioPlayer.close();
@@ -1015,6 +1417,14 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	if (!externalOutputQueue) {
 	    outputQueue.close();
 	}
+
+	synchronized (sharedData) {
+	    for (Iterator i = sharedData.iterator(); i.hasNext(); ) {
+		Object[] pair = (Object[]) i.next();
+		SharedVoiceData.release((String) pair[0], (URL) pair[1]);
+	    }
+	    sharedData.clear();
+	}
     }
 
     /**
@@ -1481,7 +1891,8 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 			}
 			tokenList.add(token);
 		    }
-		    utterance =  new Utterance(Voice.this, tokenList);
+		    utterance =  new Utterance(Voice.this, tokenList,
+			    acquireArena());
 		    utterance.setSpeakable(speakable);
 		    utterance.setFirst(first);
 		    first = false;
@@ -17,6 +17,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -79,6 +81,17 @@ import com.sun.speech.freetts.util.Utilities;
  * <p>Where <code>value</code> represents the value of the node.
  * Reaching a final node indicates the interpretation is over and the
  * value of the node is the interpretation result.
+ *
+ * <p>Once loaded, the nodes are compiled into flat arrays: an opcode,
+ * the <code>qfalse</code> index and the feature path of every node, the
+ * thresholds of &lt; and > already parsed to floats, the values of =
+ * interned, and the patterns of MATCHES compiled.  Interpreting an item
+ * then parses nothing and, for the common feature values (strings and
+ * small integers), allocates nothing.  Nodes with the same feature
+ * share one path extractor.  Setting the system property
+ * <code>com.sun.speech.freetts.interpretCarts</code> to
+ * <code>true</code> makes CARTs loaded afterwards walk the nodes
+ * instead, as they do anyway while FINER logging is on.
  */
 public class CARTImpl implements CART {
     /** Logger instance. */
@@ -110,6 +123,22 @@ public class CARTImpl implements CART {
      */
     final static String OPERAND_MATCHES = "MATCHES";
 
+    /**
+     * If this system property is set to true, CARTs are interpreted
+     * by walking their nodes rather than compiled.
+     */
+    public final static String INTERPRET_CARTS_PROPERTY =
+	"com.sun.speech.freetts.interpretCarts";
+
+    /**
+     * Opcodes of the compiled CART.
+     */
+    private final static byte OP_LEAF = 0;
+    private final static byte OP_LESS_THAN = 1;
+    private final static byte OP_GREATER_THAN = 2;
+    private final static byte OP_EQUALS = 3;
+    private final static byte OP_MATCHES = 4;
+
 
     /**
      * The CART. Entries can be DecisionNode or LeafNode.  An
@@ -124,6 +153,19 @@ public class CARTImpl implements CART {
      */
     transient int curNode = 0;
 
+    /**
+     * The compiled CART, or <code>null</code> if the nodes are walked.
+     * Node <code>i</code> is <code>ops[i]</code>; its qtrue is always
+     * <code>i + 1</code>.
+     */
+    private byte[] ops;
+    private int[] qfalse;
+    private PathExtractor[] paths;
+    private float[] thresholds;
+    private String[] strings;
+    private Pattern[] patterns;
+    private Object[] leafValues;
+
     /**
      * Creates a new CART by reading from the given URL.
      *
@@ -144,6 +186,7 @@ public class CARTImpl implements CART {
             line = reader.readLine();
         }
 	reader.close();
+	compile();
     }
 
     /**
@@ -163,6 +206,7 @@ public class CARTImpl implements CART {
 		parseAndAdd(line);
 	    }
         }
+	compile();
     }
     
     /**
@@ -208,6 +252,7 @@ public class CARTImpl implements CART {
 	    String nodeCreationLine = Utilities.getString(bb);
 	    cart.parseAndAdd(nodeCreationLine);
 	}
+	cart.compile();
 	return cart;
     }
 
@@ -231,6 +276,7 @@ public class CARTImpl implements CART {
 	    String nodeCreationLine = Utilities.getString(is);
 	    cart.parseAndAdd(nodeCreationLine);
 	}
+	cart.compile();
 	return cart;
     }
     
@@ -323,6 +369,75 @@ public class CARTImpl implements CART {
         }
     }
     
+    /**
+     * Compiles the nodes into the flat arrays used by
+     * <code>interpret</code>.  A CART with missing nodes, or loaded
+     * while the <code>interpretCarts</code> property is set, is left
+     * to be walked.
+     */
+    private void compile() {
+	if (Utilities.getProperty(INTERPRET_CARTS_PROPERTY,
+		    "false").equals("true")) {
+	    return;
+	}
+	int n = cart.length;
+	byte[] ops = new byte[n];
+	int[] qfalse = new int[n];
+	PathExtractor[] paths = new PathExtractor[n];
+	float[] thresholds = new float[n];
+	String[] strings = new String[n];
+	Pattern[] patterns = new Pattern[n];
+	Object[] leafValues = new Object[n];
+	Map pathsByFeature = new HashMap();
+
+	for (int i = 0; i < n; i++) {
+	    Node node = cart[i];
+	    if (node == null) {
+		return;
+	    }
+	    if (node instanceof LeafNode) {
+		ops[i] = OP_LEAF;
+		leafValues[i] = node.getValue();
+		continue;
+	    }
+	    DecisionNode decision = (DecisionNode) node;
+	    PathExtractor path =
+		(PathExtractor) pathsByFeature.get(decision.getFeature());
+	    if (path == null) {
+		path = decision.path;
+		pathsByFeature.put(decision.getFeature(), path);
+	    }
+	    paths[i] = path;
+	    qfalse[i] = decision.qfalse;
+	    if (decision instanceof MatchingNode) {
+		ops[i] = OP_MATCHES;
+		patterns[i] = ((MatchingNode) decision).pattern;
+		continue;
+	    }
+	    ComparisonNode comparison = (ComparisonNode) decision;
+	    Object value = comparison.getValue();
+	    if (comparison.comparisonType.equals(ComparisonNode.EQUALS)) {
+		ops[i] = OP_EQUALS;
+		strings[i] = value.toString().intern();
+	    } else {
+		ops[i] = comparison.comparisonType.equals(
+			ComparisonNode.LESS_THAN)
+		    ? OP_LESS_THAN : OP_GREATER_THAN;
+		thresholds[i] = (value instanceof Float)
+		    ? ((Float) value).floatValue()
+		    : Float.parseFloat(value.toString());
+	    }
+	}
+
+	this.qfalse = qfalse;
+	this.paths = paths;
+	this.thresholds = thresholds;
+	this.strings = strings;
+	this.patterns = patterns;
+	this.leafValues = leafValues;
+	this.ops = ops;
+    }
+
     /**
      * Passes the given item through this CART and returns the
      * interpretation.
@@ -332,6 +447,44 @@ public class CARTImpl implements CART {
      * @return the interpretation
      */
     public Object interpret(Item item) {
+	if (ops == null || LOGGER.isLoggable(Level.FINER)) {
+	    return interpretNodes(item);
+	}
+	int i = 0;
+	while (true) {
+	    boolean yes;
+	    switch (ops[i]) {
+	    case OP_LEAF:
+		return leafValues[i];
+	    case OP_LESS_THAN:
+		yes = toFloat(paths[i].findFeature(item)) < thresholds[i];
+		break;
+	    case OP_GREATER_THAN:
+		yes = toFloat(paths[i].findFeature(item)) > thresholds[i];
+		break;
+	    case OP_EQUALS:
+		Object val = paths[i].findFeature(item);
+		String sval = (val instanceof String)
+		    ? (String) val : val.toString();
+		yes = sval == strings[i] || sval.equals(strings[i]);
+		break;
+	    default:
+		yes = patterns[i].matcher(
+			(String) paths[i].findFeature(item)).matches();
+		break;
+	    }
+	    i = yes ? i + 1 : qfalse[i];
+	}
+    }
+
+    /**
+     * Passes the given item through this CART by walking its nodes.
+     *
+     * @param item the item to analyze
+     *
+     * @return the interpretation
+     */
+    private Object interpretNodes(Item item) {
         int nodeIndex = 0;
         DecisionNode decision;
 
@@ -345,6 +498,45 @@ public class CARTImpl implements CART {
         return ((LeafNode) cart[nodeIndex]).getValue();
     }
 
+    /**
+     * Converts a feature value to a float, as the &lt; and >
+     * comparisons do.  Strings holding small integers, which is what
+     * most feature processors return, are converted without
+     * <code>Float.parseFloat</code>.
+     *
+     * @param val the feature value
+     *
+     * @return the value as a float
+     *
+     * @throws NumberFormatException if the value is not a number
+     */
+    static float toFloat(Object val) {
+	if (val instanceof Float) {
+	    return ((Float) val).floatValue();
+	} else if (val instanceof String) {
+	    String s = (String) val;
+	    int len = s.length();
+	    int start = (len > 1 && s.charAt(0) == '-') ? 1 : 0;
+	    if (len > start && len - start <= 7) {
+		int n = 0;
+		int i = start;
+		for (; i < len; i++) {
+		    char c = s.charAt(i);
+		    if (c < '0' || c > '9') {
+			break;
+		    }
+		    n = n * 10 + (c - '0');
+		}
+		if (i == len) {
+		    return start == 0 ? n : -n;
+		}
+	    }
+	    return Float.parseFloat(s);
+	} else {
+	    return Float.parseFloat(val.toString());
+	}
+    }
+
     /**
      * A node for the CART.
      */
@@ -464,7 +656,7 @@ public class CARTImpl implements CART {
                             int qtrue,
                             int qfalse) {
             super(value);
-            this.path = new PathExtractorImpl(feature, true);
+            this.path = PathExtractorImpl.getInstance(feature, true);
             this.qtrue = qtrue;
             this.qfalse = qfalse;
         }
@@ -31,6 +31,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import com.sun.speech.freetts.cart.CART;
 import com.sun.speech.freetts.cart.CARTImpl;
@@ -72,12 +74,16 @@ public class ClusterUnitDatabase {
     private Map cartMap = new HashMap();
     private CART defaultCart = null;
 
+    private URL url;
+    private long checksum;		// of the text form
+    private JoinCosts joinCosts;	// made when first asked for
+
     private transient List unitList;
     private transient int lineCount;
     private transient List unitTypesList;
 
     private final static int MAGIC = 0xf0cacc1a;
-    private final static int VERSION = 0x1000;
+    private final static int VERSION = 0x1002;
 
 
     /**
@@ -90,11 +96,14 @@ public class ClusterUnitDatabase {
      */
     ClusterUnitDatabase(URL url, boolean isBinary) throws IOException {
 	BulkTimer.LOAD.start("ClusterUnitDatabase");
+	this.url = url;
 	InputStream is = Utilities.getInputStream(url);
 	if (isBinary) {
 	    loadBinary(is);
 	} else {
-	    loadText(is);
+	    CheckedInputStream cis = new CheckedInputStream(is, new CRC32());
+	    loadText(cis);
+	    checksum = cis.getChecksum().getValue();
 	}
 	is.close();
     // Attempt to load debug info from a .debug resource.
@@ -111,6 +120,55 @@ public class ClusterUnitDatabase {
     }
 
 
+    /**
+     * Loads a database.  A loaded database is not changed, and may be
+     * shared by the selectors of several voices.
+     *
+     * @param url the URL for the unit database. If the URL path ends
+     *     with a '.bin' it is assumed that the DB is a binary database,
+     *     otherwise, its assumed that its a text database
+     *
+     * @return the database
+     *
+     * @throws IOException if the database cannot be loaded
+     */
+    public static ClusterUnitDatabase load(URL url) throws IOException {
+        if (url == null) {
+	    throw new IOException("Can't load cluster unit database");
+	}
+	return new ClusterUnitDatabase(url, url.getPath().endsWith(".bin"));
+    }
+
+    /**
+     * Returns the join costs of this database, shared by every
+     * selector that uses it.  They are made on first use, with the
+     * cache size of {@link ClusterUnitSelector#JOIN_CACHE_SIZE_PROPERTY}
+     * and the precomputed costs of the <code>.joins</code> file next to
+     * the database, if there is one.
+     *
+     * @return the join costs
+     *
+     * @throws IOException if the precomputed costs cannot be read
+     */
+    synchronized JoinCosts getJoinCosts() throws IOException {
+	if (joinCosts == null) {
+	    JoinCosts costs = new JoinCosts(this, Utilities.getInteger(
+		    ClusterUnitSelector.JOIN_CACHE_SIZE_PROPERTY,
+		    65536).intValue());
+	    // Load precomputed join costs from a .joins file, if there is one.
+	    String urlString = url.toExternalForm();
+	    URL joinsURL = new URL(urlString.substring(0,
+			urlString.lastIndexOf(".")) + ".joins");
+	    try {
+		costs.loadTable(joinsURL);
+	    } catch (FileNotFoundException fnfe) {
+		// there is no table
+	    }
+	    joinCosts = costs;
+	}
+	return joinCosts;
+    }
+
     /**
      * Retrieves the begininning sample index for the
      * given entry.
@@ -289,6 +347,26 @@ public class ClusterUnitDatabase {
 	return optimalCoupling;
     }
 
+    /**
+     * Retrieves the number of units in the database.
+     *
+     * @return the number of units
+     */
+    int getNumberOfUnits() {
+	return units.length;
+    }
+
+    /**
+     * Returns the CRC32 of the text form of the database, which tells
+     * it from another database with as many units.  A binary database
+     * keeps the checksum of the text it was dumped from.
+     *
+     * @return the checksum
+     */
+    long getChecksum() {
+	return checksum;
+    }
+
     /**
      * Retrieves the continuity weight setting.
      *
@@ -546,14 +624,15 @@ public class ClusterUnitDatabase {
     private void loadBinary(InputStream is) throws IOException {
 	// we get better performance if we can map the file in
 	// 1.0 seconds vs. 1.75 seconds, but we can't
-	// always guarantee that we can do that.
+	// always guarantee that we can do that.  The sample sets
+	// stay in the mapping, so the pages are only read as the
+	// samples are used.
 	if (is instanceof FileInputStream) {
 	    FileInputStream fis = (FileInputStream) is;
 	    FileChannel fc = fis.getChannel();
 
 	    MappedByteBuffer bb = 
 		fc.map(FileChannel.MapMode.READ_ONLY, 0, (int) fc.size());
-	    bb.load();
 	    loadBinary(bb);
 	    is.close();
 	} else {
@@ -576,6 +655,7 @@ public class ClusterUnitDatabase {
 	if (bb.getInt() != VERSION)  {
 	    throw new Error("Bad VERSION in db");
 	}
+	checksum = bb.getLong();
 
 	continuityWeight = bb.getInt();
 	optimalCoupling = bb.getInt();
@@ -631,6 +711,7 @@ public class ClusterUnitDatabase {
 	if (is.readInt() != VERSION)  {
 	    throw new Error("Bad VERSION in db");
 	}
+	checksum = is.readLong();
 
 	continuityWeight = is.readInt();
 	optimalCoupling = is.readInt();
@@ -718,6 +799,7 @@ public class ClusterUnitDatabase {
 
 	    os.writeInt(MAGIC);
 	    os.writeInt(VERSION);
+	    os.writeLong(checksum);
 	    os.writeInt(continuityWeight);
 	    os.writeInt(optimalCoupling);
 	    os.writeInt(extendSelections);
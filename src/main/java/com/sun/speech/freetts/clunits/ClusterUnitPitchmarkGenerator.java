@@ -76,7 +76,7 @@ public class ClusterUnitPitchmarkGenerator implements UtteranceProcessor {
 	    unitStart = unit.getFeatures().getInt("unit_start");
 	    unitEnd = unit.getFeatures().getInt("unit_end");
 	    for (int i = unitStart; i < unitEnd; i++,pitchmarks++) {
-		uttSize += sts.getSample(i).getResidualSize();
+		uttSize += sts.getFrameSize(i);
 		targetTimes[pitchmarks] = uttSize;
 	    }
 	}
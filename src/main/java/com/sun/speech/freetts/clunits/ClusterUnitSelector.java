@@ -29,6 +29,7 @@ import com.sun.speech.freetts.clunits.ClusterUnitDatabase.UnitOriginInfo;
 import com.sun.speech.freetts.relp.Sample;
 import com.sun.speech.freetts.relp.SampleInfo;
 import com.sun.speech.freetts.relp.SampleSet;
+import com.sun.speech.freetts.util.Utilities;
 
 import de.dfki.lt.freetts.ClusterUnitNamer;
 
@@ -45,8 +46,43 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 
     private final static PathExtractor DNAME = new PathExtractorImpl(
 	    "R:SylStructure.parent.parent.name", true);
+
+    /**
+     * If this system property is set to true, units are selected by
+     * the linked Viterbi search instead of {@link ViterbiDecoder}.
+     */
+    public final static String LINKED_VITERBI_PROPERTY =
+	"com.sun.speech.freetts.clunits.linkedViterbi";
+
+    /**
+     * The most candidates per segment the Viterbi search extends paths
+     * from; 0, the default, keeps them all.  Not used by the linked
+     * search.
+     */
+    public final static String BEAM_WIDTH_PROPERTY =
+	"com.sun.speech.freetts.clunits.beamWidth";
+
+    /**
+     * How much worse than the best candidate of a segment a candidate
+     * may score and still be extended; 0, the default, is no limit.
+     * Not used by the linked search.
+     */
+    public final static String BEAM_THRESHOLD_PROPERTY =
+	"com.sun.speech.freetts.clunits.beamThreshold";
+
+    /**
+     * The most join costs kept for a database; 0 keeps none.  The
+     * default is 65536.
+     */
+    public final static String JOIN_CACHE_SIZE_PROPERTY =
+	"com.sun.speech.freetts.clunits.joinCacheSize";
+
     private ClusterUnitDatabase clunitDB;
     private ClusterUnitNamer unitNamer;
+    private JoinCosts joinCosts;
+    private boolean linkedViterbi;
+    private int beamWidth;
+    private int beamThreshold;
     
     /**
      * Constructs a ClusterUnitSelector.
@@ -79,16 +115,61 @@ public class ClusterUnitSelector implements UtteranceProcessor {
      *
      */
     public ClusterUnitSelector(URL url, ClusterUnitNamer unitNamer) throws IOException {
-        if (url == null) {
-	    throw new IOException("Can't load cluster unit database");
-	}
-	boolean binary = url.getPath().endsWith(".bin");
-	clunitDB = new ClusterUnitDatabase(url, binary);
+	this(ClusterUnitDatabase.load(url), unitNamer);
+    }
+
+    /**
+     * Constructs a ClusterUnitSelector for a database that is already
+     * loaded, and may be shared with other selectors.  Selectors of a
+     * database share its join costs.
+     *
+     * @param db the unit database
+     * @param unitNamer an optional unit namer, as for
+     *     {@link #ClusterUnitSelector(URL, ClusterUnitNamer)}
+     *
+     * @throws IOException if the precomputed join costs of the
+     *     database cannot be read
+     */
+    public ClusterUnitSelector(ClusterUnitDatabase db, ClusterUnitNamer unitNamer) throws IOException {
+	clunitDB = db;
 	this.unitNamer = unitNamer; 
+	joinCosts = db.getJoinCosts();
+	linkedViterbi = Utilities.getProperty(LINKED_VITERBI_PROPERTY,
+		"false").equals("true");
+	beamWidth = Utilities.getInteger(BEAM_WIDTH_PROPERTY, 0).intValue();
+	beamThreshold = Utilities.getInteger(BEAM_THRESHOLD_PROPERTY,
+		0).intValue();
 
     }
     
 
+    /**
+     * Writes the join costs most used so far to a file, to be loaded
+     * as precomputed costs by a selector for the same database.  A
+     * selector looks for them next to its database, in a file of the
+     * same name ending in <code>.joins</code>.
+     *
+     * @param path the file to write
+     * @param maxPairs the most pairs of units written
+     *
+     * @return the number of pairs written
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public int dumpJoinCosts(String path, int maxPairs) throws IOException {
+	return joinCosts.dumpBinary(path, maxPairs);
+    }
+
+    /**
+     * Shows how often join costs were found in the cache and the
+     * precomputed table, for every selector of the database.
+     *
+     * @param title the title for the metrics
+     */
+    public void showMetrics(String title) {
+	joinCosts.showMetrics(title);
+    }
+
     /**
      * Get the sample info for the underlying database.
      * @return the sample info object
@@ -126,34 +207,45 @@ public class ClusterUnitSelector implements UtteranceProcessor {
      * 
      */
     public void processUtterance(Utterance utterance) throws ProcessException {
-	Viterbi vd;
 	Relation segs = utterance.getRelation(Relation.SEGMENT);
 
 	utterance.setObject(SampleInfo.UTT_NAME,
 		clunitDB.getSampleInfo());
     	utterance.setObject("sts_list", clunitDB.getSts());
 
-	vd = new Viterbi(segs, clunitDB);
-	
 	for (Item s = segs.getHead(); s != null; s = s.getNext()) {
 	    setUnitName(s);
 	}
 
-    // Carry out the CART lookup for the target costs, and the viterbi
-    // search for finding the best path (join costs) through the candidates.
-	vd.decode();
+	if (linkedViterbi) {
+	    Viterbi vd = new Viterbi(segs, clunitDB, joinCosts);
 
-    // Now associate the candidate units in the best path 
-    // with the items in the segment relation.
-	if (!vd.result("selected_unit")) {
-	    LOGGER.severe("clunits: can't find path");
-	    throw new Error();
-	}
+        // Carry out the CART lookup for the target costs, and the viterbi
+        // search for finding the best path (join costs) through the candidates.
+	    vd.decode();
+
+        // Now associate the candidate units in the best path 
+        // with the items in the segment relation.
+	    if (!vd.result("selected_unit")) {
+		LOGGER.severe("clunits: can't find path");
+		throw new Error();
+	    }
 
-    // If optimal coupling was used, the join points must now be copied
-    // from the path elements to the actual items in the segment relation.
-	vd.copyFeature("unit_prev_move");
-	vd.copyFeature("unit_this_move");
+        // If optimal coupling was used, the join points must now be copied
+        // from the path elements to the actual items in the segment relation.
+	    vd.copyFeature("unit_prev_move");
+	    vd.copyFeature("unit_this_move");
+	} else {
+	    // the same search, with the join points set as the
+	    // best path is followed back
+	    ViterbiDecoder vd = new ViterbiDecoder(segs, clunitDB, joinCosts,
+		    beamWidth, beamThreshold);
+	    vd.decode();
+	    if (!vd.result()) {
+		LOGGER.severe("clunits: can't find path");
+		throw new Error();
+	    }
+	}
 
     // Based on this data, create a Unit relation giving the details of the
     // units to concatenate.
@@ -306,6 +398,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 	private ViterbiPoint lastPoint = null;
 	private FeatureSet f = null;
 	private ClusterUnitDatabase clunitDB;
+	private JoinCosts joinCosts;
 
 	/**
 	 * Creates a Viterbi class to process the given utterance.
@@ -313,9 +406,11 @@ public class ClusterUnitSelector implements UtteranceProcessor {
      * is built up.
      * 
 	 */
-	public Viterbi(Relation segs, ClusterUnitDatabase db) {
+	public Viterbi(Relation segs, ClusterUnitDatabase db,
+		JoinCosts joinCosts) {
 	    ViterbiPoint last = null;
 	    clunitDB = db;
+	    this.joinCosts = joinCosts;
 	    f = new FeatureSetImpl();
 	    for (Item s = segs.getHead(); true; s = s.getNext()) {
 		ViterbiPoint n = new ViterbiPoint(s);
@@ -672,7 +767,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		int u0 = path.candidate.ival;
 		int u1 = candidate.ival;
 		if (clunitDB.getOptimalCoupling() == 1) {
-		    Cost oCost = getOptimalCouple(u0, u1);
+		    Cost oCost = joinCosts.getOptimalCouple(u0, u1);
 		    if (oCost.u0Move != -1) {
 			newPath.setFeature("unit_prev_move", new
 				Integer(oCost.u0Move));
@@ -683,7 +778,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		    }
 		    cost = oCost.cost;
 		} else if (clunitDB.getOptimalCoupling() == 2) {
-		    cost = getOptimalCoupleFrame(u0, u1);
+		    cost = joinCosts.getOptimalCoupleFrame(u0, u1);
 		} else {
 		    cost = 0;
 		}
@@ -743,154 +838,6 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 	    }
 	    return bestPath;
 	}
-
-	/**
-     * Find the optimal coupling frame for a pair of units.
-	 *
-	 * @param u0  first unit to try
-	 * @param u1  second unit to try
-	 *
-	 * @return the cost for this coupling, including the best coupling frame
-	 */
-	Cost getOptimalCouple(int u0, int u1) {
-	    int a,b;
-	    int u1_p;
-	    int i, fcount;
-	    int u0_st, u1_p_st, u0_end, u1_p_end;
-	    int best_u0, best_u1_p;
-	    int dist, best_val; 
-	    Cost cost = new Cost();
-
-	    u1_p = clunitDB.getPrevUnit(u1);
-
-        // If u0 precedes u1, the cost is 0, and we're finished.
-	    if (u1_p == u0) {
-		return cost;
-	    }
-
-
-        // If u1 does not have a previous unit, or that previous
-        // unit does not belong to the same phone, the optimal
-        // couple frame must be found between u0 and u1.
-	    if (u1_p == ClusterUnitDatabase.CLUNIT_NONE ||
-		    clunitDB.getPhone(u0) !=
-		    clunitDB.getPhone(u1_p)) {
-		cost.cost = 10 * getOptimalCoupleFrame(u0, u1);
-		return cost;
-	    }
-
-	    // If u1 has a valid previous unit, try to find the optimal
-        // couple point between u0 and that previous unit, u1_p.
-        
-        // Find out which of u1_p and u0 is shorter.
-	    // In both units, we plan to start from one third of the unit length,
-        // and to compare frame coupling frame by frame until the end of the
-        // shorter unit is reached.
-	    u0_end = clunitDB.getEnd(u0) - clunitDB.getStart(u0);
-	    u1_p_end = clunitDB.getEnd(u1_p) - clunitDB.getStart(u1_p);
-	    u0_st = u0_end / 3;
-	    u1_p_st = u1_p_end / 3;
-
-	    if ((u0_end - u0_st) < (u1_p_end - u1_p_st)) {
-		fcount = u0_end - u0_st;
-            // We could now shift the starting point for coupling in the longer unit
-            // so that the distance from the end is the same in both units:
-            /* u1_p_st = u1_p_end - fcount; */
-	    } else {
-		fcount = u1_p_end - u1_p_st;
-            // We could now shift the starting point for coupling in the longer unit
-            // so that the distance from the end is the same in both units:
-            /* u0_st = u0_end - fcount; */
-	    }
-
-	    // Now go through the two units, and search for the frame pair where
-        // the acoustic distance is smallest.
-	    best_u0 = u0_end;
-	    best_u1_p = u1_p_end;
-	    best_val = Integer.MAX_VALUE;
-
-	    for (i = 0; i < fcount; ++i) {
-		a = clunitDB.getStart(u0)+ u0_st + i;
-		b = clunitDB.getStart(u1_p) + u1_p_st + i;
-		dist = getFrameDistance(a, b,
-		     clunitDB.getJoinWeights(),
-		     clunitDB.getMcep().getSampleInfo().getNumberOfChannels())
-		      + Math.abs( clunitDB.getSts().getFrameSize(a) - 
-			    clunitDB.getSts().getFrameSize(b)) * 
-			    clunitDB.getContinuityWeight();
-
-		if (dist < best_val) {
-		    best_val = dist;
-		    best_u0 = u0_st + i;
-		    best_u1_p = u1_p_st + i;
-		}
-	    }
-        
-        // u0Move is the new end for u0
-        // u1Move is the new start for u1
-	    cost.u0Move = clunitDB.getStart(u0) + best_u0;
-	    cost.u1Move = clunitDB.getStart(u1_p) + best_u1_p;
-	    cost.cost = 30000 + best_val;
-	    return cost;
-	}
-
-	/** 
-	 * Returns the distance between the successive potential
-	 * frames.
-	 *
-	 * @param u0 the first unit to try
-	 * @param u1 the second unit to try
-	 *
-	 * @return the distance between the two units
-	 */
-	int getOptimalCoupleFrame(int u0, int u1) {
-	    int a, b;
-
-	    if (clunitDB.getPrevUnit(u1) == u0) {
-		return 0; // consecutive units win
-	    }
-
-            if (clunitDB.getNextUnit(u0) != ClusterUnitDatabase.CLUNIT_NONE) {
-                a = clunitDB.getEnd(u0);
-	    } else {  // don't want to do this but it's all that is left to do
-                a = clunitDB.getEnd(u0) - 1; // if num frames < 1 this is bad
-            }
-            b = clunitDB.getStart(u1);
-
-	    return getFrameDistance(a, b, 
-		    clunitDB.getJoinWeights(),
-		    clunitDB.getMcep().getSampleInfo().getNumberOfChannels())
-		+ Math.abs( clunitDB.getSts().getFrameSize(a) - 
-			    clunitDB.getSts().getFrameSize(b)) * 
-			    clunitDB.getContinuityWeight();
-	}
-
-	/**
-	 * Get the 'distance' between the frames a and b.
-	 *
-	 * @param a first frame
-	 * @param b second frame
-	 * @param joinWeights the weights used in comparison
-	 * @param order number of compares
-	 *
-	 * @return the distance between the frames
-	 */
-	public int getFrameDistance(int a, int b, int[] joinWeights,int order) {
-
-	    if (LOGGER.isLoggable(Level.FINE)) {
-		LOGGER.fine(" gfd  a " + a   + " b " + b + " or " + order);
-	    }
-	    int r, i;
-	    short[] bv = clunitDB.getMcep().getSample(b).getFrameData();
-	    short[] av = clunitDB.getMcep().getSample(a).getFrameData();
-
-	    for (r = 0, i = 0; i < order; i++) {
-		int diff = av[i] - bv[i];
-		r += Math.abs(diff) * joinWeights[i] / 65536;
-	    }
-	    return r;
-	}
-
     }
 
 
@@ -1070,16 +1017,6 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 }
 
 
-/**
- * Information returned from getOptimalCoupling.
- */
-class Cost {
-    int cost = 0;
-    int u0Move = -1;
-    int u1Move = -1;
-}
-
-
 /**
  * A Cluster Unit.
  */
@@ -1155,12 +1092,11 @@ class ClusterUnit implements com.sun.speech.freetts.Unit {
 
 	// loop through all the Samples in this unit
 	for (i = start; i < end; i++) {
-	    Sample sample = sts.getSample(i);
-	    nSize = iSize + sample.getResidualSize();
+	    nSize = iSize + sts.getFrameSize(i);
 
 	    if (Math.abs(index - (float) iSize) <
 		Math.abs(index - (float) nSize)) {
-		return sample;
+		return sts.getSample(i);
 	    }
 	    iSize = nSize;
 	}
@@ -0,0 +1,20 @@
+/**
+ * Portions Copyright 2001-2003 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+/**
+ * Information returned from getOptimalCoupling.
+ */
+class Cost {
+    int cost = 0;
+    int u0Move = -1;
+    int u1Move = -1;
+}
@@ -0,0 +1,555 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/**
+ * Computes the cost of joining two units of a cluster unit database,
+ * as used by the Viterbi search of {@link ClusterUnitSelector}.  One
+ * instance serves every utterance of a selector, and may be used from
+ * several threads.
+ *
+ * <p>The same pairs of units are joined over and over, as common
+ * contexts recur, so costs are kept in a bounded cache keyed by the
+ * pair.  The cache is a table of fixed size; a pair goes in one slot,
+ * replacing whatever was there.  A slot is four longs: a check word,
+ * the cost, the two moves and a use count.  The check word is the key
+ * xor the cost and moves, so a slot read while another thread writes
+ * it does not check out, and threads share the table without locking.
+ *
+ * <p>Costs may also be precomputed into a join table: the pairs most
+ * used while the cache was warm, written by {@link #dumpBinary} and
+ * sorted by pair.  A table is mapped into memory when it is loaded
+ * and searched when a pair is not in the cache.  A table holds the
+ * number of units and the checksum of the database it was made for,
+ * and is ignored by any other database.
+ */
+class JoinCosts {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(JoinCosts.class.getName());
+
+    private final static int MAGIC = 0xf0cacc1b;
+    private final static int VERSION = 0x1001;
+    private final static int HEADER_SIZE = 24;
+    private final static int RECORD_SIZE = 20;
+
+    // marks the key of a getOptimalCoupleFrame cost
+    private final static long FRAME_KEY = 1L << 63;
+
+    // returned by find for a cost that has to be computed
+    private final static int MISSING = Integer.MIN_VALUE;
+
+    private final ClusterUnitDatabase clunitDB;
+    private final long[] cache;
+    private final int shift;
+    private ByteBuffer table;
+    private int tableSize;
+
+    // summed only when read, so threads don't contend on every lookup
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates the join costs for a database, without a cache.
+     *
+     * @param db the cluster unit database
+     */
+    JoinCosts(ClusterUnitDatabase db) {
+	this(db, 0);
+    }
+
+    /**
+     * Creates the join costs for a database.
+     *
+     * @param db the cluster unit database
+     * @param cacheSize the most costs kept, rounded up to a power of
+     *     two, or 0 to keep none
+     */
+    JoinCosts(ClusterUnitDatabase db, int cacheSize) {
+	clunitDB = db;
+	if (cacheSize > 0) {
+	    int size = Math.max(2, Integer.highestOneBit(cacheSize));
+	    if (size < cacheSize) {
+		size <<= 1;
+	    }
+	    cache = new long[size * 4];
+	    shift = 64 - Integer.numberOfTrailingZeros(size);
+	} else {
+	    cache = null;
+	    shift = 0;
+	}
+    }
+
+    /**
+     * Loads a join table written by {@link #dumpBinary}.  The table
+     * is mapped if it is a file.  A table made for another database
+     * is ignored.
+     *
+     * @param url where the table is
+     *
+     * @throws IOException if the table cannot be read
+     */
+    void loadTable(URL url) throws IOException {
+	InputStream is = Utilities.getInputStream(url);
+	ByteBuffer bb;
+	if (is instanceof FileInputStream) {
+	    FileChannel fc = ((FileInputStream) is).getChannel();
+	    bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+	} else {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[8192];
+	    int n;
+	    while ((n = is.read(buffer)) != -1) {
+		bytes.write(buffer, 0, n);
+	    }
+	    bb = ByteBuffer.wrap(bytes.toByteArray());
+	}
+	is.close();
+
+	if (bb.capacity() < HEADER_SIZE || bb.getInt(0) != MAGIC
+		|| bb.getInt(4) != VERSION) {
+	    throw new IOException("Bad join table " + url);
+	}
+	if (bb.getInt(8) != clunitDB.getNumberOfUnits()
+		|| bb.getLong(16) != clunitDB.getChecksum()) {
+	    LOGGER.warning("Join table " + url
+		    + " is for another database, ignored");
+	    return;
+	}
+	int size = bb.getInt(12);
+	if (bb.capacity() < HEADER_SIZE + size * RECORD_SIZE) {
+	    throw new IOException("Short join table " + url);
+	}
+	table = bb;
+	tableSize = size;
+    }
+
+    /**
+     * Writes a join table of the pairs in the cache that were used
+     * most, for {@link #loadTable}.  Run a representative body of
+     * text through the selector first.
+     *
+     * @param path the file to write
+     * @param maxPairs the most pairs written
+     *
+     * @return the number of pairs written
+     *
+     * @throws IOException if the table cannot be written
+     */
+    int dumpBinary(String path, int maxPairs) throws IOException {
+	List entries = new ArrayList();
+	if (cache != null) {
+	    for (int at = 0; at < cache.length; at += 4) {
+		long key = ~(cache[at] ^ cache[at + 1] ^ cache[at + 2]);
+		if (key != -1L) {	// an empty slot
+		    long moves = cache[at + 2];
+		    entries.add(new Entry(key, (int) cache[at + 1],
+			    (int) (moves >> 32), (int) moves,
+			    (int) cache[at + 3]));
+		}
+	    }
+	}
+	Collections.sort(entries, new Comparator() {
+	    public int compare(Object o1, Object o2) {
+		return ((Entry) o2).uses - ((Entry) o1).uses;
+	    }
+	});
+	if (entries.size() > maxPairs) {
+	    entries = new ArrayList(entries.subList(0, maxPairs));
+	}
+	Collections.sort(entries, new Comparator() {
+	    public int compare(Object o1, Object o2) {
+		long k1 = ((Entry) o1).key;
+		long k2 = ((Entry) o2).key;
+		return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+	    }
+	});
+
+	DataOutputStream os = new DataOutputStream(new
+		BufferedOutputStream(new FileOutputStream(path)));
+	os.writeInt(MAGIC);
+	os.writeInt(VERSION);
+	os.writeInt(clunitDB.getNumberOfUnits());
+	os.writeInt(entries.size());
+	os.writeLong(clunitDB.getChecksum());
+	for (int i = 0; i < entries.size(); i++) {
+	    Entry e = (Entry) entries.get(i);
+	    os.writeLong(e.key);
+	    os.writeInt(e.cost);
+	    os.writeInt(e.u0Move);
+	    os.writeInt(e.u1Move);
+	}
+	os.close();
+	return entries.size();
+    }
+
+    /**
+     * Returns the number of costs found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    long getHits() {
+	return hits.sum();
+    }
+
+    /**
+     * Returns the number of costs found in the join table.
+     *
+     * @return the number of table hits
+     */
+    long getTableHits() {
+	return tableHits.sum();
+    }
+
+    /**
+     * Returns the number of costs computed.
+     *
+     * @return the number of misses
+     */
+    long getMisses() {
+	return misses.sum();
+    }
+
+    /**
+     * Shows the cache counters.
+     *
+     * @param title the title for the metrics
+     */
+    void showMetrics(String title) {
+	long h = hits.sum();
+	long t = tableHits.sum();
+	long total = h + t + misses.sum();
+	System.out.println("Join costs " + title + ":");
+	System.out.println("   lookups      " + total);
+	System.out.println("   cached       " + h + " (" + percent(h, total)
+		+ "%)");
+	System.out.println("   table        " + t + " (" + percent(t, total)
+		+ "%) of " + tableSize);
+    }
+
+    private static double percent(long n, long total) {
+	return total == 0 ? 0.0 : Math.round(n * 1000.0 / total) / 10.0;
+    }
+
+    /**
+     * Find the optimal coupling frame for a pair of units.
+     *
+     * @param u0  first unit to try
+     * @param u1  second unit to try
+     *
+     * @return the cost for this coupling, including the best coupling frame
+     */
+    Cost getOptimalCouple(int u0, int u1) {
+	int[] moves = new int[2];
+	Cost cost = new Cost();
+	cost.cost = getOptimalCouple(u0, u1, moves);
+	cost.u0Move = moves[0];
+	cost.u1Move = moves[1];
+	return cost;
+    }
+
+    /**
+     * Find the optimal coupling frame for a pair of units, without
+     * making a {@link Cost}.
+     *
+     * @param u0  first unit to try
+     * @param u1  second unit to try
+     * @param moves set to the new end of u0 and the new start of u1,
+     *     or -1 where the unit boundary is not moved
+     *
+     * @return the cost for this coupling
+     */
+    int getOptimalCouple(int u0, int u1, int[] moves) {
+	if ((cache == null && table == null)
+		|| clunitDB.getPrevUnit(u1) == u0) {
+	    return computeOptimalCouple(u0, u1, moves);
+	}
+	long key = ((long) u0 << 32) | u1;
+	int cost = find(key, moves);
+	if (cost == MISSING) {
+	    cost = computeOptimalCouple(u0, u1, moves);
+	    store(key, cost, moves[0], moves[1]);
+	}
+	return cost;
+    }
+
+    /**
+     * Computes the optimal coupling of a pair of units.
+     *
+     * @param u0  first unit to try
+     * @param u1  second unit to try
+     * @param moves set to the new end of u0 and the new start of u1,
+     *     or -1 where the unit boundary is not moved
+     *
+     * @return the cost for this coupling
+     */
+    private int computeOptimalCouple(int u0, int u1, int[] moves) {
+	int a,b;
+	int u1_p;
+	int i, fcount;
+	int u0_st, u1_p_st, u0_end, u1_p_end;
+	int best_u0, best_u1_p;
+	int dist, best_val;
+
+	moves[0] = -1;
+	moves[1] = -1;
+	u1_p = clunitDB.getPrevUnit(u1);
+
+        // If u0 precedes u1, the cost is 0, and we're finished.
+	if (u1_p == u0) {
+	    return 0;
+	}
+
+
+        // If u1 does not have a previous unit, or that previous
+        // unit does not belong to the same phone, the optimal
+        // couple frame must be found between u0 and u1.
+	if (u1_p == ClusterUnitDatabase.CLUNIT_NONE ||
+		clunitDB.getPhone(u0) !=
+		clunitDB.getPhone(u1_p)) {
+	    return 10 * computeOptimalCoupleFrame(u0, u1);
+	}
+
+	// If u1 has a valid previous unit, try to find the optimal
+        // couple point between u0 and that previous unit, u1_p.
+
+        // Find out which of u1_p and u0 is shorter.
+	// In both units, we plan to start from one third of the unit length,
+        // and to compare frame coupling frame by frame until the end of the
+        // shorter unit is reached.
+	u0_end = clunitDB.getEnd(u0) - clunitDB.getStart(u0);
+	u1_p_end = clunitDB.getEnd(u1_p) - clunitDB.getStart(u1_p);
+	u0_st = u0_end / 3;
+	u1_p_st = u1_p_end / 3;
+
+	if ((u0_end - u0_st) < (u1_p_end - u1_p_st)) {
+	    fcount = u0_end - u0_st;
+            // We could now shift the starting point for coupling in the longer unit
+            // so that the distance from the end is the same in both units:
+            /* u1_p_st = u1_p_end - fcount; */
+	} else {
+	    fcount = u1_p_end - u1_p_st;
+            // We could now shift the starting point for coupling in the longer unit
+            // so that the distance from the end is the same in both units:
+            /* u0_st = u0_end - fcount; */
+	}
+
+	// Now go through the two units, and search for the frame pair where
+        // the acoustic distance is smallest.
+	best_u0 = u0_end;
+	best_u1_p = u1_p_end;
+	best_val = Integer.MAX_VALUE;
+
+	for (i = 0; i < fcount; ++i) {
+	    a = clunitDB.getStart(u0)+ u0_st + i;
+	    b = clunitDB.getStart(u1_p) + u1_p_st + i;
+	    dist = getFrameDistance(a, b,
+		 clunitDB.getJoinWeights(),
+		 clunitDB.getMcep().getSampleInfo().getNumberOfChannels())
+		  + Math.abs( clunitDB.getSts().getFrameSize(a) -
+			clunitDB.getSts().getFrameSize(b)) *
+			clunitDB.getContinuityWeight();
+
+	    if (dist < best_val) {
+		best_val = dist;
+		best_u0 = u0_st + i;
+		best_u1_p = u1_p_st + i;
+	    }
+	}
+
+        // u0Move is the new end for u0
+        // u1Move is the new start for u1
+	moves[0] = clunitDB.getStart(u0) + best_u0;
+	moves[1] = clunitDB.getStart(u1_p) + best_u1_p;
+	return 30000 + best_val;
+    }
+
+    /**
+     * Returns the distance between the successive potential
+     * frames.
+     *
+     * @param u0 the first unit to try
+     * @param u1 the second unit to try
+     *
+     * @return the distance between the two units
+     */
+    int getOptimalCoupleFrame(int u0, int u1) {
+	if ((cache == null && table == null)
+		|| clunitDB.getPrevUnit(u1) == u0) {
+	    return computeOptimalCoupleFrame(u0, u1);
+	}
+	long key = FRAME_KEY | ((long) u0 << 32) | u1;
+	int cost = find(key, null);
+	if (cost == MISSING) {
+	    cost = computeOptimalCoupleFrame(u0, u1);
+	    store(key, cost, -1, -1);
+	}
+	return cost;
+    }
+
+    /**
+     * Computes the distance between the successive potential
+     * frames.
+     *
+     * @param u0 the first unit to try
+     * @param u1 the second unit to try
+     *
+     * @return the distance between the two units
+     */
+    private int computeOptimalCoupleFrame(int u0, int u1) {
+	int a, b;
+
+	if (clunitDB.getPrevUnit(u1) == u0) {
+	    return 0; // consecutive units win
+	}
+
+	if (clunitDB.getNextUnit(u0) != ClusterUnitDatabase.CLUNIT_NONE) {
+	    a = clunitDB.getEnd(u0);
+	} else {  // don't want to do this but it's all that is left to do
+	    a = clunitDB.getEnd(u0) - 1; // if num frames < 1 this is bad
+	}
+	b = clunitDB.getStart(u1);
+
+	return getFrameDistance(a, b,
+		clunitDB.getJoinWeights(),
+		clunitDB.getMcep().getSampleInfo().getNumberOfChannels())
+	    + Math.abs( clunitDB.getSts().getFrameSize(a) -
+			clunitDB.getSts().getFrameSize(b)) *
+			clunitDB.getContinuityWeight();
+    }
+
+    /**
+     * Get the 'distance' between the frames a and b.
+     *
+     * @param a first frame
+     * @param b second frame
+     * @param joinWeights the weights used in comparison
+     * @param order number of compares
+     *
+     * @return the distance between the frames
+     */
+    int getFrameDistance(int a, int b, int[] joinWeights,int order) {
+	return clunitDB.getMcep().getFrameDistance(a, b, joinWeights, order);
+    }
+
+    /**
+     * Finds the cost of a pair in the cache or the join table.  A
+     * cost found in the table is put in the cache.
+     *
+     * @param key the pair
+     * @param moves set to the moves of the pair, if not null
+     *
+     * @return the cost, or <code>MISSING</code> if it has to be
+     *     computed
+     */
+    private int find(long key, int[] moves) {
+	if (cache != null) {
+	    int at = slot(key);
+	    long cost = cache[at + 1];
+	    long packed = cache[at + 2];
+	    if ((cache[at] ^ cost ^ packed) == ~key) {
+		cache[at + 3]++;	// for dumpBinary; lost updates are fine
+		hits.increment();
+		if (moves != null) {
+		    moves[0] = (int) (packed >> 32);
+		    moves[1] = (int) packed;
+		}
+		return (int) cost;
+	    }
+	}
+	if (table != null) {
+	    int lo = 0;
+	    int hi = tableSize - 1;
+	    while (lo <= hi) {
+		int mid = (lo + hi) >>> 1;
+		int at = HEADER_SIZE + mid * RECORD_SIZE;
+		long k = table.getLong(at);
+		if (k < key) {
+		    lo = mid + 1;
+		} else if (k > key) {
+		    hi = mid - 1;
+		} else {
+		    int cost = table.getInt(at + 8);
+		    int u0Move = table.getInt(at + 12);
+		    int u1Move = table.getInt(at + 16);
+		    store(key, cost, u0Move, u1Move);
+		    tableHits.increment();
+		    if (moves != null) {
+			moves[0] = u0Move;
+			moves[1] = u1Move;
+		    }
+		    return cost;
+		}
+	    }
+	}
+	misses.increment();
+	return MISSING;
+    }
+
+    private void store(long key, int cost, int u0Move, int u1Move) {
+	if (cache != null) {
+	    int at = slot(key);
+	    long packed = ((long) u0Move << 32) | (u1Move & 0xffffffffL);
+	    cache[at + 1] = cost;
+	    cache[at + 2] = packed;
+	    cache[at + 3] = 0;
+	    cache[at] = ~key ^ cost ^ packed;
+	}
+    }
+
+    /**
+     * Returns the first long of the slot of a pair in the cache.  The
+     * slot is the top bits of the key times the golden ratio, so both
+     * units of the pair count.
+     */
+    private int slot(long key) {
+	return (int) ((key * 0x9e3779b97f4a7c15L) >>> shift) << 2;
+    }
+
+    /**
+     * The cost of joining a pair of units, as written to a join table.
+     */
+    private static class Entry {
+	final long key;
+	final int cost;
+	final int u0Move;
+	final int u1Move;
+	final int uses;
+
+	Entry(long key, int cost, int u0Move, int u1Move, int uses) {
+	    this.key = key;
+	    this.cost = cost;
+	    this.u0Move = u0Move;
+	    this.u1Move = u1Move;
+	    this.uses = uses;
+	}
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.speech.freetts.FeatureSet;
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.cart.CART;
+
+/**
+ * The Viterbi search of {@link ClusterUnitSelector}, kept in flat
+ * arrays.  Every segment is a point with a run of candidate units;
+ * for each candidate the decoder keeps the best score of a path ending
+ * in it, the candidate it came from and the unit boundaries optimal
+ * coupling moved.  Nothing is made per path or per candidate.
+ *
+ * <p>The search may be pruned.  After the candidates of a point are
+ * scored, those worse than the best by more than the beam threshold
+ * are dropped, and then all but the best <i>beam width</i> of them.
+ * Paths are only extended from candidates that are kept.  With
+ * neither set, every path is extended, and the units chosen are those
+ * of the linked search ({@link ClusterUnitSelector.Viterbi}): scores
+ * are summed in the same order, and ties go the same way.
+ *
+ * <p>A decoder is made for one utterance.
+ */
+class ViterbiDecoder {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(ViterbiDecoder.class.getName());
+
+    private final ClusterUnitDatabase clunitDB;
+    private final JoinCosts joinCosts;
+    private final int beamWidth;
+    private final int beamThreshold;
+
+    private Item[] items;
+    private int numPoints;
+    private int[] pointStart;	// first candidate of each point
+
+    // candidates, point by point
+    private int numCandidates = 0;
+    private int[] units;
+    private int[] scores;
+    private int[] from;		// best previous candidate, or -1
+    private int[] prevMoves;	// new end of the previous unit, or -1
+    private int[] thisMoves;	// new start of this unit, or -1
+    private boolean[] pruned;
+
+    private final int[] moves = new int[2];
+    private int[] order;	// scratch for the beam
+
+    /**
+     * Creates a decoder for the segments of an utterance.
+     *
+     * @param segs the segment relation
+     * @param db the cluster unit database
+     * @param joinCosts the join costs for the database
+     * @param beamWidth the most candidates kept per point, or 0 to keep
+     *     them all
+     * @param beamThreshold how much worse than the best candidate of a
+     *     point a candidate may be and be kept, or 0 for no limit
+     */
+    ViterbiDecoder(Relation segs, ClusterUnitDatabase db,
+	    JoinCosts joinCosts, int beamWidth, int beamThreshold) {
+	clunitDB = db;
+	this.joinCosts = joinCosts;
+	this.beamWidth = beamWidth;
+	this.beamThreshold = beamThreshold;
+
+	numPoints = 0;
+	for (Item s = segs.getHead(); s != null; s = s.getNext()) {
+	    numPoints++;
+	}
+	items = new Item[numPoints];
+	int i = 0;
+	for (Item s = segs.getHead(); s != null; s = s.getNext()) {
+	    items[i++] = s;
+	}
+	pointStart = new int[numPoints + 1];
+	allocate(Math.max(16, numPoints * 16));
+	order = new int[16];
+    }
+
+    /**
+     * Finds the candidates of every segment and the best path through
+     * them.
+     */
+    void decode() {
+	for (int t = 0; t < numPoints; t++) {
+	    pointStart[t] = numCandidates;
+	    addCandidates(t);
+	    if (LOGGER.isLoggable(Level.FINE)) {
+		LOGGER.fine("decode " + items[t] + " "
+			+ (numCandidates - pointStart[t]) + " candidates");
+	    }
+	    if (t == 0) {
+		for (int j = pointStart[0]; j < numCandidates; j++) {
+		    scores[j] = 0;
+		    from[j] = -1;
+		    prevMoves[j] = -1;
+		    thisMoves[j] = -1;
+		    pruned[j] = false;
+		}
+	    } else {
+		extend(pointStart[t - 1], pointStart[t], numCandidates);
+	    }
+	    prune(pointStart[t], numCandidates);
+	}
+	pointStart[numPoints] = numCandidates;
+    }
+
+    /**
+     * Scores the candidates of a point by extending the best path
+     * that reaches each of them from the kept candidates of the point
+     * before.
+     *
+     * @param prevStart the first candidate of the previous point
+     * @param start the first candidate of this point
+     * @param end one past the last candidate of this point
+     */
+    private void extend(int prevStart, int start, int end) {
+	int coupling = clunitDB.getOptimalCoupling();
+	for (int j = start; j < end; j++) {
+	    int u1 = units[j];
+	    int best = 0;
+	    int bestFrom = -1;
+	    int bestPrevMove = -1;
+	    int bestThisMove = -1;
+	    for (int i = prevStart; i < start; i++) {
+		if (pruned[i]) {
+		    continue;
+		}
+		int cost;
+		int prevMove = -1;
+		int thisMove = -1;
+		if (coupling == 1) {
+		    cost = joinCosts.getOptimalCouple(units[i], u1, moves);
+		    prevMove = moves[0];
+		    thisMove = moves[1];
+		} else if (coupling == 2) {
+		    cost = joinCosts.getOptimalCoupleFrame(units[i], u1);
+		} else {
+		    cost = 0;
+		}
+		// magic number ("continuity weight") from flite
+		int score = cost * 5 + scores[i];
+		if (bestFrom == -1 || score < best) {
+		    best = score;
+		    bestFrom = i;
+		    bestPrevMove = prevMove;
+		    bestThisMove = thisMove;
+		}
+	    }
+	    scores[j] = best;
+	    from[j] = bestFrom;
+	    prevMoves[j] = bestPrevMove;
+	    thisMoves[j] = bestThisMove;
+	    pruned[j] = (bestFrom == -1);
+	}
+    }
+
+    /**
+     * Drops the candidates of a point that are outside the beam.
+     *
+     * @param start the first candidate of the point
+     * @param end one past the last candidate of the point
+     */
+    private void prune(int start, int end) {
+	if (beamWidth <= 0 && beamThreshold <= 0) {
+	    return;
+	}
+	int best = Integer.MAX_VALUE;
+	int kept = 0;
+	for (int j = start; j < end; j++) {
+	    if (!pruned[j]) {
+		best = Math.min(best, scores[j]);
+		kept++;
+	    }
+	}
+	if (beamThreshold > 0) {
+	    for (int j = start; j < end; j++) {
+		if (!pruned[j] && scores[j] - best > beamThreshold) {
+		    pruned[j] = true;
+		    kept--;
+		}
+	    }
+	}
+	if (beamWidth > 0 && kept > beamWidth) {
+	    // keep the best, earlier candidates first among equals
+	    if (order.length < kept) {
+		order = new int[kept * 2];
+	    }
+	    int n = 0;
+	    for (int j = start; j < end; j++) {
+		if (!pruned[j]) {
+		    int k = n++;
+		    while (k > 0 && scores[order[k - 1]] > scores[j]) {
+			order[k] = order[k - 1];
+			k--;
+		    }
+		    order[k] = j;
+		}
+	    }
+	    for (int k = beamWidth; k < n; k++) {
+		pruned[order[k]] = true;
+	    }
+	}
+    }
+
+    /**
+     * Adds the candidates of a point: the units of the segment's
+     * cluster, as chosen by the CART of its unit type, and the units
+     * following the first candidates of the previous segment.  They
+     * are added in the order {@link ClusterUnitSelector.Viterbi} keeps
+     * them.
+     *
+     * @param t the point
+     */
+    private void addCandidates(int t) {
+	Item item = items[t];
+	String unitType = item.getFeatures().getString("clunit_name");
+	CART cart = clunitDB.getTree(unitType);
+	int[] clist = (int[]) cart.interpret(item);
+
+	// the linked search puts each candidate in front of those before
+	int start = numCandidates;
+	ensureCapacity(start + clist.length
+		+ Math.max(0, clunitDB.getExtendSelections()));
+	for (int i = clist.length - 1; i >= 0; i--) {
+	    units[numCandidates++] = clunitDB.getUnitIndex(unitType, clist[i]);
+	}
+
+	int extend = clunitDB.getExtendSelections();
+	if (extend > 0 && t > 0 && numCandidates > start) {
+	    int added = 0;
+	    for (int lc = pointStart[t - 1]; lc < start && added < extend;
+		    lc++) {
+		int nu = clunitDB.getNextUnit(units[lc]);
+		if (nu == ClusterUnitDatabase.CLUNIT_NONE) {
+		    continue;
+		}
+		boolean present = false;
+		for (int j = start; j < numCandidates; j++) {
+		    if (units[j] == nu) {
+			present = true;
+			break;
+		    }
+		}
+		if (!present && clunitDB.isUnitTypeEqual(nu, units[start])) {
+		    System.arraycopy(units, start, units, start + 1,
+			    numCandidates - start);
+		    units[start] = nu;
+		    numCandidates++;
+		    added++;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Sets the units of the best path on the segments: the unit as
+     * <code>selected_unit</code>, and the boundaries moved by optimal
+     * coupling as <code>unit_prev_move</code> and
+     * <code>unit_this_move</code>.
+     *
+     * @return <code>true</code> if there is a path
+     */
+    boolean result() {
+	if (numPoints == 0) {
+	    return true; // null case succeeds
+	}
+	int best = Integer.MAX_VALUE;
+	int bestEnd = -1;
+	for (int j = pointStart[numPoints - 1]; j < numCandidates; j++) {
+	    if (!pruned[j] && scores[j] < best) {
+		best = scores[j];
+		bestEnd = j;
+	    }
+	}
+	if (bestEnd == -1) {
+	    return false;
+	}
+	int t = numPoints - 1;
+	for (int j = bestEnd; j != -1; j = from[j], t--) {
+	    FeatureSet features = items[t].getFeatures();
+	    features.setInt("selected_unit", units[j]);
+	    if (prevMoves[j] != -1) {
+		features.setInt("unit_prev_move", prevMoves[j]);
+	    }
+	    if (thisMoves[j] != -1) {
+		features.setInt("unit_this_move", thisMoves[j]);
+	    }
+	}
+	return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+	if (capacity > units.length) {
+	    int[] oldUnits = units;
+	    int[] oldScores = scores;
+	    int[] oldFrom = from;
+	    int[] oldPrevMoves = prevMoves;
+	    int[] oldThisMoves = thisMoves;
+	    boolean[] oldPruned = pruned;
+	    allocate(Math.max(capacity, units.length * 2));
+	    System.arraycopy(oldUnits, 0, units, 0, numCandidates);
+	    System.arraycopy(oldScores, 0, scores, 0, numCandidates);
+	    System.arraycopy(oldFrom, 0, from, 0, numCandidates);
+	    System.arraycopy(oldPrevMoves, 0, prevMoves, 0, numCandidates);
+	    System.arraycopy(oldThisMoves, 0, thisMoves, 0, numCandidates);
+	    System.arraycopy(oldPruned, 0, pruned, 0, numCandidates);
+	}
+    }
+
+    private void allocate(int capacity) {
+	units = new int[capacity];
+	scores = new int[capacity];
+	from = new int[capacity];
+	prevMoves = new int[capacity];
+	thisMoves = new int[capacity];
+	pruned = new boolean[capacity];
+    }
+}
@@ -326,6 +326,25 @@ public class DiphoneUnitDatabase {
      * @return the diphone or the defaultDiphone if not found.
      */
     public Diphone getUnit(String unitName) {
+	if (useIndexing) {
+	    // loading moves the mapped buffer and fills the cache, and
+	    // a database may be shared by several voices
+	    synchronized (this) {
+		return findUnit(unitName);
+	    }
+	}
+	return findUnit(unitName);
+    }
+
+    /**
+     * Looks up the diphone with the given name, loading it if the
+     * database is indexed.
+     *
+     * @param unitName the name of the diphone to look for
+     *
+     * @return the diphone or the defaultDiphone if not found.
+     */
+    private Diphone findUnit(String unitName) {
 	Diphone diphone = null;
 
 	if (useIndexing) {
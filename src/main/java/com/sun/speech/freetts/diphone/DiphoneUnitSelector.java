@@ -54,6 +54,16 @@ public class DiphoneUnitSelector implements UtteranceProcessor {
 	boolean binary = url.getPath().endsWith(".bin");
 	diphoneDatabase = new DiphoneUnitDatabase(url, binary);
     }
+
+    /**
+     * Constructs a DiphoneUnitSelector for a database that is already
+     * loaded, and may be shared with other selectors.
+     *
+     * @param db the unit database
+     */
+    public DiphoneUnitSelector(DiphoneUnitDatabase db) {
+	diphoneDatabase = db;
+    }
     
     /**
      * Get the sample info for the underlying database.
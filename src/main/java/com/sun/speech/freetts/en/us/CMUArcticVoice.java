@@ -78,7 +78,7 @@ public class CMUArcticVoice extends CMUClusterUnitVoice {
             }
             
         };
-        return new ClusterUnitSelector(getDatabase(), unitNamer);
+        return new ClusterUnitSelector(getClusterUnitDatabase(), unitNamer);
     }
 }
 
@@ -16,7 +16,9 @@ import java.util.Locale;
 
 import com.sun.speech.freetts.Age;
 import com.sun.speech.freetts.Gender;
+import com.sun.speech.freetts.SharedVoiceData;
 import com.sun.speech.freetts.UtteranceProcessor;
+import com.sun.speech.freetts.clunits.ClusterUnitDatabase;
 import com.sun.speech.freetts.clunits.ClusterUnitPitchmarkGenerator;
 import com.sun.speech.freetts.clunits.ClusterUnitSelector;
 import com.sun.speech.freetts.relp.UnitConcatenator;
@@ -24,10 +26,18 @@ import com.sun.speech.freetts.relp.UnitConcatenator;
 import de.dfki.lt.freetts.ConcatenativeVoice;
 
 /**
- * Defines voice that does cluster unit selection.
+ * Defines voice that does cluster unit selection.  The unit database
+ * is shared with other voices that use the same database.
  */
 public class CMUClusterUnitVoice extends CMUVoice implements ConcatenativeVoice {
 
+    private final static SharedVoiceData.Loader DATABASE_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		return ClusterUnitDatabase.load(url);
+	    }
+	};
+
     protected URL database;
 
     /**
@@ -68,6 +78,20 @@ public class CMUClusterUnitVoice extends CMUVoice implements ConcatenativeVoice
         return database;
     }
 
+    /**
+     * Gets the unit database of this voice, shared with other voices
+     * that use the same database.
+     *
+     * @return the unit database
+     *
+     * @throws IOException if the database cannot be loaded
+     */
+    protected ClusterUnitDatabase getClusterUnitDatabase()
+	    throws IOException {
+	return (ClusterUnitDatabase) getSharedData("clunits", getDatabase(),
+		DATABASE_LOADER);
+    }
+
     /**
      * Sets up the FeatureSet for this Voice.
      *
@@ -89,7 +113,7 @@ public class CMUClusterUnitVoice extends CMUVoice implements ConcatenativeVoice
      *     processor
      */
     public UtteranceProcessor getUnitSelector() throws IOException {
-	return new ClusterUnitSelector(getDatabase());
+	return new ClusterUnitSelector(getClusterUnitDatabase(), null);
     }
 
     /**
@@ -11,10 +11,12 @@
 package com.sun.speech.freetts.en.us;
 
 import com.sun.speech.freetts.diphone.DiphonePitchmarkGenerator;
+import com.sun.speech.freetts.diphone.DiphoneUnitDatabase;
 import com.sun.speech.freetts.diphone.DiphoneUnitSelector;
 import com.sun.speech.freetts.Item;
 import com.sun.speech.freetts.ProcessException;
 import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.SharedVoiceData;
 import com.sun.speech.freetts.relp.UnitConcatenator;
 import com.sun.speech.freetts.Utterance;
 import com.sun.speech.freetts.UtteranceProcessor;
@@ -33,10 +35,23 @@ import java.net.URL;
 
 
 /**
- * Defines an unlimited-domain diphone synthesis based voice 
+ * Defines an unlimited-domain diphone synthesis based voice.  The
+ * unit database is shared with other voices that use the same
+ * database.
  */
 public class CMUDiphoneVoice extends CMUVoice implements ConcatenativeVoice {
 
+    private final static SharedVoiceData.Loader DATABASE_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		if (url == null) {
+		    throw new IOException("Can't load unit database");
+		}
+		return new DiphoneUnitDatabase(url,
+			url.getPath().endsWith(".bin"));
+	    }
+	};
+
     protected URL database;
 
     /**
@@ -158,7 +173,8 @@ public class CMUDiphoneVoice extends CMUVoice implements ConcatenativeVoice {
      *     processor
      */
     public UtteranceProcessor getUnitSelector() throws IOException {
-	return new DiphoneUnitSelector(getDatabase());
+	return new DiphoneUnitSelector((DiphoneUnitDatabase)
+		getSharedData("diphones", getDatabase(), DATABASE_LOADER));
     }
 
     
@@ -10,11 +10,15 @@
  */
 package com.sun.speech.freetts.en.us;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.sun.speech.freetts.VoiceManager;
+import com.sun.speech.freetts.lexicon.LetterToSoundImpl;
 import com.sun.speech.freetts.lexicon.LexiconImpl;
 import com.sun.speech.freetts.util.BulkTimer;
 
@@ -80,6 +84,14 @@ public class CMULexicon extends LexiconImpl {
         this(basename, true);
     }
 
+    /**
+     * Creates the CMU Lexicon from the lexicon data on the class path.
+     * With binary IO a precompiled image, BASENAME_image.bin, is used
+     * if there is one (see {@link LexiconImpl#dumpImage}).
+     *
+     * @param basename the basename for the lexicon.
+     * @param useBinaryIO if true use binary IO to load DB
+     */
     public CMULexicon(String basename, boolean useBinaryIO) {
         java.net.URLClassLoader classLoader =
                 VoiceManager.getVoiceClassLoader();
@@ -110,6 +122,16 @@ public class CMULexicon extends LexiconImpl {
         
 	setLexiconParameters(compiledURL, addendaURL,
                 letterToSoundURL, useBinaryIO);
+
+        if (useBinaryIO) {
+            URL imageURL = classLoader.getResource(
+                    "com/sun/speech/freetts/en/us/" + basename + "_image.bin");
+            if (imageURL == null) {
+                imageURL = CMULexicon.class.getResource(
+                        basename + "_image.bin");
+            }
+            setLexiconImage(imageURL);
+        }
     }
     
     /**
@@ -153,24 +175,45 @@ public class CMULexicon extends LexiconImpl {
     public boolean isSyllableBoundary(List syllablePhones,
                                       String[] wordPhones,
                                       int currentWordPhone) {
-        if (currentWordPhone >= wordPhones.length) {
+        return isSyllableBoundary(syllablePhones, wordPhones, 0,
+                wordPhones.length, currentWordPhone);
+    }
+
+    /**
+     * Determines if the currentPhone represents a new syllable
+     * boundary, for a word whose phones lie in part of a larger array.
+     *
+     * @param syllablePhones the phones in the current syllable so far
+     * @param phones the array that holds the phones of the word
+     * @param start where the phones of the word start in the array
+     * @param end where the phones of the word end in the array
+     * @param currentPhone the phone in question, as an index into the
+     *     array
+     *
+     * @return <code>true</code> if the phone in question is on a
+     *     syllable boundary; otherwise <code>false</code>.
+     */
+    public boolean isSyllableBoundary(List syllablePhones,
+                                      String[] phones, int start, int end,
+                                      int currentPhone) {
+        if (currentPhone >= end) {
             return true;
-        } else if (isSilence(wordPhones[currentWordPhone])) {
+        } else if (isSilence(phones[currentPhone])) {
             return true;
-        } else if (!hasVowel(wordPhones, currentWordPhone)) { // rest of word 
+        } else if (!hasVowel(phones, currentPhone, end)) { // rest of word 
             return false;
         } else if (!hasVowel(syllablePhones)) { // current syllable
             return false;
-        } else if (isVowel(wordPhones[currentWordPhone])) {
+        } else if (isVowel(phones[currentPhone])) {
             return true;
-        } else if (currentWordPhone == (wordPhones.length - 1)) {
+        } else if (currentPhone == (end - 1)) {
             return false;
         } else {
             int p, n, nn;
             p = getSonority(
                 (String) syllablePhones.get(syllablePhones.size() - 1));
-            n = getSonority(wordPhones[currentWordPhone]);
-            nn = getSonority(wordPhones[currentWordPhone + 1]);
+            n = getSonority(phones[currentPhone]);
+            nn = getSonority(phones[currentPhone + 1]);
             if ((p <= n) && (n <= nn)) {
                 return true;
             } else {
@@ -202,7 +245,21 @@ public class CMULexicon extends LexiconImpl {
      *		otherwise <code>false</code>. 
      */
     static protected boolean hasVowel(String[] phones, int index) {
-        for (int i = index; i < phones.length; i++) {
+        return hasVowel(phones, index, phones.length);
+    }
+
+    /**
+     * Determines if there is a vowel in part of the array.
+     *
+     * @param phones the set of phones to check
+     * @param index start checking at this index
+     * @param end stop checking before this index
+     *
+     * @return <code>true</code> if a vowel is found; 
+     *		otherwise <code>false</code>. 
+     */
+    static protected boolean hasVowel(String[] phones, int index, int end) {
+        for (int i = index; i < end; i++) {
             if (isVowel(phones[i])) {
                 return true;
             }
@@ -271,7 +328,11 @@ public class CMULexicon extends LexiconImpl {
      * -src path
      * -dest path
      * -generate_binary [base_name]
+     * -generate_compact
+     * -generate_image
      * -compare
+     * -benchmark
+     * -startup txt|bin|image
      * -showtimes
      *
      * </pre>
@@ -312,6 +373,45 @@ public class CMULexicon extends LexiconImpl {
 			 lex.dumpBinary(destPath + "/" + baseName);
 			 BulkTimer.LOAD.stop("dump_text");
 
+		    } else if (args[i].equals("-generate_compact")) {
+
+			 System.out.println("Loading " + baseName);
+                         String path = "file:" + srcPath + "/" + baseName;
+                         lex = new CMULexicon(
+                             new URL(path + "_compiled.txt"),
+                             new URL(path + "_addenda.txt"),
+                             new URL(path + "_lts.txt"),
+                             false);
+                         lex.load();
+
+			 System.out.println("Dumping compact " + baseName);
+			 BulkTimer.LOAD.start("dump_compact");
+			 lex.dumpCompact(destPath + "/" + baseName);
+			 new LetterToSoundImpl(new URL(path + "_lts.txt"), false)
+			     .dumpBinary(destPath + "/" + baseName + "_lts.bin");
+			 BulkTimer.LOAD.stop("dump_compact");
+
+		    } else if (args[i].equals("-generate_image")) {
+
+			 System.out.println("Loading " + baseName);
+                         String path = "file:" + srcPath + "/" + baseName;
+                         lex = new CMULexicon(
+                             new URL(path + "_compiled.txt"),
+                             new URL(path + "_addenda.txt"),
+                             new URL(path + "_lts.txt"),
+                             false);
+                         lex.load();
+
+			 System.out.println("Dumping image " + baseName);
+			 BulkTimer.LOAD.start("dump_image");
+			 lex.dumpImage(destPath + "/" + baseName + "_image.bin");
+			 BulkTimer.LOAD.stop("dump_image");
+
+		    } else if (args[i].equals("-startup")
+                               && i < args.length - 1) {
+			startup(srcPath, destPath, baseName, args[++i]);
+		    } else if (args[i].equals("-benchmark")) {
+			benchmark(srcPath, destPath, baseName);
 		    } else if (args[i].equals("-compare")) {
 
 			BulkTimer.LOAD.start("load_text");
@@ -341,10 +441,129 @@ public class CMULexicon extends LexiconImpl {
 		System.out.println("    -dest path");
 		System.out.println("    -compare");
 		System.out.println("    -generate_binary");
+		System.out.println("    -generate_compact");
+		System.out.println("    -generate_image");
+		System.out.println("    -benchmark");
+		System.out.println("    -startup txt|bin|image");
 		System.out.println("    -showtimes");
 	    }
 	} catch (IOException ioe) {
 	    System.err.println(ioe);
 	}
     }
+
+    /**
+     * Compares the heap used by, and the lookup rate of, the text
+     * lexicon in srcPath and the binary (or compact) lexicon in
+     * destPath.  Every word of the compiled text lexicon is looked
+     * up, without letter to sound rules.
+     *
+     * @param srcPath where the text lexicon is
+     * @param destPath where the binary lexicon is
+     * @param baseName the base name of the lexicon
+     *
+     * @throws IOException if a lexicon can't be loaded
+     */
+    private static void benchmark(String srcPath, String destPath,
+	    String baseName) throws IOException {
+	List words = new ArrayList();
+	BufferedReader reader = new BufferedReader(
+		new FileReader(srcPath + "/" + baseName + "_compiled.txt"));
+	String line;
+	while ((line = reader.readLine()) != null) {
+	    if (!line.startsWith("***")) {
+		int tab = line.indexOf('\t');
+		words.add(line.substring(0, (tab < 0 ? line.length() : tab) - 1));
+	    }
+	}
+	reader.close();
+
+	String[] types = { "txt", "bin" };
+	String[] paths = { srcPath, destPath };
+	LexiconImpl[] lexicons = new LexiconImpl[types.length];
+	for (int t = 0; t < types.length; t++) {
+	    String path = "file:" + paths[t] + "/" + baseName;
+	    long before = usedHeap();
+	    lexicons[t] = new CMULexicon(
+		    new URL(path + "_compiled." + types[t]),
+		    new URL(path + "_addenda." + types[t]),
+		    new URL(path + "_lts." + types[t]),
+		    types[t].equals("bin"));
+	    lexicons[t].load();
+	    long heap = usedHeap() - before;
+
+	    int found = 0;
+	    long start = System.nanoTime();
+	    for (int pass = 0; pass < 5; pass++) {
+		found = 0;
+		for (int w = 0; w < words.size(); w++) {
+		    if (lexicons[t].getPhones((String) words.get(w), null,
+				false) != null) {
+			found++;
+		    }
+		}
+	    }
+	    double seconds = (System.nanoTime() - start) / 1e9;
+	    System.out.println(baseName + "_compiled." + types[t] + ": "
+		    + (heap / 1024) + "k heap, "
+		    + (long) (words.size() * 5 / seconds) + " lookups/s, "
+		    + found + " of " + words.size() + " found");
+	}
+    }
+
+    /**
+     * Prints the time it takes to load a lexicon and look up a first
+     * word (with letter to sound rules), which is the lexicon's share
+     * of a voice's time to first utterance.  Run it in a fresh JVM for
+     * each kind of lexicon.
+     *
+     * @param srcPath where the text lexicon is
+     * @param destPath where the binary lexicon or image is
+     * @param baseName the base name of the lexicon
+     * @param type <code>txt</code>, <code>bin</code> or
+     *     <code>image</code>
+     *
+     * @throws IOException if the lexicon can't be loaded
+     */
+    private static void startup(String srcPath, String destPath,
+	    String baseName, String type) throws IOException {
+	long start = System.nanoTime();
+	CMULexicon lexicon;
+	if (type.equals("txt")) {
+	    String path = "file:" + srcPath + "/" + baseName;
+	    lexicon = new CMULexicon(new URL(path + "_compiled.txt"),
+		    new URL(path + "_addenda.txt"),
+		    new URL(path + "_lts.txt"), false);
+	} else {
+	    String path = "file:" + destPath + "/" + baseName;
+	    lexicon = new CMULexicon(new URL(path + "_compiled.bin"),
+		    new URL(path + "_addenda.bin"),
+		    new URL(path + "_lts.bin"), true);
+	    if (type.equals("image")) {
+		lexicon.setLexiconImage(new URL(path + "_image.bin"));
+	    }
+	}
+	lexicon.load();
+	long loaded = System.nanoTime();
+	lexicon.getPhones("hello", null);
+	lexicon.getPhones("zxqvbnm", null);
+	long looked = System.nanoTime();
+	System.out.println(baseName + " " + type + ": load "
+		+ (loaded - start) / 1000000 + " ms, first lookups "
+		+ (looked - loaded) / 1000000 + " ms, total "
+		+ (looked - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Returns the heap in use after a garbage collection.
+     *
+     * @return the used heap in bytes
+     */
+    private static long usedHeap() {
+	Runtime rt = Runtime.getRuntime();
+	for (int i = 0; i < 3; i++) {
+	    System.gc();
+	}
+	return rt.totalMemory() - rt.freeMemory();
+    }
 }
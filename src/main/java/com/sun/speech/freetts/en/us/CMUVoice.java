@@ -11,6 +11,7 @@
 package com.sun.speech.freetts.en.us;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.List;
 import java.util.Locale;
 
@@ -24,6 +25,7 @@ import com.sun.speech.freetts.PhoneDurationsImpl;
 import com.sun.speech.freetts.PhoneSet;
 import com.sun.speech.freetts.PhoneSetImpl;
 import com.sun.speech.freetts.Segmenter;
+import com.sun.speech.freetts.SharedVoiceData;
 import com.sun.speech.freetts.Tokenizer;
 import com.sun.speech.freetts.UtteranceProcessor;
 import com.sun.speech.freetts.Voice;
@@ -38,11 +40,55 @@ import com.sun.speech.freetts.relp.AudioOutput;
 import com.sun.speech.freetts.util.BulkTimer;
 
 /**
- * Provides generic support for a CMU Voice
+ * Provides generic support for a CMU Voice.  The CARTs, FSMs, phone
+ * set, part of speech and phone durations are shared with other
+ * voices loaded from the same resources (see {@link SharedVoiceData}).
  */
 public abstract class CMUVoice extends Voice {
     private PhoneSet phoneSet;
 
+    private final static SharedVoiceData.Loader CART_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		return new CARTImpl(url);
+	    }
+	};
+
+    private final static SharedVoiceData.Loader DURATIONS_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		return new PhoneDurationsImpl(url);
+	    }
+	};
+
+    private final static SharedVoiceData.Loader PREFIX_FSM_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		return new PrefixFSM(url);
+	    }
+	};
+
+    private final static SharedVoiceData.Loader SUFFIX_FSM_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		return new SuffixFSM(url);
+	    }
+	};
+
+    private final static SharedVoiceData.Loader PART_OF_SPEECH_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		return new PartOfSpeechImpl(url, "content");
+	    }
+	};
+
+    private final static SharedVoiceData.Loader PHONE_SET_LOADER =
+	new SharedVoiceData.Loader() {
+	    public Object load(URL url) throws IOException {
+		return new PhoneSetImpl(url);
+	    }
+	};
+
     /**
      * Creates a simple voice
      *
@@ -103,20 +149,20 @@ public abstract class CMUVoice extends Voice {
 	List processors = getUtteranceProcessors();
 
 	BulkTimer.LOAD.start("CartLoading");
-	CARTImpl numbersCart = new CARTImpl(getResource("nums_cart.txt"));
-	CARTImpl phrasingCart = new CARTImpl(getResource("phrasing_cart.txt"));
-        CARTImpl accentCart = new CARTImpl(getResource("int_accent_cart.txt"));
-        CARTImpl toneCart = new CARTImpl(getResource("int_tone_cart.txt"));
-        CARTImpl durzCart = new CARTImpl(getResource("durz_cart.txt"));
+	CARTImpl numbersCart = getCART("nums_cart.txt");
+	CARTImpl phrasingCart = getCART("phrasing_cart.txt");
+        CARTImpl accentCart = getCART("int_accent_cart.txt");
+        CARTImpl toneCart = getCART("int_tone_cart.txt");
+        CARTImpl durzCart = getCART("durz_cart.txt");
 	BulkTimer.LOAD.stop("CartLoading");
 
 	BulkTimer.LOAD.start("UtteranceProcessors");
-        PhoneDurations phoneDurations = new PhoneDurationsImpl(
-            getResource("dur_stat.txt"));
-	PronounceableFSM prefixFSM = new PrefixFSM
-	    (getResource("prefix_fsm.txt"));
-	PronounceableFSM suffixFSM = new SuffixFSM
-	    (getResource("suffix_fsm.txt"));
+        PhoneDurations phoneDurations = (PhoneDurations) getSharedData(
+            "durations", getResource("dur_stat.txt"), DURATIONS_LOADER);
+	PronounceableFSM prefixFSM = (PronounceableFSM) getSharedData
+	    ("prefix_fsm", getResource("prefix_fsm.txt"), PREFIX_FSM_LOADER);
+	PronounceableFSM suffixFSM = (PronounceableFSM) getSharedData
+	    ("suffix_fsm", getResource("suffix_fsm.txt"), SUFFIX_FSM_LOADER);
         
 	processors.add(new TokenToWords(numbersCart, prefixFSM, suffixFSM));
 	processors.add(new PartOfSpeechTagger());
@@ -136,6 +182,20 @@ public abstract class CMUVoice extends Voice {
 	BulkTimer.LOAD.stop("UtteranceProcessors");
     }
 
+    /**
+     * Gets a CART of this voice, shared with other voices.
+     *
+     * @param resource the name of the CART resource
+     *
+     * @return the CART
+     *
+     * @throws IOException if the CART cannot be loaded
+     */
+    protected CARTImpl getCART(String resource) throws IOException {
+	return (CARTImpl) getSharedData("cart", getResource(resource),
+		CART_LOADER);
+    }
+
     // [[[TODO: currently a CMUVoice only allows customization of
     // the postlex, unit selector and wave synthesizer. This may 
     // grow as time goes on ]]]
@@ -199,11 +259,11 @@ public abstract class CMUVoice extends Voice {
      */
     protected void setupFeatureProcessors() throws IOException {
 	BulkTimer.LOAD.start("FeatureProcessing");
-        PartOfSpeech pos = new PartOfSpeechImpl( 
-            getResource("part_of_speech.txt"),
-	    "content");
+        PartOfSpeech pos = (PartOfSpeech) getSharedData("part_of_speech",
+            getResource("part_of_speech.txt"), PART_OF_SPEECH_LOADER);
 
-        phoneSet  = new PhoneSetImpl(getResource("phoneset.txt"));
+        phoneSet  = (PhoneSet) getSharedData("phone_set",
+            getResource("phoneset.txt"), PHONE_SET_LOADER);
 
 	addFeatureProcessor("word_break", new FeatureProcessors.WordBreak());
 	addFeatureProcessor("word_punc", new FeatureProcessors.WordPunc());
@@ -166,7 +166,7 @@ public class FeatureProcessors {
 		count++;
 		daughter = daughter.getNext();
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -201,7 +201,7 @@ public class FeatureProcessors {
 		    break;
 		}
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -239,7 +239,7 @@ public class FeatureProcessors {
 		    count++;
 		}
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -273,7 +273,7 @@ public class FeatureProcessors {
 		    break;
 		}
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -297,7 +297,7 @@ public class FeatureProcessors {
 	 */
 	public String process(Item item) throws ProcessException {
 	    String name = item.getFeatures().getString("name");
-	    return Integer.toString(rail(name.length()));
+	    return railString(name.length());
 	}
     }
 
@@ -421,7 +421,7 @@ public class FeatureProcessors {
 		    break;
 		}
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -449,7 +449,7 @@ public class FeatureProcessors {
 		      p != null; p = p.getPrevious() )  {
 		count++;
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -521,7 +521,7 @@ public class FeatureProcessors {
 		    break;
 		}
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -554,7 +554,7 @@ public class FeatureProcessors {
 		}
 		count++;
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -860,7 +860,7 @@ public class FeatureProcessors {
 		count++;
 		daughter = daughter.getNext();
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -895,7 +895,7 @@ public class FeatureProcessors {
 		daughter = daughter.getPrevious();
 		count++;
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -1145,7 +1145,7 @@ public class FeatureProcessors {
 	    for (Item p = inPhrase; p != null; p = p.getPrevious() )  {
 		count++;
 	    }
-	    return Integer.toString(rail(count));
+	    return railString(count);
 	}
     }
 
@@ -1322,4 +1322,26 @@ public class FeatureProcessors {
     private static int rail(int val) {
 	return val > 19 ? 19 : val;
     }
+
+    /**
+     * The railed values as strings.
+     */
+    private final static String[] RAILED = {
+	"0", "1", "2", "3", "4", "5", "6", "7", "8", "9",
+	"10", "11", "12", "13", "14", "15", "16", "17", "18", "19"
+    };
+
+    /**
+     * Rails an int and returns it as a string.  The strings are
+     * shared, so feature processors returning counts allocate
+     * nothing.
+     *
+     * @param val the value to rail
+     *
+     * @return the railed value as a string
+     */
+    private static String railString(int val) {
+	val = rail(val);
+	return val >= 0 ? RAILED[val] : Integer.toString(val);
+    }
 }
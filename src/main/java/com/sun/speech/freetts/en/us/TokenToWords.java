@@ -18,6 +18,7 @@ import com.sun.speech.freetts.FeatureSet;
 import com.sun.speech.freetts.Item;
 import com.sun.speech.freetts.ProcessException;
 import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.StatefulUtteranceProcessor;
 import com.sun.speech.freetts.Utterance;
 import com.sun.speech.freetts.UtteranceProcessor;
 import com.sun.speech.freetts.cart.CART;
@@ -35,7 +36,7 @@ import com.sun.speech.freetts.util.Utilities;
  * lang/usenglish/us_text.c
  * </code>
  */
-public class TokenToWords implements UtteranceProcessor {
+public class TokenToWords implements StatefulUtteranceProcessor {
 
     /** Regular expression for something that has a vowel */
     private static final String RX_HAS_VOWEL = ".*[aeiouAEIOU].*";    
@@ -275,6 +276,17 @@ public class TokenToWords implements UtteranceProcessor {
     }
 
 
+    /**
+     * Creates a TokenToWords that shares the CART and FSMs of this one
+     * but has its own token and word state.
+     *
+     * @return a new TokenToWords
+     */
+    public UtteranceProcessor newInstance() {
+	return new TokenToWords(cart, prefixFSM, suffixFSM);
+    }
+
+
     /**
      * Returns the currently processing token Item.
      *
@@ -0,0 +1,491 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/**
+ * A read only lexicon kept in a single binary image outside of the
+ * Java heap.  The image is memory mapped when it comes from a file
+ * and copied into a direct buffer otherwise, so a lexicon of a
+ * hundred thousand words costs a handful of heap objects instead of
+ * several hundred thousand.
+ *
+ * <p>Entries are found through an open addressing hash table stored
+ * in the image.  A lookup hashes and compares the characters of the
+ * word and the part of speech in place, so no key string is built;
+ * phones are stored as one byte ids into the phone table.
+ *
+ * <p>Image format (all ints big endian):
+ * <pre>
+ * MAGIC
+ * VERSION
+ * (int) numPhones
+ * (String) phone0 ... phoneN
+ * (int) numPartsOfSpeech
+ * (String) pos0 ... posN
+ * (int) numEntries
+ * (int) tableSize, a power of two
+ * (int) entry offset, or -1, for each slot of the table
+ * entries, each:
+ *   (String) wordWithPOS
+ *   (byte) numPhones
+ *   (byte) phone id 1 ... phone id n
+ * </pre>
+ *
+ * <p>Strings are formatted as <code>(byte) len char0 ... charN</code>
+ * with one byte per (ISO 8859-1) character.  Entry offsets are
+ * relative to the first entry.
+ *
+ * <p>Instances are immutable and may be shared by any number of
+ * threads.  Images are written by {@link LexiconImpl#dumpCompact}.
+ */
+public class CompactLexicon {
+    /**
+     * Magic number for compact lexicon images.
+     */
+    public final static int MAGIC = 0xC0BB1E;
+
+    /**
+     * Current image version.
+     */
+    public final static int VERSION = 1;
+
+    private final ByteBuffer image;
+    private final String[] phones;
+    private final String[] partsOfSpeech;
+    private final int numEntries;
+    private final int tableStart;
+    private final int tableMask;
+    private final int entriesStart;
+
+    /**
+     * Creates a lexicon over the given image, which must start at
+     * position 0 of the buffer.
+     *
+     * @param image the image
+     *
+     * @throws IOException if the image is not a compact lexicon
+     */
+    CompactLexicon(ByteBuffer image) throws IOException {
+	this.image = image;
+	if (image.getInt() != MAGIC) {
+	    throw new IOException("bad magic number in compact lexicon");
+	}
+	if (image.getInt() != VERSION) {
+	    throw new IOException("bad version number in compact lexicon");
+	}
+	phones = new String[image.getInt()];
+	for (int i = 0; i < phones.length; i++) {
+	    phones[i] = getString(image).intern();
+	}
+	partsOfSpeech = new String[image.getInt()];
+	for (int i = 0; i < partsOfSpeech.length; i++) {
+	    partsOfSpeech[i] = getString(image).intern();
+	}
+	numEntries = image.getInt();
+	int tableSize = image.getInt();
+	tableMask = tableSize - 1;
+	tableStart = image.position();
+	entriesStart = tableStart + tableSize * 4;
+    }
+
+    /**
+     * Loads a compact lexicon.  A file is mapped; anything else is
+     * read into a direct buffer.
+     *
+     * @param url where the image is
+     *
+     * @return the lexicon
+     *
+     * @throws IOException if the image can't be read
+     */
+    public static CompactLexicon load(URL url) throws IOException {
+	InputStream is = Utilities.getInputStream(url);
+	try {
+	    ByteBuffer bb;
+	    if (is instanceof FileInputStream) {
+		FileChannel fc = ((FileInputStream) is).getChannel();
+		bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+	    } else {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+		    bytes.write(buffer, 0, n);
+		}
+		bb = ByteBuffer.allocateDirect(bytes.size());
+		bb.put(bytes.toByteArray());
+		bb.flip();
+	    }
+	    return new CompactLexicon(bb);
+	} finally {
+	    is.close();
+	}
+    }
+
+    /**
+     * Determines if the given url holds a compact lexicon image.
+     *
+     * @param url the url
+     *
+     * @return <code>true</code> if the data starts with {@link #MAGIC}
+     *
+     * @throws IOException if the url can't be read
+     */
+    public static boolean isCompact(URL url) throws IOException {
+	DataInputStream dis =
+	    new DataInputStream(Utilities.getInputStream(url));
+	try {
+	    return dis.readInt() == MAGIC;
+	} catch (IOException ioe) {
+	    return false;
+	} finally {
+	    dis.close();
+	}
+    }
+
+    /**
+     * Gets the phones for a word with exactly the given part of speech.
+     *
+     * @param word the word
+     * @param partOfSpeech the part of speech, never <code>null</code>
+     *
+     * @return the phones, or <code>null</code> if there is no entry
+     */
+    public String[] getPhones(String word, String partOfSpeech) {
+	int entry = find(word, partOfSpeech);
+	if (entry < 0) {
+	    return null;
+	}
+	int at = entry + 1 + (image.get(entry) & 0xff);
+	String[] result = new String[image.get(at) & 0xff];
+	for (int i = 0; i < result.length; i++) {
+	    result[i] = phones[image.get(at + 1 + i) & 0xff];
+	}
+	return result;
+    }
+
+    /**
+     * Gets the phone ids for a word with exactly the given part of
+     * speech without allocating anything.
+     *
+     * @param word the word
+     * @param partOfSpeech the part of speech, never <code>null</code>
+     * @param ids receives the phone ids; see {@link #getPhone}
+     * @param offset where in <code>ids</code> to put the first id
+     *
+     * @return the number of phones, or -1 if there is no entry
+     *
+     * @throws ArrayIndexOutOfBoundsException if <code>ids</code> is
+     *     too small
+     */
+    public int getPhoneIds(String word, String partOfSpeech,
+	    byte[] ids, int offset) {
+	int entry = find(word, partOfSpeech);
+	if (entry < 0) {
+	    return -1;
+	}
+	int at = entry + 1 + (image.get(entry) & 0xff);
+	int count = image.get(at) & 0xff;
+	for (int i = 0; i < count; i++) {
+	    ids[offset + i] = image.get(at + 1 + i);
+	}
+	return count;
+    }
+
+    /**
+     * Returns the phone with the given id.
+     *
+     * @param id the id
+     *
+     * @return the phone
+     */
+    public String getPhone(int id) {
+	return phones[id & 0xff];
+    }
+
+    /**
+     * Returns the number of distinct phones.
+     *
+     * @return the number of phones
+     */
+    public int getPhoneCount() {
+	return phones.length;
+    }
+
+    /**
+     * Returns the parts of speech used by the entries.
+     *
+     * @return the parts of speech
+     */
+    public String[] getPartsOfSpeech() {
+	return partsOfSpeech.clone();
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+	return numEntries;
+    }
+
+    /**
+     * Returns the size of the image in bytes.
+     *
+     * @return the image size
+     */
+    public int getImageSize() {
+	return image.limit();
+    }
+
+    /**
+     * Copies the entries into a map keyed by word and part of speech,
+     * the form used by {@link LexiconImpl}.  For dumping and comparing
+     * only.
+     *
+     * @return the entries
+     */
+    public Map toMap() {
+	Map map = new LinkedHashMap(numEntries * 4 / 3 + 1);
+	int at = entriesStart;
+	char[] chars = new char[256];
+	for (int i = 0; i < numEntries; i++) {
+	    int len = image.get(at++) & 0xff;
+	    for (int j = 0; j < len; j++) {
+		chars[j] = (char) (image.get(at++) & 0xff);
+	    }
+	    String[] result = new String[image.get(at++) & 0xff];
+	    for (int j = 0; j < result.length; j++) {
+		result[j] = phones[image.get(at++) & 0xff];
+	    }
+	    map.put(new String(chars, 0, len), result);
+	}
+	return map;
+    }
+
+    /**
+     * Finds the entry for the word and part of speech.
+     *
+     * @param word the word
+     * @param partOfSpeech the part of speech
+     *
+     * @return the absolute offset of the entry, or -1
+     */
+    private int find(String word, String partOfSpeech) {
+	int wordLength = word.length();
+	int length = wordLength + partOfSpeech.length();
+	int hash = hash(word, partOfSpeech);
+	for (int slot = hash & tableMask; ; slot = (slot + 1) & tableMask) {
+	    int offset = image.getInt(tableStart + slot * 4);
+	    if (offset < 0) {
+		return -1;
+	    }
+	    int entry = entriesStart + offset;
+	    if ((image.get(entry) & 0xff) != length) {
+		continue;
+	    }
+	    int at = entry + 1;
+	    int i = 0;
+	    for (; i < wordLength; i++) {
+		if ((image.get(at + i) & 0xff) != word.charAt(i)) {
+		    break;
+		}
+	    }
+	    if (i < wordLength) {
+		continue;
+	    }
+	    for (; i < length; i++) {
+		if ((image.get(at + i) & 0xff)
+			!= partOfSpeech.charAt(i - wordLength)) {
+		    break;
+		}
+	    }
+	    if (i == length) {
+		return entry;
+	    }
+	}
+    }
+
+    /**
+     * Hashes the characters of the word followed by those of the part
+     * of speech (FNV-1a).
+     *
+     * @param word the word
+     * @param partOfSpeech the part of speech
+     *
+     * @return the hash
+     */
+    private static int hash(String word, String partOfSpeech) {
+	int h = 0x811c9dc5;
+	for (int i = 0; i < word.length(); i++) {
+	    h = (h ^ word.charAt(i)) * 0x01000193;
+	}
+	for (int i = 0; i < partOfSpeech.length(); i++) {
+	    h = (h ^ partOfSpeech.charAt(i)) * 0x01000193;
+	}
+	return h ^ (h >>> 16);
+    }
+
+    /**
+     * Writes a compact lexicon image.
+     *
+     * @param lexicon maps word and part of speech (concatenated, the
+     *     part of speech being the last character) to a
+     *     <code>String[]</code> of phones
+     * @param path the file to write
+     *
+     * @throws IOException if the file can't be written or the lexicon
+     *     exceeds the limits of the format (255 phones, 255 characters
+     *     per key, 255 phones per word, ISO 8859-1 characters)
+     */
+    public static void write(Map lexicon, String path) throws IOException {
+	DataOutputStream dos = new DataOutputStream(new
+		BufferedOutputStream(new FileOutputStream(path)));
+	try {
+	    write(lexicon, dos);
+	} finally {
+	    dos.close();
+	}
+    }
+
+    /**
+     * Writes a compact lexicon image to a stream.  The stream is not
+     * closed.
+     *
+     * @param lexicon maps word and part of speech to phones; see
+     *     {@link #write(Map, String)}
+     * @param dos where to write the image
+     *
+     * @throws IOException if the image can't be written
+     */
+    static void write(Map lexicon, DataOutputStream dos) throws IOException {
+	List phoneList = new ArrayList();
+	List posList = new ArrayList();
+	int tableSize = 1;
+	while (tableSize < lexicon.size() * 2) {
+	    tableSize <<= 1;
+	}
+	int[] table = new int[tableSize];
+	Arrays.fill(table, -1);
+
+	ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+	DataOutputStream entries = new DataOutputStream(entryBytes);
+	for (Iterator i = lexicon.entrySet().iterator(); i.hasNext(); ) {
+	    Map.Entry e = (Map.Entry) i.next();
+	    String key = (String) e.getKey();
+	    String[] phones = (String[]) e.getValue();
+	    String word = key.substring(0, key.length() - 1);
+	    String pos = key.substring(key.length() - 1);
+	    if (!posList.contains(pos)) {
+		posList.add(pos);
+	    }
+
+	    int slot = hash(word, pos) & (tableSize - 1);
+	    while (table[slot] != -1) {
+		slot = (slot + 1) & (tableSize - 1);
+	    }
+	    table[slot] = entries.size();
+
+	    outString(entries, key);
+	    if (phones.length > 255) {
+		throw new IOException("too many phones for " + key);
+	    }
+	    entries.writeByte(phones.length);
+	    for (int j = 0; j < phones.length; j++) {
+		int id = phoneList.indexOf(phones[j]);
+		if (id == -1) {
+		    id = phoneList.size();
+		    phoneList.add(phones[j]);
+		    if (id > 255) {
+			throw new IOException("too many distinct phones");
+		    }
+		}
+		entries.writeByte(id);
+	    }
+	}
+	entries.flush();
+
+	dos.writeInt(MAGIC);
+	dos.writeInt(VERSION);
+	dos.writeInt(phoneList.size());
+	for (int i = 0; i < phoneList.size(); i++) {
+	    outString(dos, (String) phoneList.get(i));
+	}
+	dos.writeInt(posList.size());
+	for (int i = 0; i < posList.size(); i++) {
+	    outString(dos, (String) posList.get(i));
+	}
+	dos.writeInt(lexicon.size());
+	dos.writeInt(tableSize);
+	for (int i = 0; i < tableSize; i++) {
+	    dos.writeInt(table[i]);
+	}
+	entryBytes.writeTo(dos);
+	dos.flush();
+    }
+
+    /**
+     * Outputs a one byte per character string.
+     *
+     * @param dos the data output stream
+     * @param s the string to output
+     *
+     * @throws IOException if the string can't be represented
+     */
+    static void outString(DataOutputStream dos, String s)
+	    throws IOException {
+	if (s.length() > 255) {
+	    throw new IOException("string too long: " + s);
+	}
+	dos.writeByte(s.length());
+	for (int i = 0; i < s.length(); i++) {
+	    char c = s.charAt(i);
+	    if (c > 0xff) {
+		throw new IOException("can't store character in " + s);
+	    }
+	    dos.writeByte(c);
+	}
+    }
+
+    /**
+     * Inputs a one byte per character string.
+     *
+     * @param bb the buffer, positioned at the string
+     *
+     * @return the string
+     */
+    static String getString(ByteBuffer bb) {
+	int size = bb.get() & 0xff;
+	char[] chars = new char[size];
+	for (int i = 0; i < size; i++) {
+	    chars[i] = (char) (bb.get() & 0xff);
+	}
+	return new String(chars);
+    }
+}
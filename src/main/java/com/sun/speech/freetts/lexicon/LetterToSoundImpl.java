@@ -14,12 +14,15 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -106,6 +109,16 @@ import com.sun.speech.freetts.util.Utilities;
  *   -Dcom.sun.speech.freetts.lexicon.LTSTokenize=load
  * </pre>
  *
+ * <p>Once loaded, the state machine is flattened into primitive
+ * arrays, with a table indexed directly by letter for the starting
+ * states, and the original states are dropped.  Lookups read the
+ * context window straight from the word and keep no state in the
+ * instance, so one instance may be used by any number of threads at
+ * once.  {@link #getPhones(String, String[], int)} fills a buffer
+ * owned by the caller and allocates nothing;
+ * {@link #getPhones(String, String)} works in a buffer kept for each
+ * thread and allocates only the result.
+ *
  * <p>[[[TODO:  This implementation uses ASCII 'a'-'z', which is not
  * internationalized.]]]
  */
@@ -167,13 +180,56 @@ public class LetterToSoundImpl implements LetterToSound {
     private final static int VERSION = 1;
 
     /**
-     * The LTS state machine. Entries can be String or State.  An
-     * ArrayList could be used here -- I chose not to because I
-     * thought it might be quicker to avoid dealing with the dynamic
-     * resizing.
+     * The LTS state machine while it is being loaded. Entries can be
+     * String or State.  An ArrayList could be used here -- I chose not
+     * to because I thought it might be quicker to avoid dealing with
+     * the dynamic resizing.  Set to <code>null</code> once the machine
+     * is flattened.
      */
     private Object[] stateMachine = null;
 
+    /**
+     * For each state, the index into the context window the decision
+     * looks at, or -1 if the state is final.
+     */
+    private byte[] windowIndex;
+
+    /**
+     * For each decision state, the character to match.
+     */
+    private char[] matchChar;
+
+    /**
+     * For a decision state <code>s</code>, the next state on a match
+     * is at <code>2s</code> and the next state otherwise at
+     * <code>2s + 1</code>.  For a final state these hold the offset
+     * into <code>phonePool</code> and the number of phones.
+     */
+    private int[] next;
+
+    /**
+     * The phones of all final states, one after the other.
+     */
+    private String[] phonePool;
+
+    /**
+     * The most phones any final state produces, so a word gives at
+     * most this many phones for each of its letters.
+     */
+    private int maxPhonesPerState;
+
+    /**
+     * The starting state for each letter, indexed by the letter;
+     * -1 if the rules don't know the letter.
+     */
+    private int[] letterStart;
+
+    /**
+     * The buffer of each thread that looks up words by
+     * {@link #getPhones(String, String)}, grown as longer words come.
+     */
+    private final ThreadLocal phoneBuffer = new ThreadLocal();
+
     /**
      * The number of states in the state machine.
      */
@@ -184,15 +240,6 @@ public class LetterToSoundImpl implements LetterToSound {
      */
     private final static int WINDOW_SIZE = 4;
         
-    /**
-     * An array of characters to hold a string for checking against a
-     * rule.  This will be reused over and over again, so the goal
-     * was just to have a single area instead of new'ing up a new one
-     * for every word.  The name choice is to match that in Flite's
-     * <code>cst_lts.c</code>.
-     */
-    private char[] fval_buff = new char[WINDOW_SIZE * 2];
-    
     /**
      * The indexes of the starting points for letters in the state machine.
      */
@@ -201,7 +248,7 @@ public class LetterToSoundImpl implements LetterToSound {
     /**
      * The list of phones that can be returned by the LTS rules.
      */
-    static private List phonemeTable;
+    private List phonemeTable;
 
     /**
      * Class constructor.
@@ -223,9 +270,142 @@ public class LetterToSoundImpl implements LetterToSound {
 	    loadText(is);
 	}
 	is.close();
+	flatten();
 	BulkTimer.LOAD.stop("LTS");
     }
 
+    /**
+     * Creates the rules from the flattened form written by
+     * {@link #writeFlat}, starting at the position of the buffer.
+     * The buffer is left positioned after the rules.
+     *
+     * @param bb the buffer
+     *
+     * @throws IOException if the rules are malformed
+     */
+    LetterToSoundImpl(ByteBuffer bb) throws IOException {
+	int numStates = bb.getInt();
+	windowIndex = new byte[numStates];
+	bb.get(windowIndex);
+	matchChar = new char[numStates];
+	bb.asCharBuffer().get(matchChar);
+	bb.position(bb.position() + numStates * 2);
+	next = new int[numStates * 2];
+	bb.asIntBuffer().get(next);
+	bb.position(bb.position() + numStates * 8);
+	for (int i = 0; i < numStates; i++) {
+	    if (windowIndex[i] < 0) {
+		maxPhonesPerState = Math.max(maxPhonesPerState,
+			next[2 * i + 1]);
+	    }
+	}
+
+	String[] table = new String[bb.getInt()];
+	for (int i = 0; i < table.length; i++) {
+	    table[i] = CompactLexicon.getString(bb).intern();
+	}
+	phonePool = new String[bb.getInt()];
+	for (int i = 0; i < phonePool.length; i++) {
+	    phonePool[i] = table[bb.get() & 0xff];
+	}
+
+	letterStart = new int[bb.getInt()];
+	bb.asIntBuffer().get(letterStart);
+	bb.position(bb.position() + letterStart.length * 4);
+	letterIndex = new HashMap();
+	for (int i = 0; i < letterStart.length; i++) {
+	    if (letterStart[i] >= 0) {
+		letterIndex.put(Character.toString((char) i),
+			Integer.valueOf(letterStart[i]));
+	    }
+	}
+    }
+
+    /**
+     * Writes the flattened state machine so that it can be read back
+     * with {@link #LetterToSoundImpl(ByteBuffer)} without parsing.
+     *
+     * @param dos the output stream
+     *
+     * @throws IOException if the rules can't be written
+     */
+    void writeFlat(DataOutputStream dos) throws IOException {
+	dos.writeInt(windowIndex.length);
+	dos.write(windowIndex);
+	for (int i = 0; i < matchChar.length; i++) {
+	    dos.writeChar(matchChar[i]);
+	}
+	for (int i = 0; i < next.length; i++) {
+	    dos.writeInt(next[i]);
+	}
+
+	List table = findPhonemes();
+	if (table.size() > 256) {
+	    throw new IOException("too many distinct phones");
+	}
+	dos.writeInt(table.size());
+	for (int i = 0; i < table.size(); i++) {
+	    CompactLexicon.outString(dos, (String) table.get(i));
+	}
+	dos.writeInt(phonePool.length);
+	for (int i = 0; i < phonePool.length; i++) {
+	    dos.writeByte(table.indexOf(phonePool[i]));
+	}
+
+	dos.writeInt(letterStart.length);
+	for (int i = 0; i < letterStart.length; i++) {
+	    dos.writeInt(letterStart[i]);
+	}
+    }
+
+    /**
+     * Flattens the loaded state machine into the primitive arrays
+     * used for lookups and drops the original states.
+     */
+    private void flatten() {
+	int numStates = stateMachine.length;
+	windowIndex = new byte[numStates];
+	matchChar = new char[numStates];
+	next = new int[numStates * 2];
+	List pool = new ArrayList();
+	for (int i = 0; i < numStates; i++) {
+	    State state = getState(i);
+	    if (state instanceof DecisionState) {
+		DecisionState decision = (DecisionState) state;
+		windowIndex[i] = (byte) decision.index;
+		matchChar[i] = decision.c;
+		next[2 * i] = decision.qtrue;
+		next[2 * i + 1] = decision.qfalse;
+	    } else {
+		String[] phones = ((FinalState) state).phoneList;
+		windowIndex[i] = -1;
+		next[2 * i] = pool.size();
+		if (phones != null) {
+		    for (int j = 0; j < phones.length; j++) {
+			pool.add(phones[j]);
+		    }
+		    next[2 * i + 1] = phones.length;
+		    maxPhonesPerState = Math.max(maxPhonesPerState,
+			    phones.length);
+		}
+	    }
+	}
+	phonePool = (String[]) pool.toArray(new String[pool.size()]);
+
+	int maxLetter = 0;
+	for (Iterator i = letterIndex.keySet().iterator(); i.hasNext(); ) {
+	    maxLetter = Math.max(maxLetter, ((String) i.next()).charAt(0));
+	}
+	letterStart = new int[maxLetter + 1];
+	Arrays.fill(letterStart, -1);
+	for (Iterator i = letterIndex.keySet().iterator(); i.hasNext(); ) {
+	    String letter = (String) i.next();
+	    letterStart[letter.charAt(0)] =
+		((Integer) letterIndex.get(letter)).intValue();
+	}
+	stateMachine = null;
+    }
+
     /**
      * Loads the LTS rules from the given text input stream.  The
      * stream is not closed after the rules are read.       
@@ -305,7 +485,7 @@ public class LetterToSoundImpl implements LetterToSound {
 	    int type = dis.readInt();
 
 	    if (type == FinalState.TYPE) {
-		stateMachine[i] = FinalState.loadBinary(dis);
+		stateMachine[i] = FinalState.loadBinary(dis, phonemeTable);
 	    } else if (type == DecisionState.TYPE) {
 		stateMachine[i] = DecisionState.loadBinary(dis);
 	    } else {
@@ -391,10 +571,10 @@ public class LetterToSoundImpl implements LetterToSound {
 
 	// statemachine states
         //
-	dos.writeInt(stateMachine.length);
+	dos.writeInt(windowIndex.length);
 
-	for (int i = 0; i < stateMachine.length; i++) {
-	    getState(i).writeBinary(dos);
+	for (int i = 0; i < windowIndex.length; i++) {
+	    getState(i).writeBinary(dos, phonemeTable);
 	}
 	dos.close();
     }
@@ -406,24 +586,18 @@ public class LetterToSoundImpl implements LetterToSound {
      */
     private List findPhonemes() {
 	Set set = new HashSet();
-        for (int i = 0; i < stateMachine.length; i++) {
-	    if (stateMachine[i] instanceof FinalState) {
-		FinalState fstate = (FinalState) stateMachine[i];
-		if (fstate.phoneList != null) {
-		    for (int j = 0; j < fstate.phoneList.length; j++) {
-			set.add(fstate.phoneList[j]);
-		    }
-		}
-	    }
+        for (int i = 0; i < phonePool.length; i++) {
+	    set.add(phonePool[i]);
 	}
 	return new ArrayList(set);
     }
 
 
     /**
-     * Gets the <code>State</code> at the given index.  This may
-     * replace a <code>String</code> at
-     * the current spot with an actual <code>State</code> instance.
+     * Gets the <code>State</code> at the given index.  While loading
+     * this may replace a <code>String</code> at the current spot with
+     * an actual <code>State</code> instance; once the machine is
+     * flattened a new <code>State</code> is made from the arrays.
      *
      * @param i the index into the state machine
      *
@@ -431,7 +605,19 @@ public class LetterToSoundImpl implements LetterToSound {
      */
     protected State getState(int i) {
         State state = null;
-        if (stateMachine[i] instanceof String) {
+        if (stateMachine == null) {
+            if (windowIndex[i] >= 0) {
+                state = new DecisionState(windowIndex[i], matchChar[i],
+                        next[2 * i], next[2 * i + 1]);
+            } else if (next[2 * i + 1] == 0) {
+                state = new FinalState((String[]) null);
+            } else {
+                String[] phones = new String[next[2 * i + 1]];
+                System.arraycopy(phonePool, next[2 * i], phones, 0,
+                        phones.length);
+                state = new FinalState(phones);
+            }
+        } else if (stateMachine[i] instanceof String) {
             state = getState((String) stateMachine[i]);
             if (tokenizeOnLookup) {
                 stateMachine[i] = state;
@@ -477,32 +663,6 @@ public class LetterToSoundImpl implements LetterToSound {
         return null;
     }
 
-    /**
-     * Makes a character array that looks like "000#word#000".
-     *
-     * @param word the original word
-     *
-     * @return the padded word
-     */
-    protected char[] getFullBuff(String word) {
-        char[] full_buff = new char[word.length() + (2 * WINDOW_SIZE)];
-
-        // Make full_buff look like "000#word#000"
-        //
-        for (int i = 0; i < (WINDOW_SIZE - 1); i++) 
-        {
-            full_buff[i] = '0';
-        }
-        full_buff[WINDOW_SIZE - 1] = '#';
-        word.getChars(0,word.length(),full_buff,WINDOW_SIZE);
-        for (int i = 0; i < (WINDOW_SIZE - 1); i++) 
-        {
-            full_buff[full_buff.length - i - 1] = '0';
-        }
-        full_buff[full_buff.length - WINDOW_SIZE] = '#';
-        return full_buff;
-    }
-    
     /**
      * Calculates the phone list for a given word.  If a phone list cannot
      * be determined, <code>null</code> is returned.  This particular
@@ -514,47 +674,103 @@ public class LetterToSoundImpl implements LetterToSound {
      * @return the list of phones for word or <code>null</code>
      */
     public String[] getPhones(String word, String partOfSpeech) {
-        ArrayList phoneList = new ArrayList();
-        State currentState;
-        Integer startIndex;
-        int stateIndex;
-        char c;
+        int max = getMaxPhones(word);
+        String[] buffer = (String[]) phoneBuffer.get();
+        if (buffer == null || buffer.length < max) {
+            buffer = new String[Math.max(max, 64)];
+            phoneBuffer.set(buffer);
+        }
+        int count = getPhones(word, buffer, 0);
+        String[] phones = new String[count];
+        System.arraycopy(buffer, 0, phones, 0, count);
+        return phones;
+    }
 
-        // Create "000#word#000"
-        //
-        char[] full_buff = getFullBuff(word);
-        
-        // For each character in the word, create a WINDOW_SIZE
-        // context on each size of the character, and then ask the
-        // state machine what's next.  It's magic.  BTW, this goes
-        // through the word from beginning to end.  Flite goes through
-        // it from end to beginning.  There doesn't seem to be a
-        // difference in the result.
+    /**
+     * Returns the most phones the rules can produce for the word.
+     *
+     * @param word the word
+     *
+     * @return the size of a buffer big enough for the phones of word
+     */
+    public int getMaxPhones(String word) {
+        return word.length() * maxPhonesPerState;
+    }
+
+    /**
+     * Calculates the phones for a given word into a buffer supplied by
+     * the caller.  Nothing is allocated.
+     *
+     * @param word the word to find
+     * @param phones where the phones are put
+     * @param offset where in <code>phones</code> the first phone goes
+     *
+     * @return the number of phones put in <code>phones</code>
+     *
+     * @throws ArrayIndexOutOfBoundsException if <code>phones</code>
+     *   has fewer than {@link #getMaxPhones} entries after
+     *   <code>offset</code>
+     */
+    public int getPhones(String word, String[] phones, int offset) {
+        int length = word.length();
+        int count = offset;
+
+        // For each character in the word, look at a WINDOW_SIZE
+        // context on each side of the character in "000#word#000",
+        // and then ask the state machine what's next.  It's magic.
+        // BTW, this goes through the word from beginning to end.
+        // Flite goes through it from end to beginning.  There doesn't
+        // seem to be a difference in the result.
         //
-        for (int pos = 0; pos < word.length(); pos++) {
-            for (int i = 0; i < WINDOW_SIZE; i++) {
-                fval_buff[i] = full_buff[pos + i];
-                fval_buff[i + WINDOW_SIZE] =
-                    full_buff[i + pos + 1 + WINDOW_SIZE];
+        for (int pos = 0; pos < length; pos++) {
+            char c = word.charAt(pos);
+            int state = c < letterStart.length ? letterStart[c] : -1;
+            if (state < 0) {
+                continue;
             }
-	    c = word.charAt(pos);
-	    startIndex = (Integer) letterIndex.get(Character.toString(c));
-	    if (startIndex == null) {
-		continue;
-	    }
-            stateIndex = startIndex.intValue();
-            currentState = getState(stateIndex);
-            while (!(currentState instanceof FinalState)) {
-                stateIndex =
-                    ((DecisionState)
-                     currentState).getNextState(fval_buff);
-                currentState = getState(stateIndex);
+            int index;
+            while ((index = windowIndex[state]) >= 0) {
+                state = next[2 * state
+                        + (contextChar(word, length, pos, index)
+                           == matchChar[state] ? 0 : 1)];
+            }
+            int first = next[2 * state];
+            int n = next[2 * state + 1];
+            for (int i = 0; i < n; i++) {
+                phones[count++] = phonePool[first + i];
             }
-            ((FinalState) currentState).append(phoneList);
         }
-        return (String[]) phoneList.toArray(new String[0]);
+        return count - offset;
     }
 
+    /**
+     * Returns a character of the context window around a letter,
+     * reading it from the word as if the word were padded to look
+     * like "000#word#000".  This replaces the <code>fval_buff</code>
+     * of Flite's <code>cst_lts.c</code>.
+     *
+     * @param word the word
+     * @param length the length of the word
+     * @param pos the position of the letter in the word
+     * @param index the index into the context window; the first
+     *   WINDOW_SIZE entries precede the letter and the rest follow it
+     *
+     * @return the character
+     */
+    private static char contextChar(String word, int length,
+            int pos, int index) {
+        // position in the padded word
+        int i = pos + index + (index < WINDOW_SIZE ? 0 : 1)
+            - WINDOW_SIZE;
+        if (i >= 0 && i < length) {
+            return word.charAt(i);
+        } else if (i == -1 || i == length) {
+            return '#';
+        } else {
+            return '0';
+        }
+    }
+    
     /**
      * Compares this LTS to another for debugging purposes.
      *
@@ -578,7 +794,7 @@ public class LetterToSoundImpl implements LetterToSound {
 
 	// compare states
         //
-	for (int i = 0; i < stateMachine.length; i++) {
+	for (int i = 0; i < windowIndex.length; i++) {
 	    State state = getState(i);
 	    State otherState = other.getState(i);
 	    if (!state.compare(otherState)) {
@@ -597,7 +813,8 @@ public class LetterToSoundImpl implements LetterToSound {
      * @see FinalState
      */
     static interface State {
-	public void writeBinary(DataOutputStream dos) throws IOException;
+	public void writeBinary(DataOutputStream dos, List phonemeTable)
+	    throws IOException;
 	public boolean compare(State other);
     }
 
@@ -658,10 +875,12 @@ public class LetterToSoundImpl implements LetterToSound {
 	 * Writes this <code>State</code> to the given output stream.
          *
 	 * @param dos the data output stream
+	 * @param phonemeTable the phone table (not used)
          *
 	 * @throws IOException if an error occurs
 	 */
-	public void writeBinary(DataOutputStream dos) throws IOException {
+	public void writeBinary(DataOutputStream dos, List phonemeTable)
+		throws IOException {
 	    dos.writeInt(TYPE);
 	    dos.writeInt(index);
 	    dos.writeChar(c);
@@ -812,10 +1031,12 @@ public class LetterToSoundImpl implements LetterToSound {
 	 * Writes this state to the given output stream.
          *
 	 * @param dos the data output stream
+	 * @param phonemeTable the phone table the phones are indexes into
          *
 	 * @throws IOException if an error occurs
 	 */
-	public void writeBinary(DataOutputStream dos) throws IOException {
+	public void writeBinary(DataOutputStream dos, List phonemeTable)
+		throws IOException {
 	    dos.writeInt(TYPE);
 	    if (phoneList == null) {
 		dos.writeInt(0);
@@ -831,12 +1052,13 @@ public class LetterToSoundImpl implements LetterToSound {
 	 * Loads a FinalState object from the given input stream
          *
 	 * @param dis the data input stream
+	 * @param phonemeTable the phone table the phones are indexes into
          *
 	 * @return a newly constructed final state
          *
 	 * @throws IOException if an error occurs
 	 */
-	public static State loadBinary(DataInputStream dis)
+	public static State loadBinary(DataInputStream dis, List phonemeTable)
 			    throws IOException {
 	    String[] phoneList;
 	    int phoneListLength = dis.readInt();
@@ -856,7 +1078,28 @@ public class LetterToSoundImpl implements LetterToSound {
 
 
     /**
-     * Translates between text and binary forms of the CMU6 LTS rules.
+     * Translates between text and binary forms of the CMU6 LTS rules,
+     * and measures how fast they are.
+     * <br><b>Usage:</b><br>
+     * <pre>
+     *  com.sun.speech.freetts.lexicon.LetterToSoundImpl [options]
+     *
+     * Where options is any combination of:
+     *
+     * -src path
+     * -dest path
+     * -name name
+     * -threads n
+     * -generate_binary
+     * -compare
+     * -benchmark wordfile
+     * -showtimes
+     * </pre>
+     *
+     * <p>The benchmark runs the text rules from src over every word
+     * (one per line) of the word file, which should hold words that
+     * are not in the lexicon, on the given number of threads sharing
+     * one instance.
      */
     public static void main(String[] args) {
 	LexiconImpl lex, lex2;
@@ -864,6 +1107,7 @@ public class LetterToSoundImpl implements LetterToSound {
         String srcPath = ".";
         String destPath = ".";
 	String name = "cmulex_lts";
+	int threads = 1;
 
 	try {
 	    if (args.length > 0) {
@@ -911,6 +1155,16 @@ public class LetterToSoundImpl implements LetterToSound {
 			    System.out.println("ok");
 			}
 			timer.stop("compare");
+		    } else if (args[i].equals("-threads")
+                               && i < args.length - 1) {
+			threads = Integer.parseInt(args[++i]);
+		    } else if (args[i].equals("-benchmark")
+                               && i < args.length - 1) {
+			LetterToSoundImpl text = new LetterToSoundImpl(
+				new URL("file:" + srcPath + "/"
+                                        + name + ".txt"),
+                                false);
+			benchmark(text, args[++i], threads);
 		    } else if (args[i].equals("-showtimes")) {
 			showTimes = true;
 		    } else {
@@ -927,10 +1181,73 @@ public class LetterToSoundImpl implements LetterToSound {
 		System.out.println("    -dest path");
 		System.out.println("    -compare");
 		System.out.println("    -generate_binary");
+		System.out.println("    -benchmark wordfile");
+		System.out.println("    -threads n");
 		System.out.println("    -showTimes");
 	    }
 	} catch (IOException ioe) {
 	    System.err.println(ioe);
+	} catch (InterruptedException ie) {
+	    System.err.println(ie);
+	}
+    }
+
+    /**
+     * Looks up every word of the word file, after a warm up pass, on
+     * the given number of threads and prints the words per second.
+     *
+     * @param lts the rules
+     * @param wordFile the words, one per line
+     * @param threads the number of threads
+     *
+     * @throws IOException if the words can't be read
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void benchmark(final LetterToSoundImpl lts,
+	    String wordFile, int threads)
+	    throws IOException, InterruptedException {
+	final List words = new ArrayList();
+	BufferedReader reader = new BufferedReader(new InputStreamReader(
+		    new FileInputStream(wordFile)));
+	String line;
+	while ((line = reader.readLine()) != null) {
+	    if (line.length() > 0) {
+		words.add(line.toLowerCase());
+	    }
+	}
+	reader.close();
+
+	final int passes = 5;
+	for (int run = 0; run < 2; run++) {
+	    Thread[] workers = new Thread[threads];
+	    long start = System.nanoTime();
+	    for (int t = 0; t < threads; t++) {
+		workers[t] = new Thread() {
+		    public void run() {
+			String[] phones = new String[64];
+			for (int pass = 0; pass < passes; pass++) {
+			    for (int w = 0; w < words.size(); w++) {
+				String word = (String) words.get(w);
+				if (lts.getMaxPhones(word) > phones.length) {
+				    phones = new String[lts.getMaxPhones(word)];
+				}
+				lts.getPhones(word, phones, 0);
+			    }
+			}
+		    }
+		};
+		workers[t].start();
+	    }
+	    for (int t = 0; t < threads; t++) {
+		workers[t].join();
+	    }
+	    double seconds = (System.nanoTime() - start) / 1e9;
+	    if (run > 0) {
+		System.out.println(words.size() + " words, " + threads
+			+ " threads: "
+			+ (long) (words.size() * passes * threads / seconds)
+			+ " words/s");
+	    }
 	}
     }
 }
@@ -58,6 +58,29 @@ public interface Lexicon {
      */    
     public String[] getPhones(String word, String partOfSpeech, boolean useLTS);
 
+    /**
+     * Gets the phones for all the words of an utterance at once.  Each
+     * distinct word is looked up once, using the letter to sound rules
+     * if it is not in the lexicon.  Words without phones have none in
+     * the result.
+     *
+     * <p>This implementation looks the words up one by one;
+     * implementations should override it to resolve them in one pass.
+     *
+     * @param words the words to find
+     * @param partOfSpeech the part of speech or <code>null</code>
+     *
+     * @return the phones of the words
+     */
+    default PhoneSequences getPhones(String[] words, String partOfSpeech) {
+	PhoneSequences sequences = new PhoneSequences(words);
+	for (int i = 0; i < sequences.getDistinctCount(); i++) {
+	    sequences.setPhones(i,
+		    getPhones(sequences.getDistinctWord(i), partOfSpeech));
+	}
+	return sequences;
+    }
+
     /**
      * Adds a word to the addenda.  The
      * part of speech is implementation dependent.
@@ -91,6 +114,33 @@ public interface Lexicon {
                                       String[] wordPhones,
                                       int currentWordPhone);    
 
+    /**
+     * Determines if the <code>currentPhone</code> represents a new
+     * syllable boundary, for a word whose phones lie in part of a
+     * larger array, such as {@link PhoneSequences#getPhoneArray}.
+     *
+     * <p>This implementation copies the phones of the word and asks
+     * {@link #isSyllableBoundary(List, String[], int)};
+     * implementations should override it to read them in place, and
+     * must then give the same answers as the other form.
+     *
+     * @param syllablePhones the phones in the current syllable so far
+     * @param phones the array that holds the phones of the word
+     * @param start where the phones of the word start in the array
+     * @param end where the phones of the word end in the array
+     * @param currentPhone the phone in question, as an index into the
+     *     array
+     *
+     * @return <code>true</code> if the phone is a new boundary
+     */
+    default boolean isSyllableBoundary(List syllablePhones,
+	    String[] phones, int start, int end, int currentPhone) {
+	String[] wordPhones = new String[end - start];
+	System.arraycopy(phones, start, wordPhones, 0, wordPhones.length);
+	return isSyllableBoundary(syllablePhones, wordPhones,
+		currentPhone - start);
+    }
+
     /**
      * Loads this lexicon.  The loading of a lexicon need not be done
      * in the constructor.
@@ -0,0 +1,287 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/**
+ * Everything a {@link LexiconImpl} loads, precompiled into one file:
+ * the compiled lexicon and the addenda as {@link CompactLexicon}
+ * images, the flattened letter to sound rules and the parts of
+ * speech.  Nothing is parsed when an image is loaded; the file is
+ * mapped (or read into a direct buffer if it is not a file) and the
+ * sections used where they lie.  Since the
+ * mapping is backed by the operating system's file cache, voices in
+ * different class loaders, or different processes, share one copy of
+ * the data.
+ *
+ * <p>Image format (all ints big endian):
+ * <pre>
+ * MAGIC
+ * VERSION
+ * (long) CRC32 of everything after this field
+ * (int) numPartsOfSpeech
+ * (String) pos0 ... posN
+ * (int) length, compiled lexicon (a CompactLexicon image)
+ * (int) length, addenda (a CompactLexicon image)
+ * (int) length, letter to sound rules (flattened)
+ * </pre>
+ *
+ * <p>Images are written by {@link LexiconImpl#dumpImage}, which reads
+ * the image back and verifies its checksum; a lexicon uses one when
+ * given an image URL with {@link LexiconImpl#setLexiconImage}.  The
+ * checksum reads the whole image, so it is not verified when an image
+ * is loaded unless the <code>VERIFY_PROPERTY</code> system property
+ * is true.
+ */
+public class LexiconImage {
+    /**
+     * Magic number for lexicon images.
+     */
+    public final static int MAGIC = 0x1E81CA6E;
+
+    /**
+     * Current image version.  Images of any other version are
+     * rejected and must be compiled again.
+     */
+    public final static int VERSION = 1;
+
+    /**
+     * The system property that, if true, has images verified against
+     * their checksum whenever they are loaded.
+     */
+    public final static String VERIFY_PROPERTY =
+	"com.sun.speech.freetts.lexicon.verifyImage";
+
+    private final String[] partsOfSpeech;
+    private final CompactLexicon compiled;
+    private final CompactLexicon addenda;
+    private final LetterToSoundImpl letterToSound;
+
+    /**
+     * Reads an image.
+     *
+     * @param bb the image
+     * @param verify if true, the checksum is verified
+     *
+     * @throws IOException if the image is not valid
+     */
+    private LexiconImage(ByteBuffer bb, boolean verify) throws IOException {
+	if (bb.getInt() != MAGIC) {
+	    throw new IOException("bad magic number in lexicon image");
+	}
+	int version = bb.getInt();
+	if (version != VERSION) {
+	    throw new IOException("lexicon image version " + version
+		    + " is not " + VERSION + "; recompile it");
+	}
+	long checksum = bb.getLong();
+	if (verify && checksum(bb.slice()) != checksum) {
+	    throw new IOException("bad checksum in lexicon image");
+	}
+
+	partsOfSpeech = new String[bb.getInt()];
+	for (int i = 0; i < partsOfSpeech.length; i++) {
+	    partsOfSpeech[i] = CompactLexicon.getString(bb).intern();
+	}
+	compiled = new CompactLexicon(section(bb));
+	addenda = new CompactLexicon(section(bb));
+	letterToSound = new LetterToSoundImpl(section(bb));
+    }
+
+    /**
+     * Loads an image, verifying its checksum only if the
+     * <code>VERIFY_PROPERTY</code> system property is true.
+     *
+     * @param url where the image is
+     *
+     * @return the image
+     *
+     * @throws IOException if the image can't be read or is not valid
+     */
+    public static LexiconImage load(URL url) throws IOException {
+	return load(url, Utilities.getBoolean(VERIFY_PROPERTY));
+    }
+
+    /**
+     * Loads an image.  A file is mapped; anything else is read into a
+     * direct buffer.
+     *
+     * @param url where the image is
+     * @param verify if true, the checksum is verified, which reads the
+     *     whole image
+     *
+     * @return the image
+     *
+     * @throws IOException if the image can't be read or is not valid
+     */
+    public static LexiconImage load(URL url, boolean verify)
+	    throws IOException {
+	InputStream is = Utilities.getInputStream(url);
+	try {
+	    ByteBuffer bb;
+	    if (is instanceof FileInputStream) {
+		FileChannel fc = ((FileInputStream) is).getChannel();
+		bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+	    } else {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+		    bytes.write(buffer, 0, n);
+		}
+		bb = ByteBuffer.allocateDirect(bytes.size());
+		bb.put(bytes.toByteArray());
+		bb.flip();
+	    }
+	    return new LexiconImage(bb, verify);
+	} finally {
+	    is.close();
+	}
+    }
+
+    /**
+     * Returns the parts of speech, in the order a lexicon tries them.
+     *
+     * @return the parts of speech
+     */
+    public String[] getPartsOfSpeech() {
+	return partsOfSpeech.clone();
+    }
+
+    /**
+     * Returns the compiled lexicon.
+     *
+     * @return the compiled lexicon
+     */
+    public CompactLexicon getCompiled() {
+	return compiled;
+    }
+
+    /**
+     * Returns the addenda.
+     *
+     * @return the addenda
+     */
+    public CompactLexicon getAddenda() {
+	return addenda;
+    }
+
+    /**
+     * Returns the letter to sound rules.  They may be shared by any
+     * number of lexicons.
+     *
+     * @return the letter to sound rules
+     */
+    public LetterToSoundImpl getLetterToSound() {
+	return letterToSound;
+    }
+
+    /**
+     * Writes an image, then loads it and verifies its checksum.
+     *
+     * @param path the file to write
+     * @param partsOfSpeech the parts of speech, in the order they are
+     *     tried
+     * @param compiled the compiled lexicon, word and part of speech to
+     *     <code>String[]</code> of phones
+     * @param addenda the addenda, in the same form
+     * @param letterToSound the letter to sound rules
+     *
+     * @throws IOException if the image can't be written, or doesn't
+     *     read back
+     */
+    public static void write(String path, List partsOfSpeech,
+	    Map compiled, Map addenda, LetterToSoundImpl letterToSound)
+	    throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DataOutputStream body = new DataOutputStream(bytes);
+	body.writeInt(partsOfSpeech.size());
+	for (int i = 0; i < partsOfSpeech.size(); i++) {
+	    CompactLexicon.outString(body, (String) partsOfSpeech.get(i));
+	}
+	ByteArrayOutputStream section = new ByteArrayOutputStream();
+	DataOutputStream dos = new DataOutputStream(section);
+
+	CompactLexicon.write(compiled, dos);
+	writeSection(body, section);
+	CompactLexicon.write(addenda, dos);
+	writeSection(body, section);
+	letterToSound.writeFlat(dos);
+	dos.flush();
+	writeSection(body, section);
+	body.flush();
+
+	byte[] image = bytes.toByteArray();
+	CRC32 crc = new CRC32();
+	crc.update(image);
+
+	DataOutputStream out = new DataOutputStream(new
+		BufferedOutputStream(new FileOutputStream(path)));
+	try {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeLong(crc.getValue());
+	    out.write(image);
+	} finally {
+	    out.close();
+	}
+	load(new File(path).toURI().toURL(), true);
+    }
+
+    private static void writeSection(DataOutputStream body,
+	    ByteArrayOutputStream section) throws IOException {
+	body.writeInt(section.size());
+	section.writeTo(body);
+	section.reset();
+    }
+
+    /**
+     * Returns the next section of the image as a buffer of its own and
+     * moves past it.
+     *
+     * @param bb the image
+     *
+     * @return the section
+     */
+    private static ByteBuffer section(ByteBuffer bb) {
+	int length = bb.getInt();
+	ByteBuffer section = bb.slice();
+	section.limit(length);
+	bb.position(bb.position() + length);
+	return section;
+    }
+
+    /**
+     * Computes the CRC32 of the remaining bytes of the buffer.
+     *
+     * @param bb the buffer
+     *
+     * @return the checksum
+     */
+    private static long checksum(ByteBuffer bb) {
+	CRC32 crc = new CRC32();
+	crc.update(bb);
+	return crc.getValue();
+    }
+}
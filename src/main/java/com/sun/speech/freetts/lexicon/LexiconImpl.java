@@ -32,6 +32,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -81,6 +82,25 @@ import java.util.StringTokenizer;
  * Where &lt;URLToUserAddenda> is a URL pointing to an ASCII file
  * containing addenda entries.
  *
+ * <p>If the binary compiled lexicon is a {@link CompactLexicon} image
+ * (see {@link #dumpCompact}) it is used in place, without being
+ * copied into a map.
+ *
+ * <p>All of the above can instead be precompiled into a single
+ * {@link LexiconImage} (see {@link #dumpImage}), which is mapped
+ * without any parsing when a lexicon is given its URL with
+ * {@link #setLexiconImage}.
+ *
+ * <p>The results of <code>getPhones</code>, including words that are
+ * not found and the phones made by the letter to sound rules, are kept
+ * in a {@link PronunciationCache} shared by all lexicons loaded from
+ * the same data.  The size of the cache is set with the following
+ * property (the default is 10000 words, 0 turns the cache off):
+ *
+ * <pre>
+ *   -Dcom.sun.speech.freetts.lexicon.cacheSize=10000
+ * </pre>
+ *
  * <p>[[[TODO: support multiple homographs with the same part of speech.]]] 
  */
 abstract public class LexiconImpl implements Lexicon {
@@ -124,6 +144,11 @@ abstract public class LexiconImpl implements Lexicon {
      */
     private URL letterToSoundURL;
 
+    /**
+     * URL for the precompiled image, if there is one.
+     */
+    private URL imageURL;
+
     /**
      * The addenda.
      */
@@ -134,6 +159,12 @@ abstract public class LexiconImpl implements Lexicon {
      */
     private Map compiled;
 
+    /**
+     * The compiled lexicon, if it is a compact image.  When this is
+     * set, <code>compiled</code> is <code>null</code>.
+     */
+    private CompactLexicon compactCompiled;
+
     /**
      * The LetterToSound rules.
      */
@@ -153,6 +184,32 @@ abstract public class LexiconImpl implements Lexicon {
      * own addenda.
      */
     private static Map loadedCompiledLexicons;
+
+    /**
+     * The pronunciation caches shared by lexicons loaded from the same
+     * data, keyed by the class and URLs of the lexicon.
+     */
+    private static Map pronunciationCaches = new HashMap();
+
+    /**
+     * The cache of results of <code>getPhones</code>, or
+     * <code>null</code> if there is none.
+     */
+    private volatile PronunciationCache pronunciationCache;
+
+    /**
+     * If <code>true</code> the pronunciation cache is shared with
+     * other lexicons; it is replaced by a private one when the addenda
+     * change.
+     */
+    private boolean sharedCache = false;
+
+    /**
+     * The number of words kept in the pronunciation cache.
+     */
+    private int cacheSize = Integer.parseInt(
+	Utilities.getProperty("com.sun.speech.freetts.lexicon.cacheSize",
+		"10000"));
     
 
     
@@ -231,6 +288,17 @@ abstract public class LexiconImpl implements Lexicon {
 	this.binary = binary;
     }
 
+    /**
+     * Loads this lexicon from a precompiled {@link LexiconImage}
+     * instead of the compiled, addenda and letter to sound URLs.
+     *
+     * @param imageURL a URL pointing to the image, or
+     *   <code>null</code> to load the separate files
+     */
+    protected void setLexiconImage(URL imageURL) {
+	this.imageURL = imageURL;
+    }
+
     /**
      * Determines if this lexicon is loaded.
      *
@@ -248,6 +316,68 @@ abstract public class LexiconImpl implements Lexicon {
     public void load() throws IOException {
 	BulkTimer.LOAD.start("Lexicon");
 
+	if (imageURL != null) {
+	    loadImage();
+	} else {
+	    loadFiles();
+	}
+	String userAddenda = loadUserAddenda();
+        
+	loaded = true;
+	BulkTimer.LOAD.stop("Lexicon");
+	if (imageURL == null) {
+	    letterToSound = new LetterToSoundImpl(letterToSoundURL, binary);
+	}
+
+	if (cacheSize > 0) {
+	    String source = imageURL != null ? imageURL.toString()
+		: compiledURL + " " + addendaURL + " " + letterToSoundURL
+		    + " " + binary;
+	    String key = getClass().getName() + " " + source + " "
+		+ userAddenda;
+	    synchronized (pronunciationCaches) {
+		pronunciationCache =
+		    (PronunciationCache) pronunciationCaches.get(key);
+		if (pronunciationCache == null) {
+		    pronunciationCache = new PronunciationCache(cacheSize);
+		    pronunciationCaches.put(key, pronunciationCache);
+		}
+	    }
+	    sharedCache = true;
+	}
+    }
+
+    /**
+     * Maps the precompiled image, sharing it with any other lexicon
+     * that uses the same image.
+     *
+     * @throws IOException if errors occur during loading
+     */
+    private void loadImage() throws IOException {
+	LexiconImage image;
+	synchronized (LexiconImpl.class) {
+	    if (loadedCompiledLexicons == null) {
+		loadedCompiledLexicons = new HashMap();
+	    }
+	    image = (LexiconImage) loadedCompiledLexicons.get(imageURL);
+	    if (image == null) {
+		image = LexiconImage.load(imageURL);
+		loadedCompiledLexicons.put(imageURL, image);
+	    }
+	}
+	compactCompiled = image.getCompiled();
+	compiled = null;
+	partsOfSpeech = new ArrayList(Arrays.asList(image.getPartsOfSpeech()));
+	addenda = image.getAddenda().toMap();
+	letterToSound = image.getLetterToSound();
+    }
+
+    /**
+     * Loads the compiled lexicon and the addenda from their own files.
+     *
+     * @throws IOException if errors occur during loading
+     */
+    private void loadFiles() throws IOException {
 	if (compiledURL == null) {
 	    throw new IOException("Can't load lexicon");
 	}
@@ -256,19 +386,43 @@ abstract public class LexiconImpl implements Lexicon {
 	    throw new IOException("Can't load lexicon addenda " );
 	}
 
-	if (loadedCompiledLexicons == null) {
-	    loadedCompiledLexicons = new HashMap();
+	// voices may be allocated on several threads at once
+	Object shared;
+	synchronized (LexiconImpl.class) {
+	    if (loadedCompiledLexicons == null) {
+		loadedCompiledLexicons = new HashMap();
+	    }
+	    if (!loadedCompiledLexicons.containsKey(compiledURL)) {
+		if (binary && CompactLexicon.isCompact(compiledURL)) {
+		    loadedCompiledLexicons.put(compiledURL,
+			    CompactLexicon.load(compiledURL));
+		} else {
+		    InputStream compiledIS =
+			Utilities.getInputStream(compiledURL);
+		    if (compiledIS == null) {
+			throw new IOException("Can't load lexicon from "
+				+ compiledURL);
+		    }
+		    Map newCompiled = createLexicon(compiledIS, binary, 65000);
+		    loadedCompiledLexicons.put(compiledURL, newCompiled);
+		    compiledIS.close();
+		}
+	    }
+	    shared = loadedCompiledLexicons.get(compiledURL);
 	}
-	if (!loadedCompiledLexicons.containsKey(compiledURL)) {
-		InputStream compiledIS = Utilities.getInputStream(compiledURL);
-		if (compiledIS == null) {
-		    throw new IOException("Can't load lexicon from " + compiledURL);
+	if (shared instanceof CompactLexicon) {
+	    compactCompiled = (CompactLexicon) shared;
+	    compiled = null;
+	    String[] pos = compactCompiled.getPartsOfSpeech();
+	    for (int i = 0; i < pos.length; i++) {
+		if (!partsOfSpeech.contains(pos[i])) {
+		    partsOfSpeech.add(pos[i]);
 		}
-		Map newCompiled = createLexicon(compiledIS, binary, 65000);
-        loadedCompiledLexicons.put(compiledURL, newCompiled);
-    	compiledIS.close();
+	    }
+	} else {
+	    compactCompiled = null;
+	    compiled = Collections.unmodifiableMap((Map) shared);
 	}
-	compiled = Collections.unmodifiableMap((Map)loadedCompiledLexicons.get(compiledURL));
 
 	InputStream addendaIS = Utilities.getInputStream(addendaURL);
 	if (addendaIS == null) {
@@ -280,10 +434,17 @@ abstract public class LexiconImpl implements Lexicon {
         //
         addenda = createLexicon(addendaIS, binary, 50);
 	addendaIS.close();
+    }
 
-        /* Load the user-defined addenda and override any existing
-         * entries in the system addenda.
-         */
+    /**
+     * Loads the user-defined addenda and overrides any existing
+     * entries in the system addenda.
+     *
+     * @return the URL of the user addenda, or <code>null</code>
+     *
+     * @throws IOException if errors occur during loading
+     */
+    private String loadUserAddenda() throws IOException {
         String userAddenda = Utilities.getProperty(
             "com.sun.speech.freetts.lexicon.userAddenda", null);
         if (userAddenda != null) {
@@ -307,10 +468,7 @@ abstract public class LexiconImpl implements Lexicon {
                                       userAddenda);
             }
         }
-        
-	loaded = true;
-	BulkTimer.LOAD.stop("Lexicon");
-	letterToSound = new LetterToSoundImpl(letterToSoundURL, binary);
+        return userAddenda;
     }
 
     /**
@@ -420,26 +578,156 @@ abstract public class LexiconImpl implements Lexicon {
      *        the word is not in the lexicon.
      *
      * @return the list of phones for word or null
+     *
+     * <p>Words found in the pronunciation cache are returned without
+     * taking the lock of this lexicon.
      */    
     public String[] getPhones
 			(String word, String partOfSpeech, boolean useLTS){
+	PronunciationCache cache = pronunciationCache;
+	if (cache != null) {
+	    PronunciationCache.Pronunciation pronunciation =
+		cache.get(word, fixPartOfSpeech(partOfSpeech), useLTS);
+	    if (pronunciation != null) {
+		return pronunciation.getPhones(useLTS);
+	    }
+	}
+	return lookup(word, partOfSpeech, useLTS);
+    }
+
+    /**
+     * Gets the phones for all the words of an utterance at once.  The
+     * distinct words are looked up in the pronunciation cache, and
+     * those it doesn't hold are resolved together under one lock.  The
+     * phones go straight into the sequences; no array is made for a
+     * word.
+     *
+     * @param words the words to find
+     * @param partOfSpeech the part of speech or <code>null</code>
+     *
+     * @return the phones of the words
+     */
+    public PhoneSequences getPhones(String[] words, String partOfSpeech) {
+	PhoneSequences sequences = new PhoneSequences(words);
+	int count = sequences.getDistinctCount();
+	PronunciationCache.Pronunciation[] cached =
+	    new PronunciationCache.Pronunciation[count];
+	String[][] resolved = null;
+	PronunciationCache cache = pronunciationCache;
+	String pos = fixPartOfSpeech(partOfSpeech);
+	for (int i = 0; i < count; i++) {
+	    if (cache != null) {
+		cached[i] = cache.get(sequences.getDistinctWord(i), pos, true);
+	    }
+	    if (cached[i] == null && resolved == null) {
+		resolved = new String[count][];
+	    }
+	}
+	if (resolved != null) {
+	    synchronized (this) {
+		for (int i = 0; i < count; i++) {
+		    if (cached[i] == null) {
+			resolved[i] = resolve(sequences.getDistinctWord(i),
+				partOfSpeech, true);
+		    }
+		}
+	    }
+	}
+	for (int i = 0; i < count; i++) {
+	    if (cached[i] != null) {
+		sequences.setPhones(i, cached[i]);
+	    } else {
+		sequences.setPhones(i, resolved[i]);
+	    }
+	}
+	return sequences;
+    }
+
+    /**
+     * Looks a word up and returns a copy of its phones.  Lookups are
+     * synchronized since entries are parsed and replaced in the maps on
+     * first use and the addenda may change.
+     *
+     * @param word the word to find
+     * @param partOfSpeech the part of speech or <code>null</code>
+     * @param useLTS whether to use the letter-to-sound rules when
+     *        the word is not in the lexicon.
+     *
+     * @return the list of phones for word or null
+     */
+    private synchronized String[] lookup
+			(String word, String partOfSpeech, boolean useLTS){
+	String[] phones = resolve(word, partOfSpeech, useLTS);
+    	if(phones != null){
+    	String[] copy = new String[phones.length];
+    	System.arraycopy(phones, 0, copy, 0, phones.length);
+            return copy;
+    	}
+    	else return null;
+    	
+    }
+
+    /**
+     * Looks a word up in the addenda, the compiled lexicon and, if
+     * asked to, the letter to sound rules, and adds the result to the
+     * pronunciation cache.  The caller must hold the lock of this
+     * lexicon.  The phones returned may be held by the lexicon and must
+     * not be changed.
+     *
+     * @param word the word to find
+     * @param partOfSpeech the part of speech or <code>null</code>
+     * @param useLTS whether to use the letter-to-sound rules when
+     *        the word is not in the lexicon.
+     *
+     * @return the list of phones for word or null
+     */
+    private String[] resolve(String word, String partOfSpeech,
+	    boolean useLTS) {
     	String[] phones = null;
+	boolean fromLTS = false;
  	phones = getPhones(addenda, word, partOfSpeech);
     	if (phones == null) {
-    	    phones = getPhones(compiled, word, partOfSpeech);
+    	    phones = compactCompiled != null
+		? getPhones(compactCompiled, word, partOfSpeech)
+		: getPhones(compiled, word, partOfSpeech);
     	}
     	if(useLTS){
             if (phones == null && letterToSound != null) {
                 phones = letterToSound.getPhones(word, partOfSpeech);
+		fromLTS = true;
             }
     	}
-    	if(phones != null){
-    	String[] copy = new String[phones.length];
-    	System.arraycopy(phones, 0, copy, 0, phones.length);
-            return copy;
-    	}
-    	else return null;
-    	
+	if (pronunciationCache != null) {
+	    pronunciationCache.put(word, fixPartOfSpeech(partOfSpeech),
+		    phones, fromLTS, useLTS || (phones != null && !fromLTS));
+	}
+	return phones;
+    }
+
+    /**
+     * Returns the cache of results of <code>getPhones</code>.
+     *
+     * @return the pronunciation cache, or <code>null</code> if there
+     *     is none
+     */
+    public PronunciationCache getPronunciationCache() {
+	return pronunciationCache;
+    }
+
+    /**
+     * Forgets the cached pronunciations after a change to the addenda.
+     * A shared cache is left to the other lexicons and replaced by a
+     * private one.
+     */
+    private void invalidatePronunciations() {
+	if (pronunciationCache != null) {
+	    if (sharedCache) {
+		pronunciationCache = new PronunciationCache(cacheSize);
+		sharedCache = false;
+	    } else {
+		pronunciationCache.clear();
+	    }
+	}
     }
     /**
      * Gets a phone list for a word from a given lexicon.  If a phone
@@ -470,6 +758,33 @@ abstract public class LexiconImpl implements Lexicon {
         return phones;
     }
 
+    /**
+     * Gets a phone list for a word from a compact lexicon, trying the
+     * other parts of speech if the given one is not found.
+     *
+     * @param lexicon the lexicon
+     * @param word the word to find
+     * @param partOfSpeech the part of speech
+     *
+     * @return the list of phones for word or <code>null</code>
+     */
+    protected String[] getPhones(CompactLexicon lexicon,
+                                 String word,
+                                 String partOfSpeech) {
+        String[] phones;
+        partOfSpeech = fixPartOfSpeech(partOfSpeech);
+        phones = lexicon.getPhones(word, partOfSpeech);
+        for (int i = 0;
+             (i < partsOfSpeech.size()) && (phones == null);
+             i++) {
+            if (!partOfSpeech.equals((String) partsOfSpeech.get(i))) {
+                phones = lexicon.getPhones(word,
+                                   (String) partsOfSpeech.get(i));
+            }
+        }
+        return phones;
+    }
+
     /**
      * Gets a phone list for a word from a given lexicon.  If a phone
      * list cannot be found, returns <code>null</code>.
@@ -522,7 +837,7 @@ abstract public class LexiconImpl implements Lexicon {
      * @param phones the phones for the word
      * 
      */
-    public void addAddendum(String word,
+    public synchronized void addAddendum(String word,
                             String partOfSpeech,
                             String[] phones) {
         String pos = fixPartOfSpeech(partOfSpeech);
@@ -530,6 +845,7 @@ abstract public class LexiconImpl implements Lexicon {
             partsOfSpeech.add(pos);
         }
         addenda.put(word + pos, phones);
+        invalidatePronunciations();
     }   
 
     /**
@@ -538,8 +854,9 @@ abstract public class LexiconImpl implements Lexicon {
      * @param word the word to remove
      * @param partOfSpeech the part of speech
      */
-    public void removeAddendum(String word, String partOfSpeech) {
+    public synchronized void removeAddendum(String word, String partOfSpeech) {
         addenda.remove(word + fixPartOfSpeech(partOfSpeech));        
+        invalidatePronunciations();
     }
 
     /**
@@ -792,10 +1109,71 @@ abstract public class LexiconImpl implements Lexicon {
         String compiledPath = path + "_compiled.bin";
         String addendaPath = path + "_addenda.bin";
         
-        dumpBinaryLexicon(compiled, compiledPath);
+        dumpBinaryLexicon(getCompiled(), compiledPath);
         dumpBinaryLexicon(addenda, addendaPath);
     }
 
+    /**
+     * Dumps the compiled form of this lexicon as a
+     * {@link CompactLexicon} image to PATH_compiled.bin, and the
+     * addenda in the binary format to PATH_addenda.bin.  A lexicon
+     * loaded from binary files then uses the compact image directly.
+     *
+     * @param path the root path to dump it to
+     *
+     * @throws IOException if the image can't be written
+     */
+    public void dumpCompact(String path) throws IOException {
+        CompactLexicon.write(toPhoneMap(getCompiled()), path + "_compiled.bin");
+        dumpBinaryLexicon(addenda, path + "_addenda.bin");
+    }
+
+    /**
+     * Dumps this lexicon, as loaded, into a single {@link LexiconImage}:
+     * the compiled form, the addenda (including any user addenda),
+     * the letter to sound rules and the parts of speech.
+     *
+     * @param path the file to dump it to
+     *
+     * @throws IOException if the image can't be written
+     */
+    public void dumpImage(String path) throws IOException {
+        if (!(letterToSound instanceof LetterToSoundImpl)) {
+            throw new IOException("Can't dump letter to sound rules "
+                    + letterToSound);
+        }
+        LexiconImage.write(path, partsOfSpeech,
+                toPhoneMap(getCompiled()), toPhoneMap(addenda),
+                (LetterToSoundImpl) letterToSound);
+    }
+
+    /**
+     * Returns a copy of the lexicon with every entry as a
+     * <code>String[]</code> of phones.
+     *
+     * @param lexicon the lexicon
+     *
+     * @return the copy
+     */
+    private Map toPhoneMap(Map lexicon) {
+        Map phones = new LinkedHashMap(lexicon.size() * 4 / 3 + 1);
+        for (Iterator i = lexicon.keySet().iterator(); i.hasNext(); ) {
+            String key = (String) i.next();
+            phones.put(key, getPhones(lexicon, key));
+        }
+        return phones;
+    }
+
+    /**
+     * Returns the compiled lexicon as a map, copying it out of the
+     * compact image if need be.
+     *
+     * @return the compiled lexicon
+     */
+    private Map getCompiled() {
+        return compactCompiled != null ? compactCompiled.toMap() : compiled;
+    }
+
     /**
      * Returns a list of the unique phonemes in the lexicon.
      *
@@ -828,7 +1206,7 @@ abstract public class LexiconImpl implements Lexicon {
      */
     public boolean compare(LexiconImpl other) {
 	return compare(addenda, other.addenda) && 
-	      compare(compiled, other.compiled);
+	      compare(getCompiled(), other.getCompiled());
     }
 
     /**
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+/**
+ * The phones of a list of words, as returned by
+ * {@link Lexicon#getPhones(String[], String)}.  Each distinct word is
+ * looked up once; the phones of all of them are kept end to end in one
+ * array, with an offset per distinct word and an index from every
+ * word to its distinct word.
+ *
+ * <p>The phone strings are the ones held by the lexicon and are shared
+ * by every word that uses them.  The phones of a word are read in
+ * place, from {@link #getPhoneArray} between
+ * {@link #getPhoneStart(int)} and <code>getPhoneStart(word) +
+ * getPhoneCount(word)</code>; nothing is copied for each word.
+ * {@link #getPhones(int)} makes an array of the phones of a distinct
+ * word the first time it is asked, for callers that want one; it is
+ * shared by every occurrence of the word and must not be changed.
+ */
+public class PhoneSequences {
+    private final static String[] NO_PHONES = new String[0];
+
+    private final String[] distinctWords;
+    private final int[] entry;
+    private int[] start;
+    private String[] phones;
+    private String[][] arrays;
+    private int resolved = 0;
+
+    /**
+     * Creates the sequences for the given words.  The phones of the
+     * distinct words must then be given, in order, with
+     * {@link #setPhones}.
+     *
+     * @param words the words
+     */
+    PhoneSequences(String[] words) {
+	int mask =
+	    Integer.highestOneBit(Math.max(words.length, 1) * 2 + 1) - 1;
+	int[] table = new int[mask + 1];     // distinct index + 1, or 0
+	String[] distinct = new String[words.length];
+	int count = 0;
+	entry = new int[words.length];
+	for (int i = 0; i < words.length; i++) {
+	    int slot = words[i].hashCode() & mask;
+	    while (table[slot] != 0
+		    && !distinct[table[slot] - 1].equals(words[i])) {
+		slot = (slot + 1) & mask;
+	    }
+	    if (table[slot] == 0) {
+		distinct[count++] = words[i];
+		table[slot] = count;
+	    }
+	    entry[i] = table[slot] - 1;
+	}
+	distinctWords = new String[count];
+	System.arraycopy(distinct, 0, distinctWords, 0, count);
+	start = new int[count + 1];
+	phones = new String[Math.max(16, words.length * 4)];
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    int getDistinctCount() {
+	return distinctWords.length;
+    }
+
+    /**
+     * Returns a distinct word.
+     *
+     * @param distinct the index of the distinct word
+     *
+     * @return the word
+     */
+    String getDistinctWord(int distinct) {
+	return distinctWords[distinct];
+    }
+
+    /**
+     * Gives the phones of the next distinct word.
+     *
+     * @param distinct the index of the distinct word; the words must
+     *     be given in order
+     * @param wordPhones the phones, or <code>null</code> if the word
+     *     has none
+     */
+    void setPhones(int distinct, String[] wordPhones) {
+	if (wordPhones == null) {
+	    wordPhones = NO_PHONES;
+	}
+	int offset = reserve(distinct, wordPhones.length);
+	System.arraycopy(wordPhones, 0, phones, offset, wordPhones.length);
+    }
+
+    /**
+     * Gives the phones of the next distinct word from the
+     * pronunciation cache.
+     *
+     * @param distinct the index of the distinct word; the words must
+     *     be given in order
+     * @param pronunciation the pronunciation of the word; it has been
+     *     found to answer a lookup that uses the letter to sound rules
+     */
+    void setPhones(int distinct,
+	    PronunciationCache.Pronunciation pronunciation) {
+	int offset = reserve(distinct, pronunciation.getPhoneCount());
+	pronunciation.copyPhones(phones, offset);
+    }
+
+    /**
+     * Makes room for the phones of the next distinct word.
+     *
+     * @param distinct the index of the distinct word
+     * @param count the number of phones of the word
+     *
+     * @return where the phones of the word go
+     */
+    private int reserve(int distinct, int count) {
+	if (distinct != resolved) {
+	    throw new IllegalStateException("phones set out of order");
+	}
+	int offset = start[distinct];
+	if (offset + count > phones.length) {
+	    String[] grown = new String[Math.max(phones.length * 2,
+		    offset + count)];
+	    System.arraycopy(phones, 0, grown, 0, offset);
+	    phones = grown;
+	}
+	start[distinct + 1] = offset + count;
+	resolved++;
+	return offset;
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+	return entry.length;
+    }
+
+    /**
+     * Returns the number of phones of a word.
+     *
+     * @param word the index of the word
+     *
+     * @return the number of phones; 0 if the lexicon has none
+     */
+    public int getPhoneCount(int word) {
+	int e = entry[word];
+	return start[e + 1] - start[e];
+    }
+
+    /**
+     * Returns one phone of a word.
+     *
+     * @param word the index of the word
+     * @param phone the index of the phone within the word
+     *
+     * @return the phone
+     */
+    public String getPhone(int word, int phone) {
+	return phones[start[entry[word]] + phone];
+    }
+
+    /**
+     * Returns the phones of a word.  The array is made once for each
+     * distinct word, shared by every occurrence of the word, and must
+     * not be changed.
+     *
+     * @param word the index of the word
+     *
+     * @return the phones
+     */
+    public String[] getPhones(int word) {
+	int e = entry[word];
+	if (arrays == null) {
+	    arrays = new String[distinctWords.length][];
+	}
+	if (arrays[e] == null) {
+	    String[] wordPhones = new String[start[e + 1] - start[e]];
+	    System.arraycopy(phones, start[e], wordPhones, 0,
+		    wordPhones.length);
+	    arrays[e] = wordPhones;
+	}
+	return arrays[e];
+    }
+
+    /**
+     * Returns where the phones of a word start in the array returned
+     * by {@link #getPhoneArray}.
+     *
+     * @param word the index of the word
+     *
+     * @return the index of the first phone of the word
+     */
+    public int getPhoneStart(int word) {
+	return start[entry[word]];
+    }
+
+    /**
+     * Returns the array that holds the phones of every distinct word,
+     * end to end.  It is shared and must not be changed.
+     *
+     * @return the phones
+     */
+    public String[] getPhoneArray() {
+	return phones;
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the results of {@link LexiconImpl#getPhones},
+ * keyed by word and part of speech.  Words that are not in the
+ * lexicon are cached too, with the phones from the letter to sound
+ * rules if those were asked for.
+ *
+ * <p>The cache is split into segments, each a small LRU map with its
+ * own lock, so threads looking up different words rarely wait for
+ * each other.  A segment maps a word to its entries, one for each part
+ * of speech it was looked up with, so a lookup makes no key.  Phones
+ * are kept as ids into a table of the phones the cache has seen, which
+ * only grows.  Lexicons built from the same data share one cache (see
+ * {@link LexiconImpl#getPronunciationCache}); a lexicon whose addenda
+ * are changed moves to a cache of its own.
+ */
+public class PronunciationCache {
+    /**
+     * The number of segments; a power of two.
+     */
+    private final static int SEGMENTS = 16;
+
+    private final Map[] segments;
+    private final int capacity;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong clears = new AtomicLong();
+
+    private final Map phoneIds = new HashMap();
+    private volatile String[] phoneNames = new String[0];
+
+    /**
+     * What the lexicon knows about a word.
+     */
+    public static class Pronunciation {
+	private final short[] ids;	// or null if there are no phones
+	private final String[] names;	// the phone table, as of the ids
+	private final boolean fromLTS;
+	private final boolean ltsTried;
+
+	/**
+	 * Creates a pronunciation.
+	 *
+	 * @param ids the ids of the phones, or <code>null</code> if there
+	 *     are none
+	 * @param names the names of the phones, by id
+	 * @param fromLTS <code>true</code> if the phones come from the
+	 *     letter to sound rules rather than the lexicon
+	 * @param ltsTried <code>true</code> if the letter to sound rules
+	 *     were used, or were not needed because the word was found
+	 */
+	private Pronunciation(short[] ids, String[] names, boolean fromLTS,
+		boolean ltsTried) {
+	    this.ids = ids;
+	    this.names = names;
+	    this.fromLTS = fromLTS;
+	    this.ltsTried = ltsTried;
+	}
+
+	/**
+	 * Returns the phones, in a new array.
+	 *
+	 * @param useLTS whether phones from the letter to sound rules
+	 *     may be returned
+	 *
+	 * @return the phones or <code>null</code>
+	 */
+	public String[] getPhones(boolean useLTS) {
+	    if (ids == null || (fromLTS && !useLTS)) {
+		return null;
+	    }
+	    String[] phones = new String[ids.length];
+	    copyPhones(phones, 0);
+	    return phones;
+	}
+
+	/**
+	 * Returns the number of phones.
+	 *
+	 * @return the number of phones; 0 if there are none
+	 */
+	int getPhoneCount() {
+	    return ids == null ? 0 : ids.length;
+	}
+
+	/**
+	 * Copies the phones into an array, whether or not they come from
+	 * the letter to sound rules.
+	 *
+	 * @param to the array
+	 * @param offset where the first phone goes
+	 */
+	void copyPhones(String[] to, int offset) {
+	    for (int i = 0; i < getPhoneCount(); i++) {
+		to[offset + i] = names[ids[i]];
+	    }
+	}
+
+	/**
+	 * Determines if this pronunciation answers a lookup.
+	 *
+	 * @param useLTS whether the lookup uses the letter to sound rules
+	 *
+	 * @return <code>true</code> if it does
+	 */
+	boolean answers(boolean useLTS) {
+	    return ltsTried || !useLTS;
+	}
+    }
+
+    /**
+     * Creates a cache that holds up to about <code>capacity</code>
+     * words.
+     *
+     * @param capacity the number of words to keep
+     */
+    public PronunciationCache(int capacity) {
+	this.capacity = capacity;
+	final int perSegment = Math.max(1, capacity / SEGMENTS);
+	segments = new Map[SEGMENTS];
+	for (int i = 0; i < SEGMENTS; i++) {
+	    segments[i] = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+		    if (size() > perSegment) {
+			evictions.incrementAndGet();
+			return true;
+		    }
+		    return false;
+		}
+	    };
+	}
+    }
+
+    /**
+     * The pronunciation of a word for one part of speech, and the
+     * entry for the next part of speech.  Immutable.
+     */
+    private static class Entry {
+	final String partOfSpeech;
+	final Pronunciation pronunciation;
+	final Entry next;
+
+	Entry(String partOfSpeech, Pronunciation pronunciation, Entry next) {
+	    this.partOfSpeech = partOfSpeech;
+	    this.pronunciation = pronunciation;
+	    this.next = next;
+	}
+    }
+
+    /**
+     * Looks up a word.
+     *
+     * @param word the word
+     * @param partOfSpeech the part of speech, never <code>null</code>
+     * @param useLTS whether the lookup uses the letter to sound rules
+     *
+     * @return the pronunciation, or <code>null</code> if the cache
+     *     can't answer the lookup
+     */
+    public Pronunciation get(String word, String partOfSpeech,
+	    boolean useLTS) {
+	Map segment = segment(word);
+	Entry e;
+	synchronized (segment) {
+	    e = (Entry) segment.get(word);
+	}
+	while (e != null && !e.partOfSpeech.equals(partOfSpeech)) {
+	    e = e.next;
+	}
+	Pronunciation p = e == null ? null : e.pronunciation;
+	if (p != null && p.answers(useLTS)) {
+	    hits.incrementAndGet();
+	    return p;
+	}
+	misses.incrementAndGet();
+	return null;
+    }
+
+    /**
+     * Adds a word.
+     *
+     * @param word the word
+     * @param partOfSpeech the part of speech, never <code>null</code>
+     * @param phones the phones, or <code>null</code> if there are none
+     * @param fromLTS <code>true</code> if the phones come from the
+     *     letter to sound rules rather than the lexicon
+     * @param ltsTried <code>true</code> if the letter to sound rules
+     *     were used, or were not needed because the word was found
+     *
+     * @return the pronunciation added
+     */
+    public Pronunciation put(String word, String partOfSpeech,
+	    String[] phones, boolean fromLTS, boolean ltsTried) {
+	short[] ids = null;
+	if (phones != null) {
+	    ids = new short[phones.length];
+	    for (int i = 0; i < phones.length; i++) {
+		ids[i] = getPhoneId(phones[i]);
+	    }
+	}
+	// read after the ids are made, so the table holds all of them
+	Pronunciation pronunciation =
+	    new Pronunciation(ids, phoneNames, fromLTS, ltsTried);
+	Map segment = segment(word);
+	synchronized (segment) {
+	    Entry first = (Entry) segment.get(word);
+	    Entry entry = new Entry(partOfSpeech, pronunciation, null);
+	    // the entries are immutable, so the others are copied
+	    for (Entry e = first; e != null; e = e.next) {
+		if (!e.partOfSpeech.equals(partOfSpeech)) {
+		    entry = new Entry(e.partOfSpeech, e.pronunciation, entry);
+		}
+	    }
+	    segment.put(word, entry);
+	}
+	return pronunciation;
+    }
+
+    /**
+     * Returns the id of a phone, adding it to the table of phones if
+     * it is new.
+     *
+     * @param phone the phone
+     *
+     * @return the id
+     */
+    private short getPhoneId(String phone) {
+	synchronized (phoneIds) {
+	    Integer id = (Integer) phoneIds.get(phone);
+	    if (id == null) {
+		String[] names = phoneNames;
+		if (names.length > Short.MAX_VALUE) {
+		    throw new IllegalStateException("Too many phones");
+		}
+		id = Integer.valueOf(names.length);
+		String[] grown = new String[names.length + 1];
+		System.arraycopy(names, 0, grown, 0, names.length);
+		grown[names.length] = phone;
+		phoneIds.put(phone, id);
+		phoneNames = grown;
+	    }
+	    return (short) id.intValue();
+	}
+    }
+
+    /**
+     * Removes every word.
+     */
+    public void clear() {
+	for (int i = 0; i < SEGMENTS; i++) {
+	    synchronized (segments[i]) {
+		segments[i].clear();
+	    }
+	}
+	clears.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of words in the cache.  A word looked up
+     * with several parts of speech counts once.
+     *
+     * @return the number of words
+     */
+    public int size() {
+	int size = 0;
+	for (int i = 0; i < SEGMENTS; i++) {
+	    synchronized (segments[i]) {
+		size += segments[i].size();
+	    }
+	}
+	return size;
+    }
+
+    /**
+     * Returns the number of lookups answered by the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+	return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups the cache could not answer.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+	return misses.get();
+    }
+
+    /**
+     * Returns the fraction of lookups answered by the cache.
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    public double getHitRate() {
+	long h = hits.get();
+	long total = h + misses.get();
+	return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Shows the size and hit rate of this cache.
+     *
+     * @param title the title for the metrics
+     */
+    public void showMetrics(String title) {
+	System.out.println("Pronunciation cache " + title + ":");
+	System.out.println("   words        " + size() + " of " + capacity);
+	System.out.println("   hits         " + getHits());
+	System.out.println("   misses       " + getMisses());
+	System.out.println("   hit rate     "
+		+ Math.round(getHitRate() * 1000) / 10.0 + "%");
+	System.out.println("   evictions    " + evictions.get());
+	System.out.println("   clears       " + clears.get());
+    }
+
+    private Map segment(String word) {
+	int h = word.hashCode();
+	return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+}
@@ -350,6 +350,31 @@ public class LPCResult {
 	}
     }
 
+    /**
+     * Copies the residual of the given sample to the array of residuals,
+     * starting at the given index, up until targetSize chars.  The
+     * residual is read from the sample where it is, so a sample kept in
+     * a buffer is not copied first.
+     *
+     * @param source  the sample that holds the residual
+     * @param targetPosition  start position in the array of residuals
+     * @param targetSize  the maximum number of characters to copy
+     */
+    public void copyResiduals(Sample source,
+			      int targetPosition,
+			      int targetSize) {
+	int unitSize = source.getResidualSize();
+	if (unitSize < targetSize) {
+	    int targetStart = (targetSize - unitSize)/2;
+	    source.copyResidualData(0, residuals,
+		    targetPosition + targetStart, unitSize);
+	} else {
+	    int sourcePosition = (unitSize - targetSize)/2;
+	    source.copyResidualData(sourcePosition, residuals,
+		    targetPosition, targetSize);
+	}
+    }
+
     /**
      * Copies the residual puse in the given unit to the array of residuals,
      * starting at the given index, up until targetSize chars.
@@ -368,6 +393,25 @@ public class LPCResult {
 	    residuals[(unitSize-targetSize)/2] = WaveUtils.shortToUlaw(sample);
 	}
     }
+
+    /**
+     * Copies the residual pulse of the given sample to the array of
+     * residuals, starting at the given index, up until targetSize chars.
+     *
+     * @param source  the sample that holds the residual
+     * @param targetPosition  start position in the array of residuals
+     * @param targetSize  the maximum number of characters to copy
+     */
+    public void copyResidualsPulse(Sample source,
+				   int targetPosition, int targetSize) {
+	int unitSize = source.getResidualSize();
+	short sample = (short) source.getResidualData(0);
+	if (unitSize < targetSize) {
+	    residuals[(targetSize-unitSize)/2] = WaveUtils.shortToUlaw(sample);
+	} else {
+	    residuals[(unitSize-targetSize)/2] = WaveUtils.shortToUlaw(sample);
+	}
+    }
         
     /**
      * Given a 16 bit value (represented as an int), extract
@@ -21,11 +21,20 @@ import java.util.StringTokenizer;
 /**
  * A single short term sample containing Residual Excited Linear Predictive
  * (RELP) frame and residual voice data.  
+ *
+ * <p>A sample of a {@link SampleSet} read from a byte buffer is a view
+ * of the buffer, in the binary form written by
+ * {@link #dumpBinary(DataOutputStream)}: its data is read from the
+ * buffer as it is asked for.  <code>getFrameData()</code> and
+ * <code>getResidualData()</code> return a copy for such a sample;
+ * {@link #copyResidualData} copies residuals without one.
  */
 public class Sample {
     private final short[] frameData;
     private final byte[]  residualData;
     private final int residualSize;
+    private final ByteBuffer data;	// or null, if the arrays are set
+    private final int offset;
     
 
     /**
@@ -38,6 +47,8 @@ public class Sample {
 	this.frameData = frameData;
 	this.residualData = residualData;
 	this.residualSize = 0;
+	this.data = null;
+	this.offset = 0;
     }
 
     /**
@@ -50,6 +61,22 @@ public class Sample {
 	this.frameData = frameData;
 	this.residualData = residualData;
 	this.residualSize = residualSize;
+	this.data = null;
+	this.offset = 0;
+    }
+
+    /**
+     * Creates a view of a sample in a byte buffer.
+     *
+     * @param data the buffer
+     * @param offset where the sample starts in the buffer
+     */
+    Sample(ByteBuffer data, int offset) {
+	this.frameData = null;
+	this.residualData = null;
+	this.residualSize = data.getInt(offset + 4 + 2 * data.getInt(offset));
+	this.data = data;
+	this.offset = offset;
     }
 
     /**
@@ -59,6 +86,8 @@ public class Sample {
      * @param numChannels the number of channels per frame
      */
     public Sample(BufferedReader reader, int numChannels) {
+	data = null;
+	offset = 0;
 	try {
 	    String line = reader.readLine();
 
@@ -108,7 +137,14 @@ public class Sample {
      * @return the frame data associated with this sample
      */
     public short[] getFrameData() {
-	return frameData;
+	if (data == null) {
+	    return frameData;
+	}
+	short[] copy = new short[data.getInt(offset)];
+	for (int i = 0; i < copy.length; i++) {
+	    copy[i] = data.getShort(offset + 4 + 2 * i);
+	}
+	return copy;
     }
 
     /**
@@ -117,7 +153,41 @@ public class Sample {
      * @return the residual data associated with this sample
      */
     public byte[] getResidualData() {
-	return residualData;
+	if (data == null) {
+	    return residualData;
+	}
+	byte[] copy = new byte[residualSize];
+	copyResidualData(0, copy, 0, residualSize);
+	return copy;
+    }
+
+    /**
+     * Copies residual data of this sample into an array.
+     *
+     * @param sourcePosition the first residual copied
+     * @param dest the array to copy to
+     * @param destPosition where the first residual goes in the array
+     * @param length the number of residuals copied
+     */
+    public void copyResidualData(int sourcePosition, byte[] dest,
+	    int destPosition, int length) {
+	if (data == null) {
+	    System.arraycopy(residualData, sourcePosition, dest,
+		    destPosition, length);
+	} else {
+	    ByteBuffer bb = data.duplicate();
+	    bb.position(residualOffset() + sourcePosition);
+	    bb.get(dest, destPosition, length);
+	}
+    }
+
+    /**
+     * Returns where the residual data of a view starts in its buffer.
+     *
+     * @return the offset of the residual data
+     */
+    private int residualOffset() {
+	return offset + 8 + 2 * data.getInt(offset);
     }
 
     /**
@@ -139,6 +209,9 @@ public class Sample {
      * @return the normalized data.
      */
     public int getResidualData(int which) {
+	if (data != null) {
+	    return ((int) data.get(residualOffset() + which)) + 128;
+	}
 	return ((int)residualData[which]) + 128;
     }
 
@@ -151,6 +224,9 @@ public class Sample {
      * @return the normalized data.
      */
     public int getFrameData(int which) {
+	if (data != null) {
+	    return ((int) data.getShort(offset + 4 + 2 * which)) + 32768;
+	}
 	return ((int)frameData[which]) + 32768;
     }
 
@@ -180,6 +256,8 @@ public class Sample {
      * @throws IOException if IO error occurs
      */
     public void dumpBinary(ByteBuffer bb) throws IOException {
+	short[] frameData = getFrameData();
+	byte[] residualData = getResidualData();
 	bb.putInt(frameData.length);
 	for (int i = 0; i < frameData.length; i++) {
 	    bb.putShort(frameData[i]);
@@ -196,6 +274,8 @@ public class Sample {
      * @throws IOException if IO error occurs
      */
     public void dumpBinary(DataOutputStream os) throws IOException {
+	short[] frameData = getFrameData();
+	byte[] residualData = getResidualData();
 	os.writeInt(frameData.length);
 	for (int i = 0; i < frameData.length; i++) {
 	    os.writeShort(frameData[i]);
@@ -269,23 +349,27 @@ public class Sample {
      *     <code>false</code> 
      */
     public boolean compare(Sample other) {
+	short[] frameData = getFrameData();
+	short[] otherFrameData = other.getFrameData();
+	byte[] residualData = getResidualData();
+	byte[] otherResidualData = other.getResidualData();
 
-	if (frameData.length != other.getFrameData().length) {
+	if (frameData.length != otherFrameData.length) {
 	    return false;
 	}
 
 	for (int i = 0; i < frameData.length; i++) {
-	    if (frameData[i]  != other.frameData[i]) {
+	    if (frameData[i]  != otherFrameData[i]) {
 		return false;
 	    }
 	}
 
-	if (residualData.length != other.residualData.length) {
+	if (residualData.length != otherResidualData.length) {
 	    return false;
 	}
 
 	for (int i = 0; i < residualData.length; i++) {
-	    if (residualData[i]  != other.residualData[i]) {
+	    if (residualData[i]  != otherResidualData[i]) {
 		return false;
 	    }
 	}
@@ -28,10 +28,24 @@ import java.io.IOException;
  * Represents the frame and residual data
  * used by the diphone database
  * used Residual Excited Linear Predictive synthesizer
+ *
+ * <p>In binary form, the samples follow a table of where each one
+ * starts, relative to the first, and where the last one ends.  A set
+ * read from a byte buffer, such as a mapped database file, keeps its
+ * data and the table in the buffer, and {@link #getSample} returns a
+ * view of the sample in the buffer; nothing is read until a sample is
+ * used.  The buffer must not change while the set is in use.
  */
 public class SampleSet {
-    private Sample[] samples;
+    private Sample[] samples;	// or null, if the data is in a buffer
+    private ByteBuffer data;
+    private int numSamples;
+    private int table;		// where the offset table is in the buffer
+    private int first;		// where the first sample is in the buffer
     private SampleInfo sampleInfo;
+    private volatile short[] frames;
+    private ShortBuffer even;	// the buffer as shorts from an even byte
+    private ShortBuffer odd;	// and from an odd one
 
     /**
      * Reads a SampleSet from the input reader. 
@@ -41,7 +55,7 @@ public class SampleSet {
      */
     public SampleSet(StringTokenizer tok, BufferedReader reader) {
 	try {
-	    int numSamples = Integer.parseInt(tok.nextToken());
+	    numSamples = Integer.parseInt(tok.nextToken());
 	    int numChannels = Integer.parseInt(tok.nextToken());
 	    int sampleRate = Integer.parseInt(tok.nextToken());
 	    float coeffMin = Float.parseFloat(tok.nextToken());
@@ -62,20 +76,33 @@ public class SampleSet {
     }
 
     /**
-     * Creates a SampleSet by reading it from the given byte buffer
+     * Creates a SampleSet from the given byte buffer.  The samples are
+     * not copied; the set keeps the buffer, and the buffer's position
+     * is moved past the samples.
      *
      * @param bb source of the Unit data
      *
      * @throws IOException if an IO error occurs
      */
     public SampleSet(ByteBuffer bb) throws IOException {
-	int numSamples;
 	sampleInfo = new SampleInfo(bb);
 	numSamples = bb.getInt();
-	this.samples = new Sample[numSamples];
-	for (int i = 0 ; i < numSamples; i++) {
-	    samples[i] = Sample.loadBinary(bb);
+	data = bb.duplicate();
+	table = bb.position();
+	first = table + 4 * (numSamples + 1);
+	if (numSamples < 0 || first > bb.limit()) {
+	    throw new IOException("Sample table past the end of the buffer");
 	}
+	int end = first + bb.getInt(table + 4 * numSamples);
+	if (end < first || end > bb.limit()) {
+	    throw new IOException("Sample data past the end of the buffer");
+	}
+	bb.position(end);
+	ByteBuffer view = data.duplicate();
+	view.position(0);
+	even = view.asShortBuffer();
+	view.position(Math.min(1, view.limit()));
+	odd = view.asShortBuffer();
     }
 
     /**
@@ -86,9 +113,11 @@ public class SampleSet {
      * @throws IOException if an IO error occurs
      */
     public SampleSet(DataInputStream is) throws IOException {
-	int numSamples;
 	sampleInfo = new SampleInfo(is);
 	numSamples = is.readInt();
+	for (int i = 0; i <= numSamples; i++) {
+	    is.readInt();	// the offset table, which a copy doesn't need
+	}
 	this.samples = new Sample[numSamples];
 	for (int i = 0 ; i < numSamples; i++) {
 	    samples[i] = Sample.loadBinary(is);
@@ -103,13 +132,43 @@ public class SampleSet {
      * @throws IOException if an error occurs.
      */
     public void dumpBinary(DataOutputStream os) throws IOException {
+	int numSamples = getNumberOfSamples();
 	sampleInfo.dumpBinary(os);
-	os.writeInt(samples.length);
-	for (int i = 0; i < samples.length; i++) {
-	    samples[i].dumpBinary(os);
+	os.writeInt(numSamples);
+	int at = 0;
+	for (int i = 0; i < numSamples; i++) {
+	    os.writeInt(at);
+	    Sample sample = getSample(i);
+	    at += getBinarySize(sample.getFrameData().length,
+		    sample.getResidualSize());
+	}
+	os.writeInt(at);
+	for (int i = 0; i < numSamples; i++) {
+	    getSample(i).dumpBinary(os);
 	}
     }
 
+    /**
+     * Returns the number of bytes a sample takes in binary form.
+     *
+     * @param frameSize the number of values in its frame
+     * @param residualSize the number of residuals
+     *
+     * @return the size of the sample
+     */
+    public static int getBinarySize(int frameSize, int residualSize) {
+	return 4 + 2 * frameSize + 4 + residualSize;
+    }
+
+    /**
+     * Returns the number of samples in this set.
+     *
+     * @return the number of samples
+     */
+    public int getNumberOfSamples() {
+	return numSamples;
+    }
+
 
     /**
      * return the sample associated with the index
@@ -119,9 +178,26 @@ public class SampleSet {
      * @return the sample.
      */
     public Sample getSample(int index) {
+	if (samples == null) {
+	    return new Sample(data, offset(index));
+	}
 	return samples[index];
     }
 
+    /**
+     * Returns where a sample of a set kept in a buffer starts.
+     *
+     * @param index the index of the sample
+     *
+     * @return the offset of the sample in the buffer
+     */
+    private int offset(int index) {
+	if (index < 0 || index >= numSamples) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	return first + data.getInt(table + 4 * index);
+    }
+
     /**
      * Retrieves the info on this SampleSet
      *
@@ -159,7 +235,98 @@ public class SampleSet {
      * @return the size of the frame
      */
     public int getFrameSize(int frame) {
-	return  samples[frame].getResidualSize();
+	if (samples == null) {
+	    int at = offset(frame);
+	    return data.getInt(at + 4 + 2 * data.getInt(at));
+	}
+	return samples[frame].getResidualSize();
+    }
+
+    /**
+     * Returns the frame data of every sample of a set that is not
+     * kept in a buffer in one array, sample after sample, each with as
+     * many values as there are channels.  The array is made on first
+     * use and shared.
+     *
+     * @return the frame data
+     */
+    private short[] getFrames() {
+	short[] f = frames;
+	if (f == null) {
+	    int channels = sampleInfo.getNumberOfChannels();
+	    f = new short[numSamples * channels];
+	    for (int i = 0; i < numSamples; i++) {
+		short[] frame = samples[i].getFrameData();
+		System.arraycopy(frame, 0, f, i * channels,
+			Math.min(frame.length, channels));
+	    }
+	    frames = f;
+	}
+	return f;
+    }
+
+    /**
+     * Returns the weighted distance between the frames of two
+     * samples: the sum over the first <code>order</code> channels of
+     * the absolute difference times the weight, over 65536.
+     *
+     * <p>The frames are read from one array of all the frames, or, for
+     * a set kept in a buffer, by the same loop from two views of the
+     * buffer as shorts, one from an even byte and one from an odd
+     * byte, since the samples are not aligned.  The loop has no calls,
+     * branches or divisions, so the compiler may do several channels
+     * at once; it gives the same result as summing
+     * <code>Math.abs(diff) * weight / 65536</code> for each channel.
+     *
+     * @param a the first sample
+     * @param b the second sample
+     * @param weights the weight of each channel
+     * @param order the number of channels compared
+     *
+     * @return the distance
+     */
+    public int getFrameDistance(int a, int b, int[] weights, int order) {
+	if (samples == null) {
+	    int ai = offset(a) + 4;
+	    int bi = offset(b) + 4;
+	    return getFrameDistance((ai & 1) == 0 ? even : odd, ai >> 1,
+		    (bi & 1) == 0 ? even : odd, bi >> 1, weights, order);
+	}
+	short[] f = getFrames();
+	int channels = sampleInfo.getNumberOfChannels();
+	int ai = a * channels;
+	int bi = b * channels;
+	int r = 0;
+	for (int i = 0; i < order; i++) {
+	    int p = Math.abs(f[ai + i] - f[bi + i]) * weights[i];
+	    // p / 65536, rounding toward zero as division does
+	    r += (p + ((p >> 31) & 0xffff)) >> 16;
+	}
+	return r;
+    }
+
+    /**
+     * Returns the weighted distance between two frames in a buffer,
+     * as {@link #getFrameDistance(int, int, int[], int)} takes it from
+     * the frame array.
+     *
+     * @param fa the buffer that holds the first frame
+     * @param ai where the first frame starts
+     * @param fb the buffer that holds the second frame
+     * @param bi where the second frame starts
+     * @param weights the weight of each channel
+     * @param order the number of channels compared
+     *
+     * @return the distance
+     */
+    private static int getFrameDistance(ShortBuffer fa, int ai,
+	    ShortBuffer fb, int bi, int[] weights, int order) {
+	int r = 0;
+	for (int i = 0; i < order; i++) {
+	    int p = Math.abs(fa.get(ai + i) - fb.get(bi + i)) * weights[i];
+	    r += (p + ((p >> 31) & 0xffff)) >> 16;
+	}
+	return r;
     }
 }
-    
+    
\ No newline at end of file
@@ -117,14 +117,13 @@ public class UnitConcatenator implements UtteranceProcessor {
 		residualSize = lpcResult.getFrameShift(pmI);
 		
 		residualSizes[pmI] = residualSize;
-		byte[] residualData = sample.getResidualData();
 
 		if (addResidualMethod == ADD_RESIDUAL_PULSE) {
 		    lpcResult.copyResidualsPulse
-			(residualData, targetResidualPosition, residualSize);
+			(sample, targetResidualPosition, residualSize);
 		} else {
 		    lpcResult.copyResiduals
-			(residualData, targetResidualPosition, residualSize);
+			(sample, targetResidualPosition, residualSize);
 		}
 		
 		targetResidualPosition += residualSize;
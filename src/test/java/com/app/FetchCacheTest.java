@@ -0,0 +1,142 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import src.main.java.com.app.FetchCache;
+import src.main.java.com.app.TextToSpeechify;
+import src.main.java.com.app.URLFeedIngestor;
+
+/*
+ * Runs the cache through URLFeedIngestor against a web server on the loopback
+ * interface that honours If-None-Match.
+ */
+public class FetchCacheTest {
+
+	private static final String ETAG = "\"v1\"";
+	private static final String TEXT = "A page that never changes.";
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger notModified = new AtomicInteger();
+
+	@Test
+	public void testStaleEntryIsRevalidated() throws Exception {
+		HttpServer server = startServer();
+		File dir = Files.createTempDirectory( "fetchcache" ).toFile();
+		try {
+			/* a max age of 0 makes every entry stale */
+			FetchCache cache = new FetchCache( new File( dir, "cache" ).getPath(), 0 );
+			String first = ingest( cache, dir, server, "first.txt" );
+			String second = ingest( cache, dir, server, "second.txt" );
+
+			Assertions.assertEquals( TEXT, first.trim() );
+			Assertions.assertEquals( first, second );
+			Assertions.assertEquals( 2, requests.get() );
+			Assertions.assertEquals( 1, notModified.get() );
+			Assertions.assertEquals( 1, cache.getMissCount() );
+			Assertions.assertEquals( 1, cache.getRevalidationCount() );
+			Assertions.assertEquals( 0, cache.getHitCount() );
+		}
+		finally {
+			server.stop( 0 );
+			delete( dir );
+		}
+	}
+
+	@Test
+	public void testFreshEntryIsServedWithoutARequest() throws Exception {
+		HttpServer server = startServer();
+		File dir = Files.createTempDirectory( "fetchcache" ).toFile();
+		try {
+			String cacheDir = new File( dir, "cache" ).getPath();
+			ingest( new FetchCache( cacheDir, 3600 ), dir, server, "first.txt" );
+			/* a new cache on the same directory reads the entry back from disk */
+			FetchCache cache = new FetchCache( cacheDir, 3600 );
+			String second = ingest( cache, dir, server, "second.txt" );
+
+			Assertions.assertEquals( TEXT, second.trim() );
+			Assertions.assertEquals( 1, requests.get() );
+			Assertions.assertEquals( 1, cache.getHitCount() );
+			Assertions.assertEquals( 0, cache.getMissCount() );
+		}
+		finally {
+			server.stop( 0 );
+			delete( dir );
+		}
+	}
+
+	@Test
+	public void testEntryOfAnotherTextVersionIsAMiss() throws Exception {
+		File dir = Files.createTempDirectory( "fetchcache" ).toFile();
+		try {
+			String cacheDir = new File( dir, "cache" ).getPath();
+			new FetchCache( cacheDir, 3600 ).put( "http://example.com/", ETAG, null, "abc", TEXT );
+			Assertions.assertNotNull( new FetchCache( cacheDir, 3600 ).lookup( "http://example.com/" ) );
+
+			File entry = new File( cacheDir, "entries" ).listFiles()[0];
+			String properties = new String( Files.readAllBytes( entry.toPath() ), StandardCharsets.ISO_8859_1 );
+			Files.write( entry.toPath(), properties.replace( "textVersion=" + FetchCache.TEXT_VERSION, "textVersion=1" )
+					.getBytes( StandardCharsets.ISO_8859_1 ) );
+			Assertions.assertNull( new FetchCache( cacheDir, 3600 ).lookup( "http://example.com/" ) );
+		}
+		finally {
+			delete( dir );
+		}
+	}
+
+	private String ingest( FetchCache cache, File dir, HttpServer server, String name ) throws IOException {
+		File feed = new File( dir, "urlFeed.txt" );
+		BufferedWriter bw = new BufferedWriter( new FileWriter( feed ) );
+		bw.write( "http://127.0.0.1:" + server.getAddress().getPort() + "/page" );
+		bw.newLine();
+		bw.close();
+		File out = new File( dir, name );
+		URLFeedIngestor ingestor = new URLFeedIngestor( new TextToSpeechify() );
+		ingestor.setCache( cache );
+		ingestor.ingest( feed.getPath(), out.getPath() );
+		return new String( Files.readAllBytes( out.toPath() ), StandardCharsets.UTF_8 );
+	}
+
+	private HttpServer startServer() throws IOException {
+		HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+		server.createContext( "/page", exchange -> serve( exchange ) );
+		server.start();
+		return server;
+	}
+
+	private void serve( HttpExchange exchange ) throws IOException {
+		requests.incrementAndGet();
+		exchange.getResponseHeaders().set( "ETag", ETAG );
+		if( ETAG.equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) ) {
+			notModified.incrementAndGet();
+			exchange.sendResponseHeaders( 304, -1 );
+			exchange.close();
+			return;
+		}
+		byte[] body = ( "<html><body><p>" + TEXT + "</p></body></html>" ).getBytes( StandardCharsets.UTF_8 );
+		exchange.sendResponseHeaders( 200, body.length );
+		OutputStream os = exchange.getResponseBody();
+		os.write( body );
+		os.close();
+	}
+
+	private void delete( File file ) {
+		File[] files = file.listFiles();
+		if( files != null ) {
+			for( File f : files )
+				delete( f );
+		}
+		file.delete();
+	}
+}
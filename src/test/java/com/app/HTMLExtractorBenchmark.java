@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.speech.freetts.util.BulkTimer;
+
+import src.main.java.com.app.HTMLSpeechTextExtractor;
+import src.main.java.com.app.TextToSpeechify;
+
+/*
+ * Compares the single pass HTMLSpeechTextExtractor with the original
+ * parseHTML path it replaced on a large page.
+ *
+ * JMH is not available in this build, so this follows the BulkTimer based -showtimes
+ * harness used by the FreeTTS tools: a few warmup rounds, then timed rounds.
+ *
+ * usage: HTMLExtractorBenchmark [-file page.html] [-repeat n] [-iterations n] [-warmup n]
+ *
+ * -repeat copies the body of the page n times to get a news page sized document.
+ */
+public class HTMLExtractorBenchmark {
+
+	private static final Pattern htmlPattern = Pattern.compile( "(\\<!doctype\\shtml)" );
+
+	public static void main( String[] args ) throws IOException {
+
+		String file = "src/test/java/com/app/blob.test.html";
+		int repeat = 40, iterations = 20, warmup = 5;
+		for( int i = 0; i < args.length; i++ ) {
+			if( args[i].equals("-file") )
+				file = args[++i];
+			else if( args[i].equals("-repeat") )
+				repeat = Integer.parseInt( args[++i] );
+			else if( args[i].equals("-iterations") )
+				iterations = Integer.parseInt( args[++i] );
+			else if( args[i].equals("-warmup") )
+				warmup = Integer.parseInt( args[++i] );
+			else
+				System.out.println("Unknown option " + args[i]);
+		}
+
+		String page = enlarge( new String( Files.readAllBytes( Paths.get( file ) ), StandardCharsets.UTF_8 ), repeat );
+		double megabytes = page.length() / ( 1024.0 * 1024.0 );
+		System.out.println(String.format("[*] page: %s x%d = %.2f MB of chars", file, repeat, megabytes ));
+
+		TextToSpeechify tts_helper = new TextToSpeechify();
+		HTMLSpeechTextExtractor extractor = new HTMLSpeechTextExtractor();
+		BulkTimer timer = new BulkTimer();
+		long sink = 0;
+
+		for( int i = 0; i < warmup; i++ ) {
+			sink += speechReadyTextFromHTML( tts_helper, new BufferedReader( new StringReader( page ) ) ).length();
+			sink += extractor.extract( new StringReader( page ) ).length();
+		}
+
+		long parseHTMLNanos = 0, extractorNanos = 0, start;
+		timer.start();
+		for( int i = 0; i < iterations; i++ ) {
+			timer.start("parseHTML");
+			start = System.nanoTime();
+			sink += speechReadyTextFromHTML( tts_helper, new BufferedReader( new StringReader( page ) ) ).length();
+			parseHTMLNanos += System.nanoTime() - start;
+			timer.stop("parseHTML");
+
+			timer.start("extractor");
+			start = System.nanoTime();
+			sink += extractor.extract( new StringReader( page ) ).length();
+			extractorNanos += System.nanoTime() - start;
+			timer.stop("extractor");
+		}
+		timer.stop();
+
+		report( "parseHTML", parseHTMLNanos, megabytes, iterations );
+		report( "extractor", extractorNanos, megabytes, iterations );
+		timer.show("HTMLExtractorBenchmark");
+		System.out.println("[*] (ignore) " + sink);
+
+	}
+
+	/*
+	 * The page path the extractor replaced: the page is lower cased, and an html document
+	 * is joined into a single line, as the feed used to write blob.html. Then parseHTML
+	 * turns it into speech ready text.
+	 */
+	private static String speechReadyTextFromHTML( TextToSpeechify tts_helper, BufferedReader br1 ) throws IOException {
+
+		boolean parsingHTML = false;
+		StringBuilder sb = new StringBuilder();
+		String line; int idx = 0;
+		while ( ( line = br1.readLine() ) != null ) {
+			if( idx == 0 ) {
+				Matcher htmlPatternMatcher = htmlPattern.matcher( line.toLowerCase() );
+				if( htmlPatternMatcher.find() ) {
+					parsingHTML = true;
+				}
+				idx++;
+			}
+			sb.append( line.toLowerCase() );
+			if( parsingHTML == false )
+				sb.append( "\n" );
+		}
+
+		StringWriter sw = new StringWriter();
+		BufferedWriter bw = new BufferedWriter( sw );
+		tts_helper.parseHTML( sb.toString(), parsingHTML, bw );
+		bw.flush();
+		return sw.toString();
+
+	}
+
+	private static void report( String name, long nanos, double megabytes, int iterations ) {
+		double seconds = nanos / 1e9;
+		System.out.println(String.format("[*] %-10s %8.2f ms/page %8.1f MB/s", name,
+				seconds * 1000.0 / iterations, megabytes * iterations / seconds ));
+	}
+
+	/*
+	 * Repeats everything between <body> and </body> so the page keeps a single head.
+	 */
+	private static String enlarge( String page, int repeat ) {
+		String lower = page.toLowerCase();
+		int start = lower.indexOf( "<body" );
+		int end = lower.lastIndexOf( "</body" );
+		if( start < 0 || end < start || repeat <= 1 )
+			return page;
+		StringBuilder sb = new StringBuilder( page.length() * repeat );
+		sb.append( page, 0, start );
+		for( int i = 0; i < repeat; i++ ) {
+			sb.append( page, start, end );
+		}
+		sb.append( page, end, page.length() );
+		return sb.toString();
+	}
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import src.main.java.com.app.util.TagStripper;
+
+/*
+ * Micro benchmark for TagStripper. Reports throughput in MB/s of input chars and the
+ * bytes allocated by the benchmark thread per input byte, for the allocation free
+ * char[] entry point and for the String convenience wrapper used by secondPass.
+ *
+ * usage: TagStripperBenchmark [-file page.html] [-size megabytes] [-iterations n] [-warmup n]
+ */
+public class TagStripperBenchmark {
+
+	public static void main( String[] args ) throws IOException {
+
+		String file = "src/test/java/com/app/blob.test.html";
+		double size = 0.5;
+		int iterations = 200, warmup = 50;
+		for( int i = 0; i < args.length; i++ ) {
+			if( args[i].equals("-file") )
+				file = args[++i];
+			else if( args[i].equals("-size") )
+				size = Double.parseDouble( args[++i] );
+			else if( args[i].equals("-iterations") )
+				iterations = Integer.parseInt( args[++i] );
+			else if( args[i].equals("-warmup") )
+				warmup = Integer.parseInt( args[++i] );
+			else
+				System.out.println("Unknown option " + args[i]);
+		}
+
+		// repeat the page until it is roughly the requested size, like a 500 KB article
+		String page = new String( Files.readAllBytes( Paths.get( file ) ), StandardCharsets.UTF_8 );
+		StringBuilder sb = new StringBuilder();
+		while( sb.length() < size * 1024 * 1024 )
+			sb.append( page );
+		String html = sb.toString();
+		char[] in = html.toCharArray();
+		char[] out = new char[in.length];
+		System.out.println(String.format("[*] input: %d chars", in.length ));
+
+		long sink = 0;
+		for( int i = 0; i < warmup; i++ ) {
+			sink += TagStripper.strip( in, 0, in.length, out, 0 );
+			sink += TagStripper.strip( html ).length();
+		}
+
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		for( int i = 0; i < iterations; i++ )
+			sink += TagStripper.strip( in, 0, in.length, out, 0 );
+		report( "char[]", System.nanoTime() - start, allocatedBytes() - allocated, in.length, iterations );
+
+		allocated = allocatedBytes();
+		start = System.nanoTime();
+		for( int i = 0; i < iterations; i++ )
+			sink += TagStripper.strip( html ).length();
+		report( "String", System.nanoTime() - start, allocatedBytes() - allocated, in.length, iterations );
+
+		System.out.println("[*] (ignore) " + sink);
+
+	}
+
+	private static void report( String name, long nanos, long allocated, int chars, int iterations ) {
+		double megabytes = (double) chars * iterations / ( 1024.0 * 1024.0 );
+		System.out.println(String.format("[*] %-7s %9.1f MB/s %9.3f bytes allocated per input byte",
+				name, megabytes / ( nanos / 1e9 ), (double) allocated / ( (double) chars * iterations ) ));
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if( bean instanceof com.sun.management.ThreadMXBean )
+			return ( (com.sun.management.ThreadMXBean) bean ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+		return 0L;
+	}
+}
@@ -6,6 +6,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -20,6 +21,7 @@ import java.util.regex.Pattern;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import src.main.java.com.app.HTMLSpeechTextExtractor;
 import src.main.java.com.app.TextToSpeechify;
 
 public class TextToSpeechifyTest {
@@ -158,6 +160,45 @@ public class TextToSpeechifyTest {
 		}		
 	}
 	
+	@Test
+	public void testExtractorSkipsScriptsAndDecodesEntities() {
+		String html = "<!doctype html><html><head><title>skip me</title></head><body>"
+				+ "<script>if( a<b ) { document.write('<p>no</p>'); }</script>"
+				+ "<p>Fish &amp; chips</p><!-- <p>hidden</p> -->"
+				+ "<svg><path d='m0 0'/><text>logo</text></svg>"
+				+ "<div>second\n   paragraph</div></body></html>";
+		String text = "";
+		try {
+			text = new HTMLSpeechTextExtractor().extract( new StringReader( html ) );
+		}
+		catch( IOException ioe ) {
+			ioe.printStackTrace();
+		}
+		Assertions.assertEquals( "Fish & chips\nsecond paragraph\n", text );
+	}
+	
+	@Test
+	public void testExtractorMatchesParagraphsOfTestPage() {
+		String text = "";
+		try {
+			BufferedReader br = new BufferedReader( new FileReader( htmlFileName ) );
+			text = new HTMLSpeechTextExtractor().extract( br );
+			br.close();
+		}
+		catch( IOException ioe ) {
+			ioe.printStackTrace();
+		}
+		Assertions.assertTrue( text.contains( "The idea that a machine could generate speech has been with us for some time," ) );
+		Assertions.assertFalse( text.contains( "<" + "p" ) );
+	}
+	
+	@Test
+	public void testSecondPassStripsTagsCommentsAndCDATA() {
+		String html = "<div class='a>b'>one</div><!-- two --><script>if( a<b ) {}</script>"
+				+ "<![CDATA[ three ]]>four < five";
+		Assertions.assertEquals( "onefour < five", new TextToSpeechify().secondPass( html ) );
+	}
+	
 //	@Test
 //	public void completeAlgorithmTest() {
 //		try {
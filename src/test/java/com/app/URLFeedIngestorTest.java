@@ -0,0 +1,232 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import src.main.java.com.app.TextToSpeechify;
+import src.main.java.com.app.URLFeedIngestor;
+
+/*
+ * Runs URLFeedIngestor against a web server on the loopback interface, so the tests
+ * don't need the network.
+ */
+public class URLFeedIngestorTest {
+
+	private static final int DOCUMENTS = 12;
+
+	private final AtomicInteger busy = new AtomicInteger();
+	private final AtomicInteger maxBusy = new AtomicInteger();
+
+	@Test
+	public void testOutputIsInFeedOrder() throws Exception {
+		HttpServer server = startServer();
+		File dir = Files.createTempDirectory( "ingest" ).toFile();
+		try {
+			File feed = writeFeed( dir, server );
+			File out = new File( dir, "speechReadyText.txt" );
+			/* the later documents are answered first, so they finish first */
+			new URLFeedIngestor( new TextToSpeechify(), 8, DOCUMENTS, 5000, 5000 )
+				.ingest( feed.getPath(), out.getPath() );
+
+			String[] paragraphs = paragraphs( out );
+			Assertions.assertEquals( DOCUMENTS, paragraphs.length );
+			for( int i = 0; i < DOCUMENTS; i++ )
+				Assertions.assertEquals( "Document number " + i + " of the feed.", paragraphs[i] );
+		}
+		finally {
+			server.stop( 0 );
+			delete( dir );
+		}
+	}
+
+	@Test
+	public void testSinkGetsParagraphsAsTheyAreWritten() throws Exception {
+		HttpServer server = startServer();
+		File dir = Files.createTempDirectory( "ingest" ).toFile();
+		try {
+			File feed = writeFeed( dir, server );
+			File out = new File( dir, "speechReadyText.txt" );
+			final List<String> events = new ArrayList<String>();
+			new URLFeedIngestor( new TextToSpeechify(), 8, DOCUMENTS, 5000, 5000 )
+				.ingest( feed.getPath(), out.getPath(), new URLFeedIngestor.ParagraphSink() {
+					public void paragraph( String text ) {
+						events.add( text );
+					}
+
+					public void documentEnded( String source ) {
+						events.add( "end " + source.substring( source.lastIndexOf( '/' ) + 1 ) );
+					}
+				});
+
+			Assertions.assertEquals( DOCUMENTS * 2, events.size() );
+			for( int i = 0; i < DOCUMENTS; i++ ) {
+				Assertions.assertEquals( "Document number " + i + " of the feed.", events.get( i * 2 ) );
+				Assertions.assertEquals( "end " + i, events.get( i * 2 + 1 ) );
+			}
+			/* the file is the same as the documents' text written one after the other */
+			String text = new String( Files.readAllBytes( out.toPath() ), StandardCharsets.UTF_8 );
+			StringBuilder expected = new StringBuilder();
+			for( int i = 0; i < DOCUMENTS; i++ )
+				expected.append( "Document number " + i + " of the feed.\n\n" );
+			Assertions.assertEquals( expected.toString(), text );
+		}
+		finally {
+			server.stop( 0 );
+			delete( dir );
+		}
+	}
+
+	@Test
+	public void testPerHostLimit() throws Exception {
+		HttpServer server = startServer();
+		File dir = Files.createTempDirectory( "ingest" ).toFile();
+		try {
+			File feed = writeFeed( dir, server );
+			File out = new File( dir, "speechReadyText.txt" );
+			URLFeedIngestor ingestor = new URLFeedIngestor( new TextToSpeechify(), 8, 2, 5000, 5000 );
+			ingestor.ingest( feed.getPath(), out.getPath() );
+
+			Assertions.assertEquals( DOCUMENTS, paragraphs( out ).length );
+			Assertions.assertEquals( DOCUMENTS, ingestor.getMetrics().getURLCount() );
+			/* eight workers would have had eight requests out at once */
+			Assertions.assertEquals( 2, maxBusy.get() );
+		}
+		finally {
+			server.stop( 0 );
+			delete( dir );
+		}
+	}
+
+	@Test
+	public void testBusyHostDoesNotHoldUpOtherHosts() throws Exception {
+		final CountDownLatch otherHostServed = new CountDownLatch( 1 );
+		final AtomicInteger waitedFor = new AtomicInteger();
+		/* the same loopback interface under two addresses, so two hosts */
+		HttpServer busyHost = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+		busyHost.setExecutor( Executors.newCachedThreadPool() );
+		busyHost.createContext( "/doc/", exchange -> {
+			try {
+				if( otherHostServed.await( 5, TimeUnit.SECONDS ) )
+					waitedFor.incrementAndGet();
+			}
+			catch( InterruptedException ie ) {
+				Thread.currentThread().interrupt();
+			}
+			respond( exchange, "Busy host." );
+		});
+		HttpServer otherHost = HttpServer.create( new InetSocketAddress( "127.0.0.2", 0 ), 0 );
+		otherHost.setExecutor( Executors.newCachedThreadPool() );
+		otherHost.createContext( "/doc/", exchange -> {
+			respond( exchange, "Other host." );
+			otherHostServed.countDown();
+		});
+		busyHost.start();
+		otherHost.start();
+		File dir = Files.createTempDirectory( "ingest" ).toFile();
+		try {
+			File feed = new File( dir, "urlFeed.txt" );
+			BufferedWriter bw = new BufferedWriter( new FileWriter( feed ) );
+			for( int i = 0; i < 4; i++ ) {
+				bw.write( "http://127.0.0.1:" + busyHost.getAddress().getPort() + "/doc/" + i );
+				bw.newLine();
+			}
+			bw.write( "http://127.0.0.2:" + otherHost.getAddress().getPort() + "/doc/0" );
+			bw.newLine();
+			bw.close();
+			File out = new File( dir, "speechReadyText.txt" );
+			/* two workers, and one request at a time per host */
+			new URLFeedIngestor( new TextToSpeechify(), 2, 1, 10000, 10000 )
+				.ingest( feed.getPath(), out.getPath() );
+
+			String[] paragraphs = paragraphs( out );
+			Assertions.assertEquals( 5, paragraphs.length );
+			Assertions.assertEquals( "Other host.", paragraphs[4] );
+			/* the second worker went on to the other host instead of waiting for the busy one */
+			Assertions.assertEquals( 4, waitedFor.get() );
+		}
+		finally {
+			busyHost.stop( 0 );
+			otherHost.stop( 0 );
+			delete( dir );
+		}
+	}
+
+	/*
+	 * Serves /doc/n, taking longer for the earlier documents.
+	 */
+	private HttpServer startServer() throws IOException {
+		HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+		server.setExecutor( Executors.newCachedThreadPool() );
+		server.createContext( "/doc/", exchange -> serve( exchange ) );
+		server.start();
+		return server;
+	}
+
+	private void serve( HttpExchange exchange ) throws IOException {
+		int n = busy.incrementAndGet();
+		maxBusy.accumulateAndGet( n, Math::max );
+		try {
+			String path = exchange.getRequestURI().getPath();
+			int doc = Integer.parseInt( path.substring( path.lastIndexOf( '/' ) + 1 ) );
+			Thread.sleep( ( DOCUMENTS - doc ) * 20 );
+			byte[] body = ( "<html><body><p>Document number " + doc + " of the feed.</p></body></html>" )
+				.getBytes( StandardCharsets.UTF_8 );
+			exchange.sendResponseHeaders( 200, body.length );
+			OutputStream os = exchange.getResponseBody();
+			os.write( body );
+			os.close();
+		}
+		catch( InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			busy.decrementAndGet();
+		}
+	}
+
+	private void respond( HttpExchange exchange, String text ) throws IOException {
+		byte[] body = ( "<html><body><p>" + text + "</p></body></html>" ).getBytes( StandardCharsets.UTF_8 );
+		exchange.sendResponseHeaders( 200, body.length );
+		OutputStream os = exchange.getResponseBody();
+		os.write( body );
+		os.close();
+	}
+
+	private File writeFeed( File dir, HttpServer server ) throws IOException {
+		File feed = new File( dir, "urlFeed.txt" );
+		BufferedWriter bw = new BufferedWriter( new FileWriter( feed ) );
+		for( int i = 0; i < DOCUMENTS; i++ ) {
+			bw.write( "http://127.0.0.1:" + server.getAddress().getPort() + "/doc/" + i );
+			bw.newLine();
+		}
+		bw.close();
+		return feed;
+	}
+
+	private String[] paragraphs( File out ) throws IOException {
+		String text = new String( Files.readAllBytes( out.toPath() ), StandardCharsets.UTF_8 );
+		return text.trim().split( "\n+" );
+	}
+
+	private void delete( File dir ) {
+		for( File f : dir.listFiles() )
+			f.delete();
+		dir.delete();
+	}
+}
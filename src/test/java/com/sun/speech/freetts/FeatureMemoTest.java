@@ -0,0 +1,248 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link FeatureMemo} never answers with a result that
+ * the utterance has changed under, whether the change is to the item
+ * itself, to another item the feature reads, to a relation or to the
+ * utterance, with items on the heap and in an {@link ItemArena}.
+ */
+public class FeatureMemoTest {
+    private final static String[] WORDS = { "one", "two", "three" };
+
+    @Test
+    public void testRepeatedReadsAreAnswered() {
+	for (int arena = 0; arena < 2; arena++) {
+	    Fixture f = new Fixture(arena == 1);
+	    Item syl = f.firstSyllable();
+	    Assertions.assertEquals("0", syl.findFeature("next_stress"));
+	    Assertions.assertEquals("0", syl.findFeature("next_stress"));
+	    Assertions.assertEquals("one", syl.findFeature("word_name"));
+	    Assertions.assertEquals("one", syl.findFeature("word_name"));
+	    Assertions.assertEquals(1, f.nextStress.count);
+	    Assertions.assertEquals(1, f.wordName.count);
+	    Assertions.assertEquals(2, f.memo.getHits());
+	    Assertions.assertEquals(0, f.memo.getStale());
+	}
+    }
+
+    @Test
+    public void testChangeToTheNextItem() {
+	for (int arena = 0; arena < 2; arena++) {
+	    Fixture f = new Fixture(arena == 1);
+	    Item syl = f.firstSyllable();
+	    Assertions.assertEquals("0", syl.findFeature("next_stress"));
+	    syl.getNext().getFeatures().setString("stress", "1");
+	    Assertions.assertEquals("1", syl.findFeature("next_stress"));
+	    syl.getNext().getFeatures().remove("stress");
+	    Assertions.assertEquals("0", syl.findFeature("next_stress"));
+	    Assertions.assertEquals(3, f.nextStress.count);
+	    Assertions.assertEquals(2, f.memo.getStale());
+	}
+    }
+
+    @Test
+    public void testChangeToTheParent() {
+	for (int arena = 0; arena < 2; arena++) {
+	    Fixture f = new Fixture(arena == 1);
+	    Item syl = f.firstSyllable();
+	    Assertions.assertEquals("one", syl.findFeature("word_name"));
+	    syl.getItemAs(Relation.SYLLABLE_STRUCTURE).getParent()
+		.getFeatures().setString("name", "uno");
+	    Assertions.assertEquals("uno", syl.findFeature("word_name"));
+	    Assertions.assertEquals(2, f.wordName.count);
+	}
+    }
+
+    @Test
+    public void testChangeToARelation() {
+	for (int arena = 0; arena < 2; arena++) {
+	    Fixture f = new Fixture(arena == 1);
+	    Item syl = f.firstSyllable();
+	    Assertions.assertEquals("5",
+		    syl.findFeature("syls_after"));
+	    Item added = f.utterance.getRelation(Relation.SYLLABLE)
+		.appendItem();
+	    added.getFeatures().setString("stress", "0");
+	    Assertions.assertEquals("6",
+		    syl.findFeature("syls_after"));
+	    // a syllable added before the first changes nothing that
+	    // syls_after reads, but is still a change
+	    syl.prependItem(null);
+	    Assertions.assertEquals("6",
+		    syl.findFeature("syls_after"));
+	    Assertions.assertEquals(3, f.sylsAfter.count);
+	}
+    }
+
+    @Test
+    public void testChangeToTheUtterance() {
+	for (int arena = 0; arena < 2; arena++) {
+	    Fixture f = new Fixture(arena == 1);
+	    Item syl = f.firstSyllable();
+	    Assertions.assertEquals("0", syl.findFeature("next_stress"));
+	    f.utterance.setString("style", "slow");
+	    Assertions.assertEquals("0", syl.findFeature("next_stress"));
+	    Assertions.assertEquals(2, f.nextStress.count);
+	}
+    }
+
+    @Test
+    public void testProcessorThatChangesTheUtterance() {
+	for (int arena = 0; arena < 2; arena++) {
+	    Fixture f = new Fixture(arena == 1);
+	    Item syl = f.firstSyllable();
+	    Assertions.assertEquals("1",
+		    syl.findFeature("visits"));
+	    Assertions.assertEquals("2",
+		    syl.findFeature("visits"));
+	    Assertions.assertEquals(2, f.memo.getMisses());
+	    Assertions.assertEquals(0, f.memo.getHits());
+	}
+    }
+
+    @Test
+    public void testRandomChangesNeverReadStale() {
+	Random random = new Random(3);
+	for (int arena = 0; arena < 2; arena++) {
+	    Fixture f = new Fixture(arena == 1);
+	    Fixture plain = new Fixture(arena == 1);
+	    plain.utterance.setFeatureMemo(null);
+	    String[] features = {
+		"next_stress", "word_name", "syls_after", "n.word_name",
+		"p.next_stress", "R:SylStructure.parent.name"
+	    };
+	    for (int n = 0; n < 500; n++) {
+		int which = random.nextInt(6);
+		int syl = random.nextInt(6);
+		String feature = features[random.nextInt(features.length)];
+		Fixture[] both = { f, plain };
+		Object[] read = new Object[2];
+		for (int b = 0; b < 2; b++) {
+		    Item item = both[b].syllable(syl);
+		    if (which == 0) {
+			item.getFeatures().setString("stress",
+				String.valueOf(n % 2));
+		    } else if (which == 1) {
+			item.getItemAs(Relation.SYLLABLE_STRUCTURE).getParent()
+			    .getFeatures().setString("name", "w" + n);
+		    }
+		    read[b] = item.findFeature(feature);
+		}
+		Assertions.assertEquals(read[1], read[0], feature + " " + n);
+	    }
+	    Assertions.assertTrue(f.memo.getHits() > 0);
+	}
+    }
+
+    /**
+     * An utterance of three words of two syllables each, with the
+     * stresses 1 0 and a memo set, on a voice with feature processors
+     * that read other items.
+     */
+    private static class Fixture {
+	final TestVoice voice = new TestVoice();
+	final Counting nextStress = new Counting("n.stress");
+	final Counting wordName = new Counting("R:SylStructure.parent.name");
+	final Counting sylsAfter = new Counting(null);
+	final Utterance utterance;
+	final FeatureMemo memo;
+
+	Fixture(boolean arena) {
+	    voice.addFeatureProcessor("next_stress", nextStress);
+	    voice.addFeatureProcessor("word_name", wordName);
+	    voice.addFeatureProcessor("syls_after", sylsAfter);
+	    voice.addFeatureProcessor("visits", new FeatureProcessor() {
+		public String process(Item item) {
+		    int visits = item.getFeatures().isPresent("visits")
+			? item.getFeatures().getInt("visits") : 0;
+		    item.getFeatures().setInt("visits", visits + 1);
+		    return String.valueOf(visits + 1);
+		}
+	    });
+	    utterance = new Utterance(voice, new ArrayList(),
+		    arena ? new ItemArena() : null);
+	    Relation words = utterance.createRelation(Relation.WORD);
+	    Relation sylStructure =
+		utterance.createRelation(Relation.SYLLABLE_STRUCTURE);
+	    Relation syllables = utterance.createRelation(Relation.SYLLABLE);
+	    for (int w = 0; w < WORDS.length; w++) {
+		Item word = words.appendItem();
+		word.getFeatures().setString("name", WORDS[w]);
+		Item ssWord = sylStructure.appendItem(word);
+		for (int s = 0; s < 2; s++) {
+		    Item syl = ssWord.createDaughter();
+		    syl.getFeatures().setString("stress", s == 0 ? "1" : "0");
+		    syllables.appendItem(syl);
+		}
+	    }
+	    memo = new FeatureMemo(utterance);
+	    utterance.setFeatureMemo(memo);
+	}
+
+	Item firstSyllable() {
+	    return syllable(0);
+	}
+
+	Item syllable(int n) {
+	    Item syl = utterance.getRelation(Relation.SYLLABLE).getHead();
+	    for (int i = 0; i < n; i++) {
+		syl = syl.getNext();
+	    }
+	    return syl;
+	}
+    }
+
+    /**
+     * Reads the feature at the end of a path from the item, or counts
+     * the items after it if there is no path, and counts its runs.
+     */
+    private static class Counting implements FeatureProcessor {
+	private final String path;
+	int count = 0;
+
+	Counting(String path) {
+	    this.path = path;
+	}
+
+	public String process(Item item) {
+	    count++;
+	    if (path != null) {
+		return String.valueOf(item.findFeature(path));
+	    }
+	    int after = 0;
+	    for (Item n = item.getNext(); n != null; n = n.getNext()) {
+		after++;
+	    }
+	    return String.valueOf(after);
+	}
+    }
+
+    /**
+     * A voice with no tokenizer and no audio output.
+     */
+    private static class TestVoice extends Voice {
+	public Tokenizer getTokenizer() {
+	    return null;
+	}
+
+	protected void loader() {
+	}
+
+	protected UtteranceProcessor getAudioOutput() {
+	    return null;
+	}
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the registry of feature names that {@link SlotFeatureSet}
+ * uses.
+ */
+public class FeatureNamesTest {
+
+    @Test
+    public void testSlotsAreStable() {
+	String prefix = "names_test_stable_";
+	int[] slots = new int[300];
+	for (int i = 0; i < slots.length; i++) {
+	    slots[i] = FeatureNames.getSlot(prefix + i);
+	}
+	// more names than the registry starts with
+	for (int i = 0; i < slots.length; i++) {
+	    Assertions.assertEquals(slots[i], FeatureNames.getSlot(prefix + i));
+	    Assertions.assertEquals(slots[i], FeatureNames.findSlot(prefix + i));
+	    Assertions.assertEquals(prefix + i, FeatureNames.getName(slots[i]));
+	    for (int j = 0; j < i; j++) {
+		Assertions.assertTrue(slots[i] != slots[j]);
+	    }
+	}
+	Assertions.assertTrue(FeatureNames.size() >= slots.length);
+    }
+
+    @Test
+    public void testLookupDoesNotRegister() {
+	int size = FeatureNames.size();
+	Assertions.assertEquals(-1, FeatureNames.findSlot("names_test_absent"));
+	Assertions.assertEquals(-1, FeatureNames.findSlot("names_test_absent"));
+	SlotFeatureSet set = new SlotFeatureSet();
+	Assertions.assertFalse(set.isPresent("names_test_absent"));
+	Assertions.assertNull(set.getObject("names_test_absent"));
+	set.remove("names_test_absent");
+	Assertions.assertEquals(size, FeatureNames.size());
+    }
+
+    @Test
+    public void testThreadsGetOneSlotPerName() throws InterruptedException {
+	final String prefix = "names_test_threads_";
+	final List seen = Collections.synchronizedList(new ArrayList());
+	Thread[] threads = new Thread[4];
+	for (int t = 0; t < threads.length; t++) {
+	    threads[t] = new Thread() {
+		public void run() {
+		    int[] slots = new int[200];
+		    for (int i = 0; i < slots.length; i++) {
+			slots[i] = FeatureNames.getSlot(prefix + i);
+		    }
+		    seen.add(slots);
+		}
+	    };
+	    threads[t].start();
+	}
+	for (int t = 0; t < threads.length; t++) {
+	    threads[t].join();
+	}
+	Assertions.assertEquals(threads.length, seen.size());
+	for (int t = 1; t < threads.length; t++) {
+	    Assertions.assertArrayEquals((int[]) seen.get(0),
+		    (int[]) seen.get(t));
+	}
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import com.sun.speech.freetts.en.us.BenchmarkVoice;
+import com.sun.speech.freetts.util.Benchmark;
+
+/**
+ * Measures what the feature sets of items cost over the front end of
+ * the CMU voice.  Reports the time and the bytes allocated per
+ * utterance, and the heap the finished utterances keep.
+ *
+ * <p>The feature set is chosen once per process, so run it once for
+ * each kind to compare.  Without options items use {@link
+ * SlotFeatureSet}; with <code>-map</code> they use {@link
+ * FeatureSetImpl}.  With <code>-arena</code> items are kept in an
+ * {@link ItemArena} instead; the timed runs reset and reuse one
+ * arena, as a voice does, and the kept heap is measured with an arena
+ * per utterance.  <code>-dump</code> writes the relations of every
+ * utterance, so the runs can be compared.
+ *
+ * <pre>
+ * usage: FeatureSetBenchmark [-map | -arena] [-text file.txt]
+ *                            [-iterations n] [-warmup n] [-dump file]
+ * </pre>
+ */
+public class FeatureSetBenchmark {
+    private final static String USAGE =
+	"FeatureSetBenchmark [-map | -arena] [-text file.txt] "
+	+ "[-iterations n] [-warmup n] [-dump file]";
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the options, as in the usage above
+     *
+     * @throws IOException if the text can't be read or the dump
+     *     written
+     */
+    public static void main(String[] args) throws IOException {
+	Benchmark bench = new Benchmark(USAGE, args);
+	boolean map = bench.getFlag("-map");
+	boolean arena = bench.getFlag("-arena");
+	String text = Benchmark.readText(bench.getString("-text", null));
+	int iterations = bench.getInt("-iterations", 10);
+	int warmup = bench.getInt("-warmup", 3);
+	String dumpFile = bench.getString("-dump", null);
+	if (!bench.checkOptions()) {
+	    return;
+	}
+	// must be set before the first item is made
+	System.setProperty(ItemContents.MAP_FEATURE_SETS_PROPERTY,
+		String.valueOf(map));
+
+	BenchmarkVoice voice = new BenchmarkVoice();
+	voice.allocate();
+	System.out.println("feature sets: " + (arena ? "ItemArena"
+		    : map ? "FeatureSetImpl" : "SlotFeatureSet"));
+	int arenas = arena ? BenchmarkVoice.SHARED_ARENA
+	    : BenchmarkVoice.NO_ARENAS;
+
+	List utterances = null;
+	for (int i = 0; i < warmup; i++) {
+	    utterances = voice.frontEnd(text, arenas);
+	}
+
+	long allocated = Benchmark.allocatedBytes();
+	long start = System.nanoTime();
+	for (int i = 0; i < iterations; i++) {
+	    utterances = voice.frontEnd(text, arenas);
+	}
+	long nanos = System.nanoTime() - start;
+	allocated = Benchmark.allocatedBytes() - allocated;
+	long count = (long) utterances.size() * iterations;
+	System.out.println(String.format(
+		    "%d utterances: %.1f us and %.0f bytes allocated per utterance",
+		    utterances.size(), nanos / 1000.0 / count,
+		    (double) allocated / count));
+
+	utterances = null;
+	long before = Benchmark.usedHeap();
+	utterances = voice.frontEnd(text, arena
+		? BenchmarkVoice.ARENA_PER_UTTERANCE : BenchmarkVoice.NO_ARENAS);
+	long retained = Benchmark.usedHeap() - before;
+	System.out.println(String.format("retained: %.0f bytes per utterance",
+		    (double) retained / utterances.size()));
+
+	if (dumpFile != null) {
+	    PrintWriter out = new PrintWriter(new FileWriter(dumpFile));
+	    for (int i = 0; i < utterances.size(); i++) {
+		((Utterance) utterances.get(i)).dump(out, 0, "utterance " + i,
+			true);
+	    }
+	    out.close();
+	}
+	voice.deallocate();
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Builds the same utterances with items on the heap and in an
+ * {@link ItemArena}, and checks that they read the same, before and
+ * after the arena is reset and reused.
+ */
+public class ItemArenaTest {
+    private final static Voice VOICE = new TestVoice();
+
+    private final static String[] FIRST = {
+	"the", "quick", "brown", "fox"
+    };
+    private final static String[] SECOND = {
+	"jumps", "over", "a", "lazy", "dog", "again"
+    };
+
+    @Test
+    public void testArenaReadsLikeTheHeap() {
+	ItemArena arena = new ItemArena();
+	Assertions.assertEquals(describe(build(FIRST, null)),
+		describe(build(FIRST, arena)));
+	Assertions.assertTrue(arena.getItemCount() > 0);
+	Assertions.assertTrue(arena.getFeatureCount() > 0);
+    }
+
+    @Test
+    public void testResetAndReuse() {
+	ItemArena arena = new ItemArena();
+	Utterance first = build(FIRST, arena);
+	Item firstToken = first.getRelation(Relation.TOKEN).getHead();
+	String described = describe(first);
+	int items = arena.getItemCount();
+	int features = arena.getFeatureCount();
+
+	arena.reset();
+	Assertions.assertEquals(0, arena.getItemCount());
+	Assertions.assertEquals(0, arena.getFeatureCount());
+
+	// nothing of the first utterance shows through the second
+	Utterance second = build(SECOND, arena);
+	Assertions.assertEquals(describe(build(SECOND, null)),
+		describe(second));
+	for (Item token = second.getRelation(Relation.TOKEN).getHead();
+		token != null; token = token.getNext()) {
+	    Assertions.assertFalse(token.getFeatures().isPresent("first"));
+	}
+	// the item views are reused, not made again
+	Assertions.assertSame(firstToken,
+		second.getRelation(Relation.TOKEN).getHead());
+
+	arena.reset();
+	Assertions.assertEquals(described, describe(build(FIRST, arena)));
+	Assertions.assertEquals(items, arena.getItemCount());
+	Assertions.assertEquals(features, arena.getFeatureCount());
+    }
+
+    @Test
+    public void testGrowAndReuse() {
+	String[] words = new String[400];
+	for (int i = 0; i < words.length; i++) {
+	    words[i] = "word" + i;
+	}
+	ItemArena arena = new ItemArena();
+	String expected = describe(build(words, null));
+	Assertions.assertEquals(expected, describe(build(words, arena)));
+	arena.reset();
+	Assertions.assertEquals(describe(build(FIRST, null)),
+		describe(build(FIRST, arena)));
+	arena.reset();
+	Assertions.assertEquals(expected, describe(build(words, arena)));
+    }
+
+    @Test
+    public void testItemsOfAnotherArenaAreRejected() {
+	Utterance one = build(FIRST, new ItemArena());
+	Utterance other = build(SECOND, new ItemArena());
+	final Item word = one.getRelation(Relation.WORD).getHead();
+	final Relation relation = other.getRelation(Relation.SYLLABLE_STRUCTURE);
+	Assertions.assertThrows(IllegalArgumentException.class,
+		() -> relation.appendItem(word));
+    }
+
+    @Test
+    public void testRemovedFeatures() {
+	ItemArena arena = new ItemArena();
+	// the head is the filler word
+	Item word = build(FIRST, arena).getRelation(Relation.WORD).getHead()
+	    .getNext();
+	FeatureSet features = word.getFeatures();
+	Assertions.assertTrue(features.isPresent("first"));
+	features.remove("first");
+	Assertions.assertFalse(features.isPresent("first"));
+	Assertions.assertEquals("the", features.getString("name"));
+	features.setString("name", "a");
+	Assertions.assertEquals("a", word.findFeature("name"));
+	Assertions.assertEquals("a",
+		word.findFeature("R:SylStructure.name"));
+    }
+
+    /**
+     * Builds an utterance of tokens, words that are their daughters,
+     * and a syllable structure over the words, with features of every
+     * kind.
+     */
+    private static Utterance build(String[] words, ItemArena arena) {
+	List tokens = new ArrayList();
+	for (int i = 0; i < words.length; i++) {
+	    Token token = new Token();
+	    token.setWord(words[i]);
+	    tokens.add(token);
+	}
+	Utterance u = new Utterance(VOICE, tokens, arena);
+	Relation word = u.createRelation(Relation.WORD);
+	Relation sylStructure = u.createRelation(Relation.SYLLABLE_STRUCTURE);
+	Relation syllable = u.createRelation(Relation.SYLLABLE);
+	int n = 0;
+	for (Item token = u.getRelation(Relation.TOKEN).getHead();
+		token != null; token = token.getNext()) {
+	    Item w = token.createDaughter();
+	    w.getFeatures().setString("name", token.toString());
+	    w.getFeatures().setInt("index", n);
+	    w.getFeatures().setFloat("score", n / 4.0f);
+	    if (n == 0) {
+		w.getFeatures().setString("first", "yes");
+	    }
+	    word.appendItem(w);
+	    Item ss = sylStructure.appendItem(w);
+	    for (int s = 0; s <= n % 3; s++) {
+		Item syl = syllable.appendItem();
+		syl.getFeatures().setString("name", "syl");
+		syl.getFeatures().setInt("stress", s == 0 ? 1 : 0);
+		ss.addDaughter(syl);
+	    }
+	    n++;
+	}
+	// a filler word in front, so the head changes
+	Item head = word.getHead();
+	head.prependItem(null).getFeatures().setString("name", "uh");
+	return u;
+    }
+
+    /**
+     * Reads the relations of an utterance back, through the links and
+     * feature paths.
+     */
+    private static String describe(Utterance u) {
+	StringBuffer sb = new StringBuffer();
+	for (Item w = u.getRelation(Relation.WORD).getHead(); w != null;
+		w = w.getNext()) {
+	    FeatureSet f = w.getFeatures();
+	    sb.append(f.getString("name"));
+	    sb.append(' ').append(f.isPresent("index") ? f.getInt("index") : -1);
+	    sb.append(' ').append(f.isPresent("score") ? f.getFloat("score") : -1f);
+	    sb.append(' ').append(f.isPresent("first"));
+	    sb.append(' ').append(w.findFeature("R:Token.parent.name"));
+	    sb.append(' ').append(w.findFeature("p.name"));
+	    sb.append(' ').append(w.findFeature("n.name"));
+	    Item ss = w.getItemAs(Relation.SYLLABLE_STRUCTURE);
+	    if (ss != null) {
+		for (Item syl = ss.getDaughter(); syl != null;
+			syl = syl.getNext()) {
+		    sb.append(' ').append(syl.getFeatures().getInt("stress"));
+		    sb.append(syl.findFeature("R:SylStructure.parent.name"));
+		}
+	    }
+	    sb.append('\n');
+	}
+	Relation tokens = u.getRelation(Relation.TOKEN);
+	sb.append(tokens.getHead()).append(' ').append(tokens.getTail());
+	sb.append(' ').append(u.getRelation(Relation.SYLLABLE).getTail()
+		.findFeature("R:SylStructure.parent.R:Token.parent.name"));
+	return sb.toString();
+    }
+
+    /**
+     * A voice with no tokenizer, no audio output and no feature
+     * processors, so paths only find features.
+     */
+    private static class TestVoice extends Voice {
+	public Tokenizer getTokenizer() {
+	    return null;
+	}
+
+	protected void loader() {
+	}
+
+	protected UtteranceProcessor getAudioOutput() {
+	    return null;
+	}
+    }
+}
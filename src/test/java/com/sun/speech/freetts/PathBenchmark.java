@@ -0,0 +1,195 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.speech.freetts.en.us.BenchmarkVoice;
+import com.sun.speech.freetts.en.us.CMUVoice;
+import com.sun.speech.freetts.util.Benchmark;
+
+/**
+ * Measures feature path evaluation over the front end of the CMU
+ * voice.  The paths are the features tested by the CARTs of the
+ * voice, each evaluated on every item of the relation the CART is used
+ * on.  Three ways are timed:
+ *
+ * <pre>
+ *   shared    the extractor from PathExtractorImpl.getInstance, kept
+ *             by the caller, as CARTs keep it
+ *   string    Item.findFeature(path), which looks the shared
+ *             extractor up by name
+ *   new       a new PathExtractorImpl for each evaluation
+ * </pre>
+ *
+ * <p>With <code>-interpret</code> paths are interpreted, tokenized on
+ * every call.  The setting is read once per process, so run it with
+ * and without to compare; both runs print a checksum of the results,
+ * which must match.
+ *
+ * <pre>
+ * usage: PathBenchmark [-interpret] [-text file.txt] [-iterations n]
+ *                      [-warmup n]
+ * </pre>
+ */
+public class PathBenchmark {
+    private final static String USAGE =
+	"PathBenchmark [-interpret] [-text file.txt] [-iterations n] "
+	+ "[-warmup n]";
+
+    private final static String[][] CARTS = {
+	{ "phrasing_cart.txt", Relation.WORD },
+	{ "int_accent_cart.txt", Relation.SYLLABLE },
+	{ "int_tone_cart.txt", Relation.SYLLABLE },
+	{ "durz_cart.txt", Relation.SEGMENT },
+    };
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the options, as in the usage above
+     *
+     * @throws IOException if the text or a CART can't be read
+     */
+    public static void main(String[] args) throws IOException {
+	Benchmark bench = new Benchmark(USAGE, args);
+	boolean interpret = bench.getFlag("-interpret");
+	String text = Benchmark.readText(bench.getString("-text", null));
+	int iterations = bench.getInt("-iterations", 10);
+	int warmup = bench.getInt("-warmup", 3);
+	if (!bench.checkOptions()) {
+	    return;
+	}
+	// must be set before the first path is made
+	System.setProperty(PathExtractorImpl.INTERPRET_PATHS_PROPERTY,
+		String.valueOf(interpret));
+
+	BenchmarkVoice voice = new BenchmarkVoice();
+	voice.allocate();
+	List utterances = voice.frontEnd(text);
+	System.out.println("paths: "
+		+ (interpret ? "interpreted" : "compiled"));
+
+	for (int c = 0; c < CARTS.length; c++) {
+	    String[] paths = features(CARTS[c][0]);
+	    PathExtractor[] shared = new PathExtractor[paths.length];
+	    for (int p = 0; p < paths.length; p++) {
+		shared[p] = PathExtractorImpl.getInstance(paths[p], true);
+	    }
+	    Item[] items = items(utterances, CARTS[c][1]);
+	    long count = (long) items.length * paths.length * iterations;
+	    System.out.println(CARTS[c][0] + ": " + paths.length
+		    + " paths on " + items.length + " " + CARTS[c][1]
+		    + " items, checksum " + runShared(shared, items));
+
+	    for (int i = 0; i < warmup; i++) {
+		runShared(shared, items);
+		runString(paths, items);
+		runNew(paths, items);
+	    }
+
+	    long start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		runShared(shared, items);
+	    }
+	    report("shared", System.nanoTime() - start, count);
+
+	    start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		runString(paths, items);
+	    }
+	    report("string", System.nanoTime() - start, count);
+
+	    start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		runNew(paths, items);
+	    }
+	    report("new", System.nanoTime() - start, count);
+	}
+	voice.deallocate();
+    }
+
+    /**
+     * Returns the features tested by a CART, from its NODE lines.
+     */
+    private static String[] features(String cart) throws IOException {
+	Set features = new LinkedHashSet();
+	BufferedReader reader = new BufferedReader(new InputStreamReader(
+		    CMUVoice.class.getResourceAsStream(cart)));
+	String line;
+	while ((line = reader.readLine()) != null) {
+	    if (line.startsWith("NODE ")) {
+		features.add(line.split(" ")[1]);
+	    }
+	}
+	reader.close();
+	return (String[]) features.toArray(new String[features.size()]);
+    }
+
+    /**
+     * Returns the items of a relation.  The duration CART tests the
+     * name first and never looks past a pause, so pauses are left out.
+     */
+    private static Item[] items(List utterances, String relation) {
+	List items = new ArrayList();
+	for (int u = 0; u < utterances.size(); u++) {
+	    Relation r = ((Utterance) utterances.get(u)).getRelation(relation);
+	    for (Item item = r == null ? null : r.getHead(); item != null;
+		    item = item.getNext()) {
+		if (!relation.equals(Relation.SEGMENT)
+			|| !item.toString().equals("pau")) {
+		    items.add(item);
+		}
+	    }
+	}
+	return (Item[]) items.toArray(new Item[items.size()]);
+    }
+
+    private static long runShared(PathExtractor[] paths, Item[] items) {
+	long sink = 0;
+	for (int i = 0; i < items.length; i++) {
+	    for (int p = 0; p < paths.length; p++) {
+		sink += paths[p].findFeature(items[i]).toString().hashCode();
+	    }
+	}
+	return sink;
+    }
+
+    private static long runString(String[] paths, Item[] items) {
+	long sink = 0;
+	for (int i = 0; i < items.length; i++) {
+	    for (int p = 0; p < paths.length; p++) {
+		sink += items[i].findFeature(paths[p]).toString().hashCode();
+	    }
+	}
+	return sink;
+    }
+
+    private static long runNew(String[] paths, Item[] items) {
+	long sink = 0;
+	for (int i = 0; i < items.length; i++) {
+	    for (int p = 0; p < paths.length; p++) {
+		sink += new PathExtractorImpl(paths[p], true)
+		    .findFeature(items[i]).toString().hashCode();
+	    }
+	}
+	return sink;
+    }
+
+    private static void report(String name, long nanos, long count) {
+	System.out.println(String.format(
+		    "   %-7s %8.1f ns per path, %6.2f million paths per second",
+		    name, (double) nanos / count, count * 1000.0 / nanos));
+    }
+}
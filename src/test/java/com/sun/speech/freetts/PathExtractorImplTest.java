@@ -0,0 +1,151 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Follows paths from every item of a small utterance, compiled by
+ * {@link PathExtractorImpl} and walked token by token as
+ * {@link Item#findItem} does when paths are interpreted, and checks
+ * that both reach the same items and features.
+ */
+public class PathExtractorImplTest {
+    private final static String[][] WORDS = {
+	{ "hh ax", "l ow" }, { "w er l d" }, { "t ax", "d ey" }
+    };
+
+    private final static String[] PATHS = {
+	"n", "p", "nn", "pp", "parent", "daughter", "daughter1",
+	"daughtern", "n.n.p", "p.p.p", "parent.parent", "daughter.n",
+	"R:SylStructure", "R:SylStructure.parent",
+	"R:SylStructure.parent.parent", "R:SylStructure.daughter",
+	"R:SylStructure.daughtern.R:Segment.n",
+	"R:SylStructure.parent.R:Word.n", "R:Segment.p.R:SylStructure",
+	"R:Syllable.pp", "R:Word.nn", "R:Missing.n",
+	// not operations: left out of the compiled path, and skipped by
+	// the interpreted walk
+	"bogus", "n.bogus.n", "R:SylStructure.bogus.parent"
+    };
+
+    @Test
+    public void testCompiledPathsFindTheSameItems() {
+	Utterance utterance = utterance();
+	String[] relations = {
+	    Relation.WORD, Relation.SYLLABLE_STRUCTURE, Relation.SYLLABLE,
+	    Relation.SEGMENT
+	};
+	int compared = 0;
+	for (int r = 0; r < relations.length; r++) {
+	    for (Item item = utterance.getRelation(relations[r]).getHead();
+		    item != null; item = next(item)) {
+		for (int p = 0; p < PATHS.length; p++) {
+		    Item expected = item.interpretPath(PATHS[p]);
+		    Assertions.assertSame(expected,
+			    PathExtractorImpl.getInstance(PATHS[p], false)
+				.findItem(item),
+			    relations[r] + " " + item + " " + PATHS[p]);
+		    Assertions.assertSame(expected, item.findItem(PATHS[p]));
+		    if (expected != null) {
+			compared++;
+		    }
+		}
+	    }
+	}
+	Assertions.assertTrue(compared > 100);
+    }
+
+    @Test
+    public void testCompiledPathsFindTheSameFeatures() {
+	Utterance utterance = utterance();
+	for (Item item = utterance.getRelation(Relation.SYLLABLE_STRUCTURE)
+		.getHead(); item != null; item = next(item)) {
+	    for (int p = 0; p < PATHS.length; p++) {
+		Item at = item.interpretPath(PATHS[p]);
+		Object expected = at == null ? null
+		    : at.getFeatures().getObject("name");
+		expected = expected == null ? "0" : expected;
+		String path = PATHS[p] + ".name";
+		Assertions.assertEquals(expected,
+			PathExtractorImpl.getInstance(path, true)
+			    .findFeature(item), item + " " + path);
+		Assertions.assertEquals(expected, item.findFeature(path));
+	    }
+	    // a feature with no path is read from the item itself
+	    Assertions.assertEquals(item.getFeatures().getObject("name"),
+		    PathExtractorImpl.getInstance("name", true)
+			.findFeature(item));
+	}
+    }
+
+    /**
+     * Returns the item after the given one in a walk of the whole tree
+     * of its relation, daughters first.
+     */
+    private static Item next(Item item) {
+	if (item.getDaughter() != null) {
+	    return item.getDaughter();
+	}
+	for (Item i = item; i != null; i = i.getParent()) {
+	    if (i.getNext() != null) {
+		return i.getNext();
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Makes an utterance of a few words, with their syllables and
+     * segments in relations of their own and in a syllable structure.
+     */
+    private static Utterance utterance() {
+	Utterance utterance = new Utterance(new TestVoice(), new ArrayList());
+	Relation words = utterance.createRelation(Relation.WORD);
+	Relation sylStructure =
+	    utterance.createRelation(Relation.SYLLABLE_STRUCTURE);
+	Relation syllables = utterance.createRelation(Relation.SYLLABLE);
+	Relation segments = utterance.createRelation(Relation.SEGMENT);
+	for (int w = 0; w < WORDS.length; w++) {
+	    Item word = words.appendItem();
+	    word.getFeatures().setString("name", "word" + w);
+	    Item ssWord = sylStructure.appendItem(word);
+	    for (int s = 0; s < WORDS[w].length; s++) {
+		Item syl = syllables.appendItem();
+		syl.getFeatures().setString("name", "syl" + w + s);
+		Item ssSyl = ssWord.addDaughter(syl);
+		String[] phones = WORDS[w][s].split(" ");
+		for (int i = 0; i < phones.length; i++) {
+		    Item seg = segments.appendItem();
+		    seg.getFeatures().setString("name", phones[i]);
+		    ssSyl.addDaughter(seg);
+		}
+	    }
+	}
+	return utterance;
+    }
+
+    /**
+     * A voice with no tokenizer, no audio output and no feature
+     * processors.
+     */
+    private static class TestVoice extends Voice {
+	public Tokenizer getTokenizer() {
+	    return null;
+	}
+
+	protected void loader() {
+	}
+
+	protected UtteranceProcessor getAudioOutput() {
+	    return null;
+	}
+    }
+}
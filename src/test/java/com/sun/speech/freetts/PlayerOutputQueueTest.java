@@ -0,0 +1,231 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.speech.freetts.audio.NullAudioPlayer;
+
+/**
+ * Tests {@link PlayerOutputQueue} with voices that have no audio
+ * output and a player of their own.  Every utterance is a speakable
+ * of its own, which notes when the output thread starts it.
+ */
+public class PlayerOutputQueueTest {
+    private final static long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void testEachPlayerIsOutputInOrder() throws InterruptedException {
+	PlayerOutputQueue queue = new PlayerOutputQueue(4);
+	try {
+	    TestVoice a = new TestVoice();
+	    TestVoice b = new TestVoice();
+	    List started = Collections.synchronizedList(new ArrayList());
+	    List speakables = new ArrayList();
+	    for (int i = 0; i < 50; i++) {
+		speakables.add(post(queue, a, "a" + i, started, null));
+		speakables.add(post(queue, b, "b" + i, started, null));
+	    }
+	    for (int i = 0; i < speakables.size(); i++) {
+		Assertions.assertTrue(((FreeTTSSpeakable)
+			    speakables.get(i)).waitCompleted());
+	    }
+	    int nextA = 0;
+	    int nextB = 0;
+	    for (int i = 0; i < started.size(); i++) {
+		String name = (String) started.get(i);
+		if (name.startsWith("a")) {
+		    Assertions.assertEquals("a" + nextA++, name);
+		} else {
+		    Assertions.assertEquals("b" + nextB++, name);
+		}
+	    }
+	    Assertions.assertEquals(50, nextA);
+	    Assertions.assertEquals(50, nextB);
+	    Assertions.assertTrue(queue.getLaneCount() <= 2);
+	} finally {
+	    queue.close();
+	}
+    }
+
+    @Test
+    public void testBusyLaneIsNotShared() throws InterruptedException {
+	PlayerOutputQueue queue = new PlayerOutputQueue(4);
+	try {
+	    CountDownLatch release = new CountDownLatch(1);
+	    List started = Collections.synchronizedList(new ArrayList());
+	    FreeTTSSpeakable a = post(queue, new TestVoice(), "a", started,
+		    release);
+	    FreeTTSSpeakable b = post(queue, new TestVoice(), "b", started,
+		    null);
+	    // a holds its lane until released, so b must get one of its own
+	    Assertions.assertTrue(b.waitCompleted());
+	    Assertions.assertFalse(a.isCompleted());
+	    Assertions.assertEquals(2, queue.getLaneCount());
+	    release.countDown();
+	    Assertions.assertTrue(a.waitCompleted());
+	} finally {
+	    queue.close();
+	}
+    }
+
+    @Test
+    public void testIdleLaneIsTakenOver() throws InterruptedException {
+	PlayerOutputQueue queue = new PlayerOutputQueue(4);
+	try {
+	    List started = Collections.synchronizedList(new ArrayList());
+	    for (int i = 0; i < 20; i++) {
+		// a voice of its own each time, as a server making a voice
+		// per request would
+		Assertions.assertTrue(post(queue, new TestVoice(), "v" + i,
+			    started, null).waitCompleted());
+		waitUntilOutputThreadsWait();
+		Assertions.assertEquals(1, queue.getLaneCount());
+	    }
+	    Assertions.assertEquals(20, started.size());
+	} finally {
+	    queue.close();
+	}
+    }
+
+    @Test
+    public void testRemoveAllFreesTheLane() throws InterruptedException {
+	PlayerOutputQueue queue = new PlayerOutputQueue(4);
+	try {
+	    CountDownLatch release = new CountDownLatch(1);
+	    List started = Collections.synchronizedList(new ArrayList());
+	    TestVoice voice = new TestVoice();
+	    FreeTTSSpeakable first = post(queue, voice, "first", started,
+		    release);
+	    FreeTTSSpeakable second = post(queue, voice, "second", started,
+		    null);
+	    waitUntilStarted(started, 1);
+	    queue.removeAll();
+	    release.countDown();
+	    Assertions.assertTrue(first.waitCompleted());
+	    Assertions.assertFalse(second.isCompleted());
+	    waitUntilOutputThreadsWait();
+
+	    // nothing is left posted to the lane, so another player can
+	    // take it over
+	    Assertions.assertTrue(post(queue, new TestVoice(), "other",
+			started, null).waitCompleted());
+	    Assertions.assertEquals(1, queue.getLaneCount());
+	} finally {
+	    queue.close();
+	}
+    }
+
+    /**
+     * Posts an utterance that is a speakable of its own.
+     */
+    private static FreeTTSSpeakable post(PlayerOutputQueue queue,
+	    Voice voice, String name, List started, CountDownLatch release) {
+	FreeTTSSpeakable speakable =
+	    new RecordingSpeakable(name, started, release);
+	Utterance u = new Utterance(voice);
+	u.setSpeakable(speakable);
+	u.setFirst(true);
+	u.setLast(true);
+	queue.post(u);
+	return speakable;
+    }
+
+    private static void waitUntilStarted(List started, int count)
+	    throws InterruptedException {
+	long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+	while (started.size() < count) {
+	    Assertions.assertTrue(System.currentTimeMillis() < end,
+		    "never started");
+	    Thread.sleep(1);
+	}
+    }
+
+    /**
+     * Waits until every output thread is back in <code>pend</code>,
+     * so that the lanes it played on are idle again.
+     */
+    private static void waitUntilOutputThreadsWait()
+	    throws InterruptedException {
+	long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+	while (true) {
+	    boolean waiting = true;
+	    Thread[] threads = new Thread[Thread.activeCount() * 2];
+	    int count = Thread.enumerate(threads);
+	    for (int i = 0; i < count; i++) {
+		if (threads[i].getName().startsWith("FreeTTS-output")
+			&& threads[i].getState() != Thread.State.WAITING) {
+		    waiting = false;
+		}
+	    }
+	    if (waiting) {
+		return;
+	    }
+	    Assertions.assertTrue(System.currentTimeMillis() < end,
+		    "output threads never waited");
+	    Thread.sleep(1);
+	}
+    }
+
+    /**
+     * Notes its name when it is started, and holds the output thread
+     * there until released.
+     */
+    private static class RecordingSpeakable extends FreeTTSSpeakableImpl {
+	private final String name;
+	private final List started;
+	private final CountDownLatch release;
+
+	RecordingSpeakable(String name, List started,
+		CountDownLatch release) {
+	    super(name);
+	    this.name = name;
+	    this.started = started;
+	    this.release = release;
+	}
+
+	public void started() {
+	    started.add(name);
+	    if (release != null) {
+		try {
+		    release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ie) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}
+    }
+
+    /**
+     * A voice with no tokenizer and no audio output, and a player of
+     * its own.
+     */
+    private static class TestVoice extends Voice {
+	TestVoice() {
+	    setAudioPlayer(new NullAudioPlayer());
+	}
+
+	public Tokenizer getTokenizer() {
+	    return null;
+	}
+
+	protected void loader() {
+	}
+
+	protected UtteranceProcessor getAudioOutput() {
+	    return null;
+	}
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link RingOutputQueue}.  The utterances carry no voice, only
+ * a speakable and their number.
+ */
+public class RingOutputQueueTest {
+    private final static long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void testOrderAcrossTheEndOfTheRing() {
+	RingOutputQueue queue = new RingOutputQueue(4);
+	int next = 0;
+	for (int round = 0; round < 3; round++) {
+	    for (int i = 0; i < 4; i++) {
+		queue.post(utterance(0, round * 4 + i));
+	    }
+	    Assertions.assertEquals(4, queue.getDepth());
+	    for (int i = 0; i < 4; i++) {
+		Assertions.assertEquals(next++, queue.pend().getInt("index"));
+	    }
+	    Assertions.assertEquals(0, queue.getDepth());
+	}
+	Assertions.assertEquals(12, queue.getPostCount());
+	Assertions.assertEquals(4, queue.getMaxDepth());
+    }
+
+    @Test
+    public void testProducersAndConsumer() throws InterruptedException {
+	final int producers = 4;
+	final int count = 5000;
+	final RingOutputQueue queue = new RingOutputQueue(8);
+	Thread[] threads = new Thread[producers];
+	for (int p = 0; p < producers; p++) {
+	    final int producer = p;
+	    threads[p] = new Thread() {
+		public void run() {
+		    for (int i = 0; i < count; i++) {
+			queue.post(utterance(producer, i));
+		    }
+		}
+	    };
+	    threads[p].start();
+	}
+
+	// each producer's utterances come out in the order it posted them
+	int[] expected = new int[producers];
+	for (int i = 0; i < producers * count; i++) {
+	    Utterance u = queue.pend();
+	    int producer = u.getInt("producer");
+	    Assertions.assertEquals(expected[producer]++, u.getInt("index"));
+	}
+	for (int p = 0; p < producers; p++) {
+	    threads[p].join(TIMEOUT_MILLIS);
+	    Assertions.assertEquals(count, expected[p]);
+	}
+	Assertions.assertEquals(0, queue.getDepth());
+	Assertions.assertTrue(queue.getMaxDepth() <= 8);
+    }
+
+    @Test
+    public void testCloseWakesAWaitingConsumer() throws InterruptedException {
+	final RingOutputQueue queue = new RingOutputQueue(2);
+	final AtomicReference result = new AtomicReference("not returned");
+	Thread consumer = new Thread() {
+	    public void run() {
+		result.set(queue.pend());
+	    }
+	};
+	consumer.start();
+	waitUntilParked(consumer);
+	queue.close();
+	consumer.join(TIMEOUT_MILLIS);
+	Assertions.assertFalse(consumer.isAlive());
+	Assertions.assertNull(result.get());
+    }
+
+    @Test
+    public void testCloseFailsAWaitingProducer() throws InterruptedException {
+	final RingOutputQueue queue = new RingOutputQueue(1);
+	queue.post(utterance(0, 0));
+	final Utterance blocked = utterance(0, 1);
+	final AtomicReference thrown = new AtomicReference();
+	Thread producer = new Thread() {
+	    public void run() {
+		try {
+		    queue.post(blocked);
+		} catch (IllegalStateException ise) {
+		    thrown.set(ise);
+		}
+	    }
+	};
+	producer.start();
+	waitUntilParked(producer);
+	queue.close();
+	producer.join(TIMEOUT_MILLIS);
+	Assertions.assertFalse(producer.isAlive());
+	Assertions.assertNotNull(thrown.get());
+	Assertions.assertTrue(blocked.getSpeakable().isCompleted());
+	// what was posted before the close is still handed out
+	Assertions.assertEquals(0, queue.pend().getInt("index"));
+	Assertions.assertNull(queue.pend());
+    }
+
+    @Test
+    public void testInterruptCancelsAWaitingPost() throws InterruptedException {
+	final RingOutputQueue queue = new RingOutputQueue(1);
+	queue.post(utterance(0, 0));
+	final Utterance blocked = utterance(0, 1);
+	final boolean[] result = new boolean[2];
+	Thread producer = new Thread() {
+	    public void run() {
+		result[0] = queue.postUtterance(blocked);
+		result[1] = Thread.currentThread().isInterrupted();
+	    }
+	};
+	producer.start();
+	waitUntilParked(producer);
+	producer.interrupt();
+	producer.join(TIMEOUT_MILLIS);
+	Assertions.assertFalse(producer.isAlive());
+	Assertions.assertFalse(result[0], "post returned true");
+	Assertions.assertTrue(result[1], "interrupt status was cleared");
+	Assertions.assertTrue(blocked.getSpeakable().isCompleted());
+	Assertions.assertEquals(1, queue.getDepth());
+    }
+
+    @Test
+    public void testDrainMakesRoomForAWaitingProducer()
+	    throws InterruptedException {
+	final RingOutputQueue queue = new RingOutputQueue(2);
+	queue.post(utterance(0, 0));
+	queue.post(utterance(0, 1));
+	Thread producer = new Thread() {
+	    public void run() {
+		queue.post(utterance(0, 2));
+	    }
+	};
+	producer.start();
+	waitUntilParked(producer);
+	Assertions.assertEquals(2, queue.drain());
+	producer.join(TIMEOUT_MILLIS);
+	Assertions.assertFalse(producer.isAlive());
+	Assertions.assertEquals(1, queue.getDepth());
+	Assertions.assertEquals(2, queue.pend().getInt("index"));
+    }
+
+    static Utterance utterance(int producer, int index) {
+	Utterance u = new Utterance(null);
+	u.setSpeakable(new FreeTTSSpeakableImpl("utterance " + index));
+	u.setInt("producer", producer);
+	u.setInt("index", index);
+	return u;
+    }
+
+    /**
+     * Waits until the thread is parked in the queue.
+     */
+    static void waitUntilParked(Thread t) throws InterruptedException {
+	long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+	while (t.getState() != Thread.State.WAITING) {
+	    Assertions.assertTrue(System.currentTimeMillis() < end,
+		    t.getName() + " never waited");
+	    Thread.sleep(1);
+	}
+    }
+}
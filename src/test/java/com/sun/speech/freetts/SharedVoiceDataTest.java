@@ -0,0 +1,189 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.speech.freetts.clunits.ClusterUnitDatabase;
+import com.sun.speech.freetts.clunits.SyntheticDatabase;
+import com.sun.speech.freetts.en.us.CMULexicon;
+import com.sun.speech.freetts.en.us.CMUClusterUnitVoice;
+import com.sun.speech.freetts.en.us.CMUVoice;
+
+/**
+ * Tests the reference counting of {@link SharedVoiceData}, on its own
+ * and as voices use it when they are allocated and deallocated.
+ */
+public class SharedVoiceDataTest {
+
+    @Test
+    public void testAcquireAndRelease() throws IOException {
+	URL url = new URL("file:/shared/acquire");
+	CountingLoader loader = new CountingLoader();
+	Object first = SharedVoiceData.acquire("test", url, loader);
+	Object second = SharedVoiceData.acquire("test", url, loader);
+	Assertions.assertSame(first, second);
+	Assertions.assertEquals(1, loader.loads);
+	Assertions.assertEquals(2, SharedVoiceData.getReferenceCount("test", url));
+
+	SharedVoiceData.release("test", url);
+	Assertions.assertEquals(1, SharedVoiceData.getReferenceCount("test", url));
+	SharedVoiceData.release("test", url);
+	Assertions.assertEquals(0, SharedVoiceData.getReferenceCount("test", url));
+	// a release too many is harmless
+	SharedVoiceData.release("test", url);
+	Assertions.assertEquals(0, SharedVoiceData.getReferenceCount("test", url));
+
+	// forgotten, so it is loaded again
+	Object third = SharedVoiceData.acquire("test", url, loader);
+	Assertions.assertNotSame(first, third);
+	Assertions.assertEquals(2, loader.loads);
+	SharedVoiceData.release("test", url);
+    }
+
+    @Test
+    public void testKindsAreKeptApart() throws IOException {
+	URL url = new URL("file:/shared/kinds");
+	CountingLoader loader = new CountingLoader();
+	Object cart = SharedVoiceData.acquire("cart", url, loader);
+	Object fsm = SharedVoiceData.acquire("fsm", url, loader);
+	Assertions.assertNotSame(cart, fsm);
+	Assertions.assertEquals(1, SharedVoiceData.getReferenceCount("cart", url));
+	Assertions.assertEquals(1, SharedVoiceData.getReferenceCount("fsm", url));
+	SharedVoiceData.release("cart", url);
+	Assertions.assertEquals(0, SharedVoiceData.getReferenceCount("cart", url));
+	Assertions.assertEquals(1, SharedVoiceData.getReferenceCount("fsm", url));
+	SharedVoiceData.release("fsm", url);
+    }
+
+    @Test
+    public void testFailedLoadIsNotCounted() throws IOException {
+	final URL url = new URL("file:/shared/failed");
+	Assertions.assertThrows(IOException.class,
+		() -> SharedVoiceData.acquire("test", url,
+		    new SharedVoiceData.Loader() {
+			public Object load(URL u) throws IOException {
+			    throw new IOException("can't load " + u);
+			}
+		    }));
+	Assertions.assertEquals(0, SharedVoiceData.getReferenceCount("test", url));
+
+	CountingLoader loader = new CountingLoader();
+	Assertions.assertNotNull(SharedVoiceData.acquire("test", url, loader));
+	Assertions.assertEquals(1, loader.loads);
+	SharedVoiceData.release("test", url);
+    }
+
+    @Test
+    public void testUnsharedDataIsNotCounted() throws IOException {
+	URL url = new URL("file:/shared/unshared");
+	CountingLoader loader = new CountingLoader();
+	try {
+	    System.setProperty(SharedVoiceData.SHARED_DATA_PROPERTY, "false");
+	    Assertions.assertFalse(SharedVoiceData.isShared());
+	    Object first = SharedVoiceData.acquire("test", url, loader);
+	    Object second = SharedVoiceData.acquire("test", url, loader);
+	    Assertions.assertNotSame(first, second);
+	    Assertions.assertEquals(2, loader.loads);
+	    Assertions.assertEquals(0,
+		    SharedVoiceData.getReferenceCount("test", url));
+	} finally {
+	    System.clearProperty(SharedVoiceData.SHARED_DATA_PROPERTY);
+	}
+	Assertions.assertTrue(SharedVoiceData.isShared());
+    }
+
+    @Test
+    public void testVoicesShareTheirDatabase() throws IOException {
+	File file = File.createTempFile("shared", ".txt");
+	try {
+	    int[][] vocabulary = SyntheticDatabase.vocabulary(10, 20,
+		    new Random(11));
+	    SyntheticDatabase.writeDatabase(file, 10,
+		    SyntheticDatabase.sentences(vocabulary, 10, 20, true,
+			new Random(17)), 6, 1, new Random(19));
+	    URL db = file.toURI().toURL();
+	    CMULexicon lexicon = new CMULexicon("cmudict04", false);
+	    lexicon.load();
+
+	    TestVoice[] voices = new TestVoice[3];
+	    for (int i = 0; i < voices.length; i++) {
+		voices[i] = new TestVoice(lexicon, db);
+		voices[i].allocate();
+		Assertions.assertEquals(i + 1,
+			SharedVoiceData.getReferenceCount("clunits", db));
+		Assertions.assertSame(voices[0].clunitDB, voices[i].clunitDB);
+	    }
+	    // allocating again does not count again
+	    voices[0].allocate();
+	    Assertions.assertEquals(voices.length,
+		    SharedVoiceData.getReferenceCount("clunits", db));
+
+	    for (int i = 0; i < voices.length; i++) {
+		voices[i].deallocate();
+		Assertions.assertEquals(voices.length - i - 1,
+			SharedVoiceData.getReferenceCount("clunits", db));
+	    }
+
+	    // the last voice gone, the next one loads the database again
+	    TestVoice again = new TestVoice(lexicon, db);
+	    again.allocate();
+	    Assertions.assertEquals(1,
+		    SharedVoiceData.getReferenceCount("clunits", db));
+	    Assertions.assertNotSame(voices[0].clunitDB, again.clunitDB);
+	    again.deallocate();
+	    Assertions.assertEquals(0,
+		    SharedVoiceData.getReferenceCount("clunits", db));
+	} finally {
+	    file.delete();
+	}
+    }
+
+    /**
+     * Makes a new object each time it loads, and counts the loads.
+     */
+    private static class CountingLoader implements SharedVoiceData.Loader {
+	private int loads = 0;
+
+	public Object load(URL url) {
+	    loads++;
+	    return new Object();
+	}
+    }
+
+    /**
+     * A cluster unit voice on the voice data of {@link CMUVoice} that
+     * notes the database it gets.
+     */
+    private static class TestVoice extends CMUClusterUnitVoice {
+	private ClusterUnitDatabase clunitDB;
+
+	TestVoice(CMULexicon lexicon, URL database) {
+	    super("shared_voice_data_test", Gender.NEUTRAL, Age.NEUTRAL,
+		    "shared voice data test", Locale.US, "general", "none",
+		    lexicon, database);
+	}
+
+	protected ClusterUnitDatabase getClusterUnitDatabase()
+		throws IOException {
+	    clunitDB = super.getClusterUnitDatabase();
+	    return clunitDB;
+	}
+
+	protected URL getResource(String resource) {
+	    return CMUVoice.class.getResource(resource);
+	}
+    }
+}
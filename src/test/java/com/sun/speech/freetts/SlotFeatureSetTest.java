@@ -0,0 +1,242 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the same changes on a {@link SlotFeatureSet} and a
+ * {@link FeatureSetImpl}, and checks that they read the same after
+ * each one: the same values, the same exceptions, and the same dump,
+ * which shows the order of the features.
+ */
+public class SlotFeatureSetTest {
+    private final static String[] NAMES = {
+	"name", "stress", "end", "pos", "accent", "seg_coda_fric",
+	"syl_break", "dur_factor", "tobi_accent", "word_numsyls"
+    };
+
+    @Test
+    public void testOrderAfterRemoveAndSetAgain() {
+	FeatureSet[] sets = sets();
+	for (int s = 0; s < sets.length; s++) {
+	    sets[s].setString("name", "hello");
+	    sets[s].setInt("stress", 1);
+	    sets[s].setFloat("end", 0.25f);
+	    sets[s].setString("pos", "n");
+	    // set again, keeps its place
+	    sets[s].setInt("stress", 0);
+	    // removed and set again, goes to the end
+	    sets[s].remove("name");
+	    sets[s].setString("name", "world");
+	    sets[s].remove("absent");
+	}
+	assertSame(sets);
+	// dumped last to first, as flite does
+	Assertions.assertTrue(dump(sets[0]).startsWith(
+		    "features\n    name=world\n"), dump(sets[0]));
+    }
+
+    @Test
+    public void testTypeOfAFeatureChanges() {
+	FeatureSet[] sets = sets();
+	for (int s = 0; s < sets.length; s++) {
+	    sets[s].setInt("accent", 3);
+	    sets[s].setString("stress", "1");
+	}
+	assertSame(sets);
+	for (int s = 0; s < sets.length; s++) {
+	    sets[s].setString("accent", "H*");
+	}
+	assertSame(sets);
+	for (int s = 0; s < sets.length; s++) {
+	    sets[s].setObject("accent", Integer.valueOf(4));
+	}
+	assertSame(sets);
+	Assertions.assertEquals(4, sets[0].getInt("accent"));
+	for (int s = 0; s < sets.length; s++) {
+	    sets[s].setFloat("accent", 1.5f);
+	    sets[s].setObject("stress", Float.valueOf(2.5f));
+	}
+	assertSame(sets);
+	Assertions.assertEquals(2.5f, sets[0].getFloat("stress"));
+	for (int s = 0; s < sets.length; s++) {
+	    sets[s].setObject("accent", null);
+	}
+	assertSame(sets);
+	Assertions.assertTrue(sets[0].isPresent("accent"));
+    }
+
+    @Test
+    public void testGrowsPastFourFeatures() {
+	FeatureSet[] sets = sets();
+	for (int i = 0; i < NAMES.length; i++) {
+	    for (int s = 0; s < sets.length; s++) {
+		if (i % 3 == 0) {
+		    sets[s].setString(NAMES[i], "v" + i);
+		} else if (i % 3 == 1) {
+		    sets[s].setInt(NAMES[i], i);
+		} else {
+		    sets[s].setFloat(NAMES[i], i / 8f);
+		}
+	    }
+	    assertSame(sets);
+	}
+	for (int s = 0; s < sets.length; s++) {
+	    sets[s].remove(NAMES[2]);
+	    sets[s].remove(NAMES[0]);
+	    sets[s].setObject(NAMES[0], Boolean.TRUE);
+	}
+	assertSame(sets);
+    }
+
+    @Test
+    public void testWrongTypesAndMissingFeatures() {
+	FeatureSet[] sets = sets();
+	for (int s = 0; s < sets.length; s++) {
+	    FeatureSet set = sets[s];
+	    set.setInt("stress", 1);
+	    set.setFloat("end", 0.5f);
+	    set.setString("name", "a");
+	    Assertions.assertThrows(ClassCastException.class,
+		    () -> set.getFloat("stress"));
+	    Assertions.assertThrows(ClassCastException.class,
+		    () -> set.getString("stress"));
+	    Assertions.assertThrows(ClassCastException.class,
+		    () -> set.getInt("end"));
+	    Assertions.assertThrows(ClassCastException.class,
+		    () -> set.getInt("name"));
+	    Assertions.assertThrows(NullPointerException.class,
+		    () -> set.getInt("absent"));
+	    Assertions.assertThrows(NullPointerException.class,
+		    () -> set.getFloat("absent"));
+	    Assertions.assertNull(set.getString("absent"));
+	    Assertions.assertNull(set.getObject("absent"));
+	    Assertions.assertFalse(set.isPresent("absent"));
+	}
+	assertSame(sets);
+    }
+
+    @Test
+    public void testRandomChanges() {
+	Random random = new Random(7);
+	FeatureSet[] sets = sets();
+	for (int n = 0; n < 2000; n++) {
+	    String name = NAMES[random.nextInt(NAMES.length)];
+	    int op = random.nextInt(6);
+	    int value = random.nextInt(100);
+	    for (int s = 0; s < sets.length; s++) {
+		switch (op) {
+		case 0:
+		    sets[s].remove(name);
+		    break;
+		case 1:
+		    sets[s].setInt(name, value);
+		    break;
+		case 2:
+		    sets[s].setFloat(name, value / 3f);
+		    break;
+		case 3:
+		    sets[s].setString(name, "s" + value);
+		    break;
+		case 4:
+		    sets[s].setObject(name, Integer.valueOf(value));
+		    break;
+		default:
+		    sets[s].setObject(name, Float.valueOf(value / 7f));
+		    break;
+		}
+	    }
+	    assertSame(sets);
+	}
+    }
+
+    @Test
+    public void testSlotAccessors() {
+	SlotFeatureSet set = new SlotFeatureSet();
+	int stress = FeatureNames.getSlot("stress");
+	int end = FeatureNames.getSlot("end");
+	int name = FeatureNames.getSlot("name");
+	set.setInt(stress, 2);
+	set.setFloat(end, 0.75f);
+	set.setObject(name, "x");
+	Assertions.assertEquals(2, set.getInt("stress"));
+	Assertions.assertEquals(0.75f, set.getFloat("end"));
+	Assertions.assertEquals("x", set.getString("name"));
+	Assertions.assertEquals(2, set.getInt(stress));
+	Assertions.assertEquals(0.75f, set.getFloat(end));
+	Assertions.assertEquals("x", set.getObject(name));
+	Assertions.assertTrue(set.isPresent(end));
+	int count = set.getModificationCount();
+	set.remove("end");
+	Assertions.assertFalse(set.isPresent(end));
+	Assertions.assertTrue(set.getModificationCount() > count);
+    }
+
+    private static FeatureSet[] sets() {
+	return new FeatureSet[] { new FeatureSetImpl(), new SlotFeatureSet() };
+    }
+
+    /**
+     * Checks that the slot set reads as the map set does.
+     */
+    private static void assertSame(FeatureSet[] sets) {
+	FeatureSet expected = sets[0];
+	FeatureSet actual = sets[1];
+	Assertions.assertEquals(dump(expected), dump(actual));
+	for (int i = 0; i < NAMES.length; i++) {
+	    String name = NAMES[i];
+	    Assertions.assertEquals(expected.isPresent(name),
+		    actual.isPresent(name), name);
+	    Assertions.assertEquals(expected.getObject(name),
+		    actual.getObject(name), name);
+	    Assertions.assertEquals(read(expected, name, 0),
+		    read(actual, name, 0), name);
+	    Assertions.assertEquals(read(expected, name, 1),
+		    read(actual, name, 1), name);
+	    Assertions.assertEquals(read(expected, name, 2),
+		    read(actual, name, 2), name);
+	}
+    }
+
+    /**
+     * Returns a feature read as an int, a float or a string, or the
+     * exception reading it throws.
+     */
+    private static Object read(FeatureSet set, String name, int as) {
+	try {
+	    switch (as) {
+	    case 0:
+		return Integer.valueOf(set.getInt(name));
+	    case 1:
+		return Float.valueOf(set.getFloat(name));
+	    default:
+		return set.getString(name);
+	    }
+	} catch (RuntimeException e) {
+	    return e.getClass();
+	}
+    }
+
+    private static String dump(FeatureSet set) {
+	StringWriter sw = new StringWriter();
+	PrintWriter pw = new PrintWriter(sw);
+	if (set instanceof SlotFeatureSet) {
+	    ((SlotFeatureSet) set).dump(pw, 0, "features", true);
+	} else {
+	    ((FeatureSetImpl) set).dump(pw, 0, "features", true);
+	}
+	pw.flush();
+	return sw.toString();
+    }
+}
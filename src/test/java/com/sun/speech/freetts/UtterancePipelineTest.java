@@ -0,0 +1,210 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link UtterancePipeline} on a voice with no front end: the
+ * only processor sleeps for a while, longest for the first utterances,
+ * and the output queue is read back after the pipeline returns.
+ */
+public class UtterancePipelineTest {
+    private final static int UTTERANCES = 24;
+    private final static int WORKERS = 4;
+
+    @Test
+    public void testOutputIsInTokenizerOrder() throws ProcessException {
+	TestVoice voice = new TestVoice();
+	voice.addProcessor(new SleepingProcessor(voice, -1, -1));
+	FreeTTSSpeakable speakable = new FreeTTSSpeakableImpl("x");
+	CountingIterator utterances =
+	    new CountingIterator(voice, speakable, UTTERANCES);
+	UtterancePipeline pipeline = new UtterancePipeline(voice, WORKERS);
+	try {
+	    Assertions.assertTrue(pipeline.process(utterances, speakable));
+	} finally {
+	    pipeline.close();
+	}
+
+	List posted = voice.drain();
+	Assertions.assertEquals(UTTERANCES, posted.size());
+	for (int i = 0; i < UTTERANCES; i++) {
+	    Assertions.assertEquals(i,
+		    ((Utterance) posted.get(i)).getInt("index"));
+	}
+	Assertions.assertTrue(voice.threads.size() > 1,
+		"utterances were processed on " + voice.threads.size()
+		+ " thread");
+    }
+
+    @Test
+    public void testCancelStopsTokenizerAndOutput() throws ProcessException {
+	final int cancelAt = 5;
+	TestVoice voice = new TestVoice();
+	voice.addProcessor(new SleepingProcessor(voice, cancelAt, -1));
+	FreeTTSSpeakable speakable = new FreeTTSSpeakableImpl("x");
+	CountingIterator utterances =
+	    new CountingIterator(voice, speakable, UTTERANCES * 10);
+	UtterancePipeline pipeline = new UtterancePipeline(voice, WORKERS);
+	try {
+	    pipeline.process(utterances, speakable);
+	} finally {
+	    pipeline.close();
+	}
+
+	Assertions.assertTrue(speakable.isCompleted());
+	// no more than the utterances in flight are taken after the cancel
+	Assertions.assertTrue(utterances.count <= cancelAt + 1 + 2 * WORKERS,
+		utterances.count + " utterances taken from the tokenizer");
+	List posted = voice.drain();
+	for (int i = 0; i < posted.size(); i++) {
+	    Assertions.assertEquals(i,
+		    ((Utterance) posted.get(i)).getInt("index"));
+	}
+	Assertions.assertTrue(posted.size() <= cancelAt,
+		posted.size() + " utterances posted");
+    }
+
+    @Test
+    public void testFailureOfTheLastUtteranceIsReported() {
+	TestVoice voice = new TestVoice();
+	voice.addProcessor(new SleepingProcessor(voice, -1, UTTERANCES - 1));
+	FreeTTSSpeakable speakable = new FreeTTSSpeakableImpl("x");
+	CountingIterator utterances =
+	    new CountingIterator(voice, speakable, UTTERANCES);
+	UtterancePipeline pipeline = new UtterancePipeline(voice, WORKERS);
+	try {
+	    // the last utterance is never posted, so nothing would
+	    // complete the speakable
+	    Assertions.assertThrows(ProcessException.class,
+		    () -> pipeline.process(utterances, speakable));
+	} finally {
+	    pipeline.close();
+	}
+
+	List posted = voice.drain();
+	Assertions.assertEquals(UTTERANCES - 1, posted.size());
+	for (int i = 0; i < posted.size(); i++) {
+	    Assertions.assertEquals(i,
+		    ((Utterance) posted.get(i)).getInt("index"));
+	}
+    }
+
+    /**
+     * Hands out numbered utterances, as a tokenizer would, and counts
+     * how many were taken.
+     */
+    private static class CountingIterator implements Iterator {
+	private final Voice voice;
+	private final FreeTTSSpeakable speakable;
+	private final int size;
+	int count = 0;
+
+	CountingIterator(Voice voice, FreeTTSSpeakable speakable, int size) {
+	    this.voice = voice;
+	    this.speakable = speakable;
+	    this.size = size;
+	}
+
+	public boolean hasNext() {
+	    return count < size;
+	}
+
+	public Object next() {
+	    Utterance u = new Utterance(voice);
+	    u.setSpeakable(speakable);
+	    u.setInt("index", count++);
+	    return u;
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+
+    /**
+     * Sleeps longest on the first utterances, so later ones finish
+     * first, cancels the speakable at a given utterance and fails at
+     * another.
+     */
+    private static class SleepingProcessor implements UtteranceProcessor {
+	private final TestVoice voice;
+	private final int cancelAt;
+	private final int failAt;
+
+	SleepingProcessor(TestVoice voice, int cancelAt, int failAt) {
+	    this.voice = voice;
+	    this.cancelAt = cancelAt;
+	    this.failAt = failAt;
+	}
+
+	public void processUtterance(Utterance u) throws ProcessException {
+	    voice.threads.add(Thread.currentThread().getName());
+	    int index = u.getInt("index");
+	    if (index == cancelAt) {
+		u.getSpeakable().cancelled();
+		return;
+	    }
+	    if (index == failAt) {
+		throw new ProcessException("failed at " + index);
+	    }
+	    try {
+		Thread.sleep(Math.max(0, UTTERANCES - index) * 2);
+	    } catch (InterruptedException ie) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * A voice with no tokenizer and no audio, whose output queue is
+     * only read by the test.
+     */
+    private static class TestVoice extends Voice {
+	final Set threads = Collections.synchronizedSet(new HashSet());
+	private final OutputQueue queue = new OutputQueue(UTTERANCES * 10);
+
+	TestVoice() {
+	    setOutputQueue(queue);
+	}
+
+	void addProcessor(UtteranceProcessor processor) {
+	    getUtteranceProcessors().add(processor);
+	}
+
+	List drain() {
+	    queue.close();
+	    List posted = new ArrayList();
+	    Utterance u;
+	    while ((u = queue.pend()) != null) {
+		posted.add(u);
+	    }
+	    return posted;
+	}
+
+	public Tokenizer getTokenizer() {
+	    return null;
+	}
+
+	protected void loader() {
+	}
+
+	protected UtteranceProcessor getAudioOutput() {
+	    return null;
+	}
+    }
+}
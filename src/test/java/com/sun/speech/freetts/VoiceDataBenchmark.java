@@ -0,0 +1,140 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Random;
+
+import com.sun.speech.freetts.clunits.SyntheticDatabase;
+import com.sun.speech.freetts.en.us.CMUClusterUnitVoice;
+import com.sun.speech.freetts.en.us.CMULexicon;
+import com.sun.speech.freetts.en.us.CMUVoice;
+import com.sun.speech.freetts.util.Benchmark;
+
+/**
+ * Measures the heap each additional cluster unit voice costs, with the
+ * voice data shared through {@link SharedVoiceData} and with every
+ * voice loading its own, as one voice per worker thread would.  Each
+ * mode runs in a JVM of its own.  The voices share one lexicon, as the
+ * voices of a voice directory do, so only the voice data differs.
+ *
+ * <p>There is no unit database in the tree, so the database is a
+ * made-up one, written in text form by {@link SyntheticDatabase}.
+ *
+ * <pre>
+ * usage: VoiceDataBenchmark [-voices n] [-types n] [-instances n]
+ * </pre>
+ */
+public class VoiceDataBenchmark {
+    private final static String USAGE =
+	"VoiceDataBenchmark [-voices n] [-types n] [-instances n]";
+
+    /**
+     * Runs the benchmark.  The child JVMs are given the database and
+     * the sharing mode, with <code>-db path -shared true|false</code>.
+     *
+     * @param args the options, as in the usage above
+     *
+     * @throws Exception if the database can't be written, or a voice
+     *     can't be allocated
+     */
+    public static void main(String[] args) throws Exception {
+	Benchmark bench = new Benchmark(USAGE, args);
+	int voices = bench.getInt("-voices", 4);
+	int types = bench.getInt("-types", 40);
+	int instances = bench.getInt("-instances", 200);
+	String db = bench.getString("-db", null);
+	String shared = bench.getString("-shared", null);
+	if (!bench.checkOptions()) {
+	    return;
+	}
+
+	if (shared != null) {
+	    run(new File(db).toURI().toURL(), voices);
+	    return;
+	}
+
+	File file = File.createTempFile("voicedata", ".txt");
+	file.deleteOnExit();
+	int[][] vocabulary = SyntheticDatabase.vocabulary(types, 60,
+		new Random(11));
+	SyntheticDatabase.writeDatabase(file, types,
+		SyntheticDatabase.sentences(vocabulary, types * instances / 20,
+		    20, true, new Random(17)), 12, 1, new Random(19));
+	System.out.println(String.format(
+		    "%d voices, unit database of %d units, %.1f MB of text",
+		    voices, types * instances, file.length() / 1048576.0));
+	child(file, voices, "true");
+	child(file, voices, "false");
+    }
+
+    /**
+     * Allocates the voices in a JVM of its own.
+     */
+    private static void child(File file, int voices, String shared)
+	    throws Exception {
+	Benchmark.runChild(VoiceDataBenchmark.class,
+		new String[] {
+		    SharedVoiceData.SHARED_DATA_PROPERTY + "=" + shared },
+		new String[] { "-db", file.getPath(),
+		    "-voices", String.valueOf(voices), "-shared", shared });
+    }
+
+    private static void run(URL db, int count) throws Exception {
+	CMULexicon lexicon = new CMULexicon("cmudict04", false);
+	lexicon.load();
+	String shared = String.valueOf(SharedVoiceData.isShared());
+	Voice[] voices = new Voice[count];
+	long base = Benchmark.usedHeap();
+	long last = base;
+	long first = 0;
+	for (int i = 0; i < count; i++) {
+	    long start = System.nanoTime();
+	    voices[i] = new BenchmarkVoice(lexicon, db);
+	    voices[i].allocate();
+	    long nanos = System.nanoTime() - start;
+	    long used = Benchmark.usedHeap();
+	    if (i == 0) {
+		first = used - last;
+	    }
+	    System.out.println(String.format(
+			"shared %-5s voice %d: %8.1f MB heap, %7.1f ms to allocate",
+			shared, i + 1, (used - last) / 1048576.0, nanos / 1e6));
+	    last = used;
+	}
+	if (count > 1) {
+	    System.out.println(String.format(
+			"shared %-5s first voice %.1f MB, each additional voice "
+			+ "%.1f kB", shared, first / 1048576.0,
+			(last - base - first) / 1024.0 / (count - 1)));
+	}
+	SharedVoiceData.showMetrics("after allocating");
+	for (int i = 0; i < count; i++) {
+	    voices[i].deallocate();
+	}
+	System.out.println("references to the database after deallocating: "
+		+ SharedVoiceData.getReferenceCount("clunits", db));
+    }
+
+    /**
+     * A cluster unit voice on the voice data of {@link CMUVoice}.
+     */
+    private static class BenchmarkVoice extends CMUClusterUnitVoice {
+	BenchmarkVoice(CMULexicon lexicon, URL database) {
+	    super("voice_data_benchmark", Gender.NEUTRAL, Age.NEUTRAL,
+		    "voice data benchmark", Locale.US, "general", "none",
+		    lexicon, database);
+	}
+
+	protected URL getResource(String resource) {
+	    return CMUVoice.class.getResource(resource);
+	}
+    }
+}
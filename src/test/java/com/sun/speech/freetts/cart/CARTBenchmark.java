@@ -0,0 +1,154 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.cart;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.en.us.BenchmarkVoice;
+import com.sun.speech.freetts.en.us.CMUVoice;
+import com.sun.speech.freetts.util.Benchmark;
+
+/**
+ * Compares the compiled CART evaluator with the original node walk on
+ * the CARTs of {@link CMUVoice}.  The text is run through the front
+ * end of the voice to get real tokens, words, syllables and segments,
+ * then every CART interprets the items it is used on in the voice,
+ * once with each evaluator.  Both must give the same answers.
+ * Reports nanoseconds and bytes allocated per interpretation.
+ *
+ * <pre>
+ * usage: CARTBenchmark [-text file.txt] [-iterations n] [-warmup n]
+ * </pre>
+ */
+public class CARTBenchmark {
+    private final static String USAGE =
+	"CARTBenchmark [-text file.txt] [-iterations n] [-warmup n]";
+
+    private final static String[][] CARTS = {
+	{ "nums_cart.txt", Relation.TOKEN },
+	{ "phrasing_cart.txt", Relation.WORD },
+	{ "int_accent_cart.txt", Relation.SYLLABLE },
+	{ "int_tone_cart.txt", Relation.SYLLABLE },
+	{ "durz_cart.txt", Relation.SEGMENT },
+    };
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the options, as in the usage above
+     *
+     * @throws IOException if the text or a CART can't be read
+     */
+    public static void main(String[] args) throws IOException {
+	Benchmark bench = new Benchmark(USAGE, args);
+	String text = Benchmark.readText(bench.getString("-text", null));
+	int iterations = bench.getInt("-iterations", 20);
+	int warmup = bench.getInt("-warmup", 5);
+	if (!bench.checkOptions()) {
+	    return;
+	}
+
+	BenchmarkVoice voice = new BenchmarkVoice();
+	voice.allocate();
+	List utterances = voice.frontEnd(text);
+	System.out.println(utterances.size() + " utterances");
+
+	for (int c = 0; c < CARTS.length; c++) {
+	    URL url = CMUVoice.class.getResource(CARTS[c][0]);
+	    System.setProperty(CARTImpl.INTERPRET_CARTS_PROPERTY, "true");
+	    CART walked = new CARTImpl(url);
+	    System.setProperty(CARTImpl.INTERPRET_CARTS_PROPERTY, "false");
+	    CART compiled = new CARTImpl(url);
+
+	    Item[] items = items(utterances, CARTS[c][1]);
+	    for (int i = 0; i < items.length; i++) {
+		Object a = walked.interpret(items[i]);
+		Object b = compiled.interpret(items[i]);
+		if (!same(a, b)) {
+		    throw new IllegalStateException(CARTS[c][0] + ": "
+			    + items[i] + " gives " + a + " and " + b);
+		}
+	    }
+
+	    long sink = 0;
+	    for (int i = 0; i < warmup; i++) {
+		sink += run(walked, items) + run(compiled, items);
+	    }
+
+	    System.out.println(CARTS[c][0] + ": " + items.length + " "
+		    + CARTS[c][1] + " items");
+	    long count = items.length * (long) iterations;
+	    long allocated = Benchmark.allocatedBytes();
+	    long start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		sink += run(walked, items);
+	    }
+	    report("walked", System.nanoTime() - start,
+		    Benchmark.allocatedBytes() - allocated, count);
+
+	    allocated = Benchmark.allocatedBytes();
+	    start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		sink += run(compiled, items);
+	    }
+	    report("compiled", System.nanoTime() - start,
+		    Benchmark.allocatedBytes() - allocated, count);
+	    System.out.println("   (ignore) " + sink);
+	}
+
+	voice.deallocate();
+    }
+
+    /**
+     * Returns the items of a relation a CART is asked about.
+     * TokenToWords only asks the numbers CART about digit strings.
+     */
+    private static Item[] items(List utterances, String relation) {
+	List items = new ArrayList();
+	for (int u = 0; u < utterances.size(); u++) {
+	    Relation r = ((Utterance) utterances.get(u)).getRelation(relation);
+	    for (Item item = r == null ? null : r.getHead(); item != null;
+		    item = item.getNext()) {
+		if (!relation.equals(Relation.TOKEN)
+			|| item.toString().matches("[0-9]+")) {
+		    items.add(item);
+		}
+	    }
+	}
+	return (Item[]) items.toArray(new Item[items.size()]);
+    }
+
+    private static long run(CART cart, Item[] items) {
+	long sink = 0;
+	for (int i = 0; i < items.length; i++) {
+	    sink += cart.interpret(items[i]).hashCode();
+	}
+	return sink;
+    }
+
+    private static boolean same(Object a, Object b) {
+	if (a instanceof int[] && b instanceof int[]) {
+	    return Arrays.equals((int[]) a, (int[]) b);
+	}
+	return a == null ? b == null : a.equals(b);
+    }
+
+    private static void report(String name, long nanos, long allocated,
+	    long count) {
+	System.out.println(String.format(
+		    "   %-9s %8.1f ns %8.1f bytes allocated per interpretation",
+		    name, (double) nanos / count, (double) allocated / count));
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link JoinCosts} gives the same costs with a cache or
+ * a join table as without, and counts where they came from.
+ */
+public class JoinCostsTest {
+    private final static int PAIRS = 300;
+
+    @Test
+    public void testCacheGivesComputedCosts() throws IOException {
+	File file = database("joins", 12);
+	try {
+	    ClusterUnitDatabase db = ClusterUnitDatabase.load(file.toURI().toURL());
+	    int[][] pairs = pairs(db);
+	    JoinCosts computed = new JoinCosts(db);
+	    JoinCosts cached = new JoinCosts(db, 65536);
+
+	    for (int pass = 0; pass < 2; pass++) {
+		for (int i = 0; i < pairs.length; i++) {
+		    assertSameCost(computed, cached, pairs[i][0], pairs[i][1]);
+		}
+	    }
+	    Assertions.assertEquals(0, computed.getHits() + computed.getMisses());
+	    Assertions.assertEquals(2 * PAIRS,
+		    cached.getHits() + cached.getMisses());
+	    // the first pass computes every pair; a pair that shares its
+	    // slot with another may be computed again
+	    Assertions.assertTrue(cached.getMisses() >= PAIRS);
+	    Assertions.assertTrue(cached.getHits() > PAIRS * 9 / 10,
+		    cached.getHits() + " hits");
+	    Assertions.assertEquals(0, cached.getTableHits());
+
+	    // the frame costs are kept apart from the couples
+	    long misses = cached.getMisses();
+	    for (int i = 0; i < pairs.length; i++) {
+		Assertions.assertEquals(
+			computed.getOptimalCoupleFrame(pairs[i][0], pairs[i][1]),
+			cached.getOptimalCoupleFrame(pairs[i][0], pairs[i][1]));
+	    }
+	    Assertions.assertTrue(cached.getMisses() - misses >= PAIRS * 9 / 10);
+
+	    // adjacent units are not looked up at all
+	    long lookups = cached.getHits() + cached.getMisses();
+	    for (int u = 0; u < db.getNumberOfUnits(); u++) {
+		int prev = db.getPrevUnit(u);
+		if (prev != ClusterUnitDatabase.CLUNIT_NONE) {
+		    assertSameCost(computed, cached, prev, u);
+		}
+	    }
+	    Assertions.assertEquals(lookups,
+		    cached.getHits() + cached.getMisses());
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testTableGivesComputedCosts() throws IOException {
+	File file = database("joins", 12);
+	File joins = File.createTempFile("joins", ".joins");
+	try {
+	    ClusterUnitDatabase db = ClusterUnitDatabase.load(file.toURI().toURL());
+	    int[][] pairs = pairs(db);
+	    JoinCosts computed = new JoinCosts(db);
+	    JoinCosts cached = new JoinCosts(db, 65536);
+	    for (int i = 0; i < pairs.length; i++) {
+		cached.getOptimalCouple(pairs[i][0], pairs[i][1]);
+	    }
+	    int written = cached.dumpBinary(joins.getPath(), PAIRS);
+	    Assertions.assertTrue(written > PAIRS * 9 / 10, written + " pairs");
+	    Assertions.assertEquals(24 + written * 20, joins.length());
+
+	    // a table alone, without a cache
+	    JoinCosts table = new JoinCosts(db);
+	    table.loadTable(joins.toURI().toURL());
+	    for (int i = 0; i < pairs.length; i++) {
+		assertSameCost(computed, table, pairs[i][0], pairs[i][1]);
+	    }
+	    Assertions.assertEquals(written, table.getTableHits());
+	    Assertions.assertEquals(PAIRS - written, table.getMisses());
+	    Assertions.assertEquals(0, table.getHits());
+
+	    // a table in front of a cache fills the cache
+	    JoinCosts both = new JoinCosts(db, 65536);
+	    both.loadTable(joins.toURI().toURL());
+	    for (int pass = 0; pass < 2; pass++) {
+		for (int i = 0; i < pairs.length; i++) {
+		    assertSameCost(computed, both, pairs[i][0], pairs[i][1]);
+		}
+	    }
+	    Assertions.assertTrue(both.getTableHits() >= written);
+	    Assertions.assertTrue(both.getHits() > PAIRS * 9 / 10);
+
+	    Assertions.assertEquals(10, cached.dumpBinary(joins.getPath(), 10));
+	    Assertions.assertEquals(24 + 10 * 20, joins.length());
+	} finally {
+	    file.delete();
+	    joins.delete();
+	}
+    }
+
+    @Test
+    public void testDatabaseLoadsItsTable() throws IOException {
+	File file = database("joins", 12);
+	String path = file.getPath();
+	File joins = new File(path.substring(0, path.lastIndexOf("."))
+		+ ".joins");
+	try {
+	    ClusterUnitDatabase db = ClusterUnitDatabase.load(file.toURI().toURL());
+	    int[][] pairs = pairs(db);
+	    JoinCosts cached = db.getJoinCosts();
+	    Assertions.assertSame(cached, db.getJoinCosts());
+	    for (int i = 0; i < pairs.length; i++) {
+		cached.getOptimalCouple(pairs[i][0], pairs[i][1]);
+	    }
+	    int written = cached.dumpBinary(joins.getPath(), PAIRS);
+
+	    JoinCosts loaded = ClusterUnitDatabase.load(
+		    file.toURI().toURL()).getJoinCosts();
+	    for (int i = 0; i < pairs.length; i++) {
+		loaded.getOptimalCouple(pairs[i][0], pairs[i][1]);
+	    }
+	    Assertions.assertEquals(written, loaded.getTableHits());
+	} finally {
+	    file.delete();
+	    joins.delete();
+	}
+    }
+
+    @Test
+    public void testBadTableIsRejected() throws IOException {
+	File file = database("joins", 12);
+	File joins = File.createTempFile("joins", ".joins");
+	try {
+	    ClusterUnitDatabase db = ClusterUnitDatabase.load(file.toURI().toURL());
+	    DataOutputStream os =
+		new DataOutputStream(new FileOutputStream(joins));
+	    os.writeInt(0xcafebabe);
+	    os.writeInt(0x1000);
+	    os.writeInt(db.getNumberOfUnits());
+	    os.writeInt(0);
+	    os.close();
+	    JoinCosts costs = new JoinCosts(db);
+	    Assertions.assertThrows(IOException.class,
+		    () -> costs.loadTable(joins.toURI().toURL()));
+	} finally {
+	    file.delete();
+	    joins.delete();
+	}
+    }
+
+    @Test
+    public void testTableOfAnotherDatabaseIsIgnored() throws IOException {
+	File file = database("joins", 12);
+	File other = database("other", 10);
+	File joins = File.createTempFile("joins", ".joins");
+	try {
+	    ClusterUnitDatabase db = ClusterUnitDatabase.load(file.toURI().toURL());
+	    ClusterUnitDatabase otherDB =
+		ClusterUnitDatabase.load(other.toURI().toURL());
+	    Assertions.assertTrue(db.getNumberOfUnits()
+		    != otherDB.getNumberOfUnits());
+	    int[][] otherPairs = pairs(otherDB);
+	    JoinCosts otherCosts = new JoinCosts(otherDB, 65536);
+	    for (int i = 0; i < otherPairs.length; i++) {
+		otherCosts.getOptimalCouple(otherPairs[i][0], otherPairs[i][1]);
+	    }
+	    Assertions.assertTrue(otherCosts.dumpBinary(joins.getPath(),
+			PAIRS) > 0);
+
+	    JoinCosts computed = new JoinCosts(db);
+	    JoinCosts costs = new JoinCosts(db);
+	    costs.loadTable(joins.toURI().toURL());
+	    int[][] pairs = pairs(db);
+	    for (int i = 0; i < pairs.length; i++) {
+		assertSameCost(computed, costs, pairs[i][0], pairs[i][1]);
+	    }
+	    // ignored, so there is neither a table nor a cache to look in
+	    Assertions.assertEquals(0, costs.getTableHits() + costs.getMisses());
+	} finally {
+	    file.delete();
+	    other.delete();
+	    joins.delete();
+	}
+    }
+
+    @Test
+    public void testTableOfASameSizeDatabaseIsIgnored() throws IOException {
+	File file = database("joins", 12);
+	File other = database("other", 12, 23);
+	File joins = File.createTempFile("joins", ".joins");
+	try {
+	    ClusterUnitDatabase db = ClusterUnitDatabase.load(file.toURI().toURL());
+	    ClusterUnitDatabase otherDB =
+		ClusterUnitDatabase.load(other.toURI().toURL());
+	    // the same units, with other frames
+	    Assertions.assertEquals(db.getNumberOfUnits(),
+		    otherDB.getNumberOfUnits());
+	    Assertions.assertTrue(db.getChecksum() != otherDB.getChecksum());
+	    int[][] pairs = pairs(db);
+	    JoinCosts computed = new JoinCosts(db);
+	    JoinCosts otherCosts = new JoinCosts(otherDB, 65536);
+	    int differ = 0;
+	    for (int i = 0; i < pairs.length; i++) {
+		if (otherCosts.getOptimalCouple(pairs[i][0], pairs[i][1]).cost
+			!= computed.getOptimalCouple(pairs[i][0],
+			    pairs[i][1]).cost) {
+		    differ++;
+		}
+	    }
+	    Assertions.assertTrue(differ > PAIRS / 2, differ + " differ");
+	    Assertions.assertTrue(otherCosts.dumpBinary(joins.getPath(),
+			PAIRS) > 0);
+
+	    JoinCosts costs = new JoinCosts(db);
+	    costs.loadTable(joins.toURI().toURL());
+	    for (int i = 0; i < pairs.length; i++) {
+		assertSameCost(computed, costs, pairs[i][0], pairs[i][1]);
+	    }
+	    Assertions.assertEquals(0, costs.getTableHits() + costs.getMisses());
+
+	    // a binary dump of the database keeps its checksum, and its
+	    // table
+	    File bin = File.createTempFile("joins", ".bin");
+	    try {
+		db.dumpBinary(bin.getPath());
+		ClusterUnitDatabase binDB =
+		    ClusterUnitDatabase.load(bin.toURI().toURL());
+		Assertions.assertEquals(db.getChecksum(), binDB.getChecksum());
+		otherDB.dumpBinary(bin.getPath());
+		Assertions.assertEquals(otherDB.getChecksum(),
+			ClusterUnitDatabase.load(bin.toURI().toURL())
+			    .getChecksum());
+		JoinCosts binCosts = new JoinCosts(binDB);
+		binCosts.loadTable(joins.toURI().toURL());
+		Assertions.assertEquals(0, binCosts.getTableHits()
+			+ binCosts.getMisses() + binCosts.getHits());
+	    } finally {
+		bin.delete();
+	    }
+	} finally {
+	    file.delete();
+	    other.delete();
+	    joins.delete();
+	}
+    }
+
+    private static void assertSameCost(JoinCosts expected, JoinCosts actual,
+	    int u0, int u1) {
+	Cost e = expected.getOptimalCouple(u0, u1);
+	Cost a = actual.getOptimalCouple(u0, u1);
+	String pair = u0 + "," + u1;
+	Assertions.assertEquals(e.cost, a.cost, pair);
+	Assertions.assertEquals(e.u0Move, a.u0Move, pair);
+	Assertions.assertEquals(e.u1Move, a.u1Move, pair);
+    }
+
+    /**
+     * Returns distinct pairs of units that are not adjacent in the
+     * recordings.
+     */
+    private static int[][] pairs(ClusterUnitDatabase db) {
+	Random random = new Random(29);
+	Set seen = new HashSet();
+	int[][] pairs = new int[PAIRS][];
+	int n = db.getNumberOfUnits();
+	for (int i = 0; i < PAIRS; ) {
+	    int u0 = random.nextInt(n);
+	    int u1 = random.nextInt(n);
+	    if (db.getPrevUnit(u1) != u0 && seen.add(u0 + "," + u1)) {
+		pairs[i++] = new int[] { u0, u1 };
+	    }
+	}
+	return pairs;
+    }
+
+    /**
+     * Writes a made-up database with optimal coupling, so the unit
+     * boundaries move.
+     */
+    private static File database(String prefix, int types)
+	    throws IOException {
+	return database(prefix, types, 19);
+    }
+
+    /**
+     * Writes a made-up database as above, with the frames and clusters
+     * made from the given seed.
+     */
+    private static File database(String prefix, int types, long seed)
+	    throws IOException {
+	File db = File.createTempFile(prefix, ".txt");
+	int[][] vocabulary = SyntheticDatabase.vocabulary(types, 20,
+		new Random(11));
+	SyntheticDatabase.writeDatabase(db, types,
+		SyntheticDatabase.sentences(vocabulary, types, 20, true,
+		    new Random(17)), 6, 2, new Random(seed));
+	return db;
+    }
+}
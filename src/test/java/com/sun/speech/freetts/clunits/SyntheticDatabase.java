@@ -0,0 +1,211 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Writes made-up cluster unit databases for the tests and benchmarks,
+ * as there is no cluster unit database in the tree.  A vocabulary of
+ * words (runs of unit types) is made up; the database is a corpus of
+ * sentences of those words, recorded unit after unit with random MCEP
+ * (25 channels) and STS frames, 10 to 30 frames to a unit, and a CART
+ * per unit type picks a cluster of candidates.
+ */
+public class SyntheticDatabase {
+    private final static int CLUNIT_NONE = 65535;
+    private final static int MCEP_CHANNELS = 25;
+
+    private SyntheticDatabase() {
+    }
+
+    /**
+     * Makes up a vocabulary of words of 3 to 6 unit types.  Every type
+     * starts a word.
+     *
+     * @param types the number of unit types
+     * @param words the number of words; at least <code>types</code>
+     *     are made
+     * @param random the source of the words
+     *
+     * @return the unit types of each word
+     */
+    public static int[][] vocabulary(int types, int words, Random random) {
+	int[][] vocabulary = new int[Math.max(words, types)][];
+	for (int w = 0; w < vocabulary.length; w++) {
+	    vocabulary[w] = new int[3 + random.nextInt(4)];
+	    for (int i = 0; i < vocabulary[w].length; i++) {
+		vocabulary[w][i] = i == 0 && w < types ? w
+		    : random.nextInt(types);
+	    }
+	}
+	return vocabulary;
+    }
+
+    /**
+     * Makes up sentences of random words, cut to length.
+     *
+     * @param vocabulary the words, from {@link #vocabulary}
+     * @param count the number of sentences
+     * @param length the number of units in a sentence
+     * @param everyWord if <code>true</code>, the whole vocabulary comes
+     *     first, so every word is in the sentences
+     * @param random the source of the sentences
+     *
+     * @return the unit types of each sentence
+     */
+    public static int[][] sentences(int[][] vocabulary, int count,
+	    int length, boolean everyWord, Random random) {
+	int[][] sentences = new int[count][length];
+	int word = 0;
+	int at = 0;
+	int[] w = null;
+	for (int s = 0; s < count; s++) {
+	    for (int i = 0; i < length; i++) {
+		if (w == null || at == w.length) {
+		    w = vocabulary[everyWord && word < vocabulary.length
+			? word : random.nextInt(vocabulary.length)];
+		    word++;
+		    at = 0;
+		}
+		sentences[s][i] = w[at++];
+	    }
+	}
+	return sentences;
+    }
+
+    /**
+     * Returns the name of a unit type, as the database calls it.
+     *
+     * @param type the unit type
+     *
+     * @return the name of the type
+     */
+    public static String typeName(int type) {
+	return String.format("t%03d", type);
+    }
+
+    /**
+     * Writes a made-up cluster unit database in text form, recording
+     * the given corpus.  Units are numbered type by type, as the
+     * database requires, but recorded in corpus order: a sentence at a
+     * time, each unit's frames following those of the one before.
+     *
+     * @param file where the database is written
+     * @param types the number of unit types
+     * @param corpus the unit types of each recorded sentence, from
+     *     {@link #sentences}
+     * @param cluster the number of candidates the CART of a unit type
+     *     gives
+     * @param coupling the optimal coupling of the database, 1 or 2
+     * @param random the source of the frames and clusters
+     *
+     * @throws IOException if the database can't be written
+     */
+    public static void writeDatabase(File file, int types, int[][] corpus,
+	    int cluster, int coupling, Random random) throws IOException {
+	int[] instances = new int[types];
+	int[] first = new int[types];
+	int[] seen = new int[types];
+	int count = 0;
+	for (int s = 0; s < corpus.length; s++) {
+	    for (int i = 0; i < corpus[s].length; i++, count++) {
+		instances[corpus[s][i]]++;
+	    }
+	}
+	for (int t = 1; t < types; t++) {
+	    first[t] = first[t - 1] + instances[t - 1];
+	}
+
+	int[] start = new int[count];
+	int[] end = new int[count];
+	int[] prev = new int[count];
+	int[] next = new int[count];
+	int[][] units = new int[corpus.length][];
+	int frames = 0;
+	for (int s = 0; s < corpus.length; s++) {
+	    units[s] = new int[corpus[s].length];
+	    for (int i = 0; i < corpus[s].length; i++) {
+		int type = corpus[s][i];
+		int unit = first[type] + seen[type]++;
+		units[s][i] = unit;
+		start[unit] = frames;
+		// 50 to 150 ms at a 5 ms frame shift
+		frames += 10 + random.nextInt(21);
+		end[unit] = frames;
+	    }
+	    for (int i = 0; i < units[s].length; i++) {
+		prev[units[s][i]] = i == 0 ? CLUNIT_NONE : units[s][i - 1];
+		next[units[s][i]] = i == units[s].length - 1 ? CLUNIT_NONE
+		    : units[s][i + 1];
+	    }
+	}
+	frames++;
+
+	PrintWriter out = new PrintWriter(new FileWriter(file));
+	out.println("CONTINUITY_WEIGHT 5");
+	out.println("OPTIMAL_COUPLING " + coupling);
+	out.println("EXTEND_SELECTIONS 2");
+	out.println("JOIN_METHOD 1");
+	StringBuffer weights = new StringBuffer("JOIN_WEIGHTS "
+		+ MCEP_CHANNELS);
+	for (int c = 0; c < MCEP_CHANNELS; c++) {
+	    weights.append(" ").append(32768 + random.nextInt(32768));
+	}
+	out.println(weights);
+
+	out.println("STS STS " + frames + " 2 16000 -1.0 2.0 0.0 1");
+	for (int f = 0; f < frames; f++) {
+	    out.println("FRAME " + (32768 + random.nextInt(2000) - 1000)
+		    + " " + (32768 + random.nextInt(2000) - 1000));
+	    int size = 60 + random.nextInt(80);
+	    StringBuffer residual = new StringBuffer("RESIDUAL " + size);
+	    for (int r = 0; r < size; r++) {
+		residual.append(" ").append(random.nextInt(256));
+	    }
+	    out.println(residual);
+	}
+	out.println("STS MCEP " + frames + " " + MCEP_CHANNELS
+		+ " 16000 -1.0 2.0 0.0 1");
+	for (int f = 0; f < frames; f++) {
+	    StringBuffer frame = new StringBuffer("FRAME");
+	    for (int c = 0; c < MCEP_CHANNELS; c++) {
+		frame.append(" ").append(32768 + random.nextInt(16000) - 8000);
+	    }
+	    out.println(frame);
+	    out.println("RESIDUAL 0");
+	}
+
+	for (int t = 0; t < types; t++) {
+	    for (int u = first[t]; u < first[t] + instances[t]; u++) {
+		// two unit types to a phone
+		out.println("UNITS " + t + " " + t / 2 + " " + start[u] + " "
+			+ end[u] + " " + prev[u] + " " + next[u]);
+	    }
+	}
+	for (int t = 0; t < types; t++) {
+	    out.println("UNIT_TYPE " + typeName(t) + " " + first[t] + " "
+		    + instances[t]);
+	    StringBuffer list = new StringBuffer();
+	    for (int c = 0; c < cluster; c++) {
+		list.append(c == 0 ? "" : ",")
+		    .append(random.nextInt(instances[t]));
+	    }
+	    out.println("CART " + typeName(t) + " 1");
+	    out.println("LEAF List(" + list + ")");
+	}
+	out.close();
+    }
+}
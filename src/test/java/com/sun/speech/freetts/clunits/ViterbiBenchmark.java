@@ -0,0 +1,255 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.ProcessException;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.util.Benchmark;
+
+import de.dfki.lt.freetts.ClusterUnitNamer;
+
+/**
+ * Compares the linked Viterbi search of {@link ClusterUnitSelector}
+ * with the array decoder, with and without the join cost cache, a
+ * precomputed join table and beam pruning.
+ *
+ * <p>There is no cluster unit database in the tree, so a
+ * {@link SyntheticDatabase} is written to a temporary file.  The
+ * utterances are other sentences of the same words, so the contexts
+ * of the corpus recur, as in real text.
+ *
+ * <p>Reports segments per second and bytes allocated per segment for
+ * each search, and how many segments get the same unit (entry, start
+ * and end) as the linked search.  Without pruning every segment must
+ * agree.  The table holds the pairs the cached selector used most
+ * (<code>-pairs</code>), and is used without a cache; the hit rates of
+ * both are shown at the end.
+ *
+ * <pre>
+ * usage: ViterbiBenchmark [-types n] [-instances n] [-words n]
+ *                         [-cluster n] [-segments n] [-utterances n]
+ *                         [-coupling 1|2] [-beam n] [-threshold n]
+ *                         [-cache n] [-pairs n] [-iterations n]
+ *                         [-warmup n]
+ * </pre>
+ */
+public class ViterbiBenchmark {
+    private final static String USAGE =
+	"ViterbiBenchmark [-types n] [-instances n] [-words n] [-cluster n] "
+	+ "[-segments n] [-utterances n] [-coupling 1|2] [-beam n] "
+	+ "[-threshold n] [-cache n] [-pairs n] [-iterations n] "
+	+ "[-warmup n]";
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the options, as in the usage above
+     *
+     * @throws Exception if the database can't be written or read, or
+     *     unit selection fails
+     */
+    public static void main(String[] args) throws Exception {
+	Benchmark bench = new Benchmark(USAGE, args);
+	int types = bench.getInt("-types", 40);
+	int instances = bench.getInt("-instances", 60);
+	int words = bench.getInt("-words", 60);
+	int cluster = bench.getInt("-cluster", 12);
+	int segments = bench.getInt("-segments", 40);
+	int utterances = bench.getInt("-utterances", 50);
+	int coupling = bench.getInt("-coupling", 1);
+	int beam = bench.getInt("-beam", 8);
+	int threshold = bench.getInt("-threshold", 0);
+	int cache = bench.getInt("-cache", 65536);
+	int pairs = bench.getInt("-pairs", 20000);
+	int iterations = bench.getInt("-iterations", 5);
+	int warmup = bench.getInt("-warmup", 2);
+	if (!bench.checkOptions()) {
+	    return;
+	}
+
+	File db = File.createTempFile("viterbi", ".txt");
+	db.deleteOnExit();
+	int[][] vocabulary = SyntheticDatabase.vocabulary(types, words,
+		new Random(11));
+	// the corpus is read in sentences of 20 units
+	SyntheticDatabase.writeDatabase(db, types,
+		SyntheticDatabase.sentences(vocabulary, types * instances / 20,
+		    20, true, new Random(17)), cluster, coupling,
+		new Random(19));
+	String[][] texts = names(SyntheticDatabase.sentences(vocabulary,
+		    utterances, segments, false, new Random(23)));
+	System.out.println(types + " unit types of " + instances
+		+ " instances on average, " + vocabulary.length + " words, "
+		+ cluster + " candidates per cluster, " + utterances
+		+ " utterances of " + segments + " segments");
+
+	ClusterUnitSelector linked = selector(db, true, 0, 0, 0);
+	ClusterUnitSelector full = selector(db, false, 0, 0, 0);
+	ClusterUnitSelector cached = selector(db, false, 0, 0, cache);
+	ClusterUnitSelector pruned = selector(db, false, beam, threshold,
+		cache);
+
+	int[][] reference = run(linked, texts);
+	run(cached, texts);
+	String path = db.getPath();
+	File joins = new File(path.substring(0, path.lastIndexOf("."))
+		+ ".joins");
+	joins.deleteOnExit();
+	System.out.println(cached.dumpJoinCosts(joins.getPath(), pairs)
+		+ " pairs in the join table");
+	ClusterUnitSelector table = selector(db, false, 0, 0, 0);
+
+	for (int i = 0; i < warmup; i++) {
+	    run(linked, texts);
+	    run(full, texts);
+	    run(cached, texts);
+	    run(table, texts);
+	    run(pruned, texts);
+	}
+	measure("linked", linked, texts, iterations, reference);
+	measure("arrays", full, texts, iterations, reference);
+	measure("cached", cached, texts, iterations, reference);
+	measure("table", table, texts, iterations, reference);
+	measure("beam " + beam + "/" + threshold, pruned, texts, iterations,
+		reference);
+	cached.showMetrics("cached");
+	table.showMetrics("table");
+    }
+
+    /**
+     * Makes a selector on the database.  The search and the cache are
+     * chosen when the selector is made.
+     */
+    private static ClusterUnitSelector selector(File db, boolean linked,
+	    int beam, int threshold, int cacheSize) throws IOException {
+	System.setProperty(ClusterUnitSelector.LINKED_VITERBI_PROPERTY,
+		String.valueOf(linked));
+	System.setProperty(ClusterUnitSelector.JOIN_CACHE_SIZE_PROPERTY,
+		String.valueOf(cacheSize));
+	System.setProperty(ClusterUnitSelector.BEAM_WIDTH_PROPERTY,
+		String.valueOf(beam));
+	System.setProperty(ClusterUnitSelector.BEAM_THRESHOLD_PROPERTY,
+		String.valueOf(threshold));
+	return new ClusterUnitSelector(db.toURI().toURL(),
+		new ClusterUnitNamer() {
+		    public void setUnitName(Item seg) {
+			seg.getFeatures().setString("clunit_name",
+				seg.getFeatures().getString("name"));
+		    }
+		});
+    }
+
+    private static void measure(String name, ClusterUnitSelector selector,
+	    String[][] texts, int iterations, int[][] reference)
+	    throws ProcessException {
+	long nanos = 0;
+	long allocated = 0;
+	int[][] units = null;
+	for (int i = 0; i < iterations; i++) {
+	    // the segments are made outside the timing
+	    List utts = utterances(texts);
+	    long bytes = Benchmark.allocatedBytes();
+	    long start = System.nanoTime();
+	    for (int u = 0; u < utts.size(); u++) {
+		selector.processUtterance((Utterance) utts.get(u));
+	    }
+	    nanos += System.nanoTime() - start;
+	    allocated += Benchmark.allocatedBytes() - bytes;
+	    units = units(utts);
+	}
+	int agree = 0;
+	int total = 0;
+	for (int u = 0; u < units.length; u++) {
+	    for (int s = 0; s < units[u].length; s += 3, total++) {
+		if (units[u][s] == reference[u][s]
+			&& units[u][s + 1] == reference[u][s + 1]
+			&& units[u][s + 2] == reference[u][s + 2]) {
+		    agree++;
+		}
+	    }
+	}
+	long count = (long) total * iterations;
+	System.out.println(String.format(
+		    "   %-11s %10.0f segments/s %8.1f bytes allocated per "
+		    + "segment, %d of %d units agree", name,
+		    count * 1e9 / nanos, (double) allocated / count, agree,
+		    total));
+    }
+
+    private static int[][] run(ClusterUnitSelector selector,
+	    String[][] texts) throws ProcessException {
+	List utts = utterances(texts);
+	for (int u = 0; u < utts.size(); u++) {
+	    selector.processUtterance((Utterance) utts.get(u));
+	}
+	return units(utts);
+    }
+
+    /**
+     * Returns the entry, start and end of every unit.
+     */
+    private static int[][] units(List utts) {
+	int[][] units = new int[utts.size()][];
+	for (int u = 0; u < utts.size(); u++) {
+	    List values = new ArrayList();
+	    Relation relation =
+		((Utterance) utts.get(u)).getRelation(Relation.UNIT);
+	    for (Item unit = relation.getHead(); unit != null;
+		    unit = unit.getNext()) {
+		values.add(Integer.valueOf(
+			unit.getFeatures().getInt("unit_entry")));
+		values.add(Integer.valueOf(
+			unit.getFeatures().getInt("unit_start")));
+		values.add(Integer.valueOf(
+			unit.getFeatures().getInt("unit_end")));
+	    }
+	    units[u] = new int[values.size()];
+	    for (int i = 0; i < units[u].length; i++) {
+		units[u][i] = ((Integer) values.get(i)).intValue();
+	    }
+	}
+	return units;
+    }
+
+    private static List utterances(String[][] texts) {
+	List utts = new ArrayList();
+	for (int u = 0; u < texts.length; u++) {
+	    Utterance utt = new Utterance(null);
+	    Relation segs = utt.createRelation(Relation.SEGMENT);
+	    for (int s = 0; s < texts[u].length; s++) {
+		Item seg = segs.appendItem();
+		seg.getFeatures().setString("name", texts[u][s]);
+		seg.getFeatures().setFloat("end", (s + 1) * 0.08f);
+	    }
+	    utts.add(utt);
+	}
+	return utts;
+    }
+
+    private static String[][] names(int[][] sentences) {
+	String[][] texts = new String[sentences.length][];
+	for (int s = 0; s < sentences.length; s++) {
+	    texts[s] = new String[sentences[s].length];
+	    for (int i = 0; i < sentences[s].length; i++) {
+		texts[s][i] = SyntheticDatabase.typeName(sentences[s][i]);
+	    }
+	}
+	return texts;
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.ProcessException;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+
+import de.dfki.lt.freetts.ClusterUnitNamer;
+
+/**
+ * Checks that the array decoder selects the same units as the linked
+ * Viterbi search of {@link ClusterUnitSelector} when nothing is
+ * pruned, on a {@link SyntheticDatabase}.
+ */
+public class ViterbiDecoderTest {
+    private final static int TYPES = 12;
+    private final static int SEGMENTS = 30;
+
+    @Test
+    public void testMatchesLinkedSearch() throws Exception {
+	for (int coupling = 1; coupling <= 2; coupling++) {
+	    File db = database(coupling);
+	    try {
+		String[][] texts = texts();
+		int[][] linked = run(selector(db, true, 0, 0, 0), texts);
+		int[][] arrays = run(selector(db, false, 0, 0, 0), texts);
+		int[][] cached = run(selector(db, false, 0, 0, 4096), texts);
+		for (int u = 0; u < texts.length; u++) {
+		    Assertions.assertEquals(SEGMENTS * 3, linked[u].length);
+		    Assertions.assertArrayEquals(linked[u], arrays[u],
+			    "utterance " + u + ", coupling " + coupling);
+		    Assertions.assertArrayEquals(linked[u], cached[u],
+			    "utterance " + u + ", coupling " + coupling);
+		}
+	    } finally {
+		db.delete();
+	    }
+	}
+    }
+
+    @Test
+    public void testBeamSelectsEveryUnit() throws Exception {
+	File db = database(1);
+	try {
+	    String[][] texts = texts();
+	    int[][] pruned = run(selector(db, false, 2, 0, 0), texts);
+	    for (int u = 0; u < texts.length; u++) {
+		// a unit for every segment, whatever was pruned on the way
+		Assertions.assertEquals(SEGMENTS * 3, pruned[u].length);
+		for (int i = 0; i < pruned[u].length; i += 3) {
+		    Assertions.assertTrue(pruned[u][i + 1] < pruned[u][i + 2]);
+		}
+	    }
+	} finally {
+	    db.delete();
+	}
+    }
+
+    /**
+     * Writes a made-up database with the given optimal coupling.
+     */
+    private static File database(int coupling) throws IOException {
+	File db = File.createTempFile("viterbi", ".txt");
+	int[][] vocabulary = SyntheticDatabase.vocabulary(TYPES, 20,
+		new Random(11));
+	SyntheticDatabase.writeDatabase(db, TYPES,
+		SyntheticDatabase.sentences(vocabulary, 15, 20, true,
+		    new Random(17)), 6, coupling, new Random(19));
+	return db;
+    }
+
+    /**
+     * Returns the unit type names of a few utterances.
+     */
+    private static String[][] texts() {
+	int[][] vocabulary = SyntheticDatabase.vocabulary(TYPES, 20,
+		new Random(11));
+	int[][] sentences = SyntheticDatabase.sentences(vocabulary, 5,
+		SEGMENTS, false, new Random(23));
+	String[][] texts = new String[sentences.length][SEGMENTS];
+	for (int s = 0; s < sentences.length; s++) {
+	    for (int i = 0; i < SEGMENTS; i++) {
+		texts[s][i] = SyntheticDatabase.typeName(sentences[s][i]);
+	    }
+	}
+	return texts;
+    }
+
+    /**
+     * Makes a selector on the database.  The search and the cache are
+     * read from the system properties when the selector is made, and
+     * put back afterwards.
+     */
+    private static ClusterUnitSelector selector(File db, boolean linked,
+	    int beam, int threshold, int cacheSize) throws IOException {
+	try {
+	    System.setProperty(ClusterUnitSelector.LINKED_VITERBI_PROPERTY,
+		    String.valueOf(linked));
+	    System.setProperty(ClusterUnitSelector.JOIN_CACHE_SIZE_PROPERTY,
+		    String.valueOf(cacheSize));
+	    System.setProperty(ClusterUnitSelector.BEAM_WIDTH_PROPERTY,
+		    String.valueOf(beam));
+	    System.setProperty(ClusterUnitSelector.BEAM_THRESHOLD_PROPERTY,
+		    String.valueOf(threshold));
+	    return new ClusterUnitSelector(db.toURI().toURL(),
+		    new ClusterUnitNamer() {
+			public void setUnitName(Item seg) {
+			    seg.getFeatures().setString("clunit_name",
+				    seg.getFeatures().getString("name"));
+			}
+		    });
+	} finally {
+	    System.clearProperty(ClusterUnitSelector.LINKED_VITERBI_PROPERTY);
+	    System.clearProperty(ClusterUnitSelector.JOIN_CACHE_SIZE_PROPERTY);
+	    System.clearProperty(ClusterUnitSelector.BEAM_WIDTH_PROPERTY);
+	    System.clearProperty(ClusterUnitSelector.BEAM_THRESHOLD_PROPERTY);
+	}
+    }
+
+    /**
+     * Selects units for the texts and returns the entry, start and end
+     * of every unit.
+     */
+    private static int[][] run(ClusterUnitSelector selector,
+	    String[][] texts) throws ProcessException {
+	int[][] units = new int[texts.length][];
+	for (int u = 0; u < texts.length; u++) {
+	    Utterance utt = new Utterance(null);
+	    Relation segs = utt.createRelation(Relation.SEGMENT);
+	    for (int s = 0; s < texts[u].length; s++) {
+		Item seg = segs.appendItem();
+		seg.getFeatures().setString("name", texts[u][s]);
+		seg.getFeatures().setFloat("end", (s + 1) * 0.08f);
+	    }
+	    selector.processUtterance(utt);
+
+	    List values = new ArrayList();
+	    for (Item unit = utt.getRelation(Relation.UNIT).getHead();
+		    unit != null; unit = unit.getNext()) {
+		values.add(Integer.valueOf(
+			unit.getFeatures().getInt("unit_entry")));
+		values.add(Integer.valueOf(
+			unit.getFeatures().getInt("unit_start")));
+		values.add(Integer.valueOf(
+			unit.getFeatures().getInt("unit_end")));
+	    }
+	    units[u] = new int[values.size()];
+	    for (int i = 0; i < units[u].length; i++) {
+		units[u][i] = ((Integer) values.get(i)).intValue();
+	    }
+	}
+	return units;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.en.us;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.sun.speech.freetts.Age;
+import com.sun.speech.freetts.Gender;
+import com.sun.speech.freetts.ItemArena;
+import com.sun.speech.freetts.Token;
+import com.sun.speech.freetts.Tokenizer;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.UtteranceProcessor;
+
+/**
+ * The front end of {@link CMUVoice}, for the benchmarks of the parts
+ * of FreeTTS it uses: CARTs, feature paths and feature sets.  There is
+ * no unit database, so nothing is synthesized; {@link #frontEnd} runs
+ * text through the processors up to and including the durations, and
+ * returns the utterances with their tokens, words, syllables and
+ * segments.
+ */
+public class BenchmarkVoice extends CMUVoice {
+    /**
+     * Utterances keep their items as they always have.
+     */
+    public final static int NO_ARENAS = 0;
+
+    /**
+     * Each utterance keeps its items in an arena of its own.
+     */
+    public final static int ARENA_PER_UTTERANCE = 1;
+
+    /**
+     * Every utterance resets and reuses one arena, as a voice does, so
+     * only the last utterance made is usable.
+     */
+    public final static int SHARED_ARENA = 2;
+
+    /**
+     * The most tokens in an utterance.
+     */
+    private final static int TOKENS_PER_UTTERANCE = 40;
+
+    private ItemArena sharedArena = new ItemArena();
+
+    /**
+     * Creates the voice, with the cmudict04 lexicon.
+     */
+    public BenchmarkVoice() {
+	super("benchmark", Gender.NEUTRAL, Age.NEUTRAL, "benchmark voice",
+		Locale.US, "general", "none",
+		new CMULexicon("cmudict04", false));
+    }
+
+    /**
+     * Returns the voice data of {@link CMUVoice}.
+     *
+     * @param resource the resource name
+     *
+     * @return the URL of the resource
+     */
+    protected URL getResource(String resource) {
+	return CMUVoice.class.getResource(resource);
+    }
+
+    /**
+     * Runs the front end of the voice over the given text.
+     *
+     * @param text the text
+     *
+     * @return the utterances
+     *
+     * @throws IOException if a processor fails
+     */
+    public List frontEnd(String text) throws IOException {
+	return frontEnd(text, NO_ARENAS);
+    }
+
+    /**
+     * Runs the front end of the voice over the given text, keeping the
+     * items of the utterances as given.
+     *
+     * @param text the text
+     * @param arenas {@link #NO_ARENAS}, {@link #ARENA_PER_UTTERANCE}
+     *     or {@link #SHARED_ARENA}
+     *
+     * @return the utterances
+     *
+     * @throws IOException if a processor fails
+     */
+    public List frontEnd(String text, int arenas) throws IOException {
+	List utterances = new ArrayList();
+	List processors = getUtteranceProcessors();
+	Tokenizer tokenizer = getTokenizer();
+	tokenizer.setInputText(text);
+	List tokens = new ArrayList();
+	while (tokenizer.hasMoreTokens()) {
+	    Token token = tokenizer.getNextToken();
+	    if (token.getWord().length() > 0) {
+		tokens.add(token);
+	    }
+	    if (tokens.size() >= TOKENS_PER_UTTERANCE
+		    || (!tokenizer.hasMoreTokens() && !tokens.isEmpty())) {
+		ItemArena arena = null;
+		if (arenas == ARENA_PER_UTTERANCE) {
+		    arena = new ItemArena();
+		} else if (arenas == SHARED_ARENA) {
+		    arena = sharedArena;
+		    arena.reset();
+		}
+		Utterance utterance = new Utterance(this, tokens, arena);
+		for (int p = 0; p < processors.size()
+			&& processors.get(p) != null; p++) {
+		    try {
+			((UtteranceProcessor) processors.get(p))
+			    .processUtterance(utterance);
+		    } catch (Exception e) {
+			throw new IOException(e);
+		    }
+		}
+		utterances.add(utterance);
+		tokens = new ArrayList();
+	    }
+	}
+	return utterances;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Writes a {@link CompactLexicon} image and reads it back.
+ */
+public class CompactLexiconTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+	Map lexicon = lexicon();
+	File file = File.createTempFile("compact", ".bin");
+	try {
+	    CompactLexicon.write(lexicon, file.getPath());
+	    CompactLexicon compact = CompactLexicon.load(file.toURI().toURL());
+
+	    Assertions.assertEquals(lexicon.size(), compact.size());
+	    Assertions.assertEquals(file.length(), compact.getImageSize());
+	    for (Iterator i = lexicon.entrySet().iterator(); i.hasNext(); ) {
+		Map.Entry e = (Map.Entry) i.next();
+		String key = (String) e.getKey();
+		String word = key.substring(0, key.length() - 1);
+		String pos = key.substring(key.length() - 1);
+		String[] phones = (String[]) e.getValue();
+		Assertions.assertArrayEquals(phones,
+			compact.getPhones(word, pos), key);
+
+		byte[] ids = new byte[phones.length + 2];
+		Assertions.assertEquals(phones.length,
+			compact.getPhoneIds(word, pos, ids, 2));
+		for (int p = 0; p < phones.length; p++) {
+		    Assertions.assertEquals(phones[p],
+			    compact.getPhone(ids[p + 2]));
+		}
+	    }
+
+	    Map copy = compact.toMap();
+	    Assertions.assertEquals(lexicon.keySet(), copy.keySet());
+	    for (Iterator i = lexicon.keySet().iterator(); i.hasNext(); ) {
+		Object key = i.next();
+		Assertions.assertArrayEquals((String[]) lexicon.get(key),
+			(String[]) copy.get(key));
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testMissingEntries() throws IOException {
+	File file = File.createTempFile("compact", ".bin");
+	try {
+	    CompactLexicon.write(lexicon(), file.getPath());
+	    CompactLexicon compact = CompactLexicon.load(file.toURI().toURL());
+
+	    Assertions.assertNull(compact.getPhones("absent", "0"));
+	    Assertions.assertEquals(-1,
+		    compact.getPhoneIds("absent", "0", new byte[8], 0));
+	    // the part of speech must match exactly
+	    Assertions.assertNull(compact.getPhones("record", "j"));
+	    Assertions.assertNull(compact.getPhones("recor", "d"));
+	    Assertions.assertNotNull(compact.getPhones("record", "n"));
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testIsCompact() throws IOException {
+	File file = File.createTempFile("compact", ".bin");
+	try {
+	    CompactLexicon.write(lexicon(), file.getPath());
+	    Assertions.assertTrue(CompactLexicon.isCompact(file.toURI().toURL()));
+
+	    FileOutputStream out = new FileOutputStream(file);
+	    out.write("not a lexicon".getBytes("ISO-8859-1"));
+	    out.close();
+	    Assertions.assertFalse(CompactLexicon.isCompact(file.toURI().toURL()));
+	    Assertions.assertThrows(IOException.class,
+		    () -> CompactLexicon.load(file.toURI().toURL()));
+	} finally {
+	    file.delete();
+	}
+    }
+
+    /**
+     * Returns a small lexicon, keyed the way {@link LexiconImpl} keys
+     * it: the word followed by a one character part of speech.
+     */
+    static Map lexicon() {
+	Map lexicon = new LinkedHashMap();
+	lexicon.put("hello0", new String[] { "hh", "ax", "l", "ow1" });
+	lexicon.put("world0", new String[] { "w", "er1", "l", "d" });
+	lexicon.put("recordn", new String[] { "r", "eh1", "k", "er", "d" });
+	lexicon.put("recordv", new String[] { "r", "ih", "k", "ao1", "r", "d" });
+	lexicon.put("a0", new String[] { "ax" });
+	lexicon.put("hmm0", new String[0]);
+	for (int i = 0; i < 200; i++) {
+	    lexicon.put("word" + i + "0", new String[] { "w", "er1", "d",
+		"n" + (i % 40) });
+	}
+	return lexicon;
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the flattened {@link LetterToSoundImpl} gives the same
+ * phones as the state machine it replaced, walked state by state over
+ * a padded copy of the word, on the CMU rules.
+ */
+public class LetterToSoundImplTest {
+    private final static String RULES =
+	"/com/sun/speech/freetts/en/us/cmudict04_lts.txt";
+
+    private final static String[] WORDS = {
+	"", "a", "the", "hello", "world", "freetts", "synthesis", "knight",
+	"through", "psychology", "xylophone", "queue", "rhythm", "aaa",
+	"zzzzzz", "o'clock", "mid-way", "r2d2", "antidisestablishmentarianism",
+	"supercalifragilisticexpialidocious"
+    };
+
+    @Test
+    public void testSamePhonesAsTheStateMachine() throws IOException {
+	URL url = LetterToSoundImplTest.class.getResource(RULES);
+	LetterToSoundImpl lts = new LetterToSoundImpl(url, false);
+	OldRules old = new OldRules(url);
+	List words = words();
+	String[] buffer = new String[8];
+	for (int w = 0; w < words.size(); w++) {
+	    String word = (String) words.get(w);
+	    String[] expected = old.getPhones(word);
+	    Assertions.assertArrayEquals(expected,
+		    lts.getPhones(word, null), word);
+
+	    if (buffer.length < 3 + lts.getMaxPhones(word)) {
+		buffer = new String[3 + lts.getMaxPhones(word)];
+	    }
+	    int count = lts.getPhones(word, buffer, 3);
+	    Assertions.assertEquals(expected.length, count, word);
+	    for (int i = 0; i < count; i++) {
+		Assertions.assertEquals(expected[i], buffer[3 + i], word);
+	    }
+	}
+    }
+
+    @Test
+    public void testThreadsKeepTheirOwnBuffers() throws Exception {
+	URL url = LetterToSoundImplTest.class.getResource(RULES);
+	final LetterToSoundImpl lts = new LetterToSoundImpl(url, false);
+	final OldRules old = new OldRules(url);
+	final List words = words();
+	final Throwable[] failed = new Throwable[1];
+	Thread[] threads = new Thread[4];
+	for (int t = 0; t < threads.length; t++) {
+	    final int first = t;
+	    threads[t] = new Thread() {
+		public void run() {
+		    try {
+			for (int w = first; w < words.size(); w += 4) {
+			    String word = (String) words.get(w);
+			    Assertions.assertArrayEquals(old.getPhones(word),
+				    lts.getPhones(word, null), word);
+			}
+		    } catch (Throwable e) {
+			synchronized (failed) {
+			    failed[0] = e;
+			}
+		    }
+		}
+	    };
+	    threads[t].start();
+	}
+	for (int t = 0; t < threads.length; t++) {
+	    threads[t].join();
+	}
+	if (failed[0] != null) {
+	    throw new AssertionError(failed[0]);
+	}
+    }
+
+    /**
+     * Returns the words to look up: a few real ones, and made-up ones
+     * of all lengths with letters the rules don't know.  The longest
+     * come last, so the buffers have to grow.
+     */
+    private static List words() {
+	List words = new ArrayList();
+	for (int i = 0; i < WORDS.length; i++) {
+	    words.add(WORDS[i]);
+	}
+	Random random = new Random(31);
+	String letters = "abcdefghijklmnopqrstuvwxyzeeaaiioo'-1";
+	for (int n = 0; n < 3000; n++) {
+	    int length = 1 + random.nextInt(n < 2900 ? 12 : 80);
+	    StringBuffer word = new StringBuffer();
+	    for (int i = 0; i < length; i++) {
+		word.append(letters.charAt(random.nextInt(letters.length())));
+	    }
+	    words.add(word.toString());
+	}
+	return words;
+    }
+
+    /**
+     * The letter to sound rules as they were looked up before they
+     * were flattened: an array of states, read from the text form,
+     * walked over a context window copied from "000#word#000".
+     */
+    private static class OldRules {
+	private final static int WINDOW_SIZE = 4;
+	private final List states = new ArrayList();
+	private final Map letterIndex = new HashMap();
+
+	OldRules(URL url) throws IOException {
+	    BufferedReader reader = new BufferedReader(
+		    new InputStreamReader(url.openStream()));
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		if (line.startsWith("***")) {
+		    continue;
+		}
+		StringTokenizer tokenizer = new StringTokenizer(line, " ");
+		String type = tokenizer.nextToken();
+		if (type.equals("STATE")) {
+		    states.add(new int[] {
+			Integer.parseInt(tokenizer.nextToken()),
+			tokenizer.nextToken().charAt(0),
+			Integer.parseInt(tokenizer.nextToken()),
+			Integer.parseInt(tokenizer.nextToken())
+		    });
+		} else if (type.equals("PHONE")) {
+		    String phones = tokenizer.nextToken();
+		    int i = phones.indexOf('-');
+		    if (phones.equals("epsilon")) {
+			states.add(new String[0]);
+		    } else if (i != -1) {
+			states.add(new String[] {
+			    phones.substring(0, i), phones.substring(i + 1)
+			});
+		    } else {
+			states.add(new String[] { phones });
+		    }
+		} else if (type.equals("INDEX")) {
+		    Integer index = Integer.valueOf(tokenizer.nextToken());
+		    letterIndex.put(tokenizer.nextToken(), index);
+		}
+	    }
+	    reader.close();
+	}
+
+	String[] getPhones(String word) {
+	    List phones = new ArrayList();
+	    char[] full = new char[word.length() + 2 * WINDOW_SIZE];
+	    for (int i = 0; i < WINDOW_SIZE - 1; i++) {
+		full[i] = '0';
+		full[full.length - i - 1] = '0';
+	    }
+	    full[WINDOW_SIZE - 1] = '#';
+	    full[full.length - WINDOW_SIZE] = '#';
+	    word.getChars(0, word.length(), full, WINDOW_SIZE);
+
+	    char[] window = new char[WINDOW_SIZE * 2];
+	    for (int pos = 0; pos < word.length(); pos++) {
+		for (int i = 0; i < WINDOW_SIZE; i++) {
+		    window[i] = full[pos + i];
+		    window[i + WINDOW_SIZE] = full[i + pos + 1 + WINDOW_SIZE];
+		}
+		Integer start = (Integer) letterIndex.get(
+			Character.toString(word.charAt(pos)));
+		if (start == null) {
+		    continue;
+		}
+		Object state = states.get(start.intValue());
+		while (state instanceof int[]) {
+		    int[] decision = (int[]) state;
+		    state = states.get(window[decision[0]] == decision[1]
+			    ? decision[2] : decision[3]);
+		}
+		String[] found = (String[]) state;
+		for (int i = 0; i < found.length; i++) {
+		    phones.add(found[i]);
+		}
+	    }
+	    return (String[]) phones.toArray(new String[0]);
+	}
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.speech.freetts.en.us.CMULexicon;
+
+/**
+ * Dumps the CMU lexicon, loaded from its text files, into a
+ * {@link LexiconImage} and checks that a lexicon on the image gives
+ * the same phones, and that damaged images are rejected.
+ */
+public class LexiconImageTest {
+    private final static String[] WORDS = {
+	"hello", "world", "record", "the", "a", "zyxquar", "pittsburgh",
+	"freetts", "lexicon", "speechified"
+    };
+
+    /** the size of MAGIC, VERSION and the checksum */
+    private final static int HEADER_SIZE = 16;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+	LexiconImpl text = textLexicon();
+	File file = File.createTempFile("lexicon", ".bin");
+	try {
+	    text.dumpImage(file.getPath());
+	    LexiconImage image = LexiconImage.load(file.toURI().toURL());
+	    Assertions.assertTrue(image.getCompiled().size() > 100000);
+	    Assertions.assertTrue(image.getAddenda().size() > 0);
+	    Assertions.assertTrue(image.getPartsOfSpeech().length > 0);
+
+	    LexiconImpl mapped = imageLexicon(file);
+	    Assertions.assertTrue(text.compare(mapped));
+	    Assertions.assertTrue(mapped.compare(text));
+	    for (int i = 0; i < WORDS.length; i++) {
+		Assertions.assertArrayEquals(text.getPhones(WORDS[i], null),
+			mapped.getPhones(WORDS[i], null), WORDS[i]);
+		Assertions.assertArrayEquals(
+			text.getPhones(WORDS[i], null, false),
+			mapped.getPhones(WORDS[i], null, false), WORDS[i]);
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testBadChecksumIsRejected() throws IOException {
+	File file = File.createTempFile("lexicon", ".bin");
+	try {
+	    textLexicon().dumpImage(file.getPath());
+	    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	    long at = HEADER_SIZE + (raf.length() - HEADER_SIZE) / 2;
+	    raf.seek(at);
+	    int b = raf.read();
+	    raf.seek(at);
+	    raf.write(b ^ 0x01);
+	    raf.close();
+
+	    IOException e = Assertions.assertThrows(IOException.class,
+		    () -> LexiconImage.load(file.toURI().toURL(), true));
+	    Assertions.assertTrue(e.getMessage().indexOf("checksum") >= 0,
+		    e.getMessage());
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testChecksumIsVerifiedOnlyWhenAsked() throws IOException {
+	File file = File.createTempFile("lexicon", ".bin");
+	try {
+	    textLexicon().dumpImage(file.getPath());
+	    // damage the checksum itself, so the image still reads
+	    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	    raf.seek(8);
+	    long checksum = raf.readLong();
+	    raf.seek(8);
+	    raf.writeLong(checksum ^ 0x01);
+	    raf.close();
+
+	    LexiconImage image = LexiconImage.load(file.toURI().toURL());
+	    Assertions.assertTrue(image.getCompiled().size() > 100000);
+	    Assertions.assertThrows(IOException.class,
+		    () -> LexiconImage.load(file.toURI().toURL(), true));
+	    try {
+		System.setProperty(LexiconImage.VERIFY_PROPERTY, "true");
+		Assertions.assertThrows(IOException.class,
+			() -> LexiconImage.load(file.toURI().toURL()));
+	    } finally {
+		System.clearProperty(LexiconImage.VERIFY_PROPERTY);
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testOtherVersionIsRejected() throws IOException {
+	File file = File.createTempFile("lexicon", ".bin");
+	try {
+	    textLexicon().dumpImage(file.getPath());
+	    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	    raf.seek(4);
+	    raf.writeInt(LexiconImage.VERSION + 1);
+	    raf.close();
+
+	    IOException e = Assertions.assertThrows(IOException.class,
+		    () -> LexiconImage.load(file.toURI().toURL()));
+	    Assertions.assertTrue(e.getMessage().indexOf("version") >= 0,
+		    e.getMessage());
+
+	    raf = new RandomAccessFile(file, "rw");
+	    raf.writeInt(CompactLexicon.MAGIC);
+	    raf.close();
+	    e = Assertions.assertThrows(IOException.class,
+		    () -> LexiconImage.load(file.toURI().toURL()));
+	    Assertions.assertTrue(e.getMessage().indexOf("magic") >= 0,
+		    e.getMessage());
+	} finally {
+	    file.delete();
+	}
+    }
+
+    /**
+     * Returns the CMU lexicon, loaded from its text files.
+     */
+    private static LexiconImpl textLexicon() throws IOException {
+	LexiconImpl lexicon = new CMULexicon("cmudict04", false);
+	lexicon.load();
+	return lexicon;
+    }
+
+    /**
+     * Returns a lexicon that loads the given image.
+     */
+    private static LexiconImpl imageLexicon(File image) throws IOException {
+	LexiconImpl lexicon = new CMULexicon("cmudict04", false);
+	lexicon.setLexiconImage(image.toURI().toURL());
+	lexicon.load();
+	return lexicon;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.speech.freetts.en.us.CMULexicon;
+
+/**
+ * Tests {@link PronunciationCache} on its own and as used by the CMU
+ * lexicon, in particular that a cached pronunciation never outlives a
+ * change to the addenda.
+ */
+public class PronunciationCacheTest {
+    private final static String[] NEW_PHONES = { "k", "ey1", "sh" };
+
+    @Test
+    public void testAddendumReplacesLetterToSound() throws IOException {
+	LexiconImpl lexicon = lexicon();
+	String word = "qzxcachetest";
+	String[] lts = lexicon.getPhones(word, null);
+	Assertions.assertNotNull(lts);
+	long hits = lexicon.getPronunciationCache().getHits();
+	Assertions.assertArrayEquals(lts, lexicon.getPhones(word, null));
+	Assertions.assertEquals(hits + 1,
+		lexicon.getPronunciationCache().getHits());
+
+	lexicon.addAddendum(word, null, NEW_PHONES);
+	Assertions.assertArrayEquals(NEW_PHONES, lexicon.getPhones(word, null));
+	Assertions.assertArrayEquals(NEW_PHONES,
+		lexicon.getPhones(word, null, false));
+
+	lexicon.removeAddendum(word, null);
+	Assertions.assertArrayEquals(lts, lexicon.getPhones(word, null));
+	Assertions.assertNull(lexicon.getPhones(word, null, false));
+    }
+
+    @Test
+    public void testAddendumReplacesLexiconEntry() throws IOException {
+	LexiconImpl lexicon = lexicon();
+	String[] hello = lexicon.getPhones("hello", null);
+	Assertions.assertArrayEquals(hello, lexicon.getPhones("hello", null));
+
+	lexicon.addAddendum("hello", null, NEW_PHONES);
+	Assertions.assertArrayEquals(NEW_PHONES,
+		lexicon.getPhones("hello", null));
+	Assertions.assertArrayEquals(NEW_PHONES,
+		lexicon.getPhones(new String[] { "hello" }, null).getPhones(0));
+
+	lexicon.removeAddendum("hello", null);
+	Assertions.assertArrayEquals(hello, lexicon.getPhones("hello", null));
+	Assertions.assertArrayEquals(hello,
+		lexicon.getPhones(new String[] { "hello" }, null).getPhones(0));
+    }
+
+    @Test
+    public void testSharedCacheIsLeftToOtherLexicons() throws IOException {
+	LexiconImpl changed = lexicon();
+	LexiconImpl other = lexicon();
+	Assertions.assertSame(changed.getPronunciationCache(),
+		other.getPronunciationCache());
+	String[] world = other.getPhones("world", null);
+
+	changed.addAddendum("world", null, NEW_PHONES);
+	Assertions.assertNotSame(changed.getPronunciationCache(),
+		other.getPronunciationCache());
+	Assertions.assertArrayEquals(NEW_PHONES,
+		changed.getPhones("world", null));
+	Assertions.assertArrayEquals(world, other.getPhones("world", null));
+    }
+
+    @Test
+    public void testLookupWithoutLetterToSound() {
+	PronunciationCache cache = new PronunciationCache(100);
+	// looked up without the rules and not found
+	cache.put("word", "0", null, false, false);
+	Assertions.assertNotNull(cache.get("word", "0", false));
+	Assertions.assertNull(cache.get("word", "0", true));
+
+	// found by the rules
+	cache.put("word", "0", NEW_PHONES, true, true);
+	PronunciationCache.Pronunciation p = cache.get("word", "0", false);
+	Assertions.assertNull(p.getPhones(false));
+	Assertions.assertArrayEquals(NEW_PHONES,
+		cache.get("word", "0", true).getPhones(true));
+	Assertions.assertNull(cache.get("word", "n", true));
+	Assertions.assertEquals(3, cache.getHits());
+	Assertions.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testBoundedAndCleared() {
+	PronunciationCache cache = new PronunciationCache(32);
+	for (int i = 0; i < 1000; i++) {
+	    cache.put("word" + i, "0", NEW_PHONES, false, true);
+	}
+	Assertions.assertTrue(cache.size() <= 32, cache.size() + " words");
+	Assertions.assertNotNull(cache.get("word999", "0", true));
+	cache.clear();
+	Assertions.assertEquals(0, cache.size());
+	Assertions.assertNull(cache.get("word999", "0", true));
+    }
+
+    @Test
+    public void testPartsOfSpeechAreKeptApart() {
+	PronunciationCache cache = new PronunciationCache(100);
+	String[] noun = { "r", "eh1", "k", "er0", "d" };
+	String[] verb = { "r", "ih0", "k", "ao1", "r", "d" };
+	cache.put("record", "n", noun, false, true);
+	cache.put("record", "v", verb, false, true);
+	cache.put("red", "0", new String[] { "r", "eh1", "d" }, false, true);
+	Assertions.assertArrayEquals(noun,
+		cache.get("record", "n", true).getPhones(true));
+	Assertions.assertArrayEquals(verb,
+		cache.get("record", "v", true).getPhones(true));
+	Assertions.assertNull(cache.get("record", "0", true));
+	Assertions.assertEquals(2, cache.size());
+
+	// put again, replaces the one part of speech only
+	cache.put("record", "n", verb, false, true);
+	Assertions.assertArrayEquals(verb,
+		cache.get("record", "n", true).getPhones(true));
+	Assertions.assertArrayEquals(verb,
+		cache.get("record", "v", true).getPhones(true));
+
+	// the phones are copied out, not shared
+	String[] phones = cache.get("red", "0", true).getPhones(true);
+	phones[0] = "x";
+	Assertions.assertEquals("r",
+		cache.get("red", "0", true).getPhones(true)[0]);
+    }
+
+    /**
+     * Returns the CMU lexicon, loaded from its text files.
+     */
+    private static LexiconImpl lexicon() throws IOException {
+	LexiconImpl lexicon = new CMULexicon("cmudict04", false);
+	lexicon.load();
+	Assertions.assertNotNull(lexicon.getPronunciationCache());
+	return lexicon;
+    }
+}
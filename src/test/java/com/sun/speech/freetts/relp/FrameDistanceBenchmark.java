@@ -0,0 +1,152 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.relp;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import com.sun.speech.freetts.util.Benchmark;
+
+/**
+ * Compares the join frame distance read from the {@link Sample}
+ * objects of a {@link SampleSet}, as unit selection used to do, with
+ * {@link SampleSet#getFrameDistance} on the contiguous frame array.
+ * Both must give the same sums.
+ *
+ * <p>There is no cluster unit database in the tree, so the MCEP set is
+ * made up: random frames over the whole short range, so weighted
+ * differences overflow as they may in a database, and random join
+ * weights.  The distances are taken as optimal coupling takes them,
+ * along runs of frame pairs at random places in the set.
+ *
+ * <pre>
+ * usage: FrameDistanceBenchmark [-frames n] [-channels n] [-run n]
+ *                               [-runs n] [-iterations n] [-warmup n]
+ * </pre>
+ */
+public class FrameDistanceBenchmark {
+    private final static String USAGE =
+	"FrameDistanceBenchmark [-frames n] [-channels n] [-run n] "
+	+ "[-runs n] [-iterations n] [-warmup n]";
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the options, as in the usage above
+     */
+    public static void main(String[] args) {
+	Benchmark bench = new Benchmark(USAGE, args);
+	int frames = bench.getInt("-frames", 100000);
+	int channels = bench.getInt("-channels", 25);
+	int run = bench.getInt("-run", 10);
+	int runs = bench.getInt("-runs", 100000);
+	int iterations = bench.getInt("-iterations", 10);
+	int warmup = bench.getInt("-warmup", 5);
+	if (!bench.checkOptions()) {
+	    return;
+	}
+
+	Random random = new Random(29);
+	SampleSet mcep = sampleSet(frames, channels, random);
+	int[] weights = new int[channels];
+	for (int c = 0; c < channels; c++) {
+	    weights[c] = random.nextInt(65536);
+	}
+	int[] starts = new int[runs * 2];
+	for (int i = 0; i < starts.length; i++) {
+	    starts[i] = random.nextInt(frames - run);
+	}
+	System.out.println(frames + " frames of " + channels + " channels, "
+		+ runs + " runs of " + run + " frame pairs");
+
+	for (int order = channels / 2; order <= channels;
+		order += channels - channels / 2) {
+	    long objects = runObjects(mcep, starts, run, weights, order);
+	    long flat = runFlat(mcep, starts, run, weights, order);
+	    System.out.println("order " + order + ": checksums " + objects
+		    + " and " + flat + ", "
+		    + (objects == flat ? "equal" : "DIFFERENT"));
+	    for (int i = 0; i < warmup; i++) {
+		runObjects(mcep, starts, run, weights, order);
+		runFlat(mcep, starts, run, weights, order);
+	    }
+	    long count = (long) runs * run * iterations;
+	    long start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		runObjects(mcep, starts, run, weights, order);
+	    }
+	    report("objects", System.nanoTime() - start, count);
+	    start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		runFlat(mcep, starts, run, weights, order);
+	    }
+	    report("flat", System.nanoTime() - start, count);
+	}
+    }
+
+    /**
+     * Sums the distances as unit selection used to: a Sample and its
+     * frame array for every frame.
+     */
+    private static long runObjects(SampleSet mcep, int[] starts, int run,
+	    int[] weights, int order) {
+	long sink = 0;
+	for (int i = 0; i < starts.length; i += 2) {
+	    for (int f = 0; f < run; f++) {
+		short[] bv = mcep.getSample(starts[i + 1] + f).getFrameData();
+		short[] av = mcep.getSample(starts[i] + f).getFrameData();
+		int r = 0;
+		for (int c = 0; c < order; c++) {
+		    int diff = av[c] - bv[c];
+		    r += Math.abs(diff) * weights[c] / 65536;
+		}
+		sink += r;
+	    }
+	}
+	return sink;
+    }
+
+    private static long runFlat(SampleSet mcep, int[] starts, int run,
+	    int[] weights, int order) {
+	long sink = 0;
+	for (int i = 0; i < starts.length; i += 2) {
+	    for (int f = 0; f < run; f++) {
+		sink += mcep.getFrameDistance(starts[i] + f,
+			starts[i + 1] + f, weights, order);
+	    }
+	}
+	return sink;
+    }
+
+    /**
+     * Makes up a sample set in the text form of a cluster unit
+     * database.
+     */
+    private static SampleSet sampleSet(int frames, int channels,
+	    Random random) {
+	StringBuffer text = new StringBuffer();
+	for (int f = 0; f < frames; f++) {
+	    text.append("FRAME");
+	    for (int c = 0; c < channels; c++) {
+		text.append(' ').append(random.nextInt(65536));
+	    }
+	    text.append("\nRESIDUAL 0\n");
+	}
+	StringTokenizer header = new StringTokenizer(frames + " " + channels
+		+ " 16000 -1.0 2.0 0.0 1");
+	return new SampleSet(header,
+		new BufferedReader(new StringReader(text.toString())));
+    }
+
+    private static void report(String name, long nanos, long count) {
+	System.out.println(String.format("   %-8s %6.2f ns per frame distance",
+		    name, (double) nanos / count));
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.relp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import com.sun.speech.freetts.util.Benchmark;
+
+/**
+ * Compares loading a {@link SampleSet} by copying every sample out of
+ * a stream, as the database loaders did, with a sample set kept in a
+ * mapped file, which reads nothing until a sample is used.  Each load
+ * runs in a JVM of its own, so its heap and resident set are its own;
+ * the resident set is split into anonymous memory and pages of files,
+ * which the mapped set shares with the page cache.  Then the samples
+ * are used the way unit concatenation and unit selection use them, and
+ * the loads must give the same checksums.
+ *
+ * <p>There is no cluster unit database in the tree, so the sample set
+ * is made up: samples with the channels of an LPC set and residuals of
+ * about a pitch period, written in the binary form of a database.
+ *
+ * <pre>
+ * usage: SampleSetBenchmark [-samples n] [-channels n] [-residual n]
+ * </pre>
+ */
+public class SampleSetBenchmark {
+    private final static String USAGE =
+	"SampleSetBenchmark [-samples n] [-channels n] [-residual n]";
+
+    private final static String RSS_ANONYMOUS = "RssAnon:";
+    private final static String RSS_FILE = "RssFile:";
+
+    /**
+     * Runs the benchmark.  The child JVMs are given the file to load
+     * and how to load it, with <code>-file path -load copy|map</code>.
+     *
+     * @param args the options, as in the usage above
+     *
+     * @throws Exception if the samples can't be written or loaded
+     */
+    public static void main(String[] args) throws Exception {
+	Benchmark bench = new Benchmark(USAGE, args);
+	int samples = bench.getInt("-samples", 400000);
+	int channels = bench.getInt("-channels", 17);
+	int residual = bench.getInt("-residual", 160);
+	String path = bench.getString("-file", null);
+	String load = bench.getString("-load", null);
+	if (!bench.checkOptions()) {
+	    return;
+	}
+
+	if (load != null) {
+	    load(path, load);
+	    return;
+	}
+
+	File file = File.createTempFile("samples", ".bin");
+	file.deleteOnExit();
+	write(file, samples, channels, residual);
+	System.out.println(String.format(
+		    "%d samples of %d channels and about %d residuals, %.1f MB",
+		    samples, channels, residual, file.length() / 1048576.0));
+	String[] none = new String[0];
+	Benchmark.runChild(SampleSetBenchmark.class, none,
+		new String[] { "-file", file.getPath(), "-load", "copy" });
+	Benchmark.runChild(SampleSetBenchmark.class, none,
+		new String[] { "-file", file.getPath(), "-load", "map" });
+    }
+
+    /**
+     * Loads the set, uses it twice, and prints what that cost.
+     */
+    private static void load(String path, String load) throws IOException {
+	long heapBefore = Benchmark.usedHeap();
+	long anonBefore = Benchmark.getResidentSize(RSS_ANONYMOUS);
+	long fileBefore = Benchmark.getResidentSize(RSS_FILE);
+	long start = System.nanoTime();
+	SampleSet set;
+	FileInputStream in = new FileInputStream(path);
+	if (load.equals("map")) {
+	    FileChannel channel = in.getChannel();
+	    MappedByteBuffer buffer = channel.map(
+		    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	    set = new SampleSet(buffer);
+	} else {
+	    set = new SampleSet(new DataInputStream(
+			new BufferedInputStream(in)));
+	}
+	long loadNanos = System.nanoTime() - start;
+	long heap = Benchmark.usedHeap() - heapBefore;
+	long anonLoaded = Benchmark.getResidentSize(RSS_ANONYMOUS) - anonBefore;
+	long fileLoaded = Benchmark.getResidentSize(RSS_FILE) - fileBefore;
+
+	start = System.nanoTime();
+	long checksum = use(set);
+	long useNanos = System.nanoTime() - start;
+	start = System.nanoTime();
+	use(set);
+	long againNanos = System.nanoTime() - start;
+	long anonUsed = Benchmark.getResidentSize(RSS_ANONYMOUS) - anonBefore;
+	long fileUsed = Benchmark.getResidentSize(RSS_FILE) - fileBefore;
+
+	System.out.println(String.format("%-4s load %8.1f ms, heap %6.1f MB",
+		    load, loadNanos / 1e6, heap / 1048576.0));
+	System.out.println(String.format(
+		    "     rss anonymous %6.1f MB and file %6.1f MB after load, "
+		    + "%6.1f and %6.1f MB after use", anonLoaded / 1024.0,
+		    fileLoaded / 1024.0, anonUsed / 1024.0, fileUsed / 1024.0));
+	System.out.println(String.format(
+		    "     use %8.1f ms, again %6.1f ms, checksum %d",
+		    useNanos / 1e6, againNanos / 1e6, checksum));
+	in.close();
+    }
+
+    /**
+     * Uses the set as concatenation and selection do: residuals into
+     * a buffer, frames and frame distances.
+     */
+    private static long use(SampleSet set) {
+	int channels = set.getSampleInfo().getNumberOfChannels();
+	int[] weights = new int[channels];
+	for (int c = 0; c < channels; c++) {
+	    weights[c] = 32768 + c;
+	}
+	byte[] residuals = new byte[1024];
+	long sink = 0;
+	int n = set.getNumberOfSamples();
+	for (int i = 0; i < n; i++) {
+	    Sample sample = set.getSample(i);
+	    int size = Math.min(sample.getResidualSize(), residuals.length);
+	    sample.copyResidualData(0, residuals, 0, size);
+	    sink += size > 0 ? residuals[size / 2] + set.getFrameSize(i) : 0;
+	    sink += sample.getFrameData(channels - 1);
+	    if (i > 0) {
+		sink += set.getFrameDistance(i - 1, i, weights, channels);
+	    }
+	}
+	return sink;
+    }
+
+    /**
+     * Writes a made-up sample set in the binary form of a database.
+     */
+    private static void write(File file, int samples, int channels,
+	    int residual) throws IOException {
+	Random random = new Random(31);
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		    new FileOutputStream(file)));
+	new SampleInfo(16000, channels, 0, -1.0f, 2.0f, 0.0f).dumpBinary(out);
+	out.writeInt(samples);
+	int[] sizes = new int[samples];
+	for (int i = 0; i < samples; i++) {
+	    sizes[i] = residual / 2 + random.nextInt(residual);
+	}
+	int at = 0;
+	for (int i = 0; i < samples; i++) {
+	    out.writeInt(at);
+	    at += SampleSet.getBinarySize(channels, sizes[i]);
+	}
+	out.writeInt(at);
+	short[] frame = new short[channels];
+	for (int i = 0; i < samples; i++) {
+	    for (int c = 0; c < channels; c++) {
+		frame[c] = (short) random.nextInt(65536);
+	    }
+	    byte[] data = new byte[sizes[i]];
+	    random.nextBytes(data);
+	    new Sample(frame, data, data.length).dumpBinary(out);
+	}
+	out.close();
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.relp;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reads the same made-up sample set from text, from a binary stream
+ * and from a buffer, heap and mapped, and checks that the sets read
+ * the same.
+ */
+public class SampleSetTest {
+    private final static int SAMPLES = 300;
+    private final static int CHANNELS = 25;
+    private final static int TRAILER = 0x5eed5eed;
+
+    @Test
+    public void testLoadsReadTheSame() throws IOException {
+	SampleSet text = textSet(SAMPLES, new Random(5));
+	byte[] binary = binary(text);
+
+	SampleSet stream = new SampleSet(
+		new DataInputStream(new ByteArrayInputStream(binary)));
+	assertSame(text, stream);
+
+	ByteBuffer bb = ByteBuffer.wrap(binary);
+	SampleSet buffer = new SampleSet(bb);
+	assertSame(text, buffer);
+	// the position is left after the samples
+	Assertions.assertEquals(TRAILER, bb.getInt());
+
+	File file = File.createTempFile("samples", ".bin");
+	try {
+	    FileOutputStream out = new FileOutputStream(file);
+	    out.write(binary);
+	    out.close();
+	    RandomAccessFile raf = new RandomAccessFile(file, "r");
+	    try {
+		FileChannel fc = raf.getChannel();
+		ByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0,
+			fc.size());
+		SampleSet map = new SampleSet(mapped);
+		assertSame(text, map);
+		Assertions.assertEquals(TRAILER, mapped.getInt());
+		// and it dumps as it was read
+		Assertions.assertArrayEquals(binary, binary(map));
+	    } finally {
+		raf.close();
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    @Test
+    public void testEmptySet() throws IOException {
+	SampleSet text = textSet(0, new Random(7));
+	ByteBuffer bb = ByteBuffer.wrap(binary(text));
+	SampleSet buffer = new SampleSet(bb);
+	Assertions.assertEquals(0, buffer.getNumberOfSamples());
+	Assertions.assertEquals(TRAILER, bb.getInt());
+    }
+
+    @Test
+    public void testTruncatedBufferIsRejected() throws IOException {
+	byte[] binary = binary(textSet(20, new Random(9)));
+	// without the trailer and the last few residuals
+	final ByteBuffer bb = ByteBuffer.wrap(binary, 0, binary.length - 10);
+	Assertions.assertThrows(IOException.class, () -> new SampleSet(bb));
+    }
+
+    @Test
+    public void testFrameDistanceReadsAsTheSamples() throws IOException {
+	Random random = new Random(13);
+	SampleSet text = textSet(SAMPLES, random);
+	byte[] binary = binary(text);
+	SampleSet buffer = new SampleSet(ByteBuffer.wrap(binary));
+	int[] weights = new int[CHANNELS];
+	for (int c = 0; c < CHANNELS; c++) {
+	    weights[c] = random.nextInt(65536);
+	}
+
+	File file = File.createTempFile("samples", ".bin");
+	try {
+	    FileOutputStream out = new FileOutputStream(file);
+	    out.write(binary);
+	    out.close();
+	    RandomAccessFile raf = new RandomAccessFile(file, "r");
+	    try {
+		FileChannel fc = raf.getChannel();
+		SampleSet map = new SampleSet(fc.map(
+			    FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+		SampleSet[] sets = { text, buffer, map };
+		for (int n = 0; n < 2000; n++) {
+		    int a = random.nextInt(SAMPLES);
+		    int b = random.nextInt(SAMPLES);
+		    int order = 1 + random.nextInt(CHANNELS);
+		    int expected = distance(text.getSample(a),
+			    text.getSample(b), weights, order);
+		    for (int s = 0; s < sets.length; s++) {
+			Assertions.assertEquals(expected,
+				sets[s].getFrameDistance(a, b, weights, order),
+				"set " + s + ", samples " + a + " and " + b);
+		    }
+		}
+	    } finally {
+		raf.close();
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    /**
+     * Returns the distance between the frames of two samples as unit
+     * selection took it before {@link SampleSet#getFrameDistance}.
+     */
+    private static int distance(Sample a, Sample b, int[] weights,
+	    int order) {
+	short[] fa = a.getFrameData();
+	short[] fb = b.getFrameData();
+	int r = 0;
+	for (int i = 0; i < order; i++) {
+	    r += Math.abs(fa[i] - fb[i]) * weights[i] / 65536;
+	}
+	return r;
+    }
+
+    /**
+     * Checks that a set reads as the one it was made from.
+     */
+    private static void assertSame(SampleSet expected, SampleSet actual) {
+	Assertions.assertEquals(expected.getNumberOfSamples(),
+		actual.getNumberOfSamples());
+	Assertions.assertEquals(
+		expected.getSampleInfo().getNumberOfChannels(),
+		actual.getSampleInfo().getNumberOfChannels());
+	for (int i = 0; i < expected.getNumberOfSamples(); i++) {
+	    Sample e = expected.getSample(i);
+	    Sample a = actual.getSample(i);
+	    Assertions.assertArrayEquals(e.getFrameData(), a.getFrameData());
+	    Assertions.assertArrayEquals(e.getResidualData(),
+		    a.getResidualData());
+	    Assertions.assertEquals(e.getResidualSize(), a.getResidualSize());
+	    Assertions.assertEquals(e.getResidualSize(),
+		    actual.getFrameSize(i));
+	    Assertions.assertEquals(expected.getFrameSize(i),
+		    actual.getFrameSize(i));
+	}
+	for (int i = 0; i + 5 <= expected.getNumberOfSamples(); i += 5) {
+	    Assertions.assertEquals(expected.getUnitSize(i, i + 5),
+		    actual.getUnitSize(i, i + 5));
+	}
+    }
+
+    /**
+     * Returns the binary form of a set, followed by a marker.
+     */
+    private static byte[] binary(SampleSet set) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DataOutputStream os = new DataOutputStream(bytes);
+	set.dumpBinary(os);
+	os.writeInt(TRAILER);
+	os.close();
+	return bytes.toByteArray();
+    }
+
+    /**
+     * Makes up a sample set in the text form of a cluster unit
+     * database, with residuals of different lengths.
+     */
+    static SampleSet textSet(int samples, Random random) {
+	StringBuffer text = new StringBuffer();
+	for (int s = 0; s < samples; s++) {
+	    text.append("FRAME");
+	    for (int c = 0; c < CHANNELS; c++) {
+		text.append(' ').append(random.nextInt(65536));
+	    }
+	    int residuals = random.nextInt(200);
+	    text.append("\nRESIDUAL ").append(residuals);
+	    for (int r = 0; r < residuals; r++) {
+		text.append(' ').append(random.nextInt(256));
+	    }
+	    text.append('\n');
+	}
+	StringTokenizer header = new StringTokenizer(samples + " " + CHANNELS
+		+ " 16000 -1.0 2.0 0.0 1");
+	return new SampleSet(header,
+		new BufferedReader(new StringReader(text.toString())));
+    }
+}
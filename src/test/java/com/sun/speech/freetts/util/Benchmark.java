@@ -0,0 +1,274 @@
+/**
+ * Copyright 2001 Sun Microsystems, Inc.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command line and measurements shared by the benchmarks that
+ * come with FreeTTS.  Each benchmark lives in the package of the code
+ * it measures and is run with its <code>main</code> method, with the
+ * FreeTTS sources on the classpath so the voice data is found.
+ *
+ * <p>A benchmark asks for its options by name, and then calls {@link
+ * #checkOptions}, which reports any argument that no option took:
+ *
+ * <pre>
+ *   Benchmark bench = new Benchmark("PathBenchmark [-interpret] ...",
+ *	    args);
+ *   boolean interpret = bench.getFlag("-interpret");
+ *   int iterations = bench.getInt("-iterations", 10);
+ *   bench.checkOptions();
+ * </pre>
+ */
+public class Benchmark {
+    /**
+     * The text benchmarks speak when they are not given any, a page
+     * of the FestVox documentation.
+     */
+    private final static String SAMPLE_TEXT = "benchmark.txt";
+
+    private String usage;
+    private String[] args;
+    private boolean[] taken;
+
+    /**
+     * Creates the command line of a benchmark.
+     *
+     * @param usage the name of the benchmark and its options, shown
+     *     when an argument is not understood
+     * @param args the arguments of the benchmark
+     */
+    public Benchmark(String usage, String[] args) {
+	this.usage = usage;
+	this.args = args;
+	this.taken = new boolean[args.length];
+    }
+
+    /**
+     * Returns <code>true</code> if the given option was given.
+     *
+     * @param option the option, such as <code>"-map"</code>
+     *
+     * @return <code>true</code> if the option is on the command line
+     */
+    public boolean getFlag(String option) {
+	return find(option, false) >= 0;
+    }
+
+    /**
+     * Returns the value of an option that takes one.
+     *
+     * @param option the option, such as <code>"-file"</code>
+     * @param defaultValue the value if the option is not given
+     *
+     * @return the argument after the option, or
+     *     <code>defaultValue</code>
+     */
+    public String getString(String option, String defaultValue) {
+	int i = find(option, true);
+	return i < 0 ? defaultValue : args[i + 1];
+    }
+
+    /**
+     * Returns the value of an option that takes a number.
+     *
+     * @param option the option, such as <code>"-iterations"</code>
+     * @param defaultValue the value if the option is not given
+     *
+     * @return the number after the option, or
+     *     <code>defaultValue</code>
+     *
+     * @throws NumberFormatException if the value is not a number
+     */
+    public int getInt(String option, int defaultValue) {
+	String value = getString(option, null);
+	return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Reports every argument no option took, followed by the usage of
+     * the benchmark.
+     *
+     * @return <code>true</code> if every argument was understood
+     */
+    public boolean checkOptions() {
+	boolean ok = true;
+	for (int i = 0; i < args.length; i++) {
+	    if (!taken[i]) {
+		System.out.println("Unknown option " + args[i]);
+		ok = false;
+	    }
+	}
+	if (!ok) {
+	    System.out.println("usage: " + usage);
+	}
+	return ok;
+    }
+
+    /**
+     * Finds an option and marks it, and its value, as taken.
+     *
+     * @param option the option
+     * @param hasValue <code>true</code> if a value follows the option
+     *
+     * @return the index of the option, or -1 if it is not given
+     */
+    private int find(String option, boolean hasValue) {
+	for (int i = 0; i < args.length; i++) {
+	    if (!taken[i] && args[i].equals(option)
+		    && (!hasValue || i + 1 < args.length)) {
+		taken[i] = true;
+		if (hasValue) {
+		    taken[i + 1] = true;
+		}
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Reads the text a benchmark speaks.
+     *
+     * @param path the file to read, or <code>null</code> for the
+     *     sample text that comes with the benchmarks
+     *
+     * @return the text
+     *
+     * @throws IOException if the text can't be read
+     */
+    public static String readText(String path) throws IOException {
+	InputStream in = path == null
+	    ? Benchmark.class.getResourceAsStream(SAMPLE_TEXT)
+	    : new FileInputStream(path);
+	if (in == null) {
+	    throw new IOException("Can't find " + SAMPLE_TEXT);
+	}
+	BufferedReader reader = new BufferedReader(
+		new InputStreamReader(in, StandardCharsets.UTF_8));
+	StringBuilder text = new StringBuilder();
+	char[] buffer = new char[8192];
+	int n;
+	while ((n = reader.read(buffer)) > 0) {
+	    text.append(buffer, 0, n);
+	}
+	reader.close();
+	return text.toString();
+    }
+
+    /**
+     * Returns the heap in use after a few collections.
+     *
+     * @return the bytes of heap in use
+     */
+    public static long usedHeap() {
+	Runtime runtime = Runtime.getRuntime();
+	for (int i = 0; i < 3; i++) {
+	    System.gc();
+	}
+	return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the bytes the current thread has allocated so far, where
+     * the JVM counts them.
+     *
+     * @return the bytes allocated, or 0 if the JVM doesn't count them
+     */
+    public static long allocatedBytes() {
+	ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	if (bean instanceof com.sun.management.ThreadMXBean) {
+	    return ((com.sun.management.ThreadMXBean) bean)
+		.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	return 0L;
+    }
+
+    /**
+     * Returns a part of the resident set of this JVM, as counted in
+     * <code>/proc/self/status</code>.
+     *
+     * @param field the field, such as <code>"RssAnon:"</code>
+     *
+     * @return the size in kilobytes, or 0 where there is no
+     *     <code>/proc</code>
+     *
+     * @throws IOException if the status can't be read
+     */
+    public static long getResidentSize(String field) throws IOException {
+	File status = new File("/proc/self/status");
+	if (!status.exists()) {
+	    return 0L;
+	}
+	BufferedReader reader = new BufferedReader(new FileReader(status));
+	try {
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		if (line.startsWith(field)) {
+		    return Long.parseLong(line.substring(field.length())
+			    .trim().split("\\s+")[0]);
+		}
+	    }
+	} finally {
+	    reader.close();
+	}
+	return 0L;
+    }
+
+    /**
+     * Runs a benchmark in a JVM of its own, with the classpath of this
+     * one, and prints what it prints.  Measurements of the heap and the
+     * resident set are then not disturbed by anything done before.
+     *
+     * @param main the class of the benchmark
+     * @param properties system properties for the JVM, as
+     *     <code>name=value</code>
+     * @param args the arguments of the benchmark
+     *
+     * @throws IOException if the JVM can't be started
+     * @throws InterruptedException if interrupted while waiting for it
+     */
+    public static void runChild(Class main, String[] properties,
+	    String[] args) throws IOException, InterruptedException {
+	List command = new ArrayList();
+	command.add(System.getProperty("java.home") + File.separator
+		+ "bin" + File.separator + "java");
+	for (int i = 0; i < properties.length; i++) {
+	    command.add("-D" + properties[i]);
+	}
+	command.add("-cp");
+	command.add(System.getProperty("java.class.path"));
+	command.add(main.getName());
+	for (int i = 0; i < args.length; i++) {
+	    command.add(args[i]);
+	}
+	ProcessBuilder builder = new ProcessBuilder(command);
+	builder.redirectErrorStream(true);
+	Process process = builder.start();
+	BufferedReader reader = new BufferedReader(
+		new InputStreamReader(process.getInputStream()));
+	String line;
+	while ((line = reader.readLine()) != null) {
+	    System.out.println(line);
+	}
+	reader.close();
+	process.waitFor();
+    }
+}